@@ -0,0 +1,169 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.db;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+import androidx.test.runner.AndroidJUnit4;
+
+import com.brother.pharmach.mdm.launcher.Const;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Dao on an in-memory database, so the app's data is not touched.
+ * Runs on a device because it needs the platform SQLite; the benchmark is written to logcat.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DaoTest {
+    private static final String CREATE_TABLE =
+            "CREATE TABLE locations (_id INTEGER PRIMARY KEY AUTOINCREMENT, ts INTEGER NOT NULL, lat REAL, lon REAL)";
+    private static final String INSERT = "INSERT INTO locations(ts, lat, lon) VALUES (?, ?, ?)";
+    private static final String SELECT = "SELECT _id, ts, lat, lon FROM locations ORDER BY _id";
+    private static final String[] COLUMNS = { "ts", "lat", "lon" };
+    private static final int ROWS = 20000;
+
+    private static class Fix {
+        Long ts;
+        double lat;
+        double lon;
+
+        Fix(Long ts, double lat, double lon) {
+            this.ts = ts;
+            this.lat = lat;
+            this.lon = lon;
+        }
+    }
+
+    private static final Dao.Binder<Fix> BINDER = (statement, fix) -> {
+        Dao.bindLong(statement, 1, fix.ts);
+        statement.bindDouble(2, fix.lat);
+        statement.bindDouble(3, fix.lon);
+    };
+
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        db = SQLiteDatabase.create(null);
+        db.execSQL(CREATE_TABLE);
+    }
+
+    @After
+    public void tearDown() {
+        // The cached statements of a closed connection are dropped by Dao
+        db.close();
+    }
+
+    private static List<Fix> createFixes(int count) {
+        List<Fix> fixes = new ArrayList<>();
+        for (int n = 0; n < count; n++) {
+            fixes.add(new Fix(1700000000000L + n * 10000L, 55 + n * 0.0001, 37 + n * 0.0001));
+        }
+        return fixes;
+    }
+
+    private long count() {
+        return DatabaseUtils.queryNumEntries(db, "locations");
+    }
+
+    @Test
+    public void failedBatchIsRolledBackAndThrown() {
+        List<Fix> fixes = createFixes(10);
+        // Violates NOT NULL in the middle of the batch
+        fixes.get(5).ts = null;
+        try {
+            Dao.insertAll(db, INSERT, fixes, BINDER);
+            fail("SQLException expected");
+        } catch (SQLException e) {
+            // Expected: the caller keeps the items
+        }
+        assertEquals(0, count());
+
+        // The cached statement is still usable after the failure
+        fixes.get(5).ts = 0L;
+        Dao.insertAll(db, INSERT, fixes, BINDER);
+        assertEquals(10, count());
+    }
+
+    // Compares the former string-bound statements and per-row column lookups with Dao
+    @Test
+    public void benchmark() {
+        List<Fix> fixes = createFixes(ROWS);
+
+        long start = System.nanoTime();
+        db.beginTransaction();
+        try {
+            for (Fix fix : fixes) {
+                db.execSQL(INSERT, new String[] { Long.toString(fix.ts), Double.toString(fix.lat), Double.toString(fix.lon) });
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        long legacyInsertNs = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        List<Fix> legacyRows = new LinkedList<>();
+        Cursor cursor = db.rawQuery(SELECT, null);
+        try {
+            while (cursor.moveToNext()) {
+                legacyRows.add(new Fix(cursor.getLong(cursor.getColumnIndex("ts")),
+                        cursor.getDouble(cursor.getColumnIndex("lat")), cursor.getDouble(cursor.getColumnIndex("lon"))));
+            }
+        } finally {
+            cursor.close();
+        }
+        long legacySelectNs = System.nanoTime() - start;
+
+        db.delete("locations", null, null);
+        start = System.nanoTime();
+        Dao.insertAll(db, INSERT, fixes, BINDER);
+        long daoInsertNs = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        final double[] sum = { 0 };
+        int read = Dao.forEach(db, SELECT, null, COLUMNS, (c, columns) -> {
+            sum[0] += c.getLong(columns[0]) + c.getDouble(columns[1]) + c.getDouble(columns[2]);
+            return true;
+        });
+        long daoSelectNs = System.nanoTime() - start;
+
+        Log.i(Const.LOG_TAG, "DaoTest: " + ROWS + " rows; insert " + legacyInsertNs / ROWS + " ns/row legacy, " +
+                daoInsertNs / ROWS + " ns/row Dao; select " + legacySelectNs / ROWS + " ns/row legacy, " +
+                daoSelectNs / ROWS + " ns/row Dao");
+        assertEquals(ROWS, legacyRows.size());
+        assertEquals(ROWS, read);
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.db;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.util.Log;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.brother.pharmach.mdm.launcher.Const;
+import com.brother.pharmach.mdm.launcher.json.RemoteLogItem;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Mixed readers and writers on the launcher database: writes go through the writer thread
+ * while readers use the write-ahead log concurrently. The write latencies are written to logcat.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DatabaseHelperStressTest {
+    private static final String PACKAGE = "com.example.stresstest";
+    private static final int WRITERS = 4;
+    private static final int READERS = 4;
+    private static final int WRITES = 500;
+
+    @Test
+    public void mixedReadersAndWriters() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        final DatabaseHelper helper = DatabaseHelper.instance(context);
+        final String[] args = { PACKAGE };
+        helper.execute(db -> db.delete("logs", "packageId=?", args));
+
+        final long[] latencies = new long[WRITERS * WRITES];
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final CountDownLatch writersDone = new CountDownLatch(WRITERS);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < WRITERS; t++) {
+            final int first = t * WRITES;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int n = first; n < first + WRITES; n++) {
+                        final RemoteLogItem item = new RemoteLogItem();
+                        item.setTimestamp(System.currentTimeMillis());
+                        item.setLogLevel(Const.LOG_INFO);
+                        item.setPackageId(PACKAGE);
+                        item.setMessage("Stress test item " + n);
+                        long start = System.nanoTime();
+                        helper.execute(db -> LogTable.insert(db, item));
+                        latencies[n] = System.nanoTime() - start;
+                    }
+                } catch (Throwable e) {
+                    error.compareAndSet(null, e);
+                } finally {
+                    writersDone.countDown();
+                }
+            }));
+        }
+        for (int t = 0; t < READERS; t++) {
+            threads.add(new Thread(() -> {
+                try {
+                    while (writersDone.getCount() > 0) {
+                        DatabaseUtils.queryNumEntries(helper.getReadableDatabase(), "logs", "packageId=?", args);
+                        LogTable.findBatchEnd(helper.getReadableDatabase(), 0, 64 * 1024, 40);
+                    }
+                } catch (Throwable e) {
+                    error.compareAndSet(null, e);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertNull(error.get());
+        assertEquals(WRITERS * WRITES,
+                DatabaseUtils.queryNumEntries(helper.getReadableDatabase(), "logs", "packageId=?", args));
+        helper.execute(db -> db.delete("logs", "packageId=?", args));
+
+        Arrays.sort(latencies);
+        Log.i(Const.LOG_TAG, "DatabaseHelperStressTest: " + latencies.length + " writes from " + WRITERS + " threads with " +
+                READERS + " readers, p50 " + latencies[latencies.length / 2] / 1000 + " us, p99 " +
+                latencies[latencies.length * 99 / 100] / 1000 + " us, max " + latencies[latencies.length - 1] / 1000 + " us");
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.db;
+
+import android.content.Context;
+import android.database.DatabaseUtils;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.brother.pharmach.mdm.launcher.Const;
+import com.brother.pharmach.mdm.launcher.json.RemoteLogItem;
+import com.brother.pharmach.mdm.launcher.util.RemoteLogStorage;
+import com.brother.pharmach.mdm.launcher.util.SqliteLogStorage;
+import com.brother.pharmach.mdm.launcher.worker.RemoteLogChannel;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Keyset paging, range deletion and retention of the logs table at 100k rows.
+ * Runs on a device because it needs the platform SQLite; the timings are written to logcat.
+ * The app may log while the test runs, so only the rows of the test package are counted.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LogTableTest {
+    private static final String PACKAGE = "com.example.logtabletest";
+    private static final int ROWS = 100000;
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+    private Context context;
+    private DatabaseHelper helper;
+
+    @Before
+    public void setUp() {
+        context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        helper = DatabaseHelper.instance(context);
+        helper.execute(db -> db.delete("logs", "packageId=?", new String[] { PACKAGE }));
+    }
+
+    private void fill(final int rows, final long ts) {
+        helper.execute(db -> {
+            List<RemoteLogItem> items = new ArrayList<>();
+            for (int n = 0; n < rows; n++) {
+                RemoteLogItem item = new RemoteLogItem();
+                item.setTimestamp(ts + n);
+                item.setLogLevel(Const.LOG_INFO);
+                item.setPackageId(PACKAGE);
+                item.setMessage("GPS location update: lat=" + (55 + n * 0.00001) + ", lon=37.6");
+                items.add(item);
+                if (items.size() == 1000) {
+                    LogTable.insert(db, items);
+                    items.clear();
+                }
+            }
+            LogTable.insert(db, items);
+        });
+    }
+
+    private long count() {
+        return DatabaseUtils.queryNumEntries(helper.getReadableDatabase(), "logs", "packageId=?", new String[] { PACKAGE });
+    }
+
+    @Test
+    public void pagesAndAcknowledgesAllRows() throws Exception {
+        long start = SystemClock.elapsedRealtime();
+        fill(ROWS, System.currentTimeMillis());
+        long insertMs = SystemClock.elapsedRealtime() - start;
+        assertEquals(ROWS, count());
+
+        // The upload path: read a batch by keyset, then delete it by range
+        RemoteLogStorage storage = new SqliteLogStorage(context);
+        JsonFactory factory = new JsonFactory();
+        long position = 0;
+        int read = 0;
+        int batches = 0;
+        start = SystemClock.elapsedRealtime();
+        while (true) {
+            long end = storage.nextBatch(position, RemoteLogChannel.DEFAULT_UPLOAD_BYTES);
+            if (end == position) {
+                break;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            JsonGenerator generator = factory.createGenerator(out);
+            generator.writeStartArray();
+            read += storage.writeBatch(position, end, generator);
+            generator.writeEndArray();
+            generator.close();
+            storage.acknowledge(position, end);
+            position = end;
+            batches++;
+        }
+        long uploadMs = SystemClock.elapsedRealtime() - start;
+
+        Log.i(Const.LOG_TAG, "LogTableTest: " + ROWS + " rows inserted in " + insertMs + " ms, read and deleted in " +
+                batches + " batches in " + uploadMs + " ms (" + (uploadMs * 1000 / batches) + " us per batch)");
+        assertTrue(read >= ROWS);
+        assertEquals(0, count());
+    }
+
+    @Test
+    public void retentionBoundsTable() {
+        long now = System.currentTimeMillis();
+        fill(1000, now - 8 * DAY_MS);
+        fill(ROWS, now);
+
+        // All writes go through the writer thread, so nothing is inserted between the removal and the count
+        long start = SystemClock.elapsedRealtime();
+        long[] result = helper.call(db -> {
+            LogTable.deleteOldItems(db);
+            return new long[] {
+                    DatabaseUtils.queryNumEntries(db, "logs"),
+                    DatabaseUtils.queryNumEntries(db, "logs", "ts < ?", new String[] { Long.toString(now - 7 * DAY_MS) })
+            };
+        });
+        long elapsed = SystemClock.elapsedRealtime() - start;
+
+        Log.i(Const.LOG_TAG, "LogTableTest: retention of " + (ROWS + 1000) + " rows in " + elapsed + " ms");
+        assertEquals(LogTable.MAX_ROWS, result[0]);
+        assertEquals(0, result[1]);
+    }
+}
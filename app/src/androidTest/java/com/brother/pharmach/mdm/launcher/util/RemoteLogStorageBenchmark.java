@@ -0,0 +1,124 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.util.Log;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.brother.pharmach.mdm.launcher.Const;
+import com.brother.pharmach.mdm.launcher.json.RemoteLogItem;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Compares the insert rate of the remote log storage backends on a device.
+ * The results are written to logcat, nothing is asserted on timing.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RemoteLogStorageBenchmark {
+    private static final int ITEMS = 20000;
+    private static final int BATCH = 50;
+
+    // Items of the launcher itself, which are not limited by the plugin quota
+    private static List<List<RemoteLogItem>> createBatches(String packageId) {
+        List<List<RemoteLogItem>> batches = new ArrayList<>();
+        for (int n = 0; n < ITEMS; n += BATCH) {
+            List<RemoteLogItem> items = new ArrayList<>();
+            for (int k = n; k < n + BATCH; k++) {
+                RemoteLogItem item = new RemoteLogItem();
+                item.setTimestamp(System.currentTimeMillis());
+                item.setLogLevel(Const.LOG_INFO);
+                item.setPackageId(packageId);
+                item.setMessage("GPS location update: lat=" + (55 + k * 0.00001) + ", lon=37.6");
+                items.add(item);
+            }
+            batches.add(items);
+        }
+        return batches;
+    }
+
+    // Returns the insert rate per second
+    private static long measure(RemoteLogStorage storage, String packageId) {
+        List<List<RemoteLogItem>> batches = createBatches(packageId);
+        long start = System.nanoTime();
+        for (List<RemoteLogItem> items : batches) {
+            storage.append(items);
+        }
+        long elapsed = System.nanoTime() - start;
+        return ITEMS * 1000000000L / elapsed;
+    }
+
+    // Removes the stored items like an upload
+    private static void acknowledgeAll(RemoteLogStorage storage) {
+        long position = 0;
+        while (true) {
+            long end = storage.nextBatch(position, Integer.MAX_VALUE);
+            if (end == position) {
+                break;
+            }
+            storage.acknowledge(position, end);
+            position = end;
+        }
+        assertFalse(storage.hasPending());
+    }
+
+    @Test
+    public void compareBackends() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        final File directory = new File(context.getCacheDir(), "storage_benchmark");
+
+        RemoteLogStorage segments = new SegmentLogStorage(new ContextWrapper(context) {
+            @Override
+            public File getFilesDir() {
+                return directory;
+            }
+        });
+        acknowledgeAll(segments);
+        long segmentRate = measure(segments, context.getPackageName());
+        long segmentBytes = 0;
+        File[] files = new File(directory, "remote_logs").listFiles();
+        if (files != null) {
+            for (File file : files) {
+                segmentBytes += file.length();
+            }
+        }
+        acknowledgeAll(segments);
+
+        RemoteLogStorage sqlite = new SqliteLogStorage(context);
+        acknowledgeAll(sqlite);
+        long sqliteRate = measure(sqlite, context.getPackageName());
+        acknowledgeAll(sqlite);
+
+        Log.i(Const.LOG_TAG, "RemoteLogStorageBenchmark: " + ITEMS + " items in batches of " + BATCH +
+                ": segments " + segmentRate + " inserts/sec, " + (segmentBytes / ITEMS) + " bytes per record; " +
+                "sqlite " + sqliteRate + " inserts/sec");
+    }
+}
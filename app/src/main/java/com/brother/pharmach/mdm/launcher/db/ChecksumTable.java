@@ -0,0 +1,76 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.db;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Checksums of the managed files. A checksum is valid while the file size
+ * and modification time are the same as they were when the file was hashed.
+ */
+public class ChecksumTable {
+    private static final String CREATE_TABLE =
+            "CREATE TABLE checksums (" +
+                    "path TEXT PRIMARY KEY NOT NULL, " +
+                    "size INTEGER, " +
+                    "mtime INTEGER, " +
+                    "checksum TEXT " +
+                    ")";
+    private static final String INSERT_CHECKSUM =
+            "INSERT OR REPLACE INTO checksums(path, size, mtime, checksum) VALUES (?, ?, ?, ?)";
+    private static final String SELECT_CHECKSUM =
+            "SELECT checksum FROM checksums WHERE path=? AND size=? AND mtime=?";
+    private static final String[] COLUMNS = { "checksum" };
+
+    private static final Dao.Binder<Entry> INSERT_BINDER = (statement, item) -> {
+        Dao.bindString(statement, 1, item.path);
+        statement.bindLong(2, item.size);
+        statement.bindLong(3, item.mtime);
+        Dao.bindString(statement, 4, item.checksum);
+    };
+    private static final Dao.RowMapper<String> MAPPER = (cursor, columns) -> cursor.getString(columns[0]);
+
+    public static class Entry {
+        public final String path;
+        public final long size;
+        public final long mtime;
+        public final String checksum;
+
+        public Entry(String path, long size, long mtime, String checksum) {
+            this.path = path;
+            this.size = size;
+            this.mtime = mtime;
+            this.checksum = checksum;
+        }
+    }
+
+    public static String getCreateTableSql() {
+        return CREATE_TABLE;
+    }
+
+    public static void insert(SQLiteDatabase db, Entry entry) {
+        Dao.insert(db, INSERT_CHECKSUM, entry, INSERT_BINDER);
+    }
+
+    public static String select(SQLiteDatabase db, String path, long size, long mtime) {
+        return Dao.queryFirst(db, SELECT_CHECKSUM,
+                new String[] { path, Long.toString(size), Long.toString(mtime) }, COLUMNS, MAPPER);
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.db;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import com.brother.pharmach.mdm.launcher.Const;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shared data access helpers for the table classes.
+ *
+ * Statements are compiled once per database connection and thread and cached, values are
+ * bound with their types instead of being converted to strings. Bindings are the state of
+ * a statement, so each thread has its own statements: no locks are held while a statement
+ * runs (a lock would deadlock against the connection held by a transaction of another thread).
+ * The cache of a thread is only locked to look up a statement, so releaseStatements()
+ * can close the statements of all threads when the database is closed or upgraded.
+ *
+ * Queries resolve the column indexes once per cursor and pass them to a row callback,
+ * so the rows can be streamed without building a list.
+ */
+public class Dao {
+    // Caches of all threads
+    private static final Set<Map<SQLiteDatabase, Map<String, SQLiteStatement>>> caches =
+            Collections.newSetFromMap(new IdentityHashMap<Map<SQLiteDatabase, Map<String, SQLiteStatement>>, Boolean>());
+
+    // Compiled statements per connection, separate for each thread
+    private static final ThreadLocal<Map<SQLiteDatabase, Map<String, SQLiteStatement>>> statements =
+            new ThreadLocal<Map<SQLiteDatabase, Map<String, SQLiteStatement>>>() {
+                @Override
+                protected Map<SQLiteDatabase, Map<String, SQLiteStatement>> initialValue() {
+                    Map<SQLiteDatabase, Map<String, SQLiteStatement>> connections = new HashMap<>();
+                    synchronized (caches) {
+                        caches.add(connections);
+                    }
+                    return connections;
+                }
+            };
+
+    public interface Binder<T> {
+        void bind(SQLiteStatement statement, T item);
+    }
+
+    public interface RowMapper<T> {
+        // columns are the indexes of the requested column names in the cursor
+        T map(Cursor cursor, int[] columns);
+    }
+
+    public interface RowHandler {
+        // Returns false to stop reading
+        boolean onRow(Cursor cursor, int[] columns);
+    }
+
+    public static SQLiteStatement getStatement(SQLiteDatabase db, String sql) {
+        Map<SQLiteDatabase, Map<String, SQLiteStatement>> connections = statements.get();
+        synchronized (connections) {
+            Map<String, SQLiteStatement> cache = connections.get(db);
+            if (cache == null) {
+                // The helper may reopen the database: drop statements of closed connections
+                Iterator<SQLiteDatabase> it = connections.keySet().iterator();
+                while (it.hasNext()) {
+                    if (!it.next().isOpen()) {
+                        it.remove();
+                    }
+                }
+                cache = new HashMap<>();
+                connections.put(db, cache);
+            }
+            SQLiteStatement statement = cache.get(sql);
+            if (statement == null) {
+                statement = db.compileStatement(sql);
+                cache.put(sql, statement);
+            }
+            return statement;
+        }
+    }
+
+    /**
+     * Closes the cached statements of all threads and connections.
+     * Must be called when no statement is running: before the database is closed or upgraded.
+     */
+    public static void releaseStatements() {
+        synchronized (caches) {
+            for (Map<SQLiteDatabase, Map<String, SQLiteStatement>> connections : caches) {
+                synchronized (connections) {
+                    for (Map<String, SQLiteStatement> cache : connections.values()) {
+                        for (SQLiteStatement statement : cache.values()) {
+                            statement.close();
+                        }
+                    }
+                    connections.clear();
+                }
+            }
+        }
+    }
+
+    // Returns the row ID or -1 on error
+    public static <T> long insert(SQLiteDatabase db, String sql, T item, Binder<T> binder) {
+        SQLiteStatement statement = getStatement(db, sql);
+        try {
+            binder.bind(statement, item);
+            return statement.executeInsert();
+        } catch (SQLException e) {
+            Log.w(Const.LOG_TAG, "Failed to insert into the database: " + sql, e);
+            return -1;
+        } finally {
+            statement.clearBindings();
+        }
+    }
+
+    /**
+     * Inserts all items in a single transaction.
+     * On error, nothing is inserted and the SQLException is thrown, so the caller can keep the items.
+     */
+    public static <T> void insertAll(SQLiteDatabase db, String sql, Iterable<T> items, Binder<T> binder) {
+        SQLiteStatement statement = getStatement(db, sql);
+        db.beginTransaction();
+        try {
+            for (T item : items) {
+                binder.bind(statement, item);
+                statement.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } catch (SQLException e) {
+            Log.w(Const.LOG_TAG, "Failed to insert into the database: " + sql, e);
+            throw e;
+        } finally {
+            statement.clearBindings();
+            db.endTransaction();
+        }
+    }
+
+    // Returns the amount of changed rows
+    public static <T> int updateDelete(SQLiteDatabase db, String sql, T item, Binder<T> binder) {
+        SQLiteStatement statement = getStatement(db, sql);
+        try {
+            binder.bind(statement, item);
+            return statement.executeUpdateDelete();
+        } catch (SQLException e) {
+            Log.w(Const.LOG_TAG, "Failed to change the database: " + sql, e);
+            return 0;
+        } finally {
+            statement.clearBindings();
+        }
+    }
+
+    // Statement with integer arguments only
+    public static int updateDelete(SQLiteDatabase db, String sql, long... args) {
+        SQLiteStatement statement = getStatement(db, sql);
+        try {
+            for (int n = 0; n < args.length; n++) {
+                statement.bindLong(n + 1, args[n]);
+            }
+            return statement.executeUpdateDelete();
+        } catch (SQLException e) {
+            Log.w(Const.LOG_TAG, "Failed to change the database: " + sql, e);
+            return 0;
+        } finally {
+            statement.clearBindings();
+        }
+    }
+
+    // Executes the statement for all items in a single transaction, returns the amount of changed rows
+    public static <T> int updateDeleteAll(SQLiteDatabase db, String sql, Iterable<T> items, Binder<T> binder) {
+        SQLiteStatement statement = getStatement(db, sql);
+        int count = 0;
+        db.beginTransaction();
+        try {
+            for (T item : items) {
+                binder.bind(statement, item);
+                count += statement.executeUpdateDelete();
+            }
+            db.setTransactionSuccessful();
+        } catch (SQLException e) {
+            Log.w(Const.LOG_TAG, "Failed to change the database: " + sql, e);
+        } finally {
+            statement.clearBindings();
+            db.endTransaction();
+        }
+        return count;
+    }
+
+    /**
+     * Passes the rows to the handler. If columns is null, the handler gets null
+     * and reads the columns by their positions in the SELECT clause.
+     * Returns the amount of read rows.
+     */
+    public static int forEach(SQLiteDatabase db, String sql, String[] args, String[] columns, RowHandler handler) {
+        Cursor cursor = db.rawQuery(sql, args);
+        int count = 0;
+        try {
+            int[] indexes = null;
+            if (columns != null) {
+                indexes = new int[columns.length];
+                for (int n = 0; n < columns.length; n++) {
+                    indexes[n] = cursor.getColumnIndexOrThrow(columns[n]);
+                }
+            }
+            while (cursor.moveToNext()) {
+                count++;
+                if (!handler.onRow(cursor, indexes)) {
+                    break;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        return count;
+    }
+
+    public static <T> List<T> query(SQLiteDatabase db, String sql, String[] args, String[] columns, final RowMapper<T> mapper) {
+        final List<T> result = new ArrayList<>();
+        forEach(db, sql, args, columns, (cursor, indexes) -> {
+            result.add(mapper.map(cursor, indexes));
+            return true;
+        });
+        return result;
+    }
+
+    // Returns null if nothing is found
+    public static <T> T queryFirst(SQLiteDatabase db, String sql, String[] args, String[] columns, final RowMapper<T> mapper) {
+        final List<T> result = new ArrayList<>(1);
+        forEach(db, sql, args, columns, (cursor, indexes) -> {
+            result.add(mapper.map(cursor, indexes));
+            return false;
+        });
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    public static void bindString(SQLiteStatement statement, int index, String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    public static void bindLong(SQLiteStatement statement, int index, Number value) {
+        if (value != null) {
+            statement.bindLong(index, value.longValue());
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    public static void bindDouble(SQLiteStatement statement, int index, Double value) {
+        if (value != null) {
+            statement.bindDouble(index, value);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    public static void bindBoolean(SQLiteStatement statement, int index, Boolean value) {
+        if (value != null) {
+            statement.bindLong(index, value ? 1 : 0);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    public static void bindBlob(SQLiteStatement statement, int index, byte[] value) {
+        if (value != null) {
+            statement.bindBlob(index, value);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    public static Integer getInteger(Cursor cursor, int column) {
+        return cursor.isNull(column) ? null : cursor.getInt(column);
+    }
+
+    public static Long getLong(Cursor cursor, int column) {
+        return cursor.isNull(column) ? null : cursor.getLong(column);
+    }
+
+    public static Double getDouble(Cursor cursor, int column) {
+        return cursor.isNull(column) ? null : cursor.getDouble(column);
+    }
+
+    public static Boolean getBoolean(Cursor cursor, int column) {
+        return cursor.isNull(column) ? null : cursor.getInt(column) != 0;
+    }
+}
@@ -20,19 +20,61 @@
 package com.brother.pharmach.mdm.launcher.db;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Process;
 
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The database is opened in the write-ahead log mode: readers use their own connections
+ * and are never blocked by the writer. All writes are serialized on a single background
+ * thread (see post() and execute()), so writers never contend for the database lock
+ * and the main thread never waits for it. The log is checkpointed when writes are idle.
+ */
 public class DatabaseHelper extends SQLiteOpenHelper {
-    // Next version should be 10 and versions must be increased by 10
+    // Versions must be increased by 10
     // to enable custom database changes
-    private static final int DATABASE_VERSION = 10;
+    private static final int DATABASE_VERSION = 50;
     private static final String DATABASE_NAME = "hmdm.launcher.sqlite";
 
+    // Page cache of each connection, in pages (default page size is 4 KB)
+    private static final int CACHE_SIZE_PAGES = 500;
+
+    // The write-ahead log is checkpointed after this idle period
+    private static final long CHECKPOINT_IDLE_MS = 30000;
+
     private static DatabaseHelper sInstance;
 
+    private final ScheduledExecutorService writer;
+    private Thread writerThread;
+    private ScheduledFuture<?> checkpoint;
+
+    public interface Write {
+        void run(SQLiteDatabase db);
+    }
+
+    public interface WriteTask<T> {
+        T run(SQLiteDatabase db);
+    }
+
     private DatabaseHelper( Context context ) {
         super( context, DATABASE_NAME, null, DATABASE_VERSION);
+        setWriteAheadLoggingEnabled(true);
+        writer = new ScheduledThreadPoolExecutor(1, r -> {
+            writerThread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                r.run();
+            }, "DatabaseWriter");
+            writerThread.setDaemon(true);
+            return writerThread;
+        });
     }
 
     public static synchronized DatabaseHelper instance(Context context) {
@@ -42,6 +84,93 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         return sInstance;
     }
 
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // Takes effect when the database is created; an existing database is converted
+        // by DatabaseMaintenanceWorker, because changing the mode requires a full VACUUM
+        db.execSQL("PRAGMA auto_vacuum=INCREMENTAL");
+        // WAL is durable with NORMAL sync: a power loss may only roll back the last transactions
+        db.execSQL("PRAGMA synchronous=NORMAL");
+        db.execSQL("PRAGMA cache_size=" + CACHE_SIZE_PAGES);
+    }
+
+    /**
+     * Runs the write on the writer thread without waiting for it.
+     * Use this from the main thread and wherever the result is not needed.
+     */
+    public void post(final Write write) {
+        writer.execute(() -> runWrite(write));
+    }
+
+    // Runs the write on the writer thread and waits for it
+    public void execute(final Write write) {
+        call(db -> {
+            write.run(db);
+            return null;
+        });
+    }
+
+    // Runs the write on the writer thread, waits for it and returns its result
+    public <T> T call(final WriteTask<T> task) {
+        if (Thread.currentThread() == writerThread) {
+            return task.run(getWritableDatabase());
+        }
+        Future<T> future = writer.submit(() -> {
+            try {
+                return task.run(getWritableDatabase());
+            } finally {
+                scheduleCheckpoint();
+            }
+        });
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void runWrite(Write write) {
+        try {
+            write.run(getWritableDatabase());
+        } catch (Exception e) {
+            e.printStackTrace();
+        } finally {
+            scheduleCheckpoint();
+        }
+    }
+
+    // Called on the writer thread after each write
+    private void scheduleCheckpoint() {
+        if (checkpoint != null) {
+            checkpoint.cancel(false);
+        }
+        checkpoint = writer.schedule(this::checkpoint, CHECKPOINT_IDLE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // A passive checkpoint copies the log into the database without blocking readers
+    private void checkpoint() {
+        checkpoint = null;
+        try {
+            Cursor cursor = getWritableDatabase().rawQuery("PRAGMA wal_checkpoint(PASSIVE)", null);
+            cursor.moveToFirst();
+            cursor.close();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        Dao.releaseStatements();
+        super.close();
+    }
+
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.beginTransaction();
@@ -52,6 +181,13 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             db.execSQL(RemoteFileTable.getCreateTableSql());
             db.execSQL(LocationTable.getCreateTableSql());
             db.execSQL(DownloadTable.getCreateTableSql());
+            db.execSQL(GeofenceEventTable.getCreateTableSql());
+            db.execSQL(ChecksumTable.getCreateTableSql());
+            db.execSQL(LogTable.getCreateIndexSql());
+            db.execSQL(LogTable.getCreateLevelIndexSql());
+            db.execSQL(LogTable.getCreateLevelPackageIndexSql());
+            db.execSQL(LocationTable.getCreateIndexSql());
+            db.execSQL(InfoHistoryTable.getCreateIndexSql());
             db.setTransactionSuccessful();
         }
         catch ( Exception e ) {
@@ -64,6 +200,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Statements compiled against the old schema must not be reused
+        Dao.releaseStatements();
         db.beginTransaction();
         try {
             if (oldVersion < 2 && newVersion >= 2) {
@@ -82,6 +220,21 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             if (oldVersion < 10 && newVersion >= 10) {
                 db.execSQL(DownloadTable.getCreateTableSql());
             }
+            if (oldVersion < 20 && newVersion >= 20) {
+                db.execSQL(LogTable.getCreateIndexSql());
+                db.execSQL(LocationTable.getCreateIndexSql());
+                db.execSQL(InfoHistoryTable.getCreateIndexSql());
+            }
+            if (oldVersion < 30 && newVersion >= 30) {
+                db.execSQL(GeofenceEventTable.getCreateTableSql());
+            }
+            if (oldVersion < 40 && newVersion >= 40) {
+                db.execSQL(ChecksumTable.getCreateTableSql());
+            }
+            if (oldVersion < 50 && newVersion >= 50) {
+                db.execSQL(LogTable.getCreateLevelIndexSql());
+                db.execSQL(LogTable.getCreateLevelPackageIndexSql());
+            }
             db.setTransactionSuccessful();
         } catch ( Exception e ) {
             e.printStackTrace();
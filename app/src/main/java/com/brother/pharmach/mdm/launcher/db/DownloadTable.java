@@ -19,14 +19,10 @@
 
 package com.brother.pharmach.mdm.launcher.db;
 
-import android.annotation.SuppressLint;
-import android.database.Cursor;
-import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 
 import com.brother.pharmach.mdm.launcher.json.Download;
 
-import java.util.LinkedList;
 import java.util.List;
 
 public class DownloadTable {
@@ -52,69 +48,53 @@ public class DownloadTable {
             "SELECT * FROM downloads WHERE path=?";
     private static final String DELETE_ALL_DOWNLOADS =
             "DELETE FROM downloads";
+    private static final String[] COLUMNS =
+            { "_id", "url", "path", "attempts", "lastAttemptTime", "downloaded", "installed" };
+
+    private static final Dao.Binder<Download> INSERT_BINDER = (statement, item) -> {
+        Dao.bindString(statement, 1, item.getUrl());
+        Dao.bindString(statement, 2, item.getPath());
+        statement.bindLong(3, item.getAttempts());
+        statement.bindLong(4, item.getLastAttemptTime());
+        statement.bindLong(5, item.isDownloaded() ? 1 : 0);
+        statement.bindLong(6, item.isInstalled() ? 1 : 0);
+    };
+    private static final Dao.Binder<String> PATH_BINDER = (statement, path) -> Dao.bindString(statement, 1, path);
+
+    // columns are the indexes of COLUMNS
+    private static final Dao.RowMapper<Download> MAPPER = (cursor, columns) -> {
+        Download item = new Download();
+        item.setId(cursor.getLong(columns[0]));
+        item.setUrl(cursor.getString(columns[1]));
+        item.setPath(cursor.getString(columns[2]));
+        item.setAttempts(cursor.getLong(columns[3]));
+        item.setLastAttemptTime(cursor.getLong(columns[4]));
+        item.setDownloaded(cursor.getInt(columns[5]) != 0);
+        item.setInstalled(cursor.getInt(columns[6]) != 0);
+        return item;
+    };
 
     public static String getCreateTableSql() {
         return CREATE_TABLE;
     }
 
     public static void insert(SQLiteDatabase db, Download item) {
-        try {
-            db.execSQL(INSERT_DOWNLOAD, new String[]{
-                    item.getUrl(),
-                    item.getPath(),
-                    Long.toString(item.getAttempts()),
-                    Long.toString(item.getLastAttemptTime()),
-                    item.isDownloaded() ? "1" : "0",
-                    item.isInstalled() ? "1" : "0"
-            });
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        Dao.insert(db, INSERT_DOWNLOAD, item, INSERT_BINDER);
     }
 
     public static void deleteByPath(SQLiteDatabase db, String path) {
-        try {
-            db.execSQL(DELETE_DOWNLOAD_BY_PATH, new String[]{ path });
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        Dao.updateDelete(db, DELETE_DOWNLOAD_BY_PATH, path, PATH_BINDER);
     }
 
     public static void deleteAll(SQLiteDatabase db) {
-        try {
-            db.execSQL(DELETE_ALL_DOWNLOADS, new String[]{ });
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        Dao.updateDelete(db, DELETE_ALL_DOWNLOADS);
     }
 
-    @SuppressLint("Range")
     public static List<Download> selectAll(SQLiteDatabase db) {
-        Cursor cursor = db.rawQuery(SELECT_ALL_DOWNLOADS, new String[] {});
-        List<Download> result = new LinkedList<>();
-
-        boolean isDataNotEmpty = cursor.moveToFirst();
-        while (isDataNotEmpty) {
-            Download item = new Download(cursor);
-            result.add(item);
-
-            isDataNotEmpty = cursor.moveToNext();
-        }
-        cursor.close();
-
-        return result;
+        return Dao.query(db, SELECT_ALL_DOWNLOADS, null, COLUMNS, MAPPER);
     }
 
-    @SuppressLint("Range")
     public static Download selectByPath(SQLiteDatabase db, String path) {
-        Cursor cursor = db.rawQuery(SELECT_DOWNLOAD_BY_PATH, new String[] { path });
-
-        Download item = null;
-        if (cursor.moveToFirst()) {
-            item = new Download(cursor);
-        }
-        cursor.close();
-
-        return item;
+        return Dao.queryFirst(db, SELECT_DOWNLOAD_BY_PATH, new String[] { path }, COLUMNS, MAPPER);
     }
 }
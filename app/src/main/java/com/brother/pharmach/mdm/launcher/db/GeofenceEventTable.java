@@ -0,0 +1,150 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.db;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.List;
+
+public class GeofenceEventTable {
+    private static final String CREATE_TABLE =
+            "CREATE TABLE geofence_events (" +
+                    "_id INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, " +
+                    "ts INTEGER, " +
+                    "geofenceId TEXT, " +
+                    "type TEXT, " +
+                    "lat REAL, " +
+                    "lon REAL " +
+                    ")";
+    private static final String SELECT_EVENTS =
+            "SELECT * FROM geofence_events ORDER BY _id LIMIT ?";
+    private static final String INSERT_EVENT =
+            "INSERT INTO geofence_events(ts, geofenceId, type, lat, lon) " +
+            "VALUES (?, ?, ?, ?, ?)";
+    private static final String DELETE_EVENT =
+            "DELETE FROM geofence_events WHERE _id=?";
+    private static final String[] COLUMNS = { "_id", "ts", "geofenceId", "type", "lat", "lon" };
+
+    private static final Dao.Binder<Event> INSERT_BINDER = (statement, item) -> {
+        statement.bindLong(1, item.getTs());
+        Dao.bindString(statement, 2, item.getGeofenceId());
+        Dao.bindString(statement, 3, item.getType());
+        statement.bindDouble(4, item.getLat());
+        statement.bindDouble(5, item.getLon());
+    };
+    private static final Dao.Binder<Event> DELETE_BINDER = (statement, item) -> statement.bindLong(1, item.getId());
+    private static final Dao.RowMapper<Event> MAPPER = Event::new;
+
+    public static class Event {
+        public static final String TYPE_ENTER = "enter";
+        public static final String TYPE_EXIT = "exit";
+
+        private long _id;
+        private long ts;
+        private String geofenceId;
+        private String type;
+        private double lat;
+        private double lon;
+
+        public Event() {}
+
+        public Event(long ts, String geofenceId, String type, double lat, double lon) {
+            this.ts = ts;
+            this.geofenceId = geofenceId;
+            this.type = type;
+            this.lat = lat;
+            this.lon = lon;
+        }
+
+        // columns are the indexes of COLUMNS
+        public Event(Cursor cursor, int[] columns) {
+            _id = cursor.getLong(columns[0]);
+            ts = cursor.getLong(columns[1]);
+            geofenceId = cursor.getString(columns[2]);
+            type = cursor.getString(columns[3]);
+            lat = cursor.getDouble(columns[4]);
+            lon = cursor.getDouble(columns[5]);
+        }
+
+        @JsonIgnore
+        public long getId() {
+            return _id;
+        }
+
+        public long getTs() {
+            return ts;
+        }
+
+        public void setTs(long ts) {
+            this.ts = ts;
+        }
+
+        public String getGeofenceId() {
+            return geofenceId;
+        }
+
+        public void setGeofenceId(String geofenceId) {
+            this.geofenceId = geofenceId;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public void setType(String type) {
+            this.type = type;
+        }
+
+        public double getLat() {
+            return lat;
+        }
+
+        public void setLat(double lat) {
+            this.lat = lat;
+        }
+
+        public double getLon() {
+            return lon;
+        }
+
+        public void setLon(double lon) {
+            this.lon = lon;
+        }
+    }
+
+    public static String getCreateTableSql() {
+        return CREATE_TABLE;
+    }
+
+    public static void insert(SQLiteDatabase db, List<Event> events) {
+        Dao.insertAll(db, INSERT_EVENT, events, INSERT_BINDER);
+    }
+
+    public static void delete(SQLiteDatabase db, List<Event> events) {
+        Dao.updateDeleteAll(db, DELETE_EVENT, events, DELETE_BINDER);
+    }
+
+    public static List<Event> select(SQLiteDatabase db, int limit) {
+        return Dao.query(db, SELECT_EVENTS, new String[] { Integer.toString(limit) }, COLUMNS, MAPPER);
+    }
+}
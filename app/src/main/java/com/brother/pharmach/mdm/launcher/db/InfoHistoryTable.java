@@ -20,12 +20,11 @@
 package com.brother.pharmach.mdm.launcher.db;
 
 import android.database.Cursor;
-import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 import com.brother.pharmach.mdm.launcher.json.DetailedInfo;
 
-import java.util.LinkedList;
 import java.util.List;
 
 public class InfoHistoryTable {
@@ -82,6 +81,8 @@ public class InfoHistoryTable {
                     ")";
     private static final String ALTER_TABLE_ADD_MEMORY_TOTAL = "ALTER TABLE info_history ADD deviceMemoryTotal INT";
     private static final String ALTER_TABLE_ADD_MEMORY_AVAILABLE = "ALTER TABLE info_history ADD deviceMemoryAvailable INT";
+    private static final String CREATE_INDEX_TS =
+            "CREATE INDEX IF NOT EXISTS info_history_ts ON info_history(ts)";
     private static final String SELECT_LAST_INFO =
             "SELECT * FROM info_history ORDER BY ts LIMIT ?";
     private static final String INSERT_INFO =
@@ -98,11 +99,78 @@ public class InfoHistoryTable {
             "DELETE FROM info_history WHERE _id=?";
     private static final String DELETE_OLD_ITEMS =
             "DELETE FROM info_history WHERE ts < ?";
+    // Read in this order by MAPPER
+    private static final String[] COLUMNS = {
+            "_id", "ts",
+            "deviceBatteryLevel", "deviceBatteryCharging", "deviceWifi", "deviceGps", "deviceIp", "deviceKeyguard",
+            "deviceRingVolume", "deviceMobileData", "deviceBluetooth", "deviceUsbStorage", "deviceMemoryTotal", "deviceMemoryAvailable",
+            "wifiRssi", "wifiSsid", "wifiSecurity", "wifiState", "wifiIp", "wifiTx", "wifiRx",
+            "gpsState", "gpsLat", "gpsLon", "gpsAlt", "gpsSpeed", "gpsCourse",
+            "mobileRssi", "mobileCarrier", "mobileNumber", "mobileImsi", "mobileData", "mobileIp", "mobileState", "mobileSimState", "mobileTx", "mobileRx",
+            "mobile2Rssi", "mobile2Carrier", "mobile2Number", "mobile2Imsi", "mobile2Data", "mobile2Ip", "mobile2State", "mobile2SimState", "mobile2Tx", "mobile2Rx"
+    };
+
+    private static final Dao.Binder<DetailedInfo> INSERT_BINDER = InfoHistoryTable::bindInfo;
+    private static final Dao.Binder<DetailedInfo> DELETE_BINDER = (statement, item) -> statement.bindLong(1, item.getId());
+
+    private static final Dao.RowMapper<DetailedInfo> MAPPER = (cursor, columns) -> {
+        int n = 0;
+        DetailedInfo item = new DetailedInfo();
+        item.setId(cursor.getLong(columns[n++]));
+        item.setTs(cursor.getLong(columns[n++]));
+
+        DetailedInfo.Device device = new DetailedInfo.Device();
+        device.setBatteryLevel(Dao.getInteger(cursor, columns[n++]));
+        device.setBatteryCharging(cursor.getString(columns[n++]));
+        device.setWifi(Dao.getBoolean(cursor, columns[n++]));
+        device.setGps(Dao.getBoolean(cursor, columns[n++]));
+        device.setIp(cursor.getString(columns[n++]));
+        device.setKeyguard(Dao.getBoolean(cursor, columns[n++]));
+        device.setRingVolume(Dao.getInteger(cursor, columns[n++]));
+        device.setMobileData(Dao.getBoolean(cursor, columns[n++]));
+        device.setBluetooth(Dao.getBoolean(cursor, columns[n++]));
+        device.setUsbStorage(Dao.getBoolean(cursor, columns[n++]));
+        device.setMemoryTotal(Dao.getInteger(cursor, columns[n++]));
+        device.setMemoryAvailable(Dao.getInteger(cursor, columns[n++]));
+        item.setDevice(device);
+
+        DetailedInfo.Wifi wifi = new DetailedInfo.Wifi();
+        wifi.setRssi(Dao.getInteger(cursor, columns[n++]));
+        wifi.setSsid(cursor.getString(columns[n++]));
+        wifi.setSecurity(cursor.getString(columns[n++]));
+        wifi.setState(cursor.getString(columns[n++]));
+        wifi.setIp(cursor.getString(columns[n++]));
+        wifi.setTx(Dao.getLong(cursor, columns[n++]));
+        wifi.setRx(Dao.getLong(cursor, columns[n++]));
+        item.setWifi(wifi);
+
+        DetailedInfo.Gps gps = new DetailedInfo.Gps();
+        gps.setState(cursor.getString(columns[n++]));
+        gps.setLat(Dao.getDouble(cursor, columns[n++]));
+        gps.setLon(Dao.getDouble(cursor, columns[n++]));
+        gps.setAlt(Dao.getDouble(cursor, columns[n++]));
+        gps.setSpeed(Dao.getDouble(cursor, columns[n++]));
+        gps.setCourse(Dao.getDouble(cursor, columns[n++]));
+        item.setGps(gps);
+
+        DetailedInfo.Mobile mobile = new DetailedInfo.Mobile();
+        n = readMobile(cursor, columns, n, mobile);
+        item.setMobile(mobile);
+
+        DetailedInfo.Mobile mobile2 = new DetailedInfo.Mobile();
+        readMobile(cursor, columns, n, mobile2);
+        item.setMobile2(mobile2);
+        return item;
+    };
 
     public static String getCreateTableSql() {
         return CREATE_TABLE;
     }
 
+    public static String getCreateIndexSql() {
+        return CREATE_INDEX_TS;
+    }
+
     public static String getAlterTableAddMemoryTotalSql() {
         return ALTER_TABLE_ADD_MEMORY_TOTAL;
     }
@@ -112,114 +180,97 @@ public class InfoHistoryTable {
     }
 
     public static void insert(SQLiteDatabase db, DetailedInfo item) {
-        try {
-            DetailedInfo.Device device = item.getDevice();
-            DetailedInfo.Wifi wifi = item.getWifi();
-            DetailedInfo.Gps gps = item.getGps();
-            DetailedInfo.Mobile mobile = item.getMobile();
-            DetailedInfo.Mobile mobile2 = item.getMobile2();
-
-            db.execSQL(INSERT_INFO, new String[]{
-                    Long.toString(item.getTs()),
-
-                    device != null && device.getBatteryLevel() != null ? device.getBatteryLevel().toString() : null,
-                    device != null ? device.getBatteryCharging() : null,
-                    device != null && device.getWifi() != null ? (device.getWifi() ? "1" : "0") : null,
-                    device != null && device.getGps() != null ? (device.getGps() ? "1" : "0") : null,
-                    device != null ? device.getIp() : null,
-                    device != null && device.getKeyguard() != null ? (device.getKeyguard() ? "1" : "0") : null,
-                    device != null && device.getRingVolume() != null ? device.getRingVolume().toString() : null,
-                    device != null && device.getMobileData() != null ? (device.getMobileData() ? "1" : "0") : null,
-                    device != null && device.getBluetooth() != null ? (device.getBluetooth() ? "1" : "0") : null,
-                    device != null && device.getUsbStorage() != null ? (device.getUsbStorage() ? "1" : "0") : null,
-
-                    wifi != null && wifi.getRssi() != null ? wifi.getRssi().toString() : null,
-                    wifi != null ? wifi.getSsid() : null,
-                    wifi != null ? wifi.getSecurity() : null,
-                    wifi != null ? wifi.getState() : null,
-                    wifi != null ? wifi.getIp() : null,
-                    wifi != null && wifi.getTx() != null ? wifi.getTx().toString() : null,
-                    wifi != null && wifi.getRx() != null ? wifi.getRx().toString() : null,
-
-                    gps != null ? gps.getState() : null,
-                    gps != null ? gps.getProvider() : null,
-                    gps != null && gps.getLat() != null ? gps.getLat().toString() : null,
-                    gps != null && gps.getLon() != null ? gps.getLon().toString() : null,
-                    gps != null && gps.getAlt() != null ? gps.getAlt().toString() : null,
-                    gps != null && gps.getSpeed() != null ? gps.getSpeed().toString() : null,
-                    gps != null && gps.getCourse() != null ? gps.getCourse().toString() : null,
-
-                    mobile != null && mobile.getRssi() != null ? mobile.getRssi().toString() : null,
-                    mobile != null ? mobile.getCarrier() : null,
-                    mobile != null ? mobile.getNumber() : null,
-                    mobile != null ? mobile.getImsi() : null,
-                    mobile != null && mobile.getData() != null ? (mobile.getData() ? "1" : "0") : null,
-                    mobile != null ? mobile.getIp() : null,
-                    mobile != null ? mobile.getState() : null,
-                    mobile != null ? mobile.getSimState() : null,
-                    mobile != null && mobile.getTx() != null ? mobile.getTx().toString() : null,
-                    mobile != null && mobile.getRx() != null ? mobile.getRx().toString() : null,
-
-                    mobile2 != null && mobile2.getRssi() != null ? mobile2.getRssi().toString() : null,
-                    mobile2 != null ? mobile2.getCarrier() : null,
-                    mobile2 != null ? mobile2.getNumber() : null,
-                    mobile2 != null ? mobile2.getImsi() : null,
-                    mobile2 != null && mobile2.getData() != null ? (mobile2.getData() ? "1" : "0") : null,
-                    mobile2 != null ? mobile2.getIp() : null,
-                    mobile2 != null ? mobile2.getState() : null,
-                    mobile2 != null ? mobile2.getSimState() : null,
-                    mobile2 != null && mobile2.getTx() != null ? mobile2.getTx().toString() : null,
-                    mobile2 != null && mobile2.getRx() != null ? mobile2.getRx().toString() : null,
-
-                    device != null && device.getMemoryTotal() != null ? device.getMemoryTotal().toString() : null,
-                    device != null && device.getMemoryAvailable() != null ? device.getMemoryAvailable().toString() : null,
-            });
-        } catch (SQLException e) {
-            e.printStackTrace();
+        Dao.insert(db, INSERT_INFO, item, INSERT_BINDER);
+    }
+
+    // Writes a batch of items in a single transaction
+    public static void insert(SQLiteDatabase db, List<DetailedInfo> items) {
+        Dao.insertAll(db, INSERT_INFO, items, INSERT_BINDER);
+    }
+
+    private static void bindInfo(SQLiteStatement statement, DetailedInfo item) {
+        DetailedInfo.Device device = item.getDevice() != null ? item.getDevice() : new DetailedInfo.Device();
+        DetailedInfo.Wifi wifi = item.getWifi() != null ? item.getWifi() : new DetailedInfo.Wifi();
+        DetailedInfo.Gps gps = item.getGps() != null ? item.getGps() : new DetailedInfo.Gps();
+
+        int n = 1;
+        statement.bindLong(n++, item.getTs());
+
+        Dao.bindLong(statement, n++, device.getBatteryLevel());
+        Dao.bindString(statement, n++, device.getBatteryCharging());
+        Dao.bindBoolean(statement, n++, device.getWifi());
+        Dao.bindBoolean(statement, n++, device.getGps());
+        Dao.bindString(statement, n++, device.getIp());
+        Dao.bindBoolean(statement, n++, device.getKeyguard());
+        Dao.bindLong(statement, n++, device.getRingVolume());
+        Dao.bindBoolean(statement, n++, device.getMobileData());
+        Dao.bindBoolean(statement, n++, device.getBluetooth());
+        Dao.bindBoolean(statement, n++, device.getUsbStorage());
+
+        Dao.bindLong(statement, n++, wifi.getRssi());
+        Dao.bindString(statement, n++, wifi.getSsid());
+        Dao.bindString(statement, n++, wifi.getSecurity());
+        Dao.bindString(statement, n++, wifi.getState());
+        Dao.bindString(statement, n++, wifi.getIp());
+        Dao.bindLong(statement, n++, wifi.getTx());
+        Dao.bindLong(statement, n++, wifi.getRx());
+
+        Dao.bindString(statement, n++, gps.getState());
+        Dao.bindString(statement, n++, gps.getProvider());
+        Dao.bindDouble(statement, n++, gps.getLat());
+        Dao.bindDouble(statement, n++, gps.getLon());
+        Dao.bindDouble(statement, n++, gps.getAlt());
+        Dao.bindDouble(statement, n++, gps.getSpeed());
+        Dao.bindDouble(statement, n++, gps.getCourse());
+
+        n = bindMobile(statement, n, item.getMobile());
+        n = bindMobile(statement, n, item.getMobile2());
+
+        Dao.bindLong(statement, n++, device.getMemoryTotal());
+        Dao.bindLong(statement, n, device.getMemoryAvailable());
+    }
+
+    private static int bindMobile(SQLiteStatement statement, int n, DetailedInfo.Mobile mobile) {
+        if (mobile == null) {
+            mobile = new DetailedInfo.Mobile();
         }
+        Dao.bindLong(statement, n++, mobile.getRssi());
+        Dao.bindString(statement, n++, mobile.getCarrier());
+        Dao.bindString(statement, n++, mobile.getNumber());
+        Dao.bindString(statement, n++, mobile.getImsi());
+        Dao.bindBoolean(statement, n++, mobile.getData());
+        Dao.bindString(statement, n++, mobile.getIp());
+        Dao.bindString(statement, n++, mobile.getState());
+        Dao.bindString(statement, n++, mobile.getSimState());
+        Dao.bindLong(statement, n++, mobile.getTx());
+        Dao.bindLong(statement, n++, mobile.getRx());
+        return n;
+    }
+
+    private static int readMobile(Cursor cursor, int[] columns, int n, DetailedInfo.Mobile mobile) {
+        mobile.setRssi(Dao.getInteger(cursor, columns[n++]));
+        mobile.setCarrier(cursor.getString(columns[n++]));
+        mobile.setNumber(cursor.getString(columns[n++]));
+        mobile.setImsi(cursor.getString(columns[n++]));
+        mobile.setData(Dao.getBoolean(cursor, columns[n++]));
+        mobile.setIp(cursor.getString(columns[n++]));
+        mobile.setState(cursor.getString(columns[n++]));
+        mobile.setSimState(cursor.getString(columns[n++]));
+        mobile.setTx(Dao.getLong(cursor, columns[n++]));
+        mobile.setRx(Dao.getLong(cursor, columns[n++]));
+        return n;
     }
 
     public static void deleteOldItems(SQLiteDatabase db) {
         long oldTs = System.currentTimeMillis() - 24 * 60 * 60 * 1000L;
-        try {
-            db.execSQL(DELETE_OLD_ITEMS, new String[]{
-                    Long.toString(oldTs)
-            });
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        Dao.updateDelete(db, DELETE_OLD_ITEMS, oldTs);
     }
 
     public static void delete(SQLiteDatabase db, List<DetailedInfo> items) {
-        db.beginTransaction();
-        try {
-            for (DetailedInfo item : items) {
-                db.execSQL(DELETE_FROM_INFO, new String[]{
-                        Long.toString(item.getId())
-                });
-            }
-            db.setTransactionSuccessful();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        } finally {
-            db.endTransaction();
-        }
+        Dao.updateDeleteAll(db, DELETE_FROM_INFO, items, DELETE_BINDER);
     }
 
     public static List<DetailedInfo> select(SQLiteDatabase db, int limit) {
-        Cursor cursor = db.rawQuery( SELECT_LAST_INFO, new String[] {
-                Integer.toString(limit)
-        });
-        List<DetailedInfo> result = new LinkedList<>();
-
-        boolean isDataNotEmpty = cursor.moveToFirst();
-        while (isDataNotEmpty) {
-            DetailedInfo item = new DetailedInfo(cursor);
-            result.add(item);
-            isDataNotEmpty = cursor.moveToNext();
-        }
-        cursor.close();
-
-        return result;
+        return Dao.query(db, SELECT_LAST_INFO, new String[] { Integer.toString(limit) }, COLUMNS, MAPPER);
     }
 }
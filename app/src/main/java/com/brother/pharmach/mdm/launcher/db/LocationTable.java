@@ -19,12 +19,9 @@
 
 package com.brother.pharmach.mdm.launcher.db;
 
-import android.annotation.SuppressLint;
 import android.database.Cursor;
-import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 
-import java.util.LinkedList;
 import java.util.List;
 
 public class LocationTable {
@@ -35,6 +32,8 @@ public class LocationTable {
                     "lat REAL, " +
                     "lon REAL " +
                     ")";
+    private static final String CREATE_INDEX_TS =
+            "CREATE INDEX IF NOT EXISTS locations_ts ON locations(ts)";
     private static final String SELECT_LAST_LOCATION =
             "SELECT * FROM locations ORDER BY ts LIMIT ?";
     private static final String INSERT_LOCATIONS =
@@ -44,6 +43,15 @@ public class LocationTable {
             "DELETE FROM locations WHERE _id=?";
     private static final String DELETE_OLD_ITEMS =
             "DELETE FROM locations WHERE ts < ?";
+    private static final String[] COLUMNS = { "_id", "ts", "lat", "lon" };
+
+    private static final Dao.Binder<Location> INSERT_BINDER = (statement, item) -> {
+        statement.bindLong(1, item.getTs());
+        statement.bindDouble(2, item.getLat());
+        statement.bindDouble(3, item.getLon());
+    };
+    private static final Dao.Binder<Location> DELETE_BINDER = (statement, item) -> statement.bindLong(1, item.getId());
+    private static final Dao.RowMapper<Location> MAPPER = Location::new;
 
     public static class Location {
         private long _id;
@@ -59,12 +67,12 @@ public class LocationTable {
             this.lon = location.getLongitude();
         }
 
-        @SuppressLint("Range")
-        public Location(Cursor cursor) {
-            _id = cursor.getLong(cursor.getColumnIndex("_id"));
-            ts = cursor.getLong(cursor.getColumnIndex("ts"));
-            lat = cursor.getDouble(cursor.getColumnIndex("lat"));
-            lon = cursor.getDouble(cursor.getColumnIndex("lon"));
+        // columns are the indexes of COLUMNS
+        public Location(Cursor cursor, int[] columns) {
+            _id = cursor.getLong(columns[0]);
+            ts = cursor.getLong(columns[1]);
+            lat = cursor.getDouble(columns[2]);
+            lon = cursor.getDouble(columns[3]);
         }
 
         public long getId() {
@@ -104,59 +112,24 @@ public class LocationTable {
         return CREATE_TABLE;
     }
 
+    public static String getCreateIndexSql() {
+        return CREATE_INDEX_TS;
+    }
+
     public static void insert(SQLiteDatabase db, Location location) {
-        try {
-            db.execSQL(INSERT_LOCATIONS, new String[]{
-                    Long.toString(location.getTs()),
-                    Double.toString(location.getLat()),
-                    Double.toString(location.getLon())
-            });
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        Dao.insert(db, INSERT_LOCATIONS, location, INSERT_BINDER);
     }
 
     public static void deleteOldItems(SQLiteDatabase db) {
         long oldTs = System.currentTimeMillis() - 24 * 60 * 60 * 1000L;
-        try {
-            db.execSQL(DELETE_OLD_ITEMS, new String[]{
-                    Long.toString(oldTs)
-            });
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        Dao.updateDelete(db, DELETE_OLD_ITEMS, oldTs);
     }
 
     public static void delete(SQLiteDatabase db, List<Location> items) {
-        db.beginTransaction();
-        try {
-            for (Location item : items) {
-                db.execSQL(DELETE_FROM_LOCATION, new String[]{
-                        Long.toString(item.getId())
-                });
-            }
-            db.setTransactionSuccessful();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        } finally {
-            db.endTransaction();
-        }
+        Dao.updateDeleteAll(db, DELETE_FROM_LOCATION, items, DELETE_BINDER);
     }
 
     public static List<Location> select(SQLiteDatabase db, int limit) {
-        Cursor cursor = db.rawQuery( SELECT_LAST_LOCATION, new String[] {
-                Integer.toString(limit)
-        });
-        List<Location> result = new LinkedList<>();
-
-        boolean isDataNotEmpty = cursor.moveToFirst();
-        while (isDataNotEmpty) {
-            Location item = new Location(cursor);
-            result.add(item);
-            isDataNotEmpty = cursor.moveToNext();
-        }
-        cursor.close();
-
-        return result;
+        return Dao.query(db, SELECT_LAST_LOCATION, new String[] { Integer.toString(limit) }, COLUMNS, MAPPER);
     }
 }
@@ -19,12 +19,10 @@
 
 package com.brother.pharmach.mdm.launcher.db;
 
-import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 
 import com.brother.pharmach.mdm.launcher.json.RemoteLogConfig;
-import com.brother.pharmach.mdm.launcher.json.RemoteLogItem;
 
 import java.util.List;
 
@@ -40,8 +38,23 @@ public class LogConfigTable {
             "DELETE FROM log_rules";
     private static final String INSERT_RULE =
             "INSERT OR IGNORE INTO log_rules(packageId, level, filter) VALUES (?, ?, ?)";
-    private static final String FIND_MATCHING =
-            "SELECT * FROM log_rules WHERE packageId = ? AND level >= ? AND (filter IS NULL OR filter = '' OR ? LIKE ('%' || filter || '%')) LIMIT 1";
+    private static final String SELECT_ALL =
+            "SELECT packageId, level, filter FROM log_rules";
+
+    private static final Dao.Binder<RemoteLogConfig> INSERT_BINDER = (statement, item) -> {
+        Dao.bindString(statement, 1, item.getPackageId());
+        statement.bindLong(2, item.getLogLevel());
+        Dao.bindString(statement, 3, item.getFilter());
+    };
+
+    // Columns are read by their positions in SELECT_ALL
+    private static final Dao.RowMapper<RemoteLogConfig> MAPPER = (cursor, columns) -> {
+        RemoteLogConfig item = new RemoteLogConfig();
+        item.setPackageId(cursor.getString(0));
+        item.setLogLevel(cursor.getInt(1));
+        item.setFilter(cursor.getString(2));
+        return item;
+    };
 
     public static String getCreateTableSql() {
         return CREATE_TABLE;
@@ -51,13 +64,7 @@ public class LogConfigTable {
         db.beginTransaction();
         try {
             db.execSQL(DELETE_ALL);
-            for (RemoteLogConfig item : items) {
-                db.execSQL(INSERT_RULE, new String[]{
-                        item.getPackageId(),
-                        Integer.toString(item.getLogLevel()),
-                        item.getFilter()
-                });
-            }
+            Dao.insertAll(db, INSERT_RULE, items, INSERT_BINDER);
             db.setTransactionSuccessful();
         } catch (SQLException e) {
             e.printStackTrace();
@@ -66,14 +73,7 @@ public class LogConfigTable {
         }
     }
 
-    public static boolean match(SQLiteDatabase db, RemoteLogItem item) {
-        Cursor cursor = db.rawQuery(FIND_MATCHING, new String[] {
-                item.getPackageId(),
-                Integer.toString(item.getLogLevel()),
-                item.getMessage()
-        });
-        boolean ret = cursor.moveToFirst();
-        cursor.close();
-        return ret;
+    public static List<RemoteLogConfig> selectAll(SQLiteDatabase db) {
+        return Dao.query(db, SELECT_ALL, null, null, MAPPER);
     }
 }
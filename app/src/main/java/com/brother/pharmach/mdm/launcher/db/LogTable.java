@@ -19,15 +19,14 @@
 
 package com.brother.pharmach.mdm.launcher.db;
 
-import android.annotation.SuppressLint;
 import android.database.Cursor;
-import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 
 import com.brother.pharmach.mdm.launcher.json.RemoteLogItem;
 
-import java.util.LinkedList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class LogTable {
     private static final String CREATE_TABLE =
@@ -38,80 +37,164 @@ public class LogTable {
                     "packageId TEXT, " +
                     "message TEXT" +
                     ")";
-    private static final String SELECT_LAST_LOGS =
-            "SELECT * FROM logs ORDER BY ts LIMIT ?";
+    private static final String CREATE_INDEX_TS =
+            "CREATE INDEX IF NOT EXISTS logs_ts ON logs(ts)";
+    // Eviction of the oldest items of a level, either of all packages or of one package
+    private static final String CREATE_INDEX_LEVEL =
+            "CREATE INDEX IF NOT EXISTS logs_level ON logs(level, _id)";
+    private static final String CREATE_INDEX_LEVEL_PACKAGE =
+            "CREATE INDEX IF NOT EXISTS logs_level_package ON logs(level, packageId, _id)";
     private static final String INSERT_LOG =
             "INSERT OR IGNORE INTO logs(ts, level, packageId, message) VALUES (?, ?, ?, ?)";
-    private static final String DELETE_FROM_LOGS =
-            "DELETE FROM logs WHERE _id=?";
+    // Items are paged by _id (keyset), which is the primary key so no extra index is needed
+    private static final String SELECT_SIZES =
+            "SELECT _id, length(packageId) + length(message) FROM logs WHERE _id > ? ORDER BY _id LIMIT ?";
+    private static final String SELECT_RANGE =
+            "SELECT _id, ts, level, packageId, message FROM logs WHERE _id > ? AND _id <= ? ORDER BY _id";
+    private static final String DELETE_RANGE =
+            "DELETE FROM logs WHERE _id > ? AND _id <= ?";
+    private static final String SELECT_PACKAGE_SIZES =
+            "SELECT packageId, SUM(length(packageId) + length(message)), COUNT(*) FROM logs GROUP BY packageId";
+    private static final String SELECT_LEVEL_SIZES =
+            "SELECT _id, length(packageId) + length(message) FROM logs WHERE level = ? ORDER BY _id";
+    private static final String SELECT_PACKAGE_LEVEL_SIZES =
+            "SELECT _id, length(packageId) + length(message) FROM logs WHERE level = ? AND packageId = ? ORDER BY _id";
+    private static final String DELETE_LEVEL =
+            "DELETE FROM logs WHERE level = ? AND _id <= ?";
+    private static final String DELETE_PACKAGE_LEVEL =
+            "DELETE FROM logs WHERE level = ? AND packageId = ? AND _id <= ?";
     private static final String DELETE_OLD_LOGS =
             "DELETE FROM logs WHERE ts < ?";
+    private static final String DELETE_EXCESSIVE_LOGS =
+            "DELETE FROM logs WHERE _id <= (SELECT _id FROM logs ORDER BY _id DESC LIMIT 1 OFFSET ?)";
+
+    // Logs older than this period are removed even if not sent
+    private static final long MAX_AGE_MS = 7 * 24 * 60 * 60 * 1000L;
+
+    // Max amount of stored logs, the oldest ones are removed
+    public static final int MAX_ROWS = 50000;
+
+    // Max amount of items in one batch, whatever its size is
+    private static final int MAX_BATCH_ROWS = 5000;
+
+    // Column positions of the cursor returned by selectRange()
+    public static final int COLUMN_ID = 0;
+    public static final int COLUMN_TS = 1;
+    public static final int COLUMN_LEVEL = 2;
+    public static final int COLUMN_PACKAGE_ID = 3;
+    public static final int COLUMN_MESSAGE = 4;
+
+    private static final Dao.Binder<RemoteLogItem> INSERT_BINDER = (statement, item) -> {
+        statement.bindLong(1, item.getTimestamp());
+        statement.bindLong(2, item.getLogLevel());
+        Dao.bindString(statement, 3, item.getPackageId());
+        Dao.bindString(statement, 4, item.getMessage());
+    };
 
     public static String getCreateTableSql() {
         return CREATE_TABLE;
     }
 
+    public static String getCreateIndexSql() {
+        return CREATE_INDEX_TS;
+    }
+
+    public static String getCreateLevelIndexSql() {
+        return CREATE_INDEX_LEVEL;
+    }
+
+    public static String getCreateLevelPackageIndexSql() {
+        return CREATE_INDEX_LEVEL_PACKAGE;
+    }
+
     public static void insert(SQLiteDatabase db, RemoteLogItem item) {
-        try {
-            db.execSQL(INSERT_LOG, new String[]{
-                    Long.toString(item.getTimestamp()),
-                    Integer.toString(item.getLogLevel()),
-                    item.getPackageId(),
-                    item.getMessage()
-            });
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        Dao.insert(db, INSERT_LOG, item, INSERT_BINDER);
     }
 
+    // Writes a batch of items in a single transaction
+    public static void insert(SQLiteDatabase db, List<RemoteLogItem> items) {
+        Dao.insertAll(db, INSERT_LOG, items, INSERT_BINDER);
+    }
+
+    // Age and row count retention
     public static void deleteOldItems(SQLiteDatabase db) {
-        long oldTs = System.currentTimeMillis() - 7 * 24 * 60 * 60 * 1000L;
-        try {
-            db.execSQL(DELETE_FROM_LOGS, new String[]{
-                    Long.toString(oldTs)
-            });
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        long oldTs = System.currentTimeMillis() - MAX_AGE_MS;
+        Dao.updateDelete(db, DELETE_OLD_LOGS, oldTs);
+        Dao.updateDelete(db, DELETE_EXCESSIVE_LOGS, MAX_ROWS);
     }
 
-    public static void delete(SQLiteDatabase db, List<RemoteLogItem> items) {
-        db.beginTransaction();
-        try {
-            for (RemoteLogItem item : items) {
-                db.execSQL(DELETE_FROM_LOGS, new String[]{
-                        Long.toString(item.getId())
-                });
+    /**
+     * Returns the last _id of the oldest items after lastSentId which fit into byteBudget
+     * (at least one item is always included), or lastSentId if there are no more items.
+     * recordOverhead is the estimated size of the serialized item without strings.
+     */
+    public static long findBatchEnd(SQLiteDatabase db, final long lastSentId, final int byteBudget, final int recordOverhead) {
+        // Last _id and accumulated size
+        final long[] state = { lastSentId, 0 };
+        Dao.forEach(db, SELECT_SIZES, new String[] {
+                Long.toString(lastSentId), Integer.toString(MAX_BATCH_ROWS)
+        }, null, (cursor, columns) -> {
+            state[1] += cursor.getLong(1) + recordOverhead;
+            if (state[0] != lastSentId && state[1] > byteBudget) {
+                return false;
             }
-            db.setTransactionSuccessful();
-        } catch (SQLException e) {
-            e.printStackTrace();
-        } finally {
-            db.endTransaction();
-        }
+            state[0] = cursor.getLong(0);
+            return true;
+        });
+        return state[0];
+    }
+
+    // Selects items with lastSentId < _id <= lastId
+    // The caller must close the cursor, see COLUMN_* for the column positions
+    public static Cursor selectRange(SQLiteDatabase db, long lastSentId, long lastId) {
+        return db.rawQuery(SELECT_RANGE, new String[] { Long.toString(lastSentId), Long.toString(lastId) });
+    }
+
+    // Removes an acknowledged batch
+    public static void deleteRange(SQLiteDatabase db, long lastSentId, long lastId) {
+        Dao.updateDelete(db, DELETE_RANGE, lastSentId, lastId);
+    }
+
+    // Estimated storage size of the items per package
+    public static Map<String, Long> selectPackageSizes(SQLiteDatabase db, final int recordOverhead) {
+        final Map<String, Long> result = new HashMap<>();
+        Dao.forEach(db, SELECT_PACKAGE_SIZES, null, null, (cursor, columns) -> {
+            String packageId = cursor.isNull(0) ? "" : cursor.getString(0);
+            result.put(packageId, cursor.getLong(1) + cursor.getLong(2) * recordOverhead);
+            return true;
+        });
+        return result;
     }
 
-    @SuppressLint("Range")
-    public static List<RemoteLogItem> select(SQLiteDatabase db, int limit) {
-        Cursor cursor = db.rawQuery( SELECT_LAST_LOGS, new String[] {
-            Integer.toString(limit)
+    /**
+     * Removes the oldest items of the given level (and package, if not null)
+     * until at least bytes are freed. Returns the amount of removed items.
+     */
+    public static int evictOldest(SQLiteDatabase db, String packageId, final int level, final long bytes, final int recordOverhead) {
+        if (bytes <= 0) {
+            return 0;
+        }
+        String[] args = packageId != null ?
+                new String[] { Integer.toString(level), packageId } : new String[] { Integer.toString(level) };
+        // Last _id and freed size
+        final long[] state = { 0, 0 };
+        Dao.forEach(db, packageId != null ? SELECT_PACKAGE_LEVEL_SIZES : SELECT_LEVEL_SIZES, args, null, (cursor, columns) -> {
+            state[1] += cursor.getLong(1) + recordOverhead;
+            state[0] = cursor.getLong(0);
+            return state[1] < bytes;
         });
-        List<RemoteLogItem> result = new LinkedList<>();
-
-        boolean isDataNotEmpty = cursor.moveToFirst();
-        while (isDataNotEmpty) {
-            RemoteLogItem item = new RemoteLogItem();
-            item.setId(cursor.getLong(cursor.getColumnIndex("_id")));
-            item.setTimestamp(cursor.getLong(cursor.getColumnIndex("ts")));
-            item.setLogLevel(cursor.getInt(cursor.getColumnIndex("level")));
-            item.setPackageId(cursor.getString(cursor.getColumnIndex("packageId")));
-            item.setMessage(cursor.getString(cursor.getColumnIndex("message")));
-            result.add(item);
-
-            isDataNotEmpty = cursor.moveToNext();
+        final long lastId = state[0];
+        if (lastId == 0) {
+            return 0;
         }
-        cursor.close();
 
-        return result;
+        if (packageId == null) {
+            return Dao.updateDelete(db, DELETE_LEVEL, level, lastId);
+        }
+        return Dao.updateDelete(db, DELETE_PACKAGE_LEVEL, packageId, (statement, id) -> {
+            statement.bindLong(1, level);
+            statement.bindString(2, id);
+            statement.bindLong(3, lastId);
+        });
     }
 }
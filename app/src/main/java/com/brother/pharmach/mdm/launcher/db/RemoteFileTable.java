@@ -19,9 +19,6 @@
 
 package com.brother.pharmach.mdm.launcher.db;
 
-import android.annotation.SuppressLint;
-import android.database.Cursor;
-import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 
 import com.brother.pharmach.mdm.launcher.json.RemoteFile;
@@ -44,49 +41,42 @@ public class RemoteFileTable {
             "DELETE FROM files WHERE path=?";
     private static final String SELECT_FILE_BY_PATH =
             "SELECT * FROM files WHERE path=?";
+    private static final String[] COLUMNS = { "_id", "lastUpdate", "url", "checksum", "path", "description" };
+
+    private static final Dao.Binder<RemoteFile> INSERT_BINDER = (statement, item) -> {
+        statement.bindLong(1, item.getLastUpdate());
+        Dao.bindString(statement, 2, item.getUrl());
+        Dao.bindString(statement, 3, item.getChecksum());
+        Dao.bindString(statement, 4, item.getPath());
+        Dao.bindString(statement, 5, item.getDescription());
+    };
+    private static final Dao.Binder<String> PATH_BINDER = (statement, path) -> Dao.bindString(statement, 1, path);
+
+    // columns are the indexes of COLUMNS
+    private static final Dao.RowMapper<RemoteFile> MAPPER = (cursor, columns) -> {
+        RemoteFile item = new RemoteFile();
+        item.setId(cursor.getLong(columns[0]));
+        item.setLastUpdate(cursor.getLong(columns[1]));
+        item.setUrl(cursor.getString(columns[2]));
+        item.setChecksum(cursor.getString(columns[3]));
+        item.setPath(cursor.getString(columns[4]));
+        item.setDescription(cursor.getString(columns[5]));
+        return item;
+    };
 
     public static String getCreateTableSql() {
         return CREATE_TABLE;
     }
 
     public static void insert(SQLiteDatabase db, RemoteFile item) {
-        try {
-            db.execSQL(INSERT_FILE, new String[]{
-                    Long.toString(item.getLastUpdate()),
-                    item.getUrl(),
-                    item.getChecksum(),
-                    item.getPath(),
-                    item.getDescription()
-            });
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        Dao.insert(db, INSERT_FILE, item, INSERT_BINDER);
     }
 
     public static void deleteByPath(SQLiteDatabase db, String path) {
-        try {
-            db.execSQL(DELETE_FILE_BY_PATH, new String[]{ path });
-        } catch (SQLException e) {
-            e.printStackTrace();
-        }
+        Dao.updateDelete(db, DELETE_FILE_BY_PATH, path, PATH_BINDER);
     }
 
-    @SuppressLint("Range")
     public static RemoteFile selectByPath(SQLiteDatabase db, String path) {
-        Cursor cursor = db.rawQuery(SELECT_FILE_BY_PATH, new String[] { path });
-
-        RemoteFile item = null;
-        if (cursor.moveToFirst()) {
-            item = new RemoteFile();
-            item.setId(cursor.getLong(cursor.getColumnIndex("_id")));
-            item.setLastUpdate(cursor.getLong(cursor.getColumnIndex("lastUpdate")));
-            item.setUrl(cursor.getString(cursor.getColumnIndex("url")));
-            item.setChecksum(cursor.getString(cursor.getColumnIndex("checksum")));
-            item.setPath(cursor.getString(cursor.getColumnIndex("path")));
-            item.setDescription(cursor.getString(cursor.getColumnIndex("description")));
-        }
-        cursor.close();
-
-        return item;
+        return Dao.queryFirst(db, SELECT_FILE_BY_PATH, new String[] { path }, COLUMNS, MAPPER);
     }
 }
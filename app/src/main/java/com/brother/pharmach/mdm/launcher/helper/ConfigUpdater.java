@@ -40,6 +40,7 @@ import com.brother.pharmach.mdm.launcher.task.GetRemoteLogConfigTask;
 import com.brother.pharmach.mdm.launcher.task.GetServerConfigTask;
 import com.brother.pharmach.mdm.launcher.util.DeviceInfoProvider;
 import com.brother.pharmach.mdm.launcher.util.InstallUtils;
+import com.brother.pharmach.mdm.launcher.util.PackageIndex;
 import com.brother.pharmach.mdm.launcher.util.PushNotificationMqttWrapper;
 import com.brother.pharmach.mdm.launcher.util.RemoteLogger;
 import com.brother.pharmach.mdm.launcher.util.SystemUtils;
@@ -98,6 +99,12 @@ public class ConfigUpdater {
         void onAllAppInstallComplete();
     };
 
+    // The update flow is skipped if the configuration is not modified since it was applied
+    // in this process, but it runs in full periodically to retry failed installations
+    private static final long FULL_UPDATE_PERIOD_MS = 6 * 3600000L;
+    private static String appliedConfigHash;
+    private static long appliedTime;
+
     private boolean configInitializing;
     private Context context;
     private UINotifier uiNotifier;
@@ -156,11 +163,10 @@ public class ConfigUpdater {
         // value
         settingsHelper = SettingsHelper.getInstance(context.getApplicationContext());
 
-        if (settingsHelper.getConfig() != null && settingsHelper.getConfig().getRestrictions() != null) {
-            Utils.releaseUserRestrictions(context, settingsHelper.getConfig().getRestrictions());
-            // Explicitly release restrictions of installing/uninstalling apps
-            Utils.releaseUserRestrictions(context, "no_install_apps,no_uninstall_apps");
-        }
+        // Restrictions of the current configuration are released after getting the new one,
+        // unless the update flow is skipped
+        final String appliedRestrictions = settingsHelper.getConfig() != null ?
+                settingsHelper.getConfig().getRestrictions() : null;
 
         if (uiNotifier != null) {
             uiNotifier.onConfigUpdateStart();
@@ -172,6 +178,16 @@ public class ConfigUpdater {
                 configInitializing = false;
                 Log.i(Const.LOG_TAG, "updateConfig(): set configInitializing=false after getting config");
 
+                if (result == Const.TASK_NOT_MODIFIED && !userInteraction && isConfigApplied()) {
+                    // Nothing is installed, so the restrictions stay locked
+                    Log.i(Const.LOG_TAG, "updateConfig(): configuration not modified, skipping the update flow");
+                    if (uiNotifier != null) {
+                        uiNotifier.onConfigUpdateComplete();
+                    }
+                    return;
+                }
+                releaseRestrictions(appliedRestrictions);
+
                 switch (result) {
                     case Const.TASK_SUCCESS:
                         RemoteLogger.log(context, Const.LOG_INFO, "Configuration updated");
@@ -179,6 +195,11 @@ public class ConfigUpdater {
                         com.brother.pharmach.mdm.launcher.util.WorkTimeManager.getInstance().updatePolicy(context, true);
                         updateRemoteLogConfig();
                         break;
+                    case Const.TASK_NOT_MODIFIED:
+                        RemoteLogger.log(context, Const.LOG_INFO, "Configuration not modified");
+                        com.brother.pharmach.mdm.launcher.util.WorkTimeManager.getInstance().updatePolicy(context, true);
+                        updateRemoteLogConfig();
+                        break;
                     case Const.TASK_ERROR:
                         RemoteLogger.log(context, Const.LOG_WARN, "Failed to update config: server error");
                         if (uiNotifier != null) {
@@ -218,6 +239,22 @@ public class ConfigUpdater {
         }.execute();
     }
 
+    private void releaseRestrictions(String restrictions) {
+        if (restrictions != null) {
+            Utils.releaseUserRestrictions(context, restrictions);
+            // Explicitly release restrictions of installing/uninstalling apps
+            Utils.releaseUserRestrictions(context, "no_install_apps,no_uninstall_apps");
+        }
+    }
+
+    private boolean isConfigApplied() {
+        String hash = settingsHelper.getConfigHash();
+        synchronized (ConfigUpdater.class) {
+            return hash != null && hash.equals(appliedConfigHash) &&
+                    System.currentTimeMillis() < appliedTime + FULL_UPDATE_PERIOD_MS;
+        }
+    }
+
     public void skipConfigLoad() {
         updateRemoteLogConfig();
     }
@@ -556,8 +593,8 @@ public class ConfigUpdater {
                             if (file.exists()) {
                                 file.delete();
                             }
-                            RemoteFileTable.deleteByPath(DatabaseHelper.instance(context).getWritableDatabase(),
-                                    remoteFile.getPath());
+                            DatabaseHelper.instance(context).execute(db ->
+                                    RemoteFileTable.deleteByPath(db, remoteFile.getPath()));
                         } catch (Exception e) {
                             RemoteLogger.log(context, Const.LOG_WARN, "Failed to remove file: " +
                                     remoteFile.getPath() + ": " + e.getMessage());
@@ -640,11 +677,13 @@ public class ConfigUpdater {
                                     createFileFromTemplate(file, finalFile, settingsHelper.getDeviceId(), imei,
                                             settingsHelper.getConfig());
                                 }
-                                RemoteFileTable.insert(dbHelper.getWritableDatabase(), remoteFile);
+                                dbHelper.execute(db -> {
+                                    RemoteFileTable.insert(db, remoteFile);
+                                    if (lastDownload != null) {
+                                        DownloadTable.deleteByPath(db, lastDownload.getPath());
+                                    }
+                                });
                                 remoteFileStatus.installed = true;
-                                if (lastDownload != null) {
-                                    DownloadTable.deleteByPath(dbHelper.getWritableDatabase(), lastDownload.getPath());
-                                }
                             } catch (Exception e) {
                                 RemoteLogger.log(context, Const.LOG_WARN,
                                         "Failed to create file " + remoteFile.getPath() + ": " + e.getMessage());
@@ -727,8 +766,9 @@ public class ConfigUpdater {
         }
         lastDownload.setDownloaded(downloaded);
         lastDownload.setInstalled(installed);
-        DatabaseHelper dbHelper = DatabaseHelper.instance(context);
-        DownloadTable.insert(dbHelper.getWritableDatabase(), lastDownload);
+        final Download download = lastDownload;
+        // May be called from the main thread, so don't wait for the writer thread
+        DatabaseHelper.instance(context).post(db -> DownloadTable.insert(db, download));
     }
 
     // In background mode, we do not attempt to download files or apps in two cases:
@@ -955,7 +995,7 @@ public class ConfigUpdater {
                             // Here we remove app from pending downloads
                             // If it fails to install, we'll remember it and do not download any more
                             if (lastDownload != null) {
-                                DownloadTable.deleteByPath(dbHelper.getWritableDatabase(), lastDownload.getPath());
+                                dbHelper.execute(db -> DownloadTable.deleteByPath(db, lastDownload.getPath()));
                             }
                         } else {
                             applicationStatus.installed = false;
@@ -1096,6 +1136,10 @@ public class ConfigUpdater {
                 context.sendBroadcast(intent);
 
                 RemoteLogger.log(context, Const.LOG_VERBOSE, "Update flow completed");
+                synchronized (ConfigUpdater.class) {
+                    appliedConfigHash = settingsHelper.getConfigHash();
+                    appliedTime = System.currentTimeMillis();
+                }
                 if (pendingInstallations.size() > 0) {
                     // Some apps are still pending installation
                     // Let's wait until they're all installed
@@ -1177,6 +1221,7 @@ public class ConfigUpdater {
                                     RemoteLogger.log(context, Const.LOG_DEBUG,
                                             "App " + packageName + " installed successfully");
                                     Log.i(Const.LOG_TAG, "Install complete: " + packageName);
+                                    PackageIndex.onPackageChanged(context, packageName);
                                     File file = pendingInstallations.get(packageName);
                                     if (file != null) {
                                         pendingInstallations.remove(packageName);
@@ -31,7 +31,8 @@ import com.brother.pharmach.mdm.launcher.util.RemoteLogger;
 import com.brother.pharmach.mdm.launcher.util.Utils;
 import com.brother.pharmach.mdm.launcher.worker.PushNotificationWorker;
 import com.brother.pharmach.mdm.launcher.worker.ScheduledAppUpdateWorker;
-import com.brother.pharmach.mdm.launcher.worker.SendDeviceInfoWorker;
+import com.brother.pharmach.mdm.launcher.worker.DatabaseMaintenanceWorker;
+import com.brother.pharmach.mdm.launcher.worker.OutboxWorker;
 
 import org.eclipse.paho.android.service.MqttAndroidClient;
 
@@ -72,6 +73,7 @@ public class Initializer {
                     PushNotificationWorker.schedule(context);
                 }
                 ScheduledAppUpdateWorker.schedule(context);
+                DatabaseMaintenanceWorker.schedule(context);
 
                 // Run completion in the UI thread
                 uiHandler.post(completion);
@@ -230,7 +232,7 @@ public class Initializer {
                 SendDeviceInfoTask sendDeviceInfoTask = new SendDeviceInfoTask(context);
                 DeviceInfo deviceInfo = DeviceInfoProvider.getDeviceInfo(context, true, true);
                 sendDeviceInfoTask.execute(deviceInfo);
-                SendDeviceInfoWorker.scheduleDeviceInfoSending(context);
+                OutboxWorker.start(context);
             }
 
             @Override
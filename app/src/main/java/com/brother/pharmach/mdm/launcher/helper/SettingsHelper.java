@@ -22,10 +22,13 @@ package com.brother.pharmach.mdm.launcher.helper;
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.brother.pharmach.mdm.launcher.BuildConfig;
 import com.brother.pharmach.mdm.launcher.json.Application;
 import com.brother.pharmach.mdm.launcher.json.ApplicationSetting;
+import com.brother.pharmach.mdm.launcher.json.DetailedInfoConfig;
+import com.brother.pharmach.mdm.launcher.json.DeviceInfo;
 import com.brother.pharmach.mdm.launcher.json.RemoteFile;
 import com.brother.pharmach.mdm.launcher.json.ServerConfig;
 
@@ -33,6 +36,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -49,6 +53,8 @@ public class SettingsHelper {
     private static final String PREF_KEY_DEVICE_ID_USE = ".helpers.DEVICE_ID_USE";
     private static final String PREF_KEY_CERT_URLS = ".helpers.CERT_URLS";
     private static final String PREF_KEY_CONFIG = ".helpers.CONFIG";
+    private static final String PREF_KEY_CONFIG_ETAG = ".helpers.CONFIG_ETAG";
+    private static final String PREF_KEY_CONFIG_HASH = ".helpers.CONFIG_HASH";
     private static final String PREF_KEY_IP_ADDRESS = ".helpers.IP_ADDRESS";
     private static final String PREF_QR_PROVISIONING = ".helpers.QR_PROVISIONING";
     private static final String PREF_CFG_UPDATE_TIMESTAMP = ".helpers.CFG_UPDATE_TIMESTAMP";
@@ -58,6 +64,21 @@ public class SettingsHelper {
     private static final String PREF_KEY_LAST_APP_UPDATE_STATE = ".helpers.LAST_APP_UPDATE_STATE";
     private static final String PREF_KEY_APP_START_TIME = ".helpers.APP_START_TIME";
     private static final String PREF_KEY_SATELLITE_COUNT = ".helpers.APP_SATELLITE_COUNT";
+    private static final String PREF_KEY_LOG_GZIP_REJECTED = ".helpers.LOG_GZIP_REJECTED";
+    private static final String PREF_KEY_LOG_DROPPED_COUNT = ".helpers.LOG_DROPPED_COUNT";
+    private static final String PREF_KEY_DEVICE_INFO_SENT_TIME = ".helpers.DEVICE_INFO_SENT_TIME";
+    private static final String PREF_KEY_DEVICE_INFO_FULL_SENT_TIME = ".helpers.DEVICE_INFO_FULL_SENT_TIME";
+    private static final String PREF_KEY_DEVICE_INFO_FINGERPRINTS = ".helpers.DEVICE_INFO_FINGERPRINTS";
+    private static final String PREF_KEY_DETAILED_INFO_CONFIG = ".helpers.DETAILED_INFO_CONFIG";
+    private static final String PREF_KEY_DETAILED_INFO_GZIP_REJECTED = ".helpers.DETAILED_INFO_GZIP_REJECTED";
+    private static final String PREF_KEY_DETAILED_INFO_ROLLUP_REJECTED = ".helpers.DETAILED_INFO_ROLLUP_REJECTED";
+    private static final String PREF_KEY_LOCATION_TRACK_REJECTED = ".helpers.LOCATION_TRACK_REJECTED";
+    private static final String PREF_KEY_GEOFENCES_INSIDE = ".helpers.GEOFENCES_INSIDE";
+    private static final String PREF_KEY_DATABASE_STATS = ".helpers.DATABASE_STATS";
+    private static final String PREF_KEY_DATABASE_INTEGRITY_CHECK = ".helpers.DATABASE_INTEGRITY_CHECK";
+    private static final String PREF_KEY_OUTBOX_SCHEDULED_TIME = ".helpers.OUTBOX_SCHEDULED_TIME";
+    private static final String PREF_KEY_OUTBOX_BACKOFF = ".helpers.OUTBOX_BACKOFF.";
+    private static final String PREF_KEY_OUTBOX_RETRY_TIME = ".helpers.OUTBOX_RETRY_TIME.";
     private static final String PREF_KEY_USER_CUSTOM_1 = ".helpers.USER_CUSTOM_1";
     private static final String PREF_KEY_USER_CUSTOM_2 = ".helpers.USER_CUSTOM_2";
     private static final String PREF_KEY_USER_CUSTOM_3 = ".helpers.USER_CUSTOM_3";
@@ -253,6 +274,177 @@ public class SettingsHelper {
         return sharedPreferences.getInt(PACKAGE_NAME + PREF_KEY_SATELLITE_COUNT, 0);
     }
 
+    public boolean setLogGzipRejectedTime(long time) {
+        return sharedPreferences.edit().putLong(PACKAGE_NAME + PREF_KEY_LOG_GZIP_REJECTED, time).commit();
+    }
+
+    public long getLogGzipRejectedTime() {
+        return sharedPreferences.getLong(PACKAGE_NAME + PREF_KEY_LOG_GZIP_REJECTED, 0);
+    }
+
+    public boolean setLogDroppedCount(int count) {
+        return sharedPreferences.edit().putInt(PACKAGE_NAME + PREF_KEY_LOG_DROPPED_COUNT, count).commit();
+    }
+
+    public int getLogDroppedCount() {
+        return sharedPreferences.getInt(PACKAGE_NAME + PREF_KEY_LOG_DROPPED_COUNT, 0);
+    }
+
+    public boolean setDeviceInfoSentTime(long time) {
+        return sharedPreferences.edit().putLong(PACKAGE_NAME + PREF_KEY_DEVICE_INFO_SENT_TIME, time).commit();
+    }
+
+    public long getDeviceInfoSentTime() {
+        return sharedPreferences.getLong(PACKAGE_NAME + PREF_KEY_DEVICE_INFO_SENT_TIME, 0);
+    }
+
+    public boolean setDeviceInfoFullSentTime(long time) {
+        return sharedPreferences.edit().putLong(PACKAGE_NAME + PREF_KEY_DEVICE_INFO_FULL_SENT_TIME, time).commit();
+    }
+
+    public long getDeviceInfoFullSentTime() {
+        return sharedPreferences.getLong(PACKAGE_NAME + PREF_KEY_DEVICE_INFO_FULL_SENT_TIME, 0);
+    }
+
+    public boolean setDeviceInfoFingerprints(Map<String, String> fingerprints) {
+        try {
+            ObjectMapper objectMapper = new ObjectMapper();
+            return sharedPreferences.edit().putString(PACKAGE_NAME + PREF_KEY_DEVICE_INFO_FINGERPRINTS,
+                    objectMapper.writeValueAsString(fingerprints)).commit();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    public Map<String, String> getDeviceInfoFingerprints() {
+        String value = sharedPreferences.getString(PACKAGE_NAME + PREF_KEY_DEVICE_INFO_FINGERPRINTS, null);
+        if (value == null) {
+            return null;
+        }
+        try {
+            ObjectMapper objectMapper = new ObjectMapper();
+            return objectMapper.readValue(value, new TypeReference<Map<String, String>>() {});
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    public boolean setDetailedInfoConfig(DetailedInfoConfig detailedInfoConfig) {
+        try {
+            ObjectMapper objectMapper = new ObjectMapper();
+            return sharedPreferences.edit().putString(PACKAGE_NAME + PREF_KEY_DETAILED_INFO_CONFIG,
+                    objectMapper.writeValueAsString(detailedInfoConfig)).commit();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    public DetailedInfoConfig getDetailedInfoConfig() {
+        String value = sharedPreferences.getString(PACKAGE_NAME + PREF_KEY_DETAILED_INFO_CONFIG, null);
+        if (value == null) {
+            return null;
+        }
+        try {
+            ObjectMapper objectMapper = new ObjectMapper();
+            return objectMapper.readValue(value, DetailedInfoConfig.class);
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    public boolean setDetailedInfoGzipRejectedTime(long time) {
+        return sharedPreferences.edit().putLong(PACKAGE_NAME + PREF_KEY_DETAILED_INFO_GZIP_REJECTED, time).commit();
+    }
+
+    public long getDetailedInfoGzipRejectedTime() {
+        return sharedPreferences.getLong(PACKAGE_NAME + PREF_KEY_DETAILED_INFO_GZIP_REJECTED, 0);
+    }
+
+    public boolean setDetailedInfoRollupRejectedTime(long time) {
+        return sharedPreferences.edit().putLong(PACKAGE_NAME + PREF_KEY_DETAILED_INFO_ROLLUP_REJECTED, time).commit();
+    }
+
+    public long getDetailedInfoRollupRejectedTime() {
+        return sharedPreferences.getLong(PACKAGE_NAME + PREF_KEY_DETAILED_INFO_ROLLUP_REJECTED, 0);
+    }
+
+    public boolean setLocationTrackRejectedTime(long time) {
+        return sharedPreferences.edit().putLong(PACKAGE_NAME + PREF_KEY_LOCATION_TRACK_REJECTED, time).commit();
+    }
+
+    public long getLocationTrackRejectedTime() {
+        return sharedPreferences.getLong(PACKAGE_NAME + PREF_KEY_LOCATION_TRACK_REJECTED, 0);
+    }
+
+    public boolean setGeofencesInside(Set<String> geofences) {
+        return sharedPreferences.edit().putStringSet(PACKAGE_NAME + PREF_KEY_GEOFENCES_INSIDE, geofences).commit();
+    }
+
+    public Set<String> getGeofencesInside() {
+        return sharedPreferences.getStringSet(PACKAGE_NAME + PREF_KEY_GEOFENCES_INSIDE, null);
+    }
+
+    public boolean setDatabaseIntegrityCheckTime(long time) {
+        return sharedPreferences.edit().putLong(PACKAGE_NAME + PREF_KEY_DATABASE_INTEGRITY_CHECK, time).commit();
+    }
+
+    public long getDatabaseIntegrityCheckTime() {
+        return sharedPreferences.getLong(PACKAGE_NAME + PREF_KEY_DATABASE_INTEGRITY_CHECK, 0);
+    }
+
+    public boolean setOutboxScheduledTime(long time) {
+        return sharedPreferences.edit().putLong(PACKAGE_NAME + PREF_KEY_OUTBOX_SCHEDULED_TIME, time).commit();
+    }
+
+    public long getOutboxScheduledTime() {
+        return sharedPreferences.getLong(PACKAGE_NAME + PREF_KEY_OUTBOX_SCHEDULED_TIME, 0);
+    }
+
+    // Backoff of the outbox channel (or of the server if it's unreachable) and the time of the next attempt
+    public boolean setOutboxBackoff(String name, long backoff, long retryTime) {
+        return sharedPreferences.edit()
+                .putLong(PACKAGE_NAME + PREF_KEY_OUTBOX_BACKOFF + name, backoff)
+                .putLong(PACKAGE_NAME + PREF_KEY_OUTBOX_RETRY_TIME + name, retryTime)
+                .commit();
+    }
+
+    public long getOutboxBackoff(String name) {
+        return sharedPreferences.getLong(PACKAGE_NAME + PREF_KEY_OUTBOX_BACKOFF + name, 0);
+    }
+
+    public long getOutboxRetryTime(String name) {
+        return sharedPreferences.getLong(PACKAGE_NAME + PREF_KEY_OUTBOX_RETRY_TIME + name, 0);
+    }
+
+    public boolean setDatabaseStats(List<DeviceInfo.Database> stats) {
+        try {
+            ObjectMapper objectMapper = new ObjectMapper();
+            return sharedPreferences.edit().putString(PACKAGE_NAME + PREF_KEY_DATABASE_STATS,
+                    objectMapper.writeValueAsString(stats)).commit();
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    public List<DeviceInfo.Database> getDatabaseStats() {
+        String value = sharedPreferences.getString(PACKAGE_NAME + PREF_KEY_DATABASE_STATS, null);
+        if (value == null) {
+            return null;
+        }
+        try {
+            ObjectMapper objectMapper = new ObjectMapper();
+            return objectMapper.readValue(value, new TypeReference<List<DeviceInfo.Database>>() {});
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
     public boolean setEnrollOptionConfigName(String configName) {
         if (configName == null) {
             return sharedPreferences.edit().remove(PACKAGE_NAME + PREF_KEY_CONFIG_NAME).commit();
@@ -302,9 +494,19 @@ public class SettingsHelper {
     }
 
     public void updateConfig( ServerConfig config ) {
+        updateConfig(config, null, null);
+    }
+
+    // ETag and hash identify the server response the config is parsed from, see ConfigChangeDetector
+    // They are reset by local changes, so the next update applies the server config again
+    public void updateConfig( ServerConfig config, String etag, String hash ) {
         try {
             ObjectMapper objectMapper = new ObjectMapper();
-            sharedPreferences.edit().putString(PACKAGE_NAME + PREF_KEY_CONFIG, objectMapper.writeValueAsString( config ) ).commit();
+            sharedPreferences.edit()
+                    .putString(PACKAGE_NAME + PREF_KEY_CONFIG, objectMapper.writeValueAsString( config ) )
+                    .putString(PACKAGE_NAME + PREF_KEY_CONFIG_ETAG, etag)
+                    .putString(PACKAGE_NAME + PREF_KEY_CONFIG_HASH, hash)
+                    .commit();
         } catch ( Exception e ) {
             e.printStackTrace();
             // Do not apply changes when there's an error while writing settings
@@ -320,6 +522,14 @@ public class SettingsHelper {
         return config;
     }
 
+    public String getConfigEtag() {
+        return sharedPreferences.getString(PACKAGE_NAME + PREF_KEY_CONFIG_ETAG, null);
+    }
+
+    public String getConfigHash() {
+        return sharedPreferences.getString(PACKAGE_NAME + PREF_KEY_CONFIG_HASH, null);
+    }
+
     public void removeRemoteFile(RemoteFile remoteFile) {
         Iterator<RemoteFile> it = config.getFiles().iterator();
         while (it.hasNext()) {
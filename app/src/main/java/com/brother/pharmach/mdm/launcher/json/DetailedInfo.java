@@ -19,9 +19,6 @@
 
 package com.brother.pharmach.mdm.launcher.json;
 
-import android.annotation.SuppressLint;
-import android.database.Cursor;
-
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
@@ -41,67 +38,6 @@ public class DetailedInfo {
     public DetailedInfo() {
     }
 
-    @SuppressLint("Range")
-    public DetailedInfo(Cursor cursor) {
-        _id = cursor.getLong(cursor.getColumnIndex("_id"));
-        ts = cursor.getLong(cursor.getColumnIndex("ts"));
-
-        device = new Device();
-        device.setBatteryLevel(cursor.getInt(cursor.getColumnIndex("deviceBatteryLevel")));
-        device.setBatteryCharging(cursor.getString(cursor.getColumnIndex("deviceBatteryCharging")));
-        device.setWifi(cursor.getInt(cursor.getColumnIndex("deviceWifi")) != 0);
-        device.setGps(cursor.getInt(cursor.getColumnIndex("deviceGps")) != 0);
-        device.setIp(cursor.getString(cursor.getColumnIndex("deviceIp")));
-        device.setKeyguard(cursor.getInt(cursor.getColumnIndex("deviceKeyguard")) != 0);
-        device.setRingVolume(cursor.getInt(cursor.getColumnIndex("deviceRingVolume")));
-        device.setMobileData(cursor.getInt(cursor.getColumnIndex("deviceMobileData")) != 0);
-        device.setBluetooth(cursor.getInt(cursor.getColumnIndex("deviceBluetooth")) != 0);
-        device.setUsbStorage(cursor.getInt(cursor.getColumnIndex("deviceUsbStorage")) != 0);
-        device.setMemoryTotal(cursor.getInt(cursor.getColumnIndex("deviceMemoryTotal")));
-        device.setMemoryAvailable(cursor.getInt(cursor.getColumnIndex("deviceMemoryAvailable")));
-
-        wifi = new Wifi();
-        wifi.setRssi(cursor.getInt(cursor.getColumnIndex("wifiRssi")));
-        wifi.setSsid(cursor.getString(cursor.getColumnIndex("wifiSsid")));
-        wifi.setSecurity(cursor.getString(cursor.getColumnIndex("wifiSecurity")));
-        wifi.setState(cursor.getString(cursor.getColumnIndex("wifiState")));
-        wifi.setIp(cursor.getString(cursor.getColumnIndex("wifiIp")));
-        wifi.setTx(cursor.getLong(cursor.getColumnIndex("wifiTx")));
-        wifi.setRx(cursor.getLong(cursor.getColumnIndex("wifiRx")));
-
-        gps = new Gps();
-        gps.setState(cursor.getString(cursor.getColumnIndex("gpsState")));
-        gps.setLat(cursor.getDouble(cursor.getColumnIndex("gpsLat")));
-        gps.setLon(cursor.getDouble(cursor.getColumnIndex("gpsLon")));
-        gps.setAlt(cursor.getDouble(cursor.getColumnIndex("gpsAlt")));
-        gps.setSpeed(cursor.getDouble(cursor.getColumnIndex("gpsSpeed")));
-        gps.setCourse(cursor.getDouble(cursor.getColumnIndex("gpsCourse")));
-
-        mobile = new Mobile();
-        mobile.setRssi(cursor.getInt(cursor.getColumnIndex("mobileRssi")));
-        mobile.setCarrier(cursor.getString(cursor.getColumnIndex("mobileCarrier")));
-        mobile.setNumber(cursor.getString(cursor.getColumnIndex("mobileNumber")));
-        mobile.setImsi(cursor.getString(cursor.getColumnIndex("mobileImsi")));
-        mobile.setData(cursor.getInt(cursor.getColumnIndex("mobileData")) != 0);
-        mobile.setIp(cursor.getString(cursor.getColumnIndex("mobileIp")));
-        mobile.setState(cursor.getString(cursor.getColumnIndex("mobileState")));
-        mobile.setSimState(cursor.getString(cursor.getColumnIndex("mobileSimState")));
-        mobile.setTx(cursor.getLong(cursor.getColumnIndex("mobileTx")));
-        mobile.setRx(cursor.getLong(cursor.getColumnIndex("mobileRx")));
-
-        mobile2 = new Mobile();
-        mobile2.setRssi(cursor.getInt(cursor.getColumnIndex("mobile2Rssi")));
-        mobile2.setCarrier(cursor.getString(cursor.getColumnIndex("mobile2Carrier")));
-        mobile2.setNumber(cursor.getString(cursor.getColumnIndex("mobile2Number")));
-        mobile2.setImsi(cursor.getString(cursor.getColumnIndex("mobile2Imsi")));
-        mobile2.setData(cursor.getInt(cursor.getColumnIndex("mobile2Data")) != 0);
-        mobile2.setIp(cursor.getString(cursor.getColumnIndex("mobile2Ip")));
-        mobile2.setState(cursor.getString(cursor.getColumnIndex("mobile2State")));
-        mobile2.setSimState(cursor.getString(cursor.getColumnIndex("mobile2SimState")));
-        mobile2.setTx(cursor.getLong(cursor.getColumnIndex("mobile2Tx")));
-        mobile2.setRx(cursor.getLong(cursor.getColumnIndex("mobile2Rx")));
-    }
-
     public long getId() {
         return _id;
     }
@@ -25,6 +25,8 @@ import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 public class DetailedInfoConfig {
     private Boolean sendData;
     private Integer intervalMins;
+    private Integer rollupWindowMins;
+    private Boolean sendRaw;
 
     public Boolean getSendData() {
         return sendData;
@@ -41,4 +43,20 @@ public class DetailedInfoConfig {
     public void setIntervalMins(Integer intervalMins) {
         this.intervalMins = intervalMins;
     }
+
+    public Integer getRollupWindowMins() {
+        return rollupWindowMins;
+    }
+
+    public void setRollupWindowMins(Integer rollupWindowMins) {
+        this.rollupWindowMins = rollupWindowMins;
+    }
+
+    public Boolean getSendRaw() {
+        return sendRaw;
+    }
+
+    public void setSendRaw(Boolean sendRaw) {
+        this.sendRaw = sendRaw;
+    }
 }
@@ -0,0 +1,170 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.json;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Summary of the telemetry samples in a time window, see TelemetryRollup.
+ * Numeric fields are summarized by statistics, categorical fields by the points where they change.
+ * Field names are the columns of InfoHistoryTable.
+ */
+@JsonIgnoreProperties( ignoreUnknown = true )
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class DetailedInfoRollup {
+    private long start;
+    private long end;
+    private int count;
+    private Map<String, Stats> fields = new LinkedHashMap<>();
+    private List<Change> changes = new LinkedList<>();
+
+    public DetailedInfoRollup() {
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public void setStart(long start) {
+        this.start = start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public void setEnd(long end) {
+        this.end = end;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    public Map<String, Stats> getFields() {
+        return fields;
+    }
+
+    public void setFields(Map<String, Stats> fields) {
+        this.fields = fields;
+    }
+
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(List<Change> changes) {
+        this.changes = changes;
+    }
+
+    @JsonIgnoreProperties( ignoreUnknown = true )
+    public static class Stats {
+        private double min;
+        private double max;
+        private double avg;
+        private double last;
+
+        public Stats() {
+        }
+
+        public double getMin() {
+            return min;
+        }
+
+        public void setMin(double min) {
+            this.min = min;
+        }
+
+        public double getMax() {
+            return max;
+        }
+
+        public void setMax(double max) {
+            this.max = max;
+        }
+
+        public double getAvg() {
+            return avg;
+        }
+
+        public void setAvg(double avg) {
+            this.avg = avg;
+        }
+
+        public double getLast() {
+            return last;
+        }
+
+        public void setLast(double last) {
+            this.last = last;
+        }
+    }
+
+    @JsonIgnoreProperties( ignoreUnknown = true )
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Change {
+        private long ts;
+        private String field;
+        private String value;
+
+        public Change() {
+        }
+
+        public Change(long ts, String field, String value) {
+            this.ts = ts;
+            this.field = field;
+            this.value = value;
+        }
+
+        public long getTs() {
+            return ts;
+        }
+
+        public void setTs(long ts) {
+            this.ts = ts;
+        }
+
+        public String getField() {
+            return field;
+        }
+
+        public void setField(String field) {
+            this.field = field;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        public void setValue(String value) {
+            this.value = value;
+        }
+    }
+}
@@ -24,6 +24,7 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 @JsonIgnoreProperties( ignoreUnknown = true )
 @JsonInclude(JsonInclude.Include.NON_NULL)
@@ -54,12 +55,16 @@ public class DeviceInfo {
     private String imsi2;
     private String cpu;
     private String serial;
+    private String locationMode;
 
     // These fields are reserved for custom builds of Brother Pharmach MDM
     private String custom1;
     private String custom2;
     private String custom3;
 
+    // Collected by DatabaseMaintenanceWorker
+    private List<Database> databases;
+
     public static class Location {
         private long ts;
         private double lat;
@@ -90,6 +95,55 @@ public class DeviceInfo {
         }
     }
 
+    @JsonIgnoreProperties( ignoreUnknown = true )
+    public static class Database {
+        private String name;
+        private long size;
+        private double freeRatio;
+        private Map<String, Long> rows;
+        private long ts;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public void setSize(long size) {
+            this.size = size;
+        }
+
+        public double getFreeRatio() {
+            return freeRatio;
+        }
+
+        public void setFreeRatio(double freeRatio) {
+            this.freeRatio = freeRatio;
+        }
+
+        public Map<String, Long> getRows() {
+            return rows;
+        }
+
+        public void setRows(Map<String, Long> rows) {
+            this.rows = rows;
+        }
+
+        public long getTs() {
+            return ts;
+        }
+
+        public void setTs(long ts) {
+            this.ts = ts;
+        }
+    }
+
     public DeviceInfo() {}
 
     public String getModel() {
@@ -315,4 +369,20 @@ public class DeviceInfo {
     public void setCustom3(String custom3) {
         this.custom3 = custom3;
     }
+
+    public String getLocationMode() {
+        return locationMode;
+    }
+
+    public void setLocationMode(String locationMode) {
+        this.locationMode = locationMode;
+    }
+
+    public List<Database> getDatabases() {
+        return databases;
+    }
+
+    public void setDatabases(List<Database> databases) {
+        this.databases = databases;
+    }
 }
@@ -19,9 +19,6 @@
 
 package com.brother.pharmach.mdm.launcher.json;
 
-import android.annotation.SuppressLint;
-import android.database.Cursor;
-
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 
@@ -49,17 +46,6 @@ public class Download {
         installed = download.installed;
     }
 
-    @SuppressLint("Range")
-    public Download(Cursor cursor) {
-        setId(cursor.getLong(cursor.getColumnIndex("_id")));
-        setUrl(cursor.getString(cursor.getColumnIndex("url")));
-        setPath(cursor.getString(cursor.getColumnIndex("path")));
-        setAttempts(cursor.getLong(cursor.getColumnIndex("attempts")));
-        setLastAttemptTime(cursor.getLong(cursor.getColumnIndex("lastAttemptTime")));
-        setDownloaded(cursor.getInt(cursor.getColumnIndex("downloaded")) != 0);
-        setInstalled(cursor.getInt(cursor.getColumnIndex("installed")) != 0);
-    }
-
     @JsonIgnore
     public long getId() {
         return _id;
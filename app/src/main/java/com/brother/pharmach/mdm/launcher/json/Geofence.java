@@ -0,0 +1,112 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.json;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * Circular geofence, the device reports entering and leaving it
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class Geofence {
+    private String id;
+    private String name;
+    private double lat;
+    private double lon;
+    // Meters
+    private double radius;
+
+    public Geofence() {
+    }
+
+    public Geofence(String id, double lat, double lon, double radius) {
+        this.id = id;
+        this.lat = lat;
+        this.lon = lon;
+        this.radius = radius;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public double getLat() {
+        return lat;
+    }
+
+    public void setLat(double lat) {
+        this.lat = lat;
+    }
+
+    public double getLon() {
+        return lon;
+    }
+
+    public void setLon(double lon) {
+        this.lon = lon;
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    public void setRadius(double radius) {
+        this.radius = radius;
+    }
+
+    // Geofences are equal if they produce the same events; the name is only displayed
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Geofence)) {
+            return false;
+        }
+        Geofence geofence = (Geofence) o;
+        return Double.compare(geofence.lat, lat) == 0 &&
+                Double.compare(geofence.lon, lon) == 0 &&
+                Double.compare(geofence.radius, radius) == 0 &&
+                (id != null ? id.equals(geofence.id) : geofence.id == null);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = id != null ? id.hashCode() : 0;
+        long bits = Double.doubleToLongBits(lat);
+        result = 31 * result + (int) (bits ^ (bits >>> 32));
+        bits = Double.doubleToLongBits(lon);
+        result = 31 * result + (int) (bits ^ (bits >>> 32));
+        bits = Double.doubleToLongBits(radius);
+        return 31 * result + (int) (bits ^ (bits >>> 32));
+    }
+}
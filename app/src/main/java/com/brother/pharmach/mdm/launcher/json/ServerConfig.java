@@ -109,6 +109,21 @@ public class ServerConfig {
     private String appName;
     private String vendor;
 
+    // Max uncompressed size of a remote log upload request, bytes
+    private Integer logUploadBytes;
+
+    // Max deviation of the simplified location track from the recorded one, meters
+    private Integer locationTolerance;
+
+    // If geofences are set, only entering and leaving them is reported, plus rare locations
+    private List<Geofence> geofences;
+    private Integer geofenceHeartbeatMins;
+
+    // If the server accepts partial device info, only changed sections are sent
+    private Boolean deviceInfoPartial;
+    private Integer deviceInfoBatteryThreshold;
+    private Integer deviceInfoLocationThreshold;
+
     private List<Application> applications = new LinkedList();
 
     private List<ApplicationSetting> applicationSettings = new LinkedList();
@@ -714,4 +729,60 @@ public class ServerConfig {
     public void setActions(List<Action> actions) {
         this.actions = actions;
     }
+
+    public Integer getLogUploadBytes() {
+        return logUploadBytes;
+    }
+
+    public void setLogUploadBytes(Integer logUploadBytes) {
+        this.logUploadBytes = logUploadBytes;
+    }
+
+    public Integer getLocationTolerance() {
+        return locationTolerance;
+    }
+
+    public void setLocationTolerance(Integer locationTolerance) {
+        this.locationTolerance = locationTolerance;
+    }
+
+    public List<Geofence> getGeofences() {
+        return geofences;
+    }
+
+    public void setGeofences(List<Geofence> geofences) {
+        this.geofences = geofences;
+    }
+
+    public Integer getGeofenceHeartbeatMins() {
+        return geofenceHeartbeatMins;
+    }
+
+    public void setGeofenceHeartbeatMins(Integer geofenceHeartbeatMins) {
+        this.geofenceHeartbeatMins = geofenceHeartbeatMins;
+    }
+
+    public Boolean getDeviceInfoPartial() {
+        return deviceInfoPartial;
+    }
+
+    public void setDeviceInfoPartial(Boolean deviceInfoPartial) {
+        this.deviceInfoPartial = deviceInfoPartial;
+    }
+
+    public Integer getDeviceInfoBatteryThreshold() {
+        return deviceInfoBatteryThreshold;
+    }
+
+    public void setDeviceInfoBatteryThreshold(Integer deviceInfoBatteryThreshold) {
+        this.deviceInfoBatteryThreshold = deviceInfoBatteryThreshold;
+    }
+
+    public Integer getDeviceInfoLocationThreshold() {
+        return deviceInfoLocationThreshold;
+    }
+
+    public void setDeviceInfoLocationThreshold(Integer deviceInfoLocationThreshold) {
+        this.deviceInfoLocationThreshold = deviceInfoLocationThreshold;
+    }
 }
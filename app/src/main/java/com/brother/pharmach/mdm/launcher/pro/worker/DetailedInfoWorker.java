@@ -23,29 +23,157 @@ import android.content.Intent;
 import android.os.AsyncTask;
 import android.os.Build;
 import android.content.Context;
+import android.location.Location;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
 
 import com.brother.pharmach.mdm.launcher.Const;
+import com.brother.pharmach.mdm.launcher.db.DatabaseHelper;
+import com.brother.pharmach.mdm.launcher.db.InfoHistoryTable;
+import com.brother.pharmach.mdm.launcher.db.LocationTable;
 import com.brother.pharmach.mdm.launcher.helper.SettingsHelper;
 import com.brother.pharmach.mdm.launcher.json.DetailedInfo;
-import com.brother.pharmach.mdm.launcher.json.DeviceInfo;
+import com.brother.pharmach.mdm.launcher.json.DetailedInfoConfig;
+import com.brother.pharmach.mdm.launcher.json.DetailedInfoConfigResponse;
 import com.brother.pharmach.mdm.launcher.server.ServerService;
 import com.brother.pharmach.mdm.launcher.server.ServerServiceKeeper;
 import com.brother.pharmach.mdm.launcher.service.LocationService;
-import com.brother.pharmach.mdm.launcher.util.DeviceInfoProvider;
+import com.brother.pharmach.mdm.launcher.util.DetailedInfoCollector;
+import com.brother.pharmach.mdm.launcher.util.LocationArbiter;
 import com.brother.pharmach.mdm.launcher.util.RemoteLogger;
+import com.brother.pharmach.mdm.launcher.worker.DetailedInfoChannel;
+import com.brother.pharmach.mdm.launcher.worker.LocationChannel;
 
-import java.util.Collections;
+import java.util.concurrent.TimeUnit;
 
-import okhttp3.ResponseBody;
 import retrofit2.Response;
 
 /**
- * These functions are available in Pro-version only
- * In a free version, the class contains stubs
+ * Telemetry sampler: collects the detailed device state at the interval set in the
+ * deviceinfo plugin settings. Each sample is posted to the database writer thread, so it survives
+ * a restart of the app; DetailedInfoChannel uploads the samples in large batches.
+ * The sampling rate is limited so the sampling cost stays within a budget per hour.
  */
-public class DetailedInfoWorker {
+public class DetailedInfoWorker extends Worker {
+
+    private static final int DEFAULT_INTERVAL_MINS = 15;
+
+    // Max total time spent on sampling per hour; the interval is increased if samples are expensive
+    private static final long SAMPLING_BUDGET_MS_PER_HOUR = 1000;
+
+    private static final String WORK_TAG_DETAILED_INFO = "com.brother.pharmach.mdm.launcher.WORK_TAG_DETAILED_INFO";
+
+    private static DetailedInfoCollector collector;
+
+    private Context context;
+
+    // Loads the sampling settings and starts or stops sampling
     public static void schedule(Context context) {
-        // stub
+        AsyncTask.execute(() -> updateSamplingConfig(context));
+    }
+
+    private static void updateSamplingConfig(Context context) {
+        SettingsHelper settingsHelper = SettingsHelper.getInstance(context);
+        if (settingsHelper.getDeviceId() == null || settingsHelper.getServerProject() == null) {
+            return;
+        }
+        ServerService serverService = ServerServiceKeeper.getServerServiceInstance(context);
+        DetailedInfoConfig oldConfig = settingsHelper.getDetailedInfoConfig();
+        DetailedInfoConfig config = null;
+        try {
+            Response<DetailedInfoConfigResponse> response = serverService.getDetailedInfoConfig(
+                    settingsHelper.getServerProject(), settingsHelper.getDeviceId()).execute();
+            if (response.isSuccessful() && response.body() != null &&
+                    Const.STATUS_OK.equals(response.body().getStatus())) {
+                config = response.body().getData();
+                settingsHelper.setDetailedInfoConfig(config);
+            } else {
+                // The plugin is not available, keep the saved settings
+                config = settingsHelper.getDetailedInfoConfig();
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            config = settingsHelper.getDetailedInfoConfig();
+        }
+
+        WorkManager workManager = WorkManager.getInstance(context.getApplicationContext());
+        if (config == null || config.getSendData() == null || !config.getSendData()) {
+            workManager.cancelUniqueWork(WORK_TAG_DETAILED_INFO);
+            return;
+        }
+        boolean changed = oldConfig == null || oldConfig.getSendData() == null || !oldConfig.getSendData() ||
+                getIntervalMins(oldConfig) != getIntervalMins(config);
+        Log.i(Const.LOG_TAG, "Detailed info sampling every " + getIntervalMins(config) + " min");
+        // The first sample is taken at once, the interval is applied to the next ones;
+        // the running schedule is kept unless the settings are changed
+        workManager.enqueueUniqueWork(WORK_TAG_DETAILED_INFO,
+                changed ? ExistingWorkPolicy.REPLACE : ExistingWorkPolicy.KEEP,
+                new OneTimeWorkRequest.Builder(DetailedInfoWorker.class)
+                        .addTag(Const.WORK_TAG_COMMON)
+                        .build());
+    }
+
+    private static int getIntervalMins(DetailedInfoConfig config) {
+        return config.getIntervalMins() != null && config.getIntervalMins() > 0 ?
+                config.getIntervalMins() : DEFAULT_INTERVAL_MINS;
+    }
+
+    public DetailedInfoWorker(
+            @NonNull Context context,
+            @NonNull WorkerParameters params) {
+        super(context, params);
+        this.context = context;
+    }
+
+    @Override
+    // This is running in a background thread by WorkManager
+    public Result doWork() {
+        DetailedInfoConfig config = SettingsHelper.getInstance(context).getDetailedInfoConfig();
+        if (config == null || config.getSendData() == null || !config.getSendData()) {
+            return Result.success();
+        }
+
+        DetailedInfo info;
+        long averageCostMs;
+        synchronized (DetailedInfoWorker.class) {
+            if (collector == null) {
+                collector = new DetailedInfoCollector(context);
+            }
+            info = collector.collect();
+            averageCostMs = collector.getAverageCostMs();
+            Log.d(Const.LOG_TAG, "Detailed info sampled: " + collector.getLastCostMs() + " ms, " +
+                    collector.getIpcCalls() + " IPC calls, average " + averageCostMs + " ms");
+        }
+
+        final DetailedInfo sample = info;
+        DatabaseHelper.instance(context).post(db -> {
+            InfoHistoryTable.insert(db, sample);
+            InfoHistoryTable.deleteOldItems(db);
+        });
+        DetailedInfoChannel.scheduleUpload(context);
+
+        // Expensive samples are taken less often than configured
+        long intervalMs = getIntervalMins(config) * 60000L;
+        long minIntervalMs = averageCostMs * 3600000L / SAMPLING_BUDGET_MS_PER_HOUR;
+        if (minIntervalMs > intervalMs) {
+            Log.w(Const.LOG_TAG, "Detailed info sampling costs " + averageCostMs + " ms, interval increased to " +
+                    (minIntervalMs / 1000) + " sec");
+            intervalMs = minIntervalMs;
+        }
+        // Appended work starts after this one is finished
+        WorkManager.getInstance(context.getApplicationContext())
+                .enqueueUniqueWork(WORK_TAG_DETAILED_INFO, ExistingWorkPolicy.APPEND_OR_REPLACE,
+                        new OneTimeWorkRequest.Builder(DetailedInfoWorker.class)
+                                .addTag(Const.WORK_TAG_COMMON)
+                                .setInitialDelay(intervalMs, TimeUnit.MILLISECONDS)
+                                .build());
+        return Result.success();
     }
 
     public static void requestConfigUpdate(Context context) {
@@ -62,9 +190,13 @@ public class DetailedInfoWorker {
                     "Failed to start location service for DeviceInfo refresh: " + e.getMessage());
         }
 
-        AsyncTask.execute(() -> uploadLatestKnownLocation(context));
+        AsyncTask.execute(() -> {
+            uploadLatestKnownLocation(context);
+            updateSamplingConfig(context);
+        });
     }
 
+    // The best known location is stored unless it's stored already, and uploaded with other locations
     private static void uploadLatestKnownLocation(Context context) {
         try {
             SettingsHelper settingsHelper = SettingsHelper.getInstance(context);
@@ -72,33 +204,16 @@ public class DetailedInfoWorker {
                 return;
             }
 
-            DeviceInfo.Location location = DeviceInfoProvider.getLocation(context);
+            Location location = LocationArbiter.getBestLocation(context);
             if (location == null) {
                 return;
             }
 
-            DetailedInfo detailedInfo = new DetailedInfo();
-            detailedInfo.setTs(location.getTs() > 0 ? location.getTs() : System.currentTimeMillis());
-
-            DetailedInfo.Gps gps = new DetailedInfo.Gps();
-            gps.setLat(location.getLat());
-            gps.setLon(location.getLon());
-            detailedInfo.setGps(gps);
-
-            ServerService serverService = ServerServiceKeeper.getServerServiceInstance(context);
-            ServerService secondaryServerService = ServerServiceKeeper.getSecondaryServerServiceInstance(context);
-
-            Response<ResponseBody> response = null;
-            try {
-                response = serverService.sendDetailedInfo(settingsHelper.getServerProject(),
-                        settingsHelper.getDeviceId(), Collections.singletonList(detailedInfo)).execute();
-            } catch (Exception ignored) {
-            }
-
-            if (response == null || !response.isSuccessful()) {
-                response = secondaryServerService.sendDetailedInfo(settingsHelper.getServerProject(),
-                        settingsHelper.getDeviceId(), Collections.singletonList(detailedInfo)).execute();
+            if (LocationArbiter.markStored(location)) {
+                LocationTable.Location dbLocation = new LocationTable.Location(location);
+                DatabaseHelper.instance(context).execute(db -> LocationTable.insert(db, dbLocation));
             }
+            LocationChannel.uploadNow(context);
         } catch (Exception e) {
             RemoteLogger.log(context, Const.LOG_WARN,
                     "Failed to upload latest DeviceInfo location: " + e.getMessage());
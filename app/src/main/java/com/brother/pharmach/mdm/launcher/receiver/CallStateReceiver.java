@@ -25,12 +25,7 @@ import android.content.Intent;
 import android.telephony.TelephonyManager;
 import android.util.Log;
 
-import androidx.work.OneTimeWorkRequest;
-import androidx.work.WorkManager;
-
-import com.brother.pharmach.mdm.launcher.worker.CallLogUploadWorker;
-
-import java.util.concurrent.TimeUnit;
+import com.brother.pharmach.mdm.launcher.worker.CallLogChannel;
 
 public class CallStateReceiver extends BroadcastReceiver {
     private static final String TAG = "CallStateReceiver";
@@ -57,16 +52,8 @@ public class CallStateReceiver extends BroadcastReceiver {
                 && state == TelephonyManager.CALL_STATE_IDLE) {
             // Call ended or missed call
             Log.i(TAG, "Call end/miss detected, scheduling call log upload");
-            scheduleUpload(context);
+            CallLogChannel.scheduleUpload(context);
         }
         lastState = state;
     }
-
-    private void scheduleUpload(Context context) {
-        // Schedule worker with a 5-second delay to ensure logs are written
-        OneTimeWorkRequest uploadWork = new OneTimeWorkRequest.Builder(CallLogUploadWorker.class)
-            .setInitialDelay(5, TimeUnit.SECONDS)
-            .build();
-        WorkManager.getInstance(context).enqueue(uploadWork);
-    }
 }
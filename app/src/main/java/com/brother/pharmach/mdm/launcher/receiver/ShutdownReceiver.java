@@ -31,5 +31,10 @@ public class ShutdownReceiver extends BroadcastReceiver {
     @Override
     public void onReceive(final Context context, final Intent intent) {
         RemoteLogger.log(context, Const.LOG_INFO, "Shutting down the device");
+        // Queued log items would be lost at power off, so store them right now.
+        // The writer may be busy (e.g. waiting for database maintenance), so neither the main thread
+        // nor the database writer thread waits for it
+        final PendingResult result = goAsync();
+        RemoteLogger.flushAsync(context, result::finish);
     }
 }
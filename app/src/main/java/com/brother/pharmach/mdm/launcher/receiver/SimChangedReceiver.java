@@ -32,6 +32,7 @@ public class SimChangedReceiver extends BroadcastReceiver {
     @Override
     public void onReceive(final Context context, final Intent intent) {
         // SIM card changed, log the new IMSI and number
+        DeviceInfoProvider.invalidateIdentifiers();
         String phoneNumber = null;
         try {
             phoneNumber = DeviceInfoProvider.getPhoneNumber(context);
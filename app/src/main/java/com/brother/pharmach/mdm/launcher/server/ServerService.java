@@ -20,19 +20,23 @@
 package com.brother.pharmach.mdm.launcher.server;
 
 
+import com.brother.pharmach.mdm.launcher.db.GeofenceEventTable;
 import com.brother.pharmach.mdm.launcher.db.LocationTable;
 import com.brother.pharmach.mdm.launcher.json.CallLogRecord;
 import com.brother.pharmach.mdm.launcher.json.DetailedInfo;
 import com.brother.pharmach.mdm.launcher.json.DetailedInfoConfigResponse;
 import com.brother.pharmach.mdm.launcher.json.DeviceEnrollOptions;
 import com.brother.pharmach.mdm.launcher.json.DeviceInfo;
+import com.brother.pharmach.mdm.launcher.json.LocationTrack;
 import com.brother.pharmach.mdm.launcher.json.PushResponse;
 import com.brother.pharmach.mdm.launcher.json.RemoteLogConfigResponse;
 import com.brother.pharmach.mdm.launcher.json.RemoteLogItem;
 import com.brother.pharmach.mdm.launcher.json.ServerConfigResponse;
 
 import java.util.List;
+import java.util.Map;
 
+import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.Body;
@@ -47,6 +51,8 @@ public interface ServerService {
 
     static final String REQUEST_SIGNATURE_HEADER = "X-Request-Signature";
     static final String CPU_ARCH_HEADER = "X-CPU-Arch";
+    static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+    static final String IF_NONE_MATCH_HEADER = "If-None-Match";
 
     @POST("{project}/rest/public/sync/configuration/{number}")
     Call<ResponseBody> enrollAndGetServerConfigRaw(@Path("project") String project,
@@ -55,11 +61,13 @@ public interface ServerService {
                                                    @Header(CPU_ARCH_HEADER) String cpuArch,
                                                    @Body DeviceEnrollOptions createOptions);
 
+    // ifNoneMatch is the ETag of the applied configuration or null, the server may respond 304
     @GET("{project}/rest/public/sync/configuration/{number}")
     Call<ResponseBody> getServerConfigRaw(@Path("project") String project,
                                           @Path("number") String number,
                                           @Header(REQUEST_SIGNATURE_HEADER) String signature,
-                                          @Header(CPU_ARCH_HEADER) String cpuArch);
+                                          @Header(CPU_ARCH_HEADER) String cpuArch,
+                                          @Header(IF_NONE_MATCH_HEADER) String ifNoneMatch);
 
     @POST("{project}/rest/public/sync/configuration/{number}")
     Call<ServerConfigResponse> enrollAndGetServerConfig(@Path("project") String project,
@@ -78,6 +86,10 @@ public interface ServerService {
     @Headers("Content-Type: application/json")
     Call<ResponseBody> sendDevice(@Path("project") String project, @Body DeviceInfo deviceInfo);
 
+    @POST("{project}/rest/public/sync/info")
+    @Headers("Content-Type: application/json")
+    Call<ResponseBody> sendDevicePartial(@Path("project") String project, @Body Map<String, Object> deviceInfo);
+
     @GET("{project}/rest/notifications/device/{number}")
     Call<PushResponse> queryPushNotifications(@Path("project") String project,
                                               @Path("number") String number,
@@ -95,14 +107,38 @@ public interface ServerService {
     @Headers("Content-Type: application/json")
     Call<ResponseBody> sendLogs(@Path("project") String project, @Path("number") String number, @Body List<RemoteLogItem> logItems);
 
+    // The body is streamed by the caller, contentEncoding is "gzip" or null
+    @POST("{project}/rest/plugins/devicelog/log/list/{number}")
+    Call<ResponseBody> sendLogsStream(@Path("project") String project, @Path("number") String number,
+                                      @Header(CONTENT_ENCODING_HEADER) String contentEncoding, @Body RequestBody logItems);
+
     @PUT("{project}/rest/plugins/deviceinfo/deviceinfo/public/{number}")
     @Headers("Content-Type: application/json")
     Call<ResponseBody> sendDetailedInfo(@Path("project") String project, @Path("number") String number, @Body List<DetailedInfo> infoItems);
 
+    // The body is serialized by the caller, contentEncoding is "gzip" or null
+    @PUT("{project}/rest/plugins/deviceinfo/deviceinfo/public/{number}")
+    Call<ResponseBody> sendDetailedInfoStream(@Path("project") String project, @Path("number") String number,
+                                              @Header(CONTENT_ENCODING_HEADER) String contentEncoding, @Body RequestBody infoItems);
+
+    // Same as above, the body is a list of DetailedInfoRollup
+    @PUT("{project}/rest/plugins/deviceinfo/deviceinfo/public/rollup/{number}")
+    Call<ResponseBody> sendDetailedInfoRollups(@Path("project") String project, @Path("number") String number,
+                                               @Header(CONTENT_ENCODING_HEADER) String contentEncoding, @Body RequestBody rollups);
+
     @PUT("{project}/rest/plugins/devicelocations/public/update/{number}")
     @Headers("Content-Type: application/json")
     Call<ResponseBody> sendLocations(@Path("project") String project, @Path("number") String number, @Body List<LocationTable.Location> locationItems);
 
+    // Compact alternative of sendDetailedInfo for locations; older servers respond 404
+    @PUT("{project}/rest/plugins/devicelocations/public/track/{number}")
+    @Headers("Content-Type: application/json")
+    Call<ResponseBody> sendLocationTrack(@Path("project") String project, @Path("number") String number, @Body LocationTrack track);
+
+    @PUT("{project}/rest/plugins/devicelocations/public/geofence/{number}")
+    @Headers("Content-Type: application/json")
+    Call<ResponseBody> sendGeofenceEvents(@Path("project") String project, @Path("number") String number, @Body List<GeofenceEventTable.Event> events);
+
     @GET( "{project}/rest/plugins/deviceinfo/deviceinfo-plugin-settings/device/{number}" )
     Call<DetailedInfoConfigResponse> getDetailedInfoConfig(@Path("project") String project, @Path("number") String number);
 
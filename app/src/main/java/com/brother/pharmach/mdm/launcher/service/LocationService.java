@@ -19,8 +19,6 @@
 
 package com.brother.pharmach.mdm.launcher.service;
 
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
 import android.Manifest;
 import android.annotation.SuppressLint;
 import android.app.Notification;
@@ -31,6 +29,10 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.content.pm.ServiceInfo;
+import android.hardware.Sensor;
+import android.hardware.SensorManager;
+import android.hardware.TriggerEvent;
+import android.hardware.TriggerEventListener;
 import android.location.GnssStatus;
 import android.location.Location;
 import android.location.LocationListener;
@@ -41,8 +43,6 @@ import android.os.Handler;
 import android.os.IBinder;
 import android.util.Log;
 
-import java.util.List;
-
 import androidx.annotation.NonNull;
 import androidx.core.app.ActivityCompat;
 import androidx.core.app.NotificationCompat;
@@ -51,26 +51,15 @@ import com.brother.pharmach.mdm.launcher.Const;
 import com.brother.pharmach.mdm.launcher.R;
 import com.brother.pharmach.mdm.launcher.db.DatabaseHelper;
 import com.brother.pharmach.mdm.launcher.db.LocationTable;
-import com.brother.pharmach.mdm.launcher.helper.SettingsHelper;
-import com.brother.pharmach.mdm.launcher.json.DetailedInfo;
 import com.brother.pharmach.mdm.launcher.pro.ProUtils;
-import com.brother.pharmach.mdm.launcher.server.ServerService;
-import com.brother.pharmach.mdm.launcher.server.ServerServiceKeeper;
+import com.brother.pharmach.mdm.launcher.util.GeofenceMonitor;
+import com.brother.pharmach.mdm.launcher.util.LocationArbiter;
+import com.brother.pharmach.mdm.launcher.util.LocationSampler;
 import com.brother.pharmach.mdm.launcher.util.RemoteLogger;
-
-import okhttp3.ResponseBody;
-import retrofit2.Response;
+import com.brother.pharmach.mdm.launcher.worker.LocationChannel;
 
 public class LocationService extends Service {
 
-    private boolean isNetworkConnected() {
-        ConnectivityManager cm = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);
-        if (cm == null)
-            return false;
-        NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
-        return activeNetwork != null && activeNetwork.isConnectedOrConnecting();
-    }
-
     private LocationManager locationManager;
 
     private static final int NOTIFICATION_ID = 112;
@@ -83,18 +72,23 @@ public class LocationService extends Service {
     boolean updateViaGps = false;
     boolean started = false;
 
-    private static final int LOCATION_UPDATE_INTERVAL = 60000;
+    private final LocationSampler sampler = new LocationSampler();
+
+    // Sampling mode of the running service, reported in the device info
+    private static volatile String samplingMode;
+
+    private SensorManager sensorManager;
+    private TriggerEventListener motionListener = null;
 
     // Use different location listeners for GPS and Network
     // Not sure what happens if we share the same listener for both providers
     private LocationListener gpsLocationListener = new LocationListener() {
         @Override
         public void onLocationChanged(Location location) {
-            // Do nothing here: we use getLastKnownLocation() to determine the location!
             // Toast.makeText(LocationService.this, "Location updated from GPS",
             // Toast.LENGTH_SHORT).show();
-            RemoteLogger.log(LocationService.this, Const.LOG_VERBOSE, "GPS location update: lat="
-                    + location.getLatitude() + ", lon=" + location.getLongitude());
+            RemoteLogger.log(LocationService.this, Const.LOG_VERBOSE, "GPS location update: lat={}, lon={}",
+                    location.getLatitude(), location.getLongitude());
             ProUtils.processLocation(LocationService.this, location, LocationManager.GPS_PROVIDER);
             processLocation(location);
         }
@@ -114,11 +108,10 @@ public class LocationService extends Service {
     private LocationListener networkLocationListener = new LocationListener() {
         @Override
         public void onLocationChanged(Location location) {
-            // Do nothing here: we use getLastKnownLocation() to determine the location!
             // Toast.makeText(LocationService.this, "Location updated from Network",
             // Toast.LENGTH_SHORT).show();
-            RemoteLogger.log(LocationService.this, Const.LOG_VERBOSE, "Network location update: lat="
-                    + location.getLatitude() + ", lon=" + location.getLongitude());
+            RemoteLogger.log(LocationService.this, Const.LOG_VERBOSE, "Network location update: lat={}, lon={}",
+                    location.getLatitude(), location.getLongitude());
             ProUtils.processLocation(LocationService.this, location, LocationManager.NETWORK_PROVIDER);
             processLocation(location);
         }
@@ -143,6 +136,19 @@ public class LocationService extends Service {
     public void onCreate() {
         super.onCreate();
         locationManager = (LocationManager) this.getSystemService(LOCATION_SERVICE);
+        sensorManager = (SensorManager) this.getSystemService(SENSOR_SERVICE);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+            motionListener = new TriggerEventListener() {
+                @Override
+                public void onTrigger(TriggerEvent event) {
+                    // The trigger is one-shot, it is requested again in the stationary mode
+                    RemoteLogger.log(LocationService.this, Const.LOG_VERBOSE, "Significant motion detected");
+                    sampler.onMotion();
+                    requestLocationUpdates();
+                }
+            };
+        }
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
             gnssStatusCallback = new GnssStatus.Callback() {
@@ -169,81 +175,41 @@ public class LocationService extends Service {
         }
     }
 
+    public static String getSamplingMode() {
+        return samplingMode;
+    }
+
     private void processLocation(Location location) {
         if (location == null)
             return;
 
-        new Thread(() -> {
-            // 1. Save to DB
-            LocationTable.Location dbLocation = new LocationTable.Location(location);
-            LocationTable.insert(DatabaseHelper.instance(this).getWritableDatabase(), dbLocation);
-
-            // 2. Try to upload immediately
-            sendLocations();
-        }).start();
-    }
-
-    private synchronized void sendLocations() {
-        Context context = this;
-        // Check if we have internet
-        if (!isNetworkConnected()) {
+        if (!LocationArbiter.offer(location)) {
+            // Another provider has given a better fix recently
             return;
         }
 
-        List<LocationTable.Location> locations = LocationTable
-                .select(DatabaseHelper.instance(context).getReadableDatabase(), 50);
-        if (locations.isEmpty()) {
-            return;
+        String mode = sampler.getMode();
+        boolean store = sampler.onFix(location.getLatitude(), location.getLongitude(),
+                location.hasAccuracy() ? location.getAccuracy() : 0, location.getTime());
+        if (!mode.equals(sampler.getMode())) {
+            RemoteLogger.log(this, Const.LOG_DEBUG, "Location sampling mode: {}", sampler.getMode());
+            requestLocationUpdates();
         }
-
-        SettingsHelper settingsHelper = SettingsHelper.getInstance(context);
-        String deviceId = settingsHelper.getDeviceId();
-        String project = settingsHelper.getServerProject();
-
-        if (deviceId == null || project == null)
+        if (GeofenceMonitor.isEnabled(this)) {
+            // Only geofence transitions and heartbeats are stored
+            store = GeofenceMonitor.onFix(this, location.getLatitude(), location.getLongitude(), location.getTime());
+        }
+        if (!store) {
+            // The device hasn't moved enough since the last stored fix
             return;
-
-        ServerService serverService = ServerServiceKeeper.getServerServiceInstance(context);
-        try {
-            // Convert LocationTable.Location to DetailedInfo (DeviceDynamicInfo) for Open
-            // Source server compatibility
-            List<DetailedInfo> detailedInfos = new java.util.LinkedList<>();
-            for (LocationTable.Location loc : locations) {
-                DetailedInfo detailedInfo = new DetailedInfo();
-                detailedInfo.setTs(loc.getTs());
-
-                DetailedInfo.Gps gps = new DetailedInfo.Gps();
-                gps.setLat(loc.getLat());
-                gps.setLon(loc.getLon());
-                // gps.setAlt(loc.getAlt());
-                // gps.setSpeed(loc.getSpeed());
-                // gps.setCourse(loc.getCourse());
-                // gps.setState(loc.getState());
-                // gps.setProvider(loc.getProvider());
-
-                detailedInfo.setGps(gps);
-                detailedInfos.add(detailedInfo);
-            }
-
-            // Use sendDetailedInfo instead of sendLocations
-            Response<ResponseBody> response = serverService.sendDetailedInfo(project, deviceId, detailedInfos)
-                    .execute();
-            if (response.isSuccessful()) {
-                // Remove uploaded items
-                LocationTable.delete(DatabaseHelper.instance(context).getWritableDatabase(), locations);
-
-                // If there are more, send recursively (or next loop)
-                if (locations.size() == 50) {
-                    sendLocations();
-                }
-            } else {
-                RemoteLogger.log(context, Const.LOG_WARN,
-                        "Failed to send locations: " + response.code() + " " + response.message());
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-            RemoteLogger.log(context, Const.LOG_WARN, "Exception sending locations: " + e.getMessage());
         }
+
+        // Fixes are stored in order by the database writer thread; the upload of a burst
+        // of fixes is coalesced by the outbox
+        LocationArbiter.markStored(location);
+        LocationTable.Location dbLocation = new LocationTable.Location(location);
+        DatabaseHelper.instance(this).post(db -> LocationTable.insert(db, dbLocation));
+        LocationChannel.scheduleUpload(this);
     }
 
     @SuppressLint("WrongConstant")
@@ -290,19 +256,27 @@ public class LocationService extends Service {
         boolean gpsEnabled = locationManager.isProviderEnabled(LocationManager.GPS_PROVIDER);
         boolean networkEnabled = locationManager.isProviderEnabled(LocationManager.NETWORK_PROVIDER);
         boolean passiveEnabled = locationManager.isProviderEnabled(LocationManager.PASSIVE_PROVIDER);
-        RemoteLogger.log(this, Const.LOG_VERBOSE,
-                "Request location updates. gps=" + gpsEnabled + ", network=" + networkEnabled + ", passive="
-                        + passiveEnabled);
+        RemoteLogger.log(this, Const.LOG_VERBOSE, "Request location updates. gps={}, network={}, passive={}",
+                gpsEnabled, networkEnabled, passiveEnabled);
+
+        // A stationary device is sampled rarely, and by the network provider only if possible
+        boolean stationary = LocationSampler.MODE_STATIONARY.equals(sampler.getMode());
+        int interval = sampler.getInterval();
+        if (stationary && networkEnabled) {
+            gpsEnabled = false;
+        }
+        samplingMode = sampler.getMode();
 
         locationManager.removeUpdates(networkLocationListener);
         locationManager.removeUpdates(gpsLocationListener);
+        setMotionListenerEnabled(stationary);
         try {
             if (networkEnabled) {
-                locationManager.requestLocationUpdates(LocationManager.NETWORK_PROVIDER, LOCATION_UPDATE_INTERVAL, 0,
+                locationManager.requestLocationUpdates(LocationManager.NETWORK_PROVIDER, interval, 0,
                         networkLocationListener);
             }
             if (gpsEnabled) {
-                locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, LOCATION_UPDATE_INTERVAL, 0,
+                locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, interval, 0,
                         gpsLocationListener);
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && gnssStatusCallback != null) {
                     locationManager.registerGnssStatusCallback(gnssStatusCallback, handler);
@@ -318,8 +292,25 @@ public class LocationService extends Service {
         return true;
     }
 
+    // The significant motion sensor wakes up the stationary device without location sampling
+    private void setMotionListenerEnabled(boolean enabled) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN_MR2 || sensorManager == null || motionListener == null) {
+            return;
+        }
+        Sensor sensor = sensorManager.getDefaultSensor(Sensor.TYPE_SIGNIFICANT_MOTION);
+        if (sensor == null) {
+            return;
+        }
+        sensorManager.cancelTriggerSensor(motionListener, sensor);
+        if (enabled) {
+            sensorManager.requestTriggerSensor(motionListener, sensor);
+        }
+    }
+
     @Override
     public void onDestroy() {
+        setMotionListenerEnabled(false);
+        samplingMode = null;
         if (locationManager != null) {
             locationManager.removeUpdates(networkLocationListener);
             locationManager.removeUpdates(gpsLocationListener);
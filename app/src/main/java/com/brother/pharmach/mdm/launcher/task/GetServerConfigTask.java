@@ -37,9 +37,12 @@ import com.brother.pharmach.mdm.launcher.pro.ProUtils;
 import com.brother.pharmach.mdm.launcher.server.ServerService;
 import com.brother.pharmach.mdm.launcher.server.ServerServiceKeeper;
 import com.brother.pharmach.mdm.launcher.util.AppRestrictionUpdater;
+import com.brother.pharmach.mdm.launcher.util.ConfigChangeDetector;
+import com.brother.pharmach.mdm.launcher.util.DeviceInfoProvider;
 import com.brother.pharmach.mdm.launcher.util.PushNotificationMqttWrapper;
 import com.brother.pharmach.mdm.launcher.util.RemoteLogger;
 import com.brother.pharmach.mdm.launcher.util.Utils;
+import com.brother.pharmach.mdm.launcher.worker.OutboxWorker;
 
 import okhttp3.ResponseBody;
 import retrofit2.Response;
@@ -62,6 +65,10 @@ public class GetServerConfigTask extends AsyncTask< Void, Integer, Integer > {
     // This is the only application error which requires reporting in the background
     private String notFoundError = "error.notfound.device";
 
+    private ConfigChangeDetector changeDetector;
+    // Set if the server response repeats the applied configuration
+    private boolean notModified;
+
     public GetServerConfigTask( Context context ) {
         this.context = context;
         this.settingsHelper = SettingsHelper.getInstance( context );
@@ -81,6 +88,9 @@ public class GetServerConfigTask extends AsyncTask< Void, Integer, Integer > {
             enrollOptions.setCustomer(settingsHelper.getEnrollOptionCustomer());
             enrollOptions.setConfiguration(settingsHelper.getEnrollOptionConfigName());
             enrollOptions.setGroups(settingsHelper.getEnrollOptionGroup());
+            changeDetector = new ConfigChangeDetector(null, null);
+        } else {
+            changeDetector = new ConfigChangeDetector(settingsHelper.getConfigEtag(), settingsHelper.getConfigHash());
         }
 
         try {
@@ -99,6 +109,7 @@ public class GetServerConfigTask extends AsyncTask< Void, Integer, Integer > {
         }
 
         isDeviceNotFound = false;
+        notModified = false;
         try {
             ServerConfig serverConfig = null;
             if (enrollOptions == null) {
@@ -111,7 +122,10 @@ public class GetServerConfigTask extends AsyncTask< Void, Integer, Integer > {
                         enrollPlain(deviceId, enrollOptions, signature);
             }
 
-            if (serverConfig != null) {
+            if (notModified) {
+                // Fast path: no need to parse and apply the same configuration again
+                Log.d(Const.LOG_TAG, "Configuration not modified");
+            } else if (serverConfig != null) {
                 if (serverConfig.getNewNumber() != null) {
                     RemoteLogger.log(context, Const.LOG_INFO, "Device number changed from " + settingsHelper.getDeviceId() + " to " + serverConfig.getNewNumber());
                     settingsHelper.setDeviceId(serverConfig.getNewNumber());
@@ -122,7 +136,8 @@ public class GetServerConfigTask extends AsyncTask< Void, Integer, Integer > {
                     }
                 }
 
-                settingsHelper.updateConfig(serverConfig);
+                settingsHelper.updateConfig(serverConfig, changeDetector.getEtag(), changeDetector.getHash());
+                DeviceInfoProvider.invalidateIdentifiers();
                 if (Utils.isDeviceOwner(context)) {
                     AppRestrictionUpdater.updateAppRestrictions(context, serverConfig.getApplicationSettings());
                 }
@@ -132,29 +147,32 @@ public class GetServerConfigTask extends AsyncTask< Void, Integer, Integer > {
                 settingsHelper.setEnrollOptionCustomer(null);
                 settingsHelper.setEnrollOptionConfigName(null);
                 settingsHelper.setEnrollOptionGroup(null);
+            } else {
+                return isDeviceNotFound ? Const.TASK_ERROR : Const.TASK_NETWORK_ERROR;
+            }
 
-                // User-friendly error report if a content app in kiosk mode is not set
-                if (ProUtils.kioskModeRequired(context) &&
-                        (settingsHelper.getConfig().getMainApp() == null || settingsHelper.getConfig().getMainApp().trim().equals(""))) {
-                    throw new Exception("Content app in kiosk mode is not set");
-                }
+            // User-friendly error report if a content app in kiosk mode is not set
+            if (ProUtils.kioskModeRequired(context) &&
+                    (settingsHelper.getConfig().getMainApp() == null || settingsHelper.getConfig().getMainApp().trim().equals(""))) {
+                throw new Exception("Content app in kiosk mode is not set");
+            }
 
-                // Prevent from occasional launch in the kiosk mode without any possibility to exit!
-                if (ProUtils.kioskModeRequired(context) &&
-                        !context.getPackageName().equals(settingsHelper.getConfig().getMainApp()) &&
-                        Build.VERSION.SDK_INT >= Build.VERSION_CODES.M &&
-                        !Settings.canDrawOverlays(context) && !BuildConfig.ENABLE_KIOSK_WITHOUT_OVERLAYS) {
-                        RemoteLogger.log(context, Const.LOG_WARN, "Kiosk mode disabled: no permission to draw over other windows.");
-                        settingsHelper.getConfig().setKioskMode(false);
-                        settingsHelper.updateConfig(settingsHelper.getConfig());
-                }
+            // Prevent from occasional launch in the kiosk mode without any possibility to exit!
+            if (ProUtils.kioskModeRequired(context) &&
+                    !context.getPackageName().equals(settingsHelper.getConfig().getMainApp()) &&
+                    Build.VERSION.SDK_INT >= Build.VERSION_CODES.M &&
+                    !Settings.canDrawOverlays(context) && !BuildConfig.ENABLE_KIOSK_WITHOUT_OVERLAYS) {
+                    RemoteLogger.log(context, Const.LOG_WARN, "Kiosk mode disabled: no permission to draw over other windows.");
+                    settingsHelper.getConfig().setKioskMode(false);
+                    settingsHelper.updateConfig(settingsHelper.getConfig());
+            }
 
+            if (!notModified) {
                 ProUtils.processConfig(context, serverConfig);
-
-                return Const.TASK_SUCCESS;
-            } else {
-                return isDeviceNotFound ? Const.TASK_ERROR : Const.TASK_NETWORK_ERROR;
             }
+            OutboxWorker.onNetworkActivity(context);
+
+            return notModified ? Const.TASK_NOT_MODIFIED : Const.TASK_SUCCESS;
         } catch ( Exception e ) {
             e.printStackTrace();
             buildNetworkErrorText(e.getMessage());
@@ -164,40 +182,73 @@ public class GetServerConfigTask extends AsyncTask< Void, Integer, Integer > {
     }
 
     private ServerConfig getServerConfigPlain(String deviceId, String signature) throws Exception {
-        Response<ServerConfigResponse> response = null;
+        Response<ResponseBody> response = null;
         try {
             serverHost = settingsHelper.getBaseUrl();
-            response = serverService.getServerConfig(settingsHelper.getServerProject(),
-                    deviceId, signature, Build.CPU_ABI).execute();
+            response = serverService.getServerConfigRaw(settingsHelper.getServerProject(),
+                    deviceId, signature, Build.CPU_ABI, changeDetector.getIfNoneMatch()).execute();
         } catch (Exception e) {
             e.printStackTrace();
         }
 
         if (response == null) {
             serverHost = settingsHelper.getSecondaryBaseUrl();
-            response = secondaryServerService.getServerConfig(settingsHelper.getServerProject(),
-                    deviceId, signature, Build.CPU_ABI).execute();
+            response = secondaryServerService.getServerConfigRaw(settingsHelper.getServerProject(),
+                    deviceId, signature, Build.CPU_ABI, changeDetector.getIfNoneMatch()).execute();
         }
 
-        if (response.isSuccessful() && Const.STATUS_OK.equals(response.body().getStatus()) && response.body().getData() != null) {
-            SettingsHelper.getInstance(context).setExternalIp(response.headers().get(Const.HEADER_IP_ADDRESS));
-            return response.body().getData();
+        if (response.code() == ConfigChangeDetector.HTTP_NOT_MODIFIED && isUnchanged(response, null)) {
+            return null;
+        }
+
+        if (response.isSuccessful()) {
+            // The body is read as a string to compare it with the applied configuration before parsing
+            String serverResponse = response.body().string();
+            if (isUnchanged(response, serverResponse)) {
+                return null;
+            }
+
+            ServerConfigResponse serverConfigResponse;
+            try {
+                serverConfigResponse = new ObjectMapper().readValue(serverResponse, ServerConfigResponse.class);
+            } catch (Exception e) {
+                errorText = "Failed to parse JSON";
+                Log.e(Const.LOG_TAG, errorText);
+                buildTaskErrorTextSecure(response, serverResponse);
+                return null;
+            }
+
+            if (Const.STATUS_OK.equals(serverConfigResponse.getStatus()) && serverConfigResponse.getData() != null) {
+                SettingsHelper.getInstance(context).setExternalIp(response.headers().get(Const.HEADER_IP_ADDRESS));
+                return serverConfigResponse.getData();
+            }
+            isDeviceNotFound = notFoundError.equals(serverConfigResponse.getMessage());
+            buildTaskErrorTextSecure(response, serverResponse);
         } else {
-            isDeviceNotFound = response.body() != null && notFoundError.equals(response.body().getMessage());
-            buildTaskErrorText(response);
+            buildTaskErrorTextSecure(response, null);
         }
         return null;
     }
 
+    // Sets notModified if the response repeats the applied configuration, body is null if not read
+    private boolean isUnchanged(Response<ResponseBody> response, String body) {
+        notModified = changeDetector.isUnchanged(response.code(), response.headers().get(Const.HEADER_ETAG), body);
+        if (notModified && response.headers().get(Const.HEADER_IP_ADDRESS) != null) {
+            settingsHelper.setExternalIp(response.headers().get(Const.HEADER_IP_ADDRESS));
+        }
+        return notModified;
+    }
+
     // Check server signature before accepting server response
     // This is an additional protection against Man-In-The-Middle attacks
     private ServerConfig getServerConfigSecure(String deviceId, String signature) throws Exception {
         Response<ResponseBody> response = null;
 
         try {
+            // No If-None-Match: a 304 response has no body, so it couldn't be checked by the signature
             serverHost = settingsHelper.getBaseUrl();
             response = serverService.getServerConfigRaw(settingsHelper.getServerProject(),
-                    deviceId, signature, Build.CPU_ABI).execute();
+                    deviceId, signature, Build.CPU_ABI, null).execute();
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -205,11 +256,15 @@ public class GetServerConfigTask extends AsyncTask< Void, Integer, Integer > {
         if (response == null) {
             serverHost = settingsHelper.getSecondaryBaseUrl();
             response = secondaryServerService.getServerConfigRaw(settingsHelper.getServerProject(),
-                    deviceId, signature, Build.CPU_ABI).execute();
+                    deviceId, signature, Build.CPU_ABI, null).execute();
         }
 
         if (response.isSuccessful()) {
             String serverResponse = response.body().string();
+            // The applied configuration has passed the signature check
+            if (isUnchanged(response, serverResponse)) {
+                return null;
+            }
 
             ServerConfigResponse serverConfigResponse;
             try {
@@ -27,6 +27,8 @@ import com.brother.pharmach.mdm.launcher.helper.SettingsHelper;
 import com.brother.pharmach.mdm.launcher.json.DeviceInfo;
 import com.brother.pharmach.mdm.launcher.server.ServerService;
 import com.brother.pharmach.mdm.launcher.server.ServerServiceKeeper;
+import com.brother.pharmach.mdm.launcher.worker.DeviceInfoChannel;
+import com.brother.pharmach.mdm.launcher.worker.OutboxWorker;
 
 import okhttp3.ResponseBody;
 import retrofit2.Response;
@@ -58,6 +60,9 @@ public class SendDeviceInfoTask extends AsyncTask< DeviceInfo, Integer, Integer
                 response = secondaryServerService.sendDevice(settingsHelper.getServerProject(), info[0]).execute();
             }
             if ( response.isSuccessful() ) {
+                settingsHelper.setDeviceInfoSentTime(System.currentTimeMillis());
+                DeviceInfoChannel.acknowledge(context, info[0]);
+                OutboxWorker.onNetworkActivity(context);
                 return Const.TASK_SUCCESS;
             }
         }
@@ -1,11 +1,11 @@
 package com.brother.pharmach.mdm.launcher.ui;
 
 import android.content.Context;
-import android.content.pm.ApplicationInfo;
 
 import com.brother.pharmach.mdm.launcher.helper.SettingsHelper;
 import com.brother.pharmach.mdm.launcher.json.Application;
 import com.brother.pharmach.mdm.launcher.util.AppInfo;
+import com.brother.pharmach.mdm.launcher.util.PackageIndex;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -29,18 +29,15 @@ public class AppShortcutManager {
         Map<String, Application> requiredPackages = new HashMap();
         Map<String, Application> requiredLinks = new HashMap();
         getConfiguredApps(context, bottom, requiredPackages, requiredLinks);
-        List<ApplicationInfo> packs = context.getPackageManager().getInstalledApplications(0);
-        if (packs == null) {
-            return requiredLinks.size();
-        }
+        List<PackageIndex.Entry> packs = PackageIndex.getAll(context);
         // Calculate applications
         int packageCount = 0;
         for (int i = 0; i < packs.size(); i++) {
-            ApplicationInfo p = packs.get(i);
+            PackageIndex.Entry p = packs.get(i);
             if ("com.android.settings".equals(p.packageName))
                 continue;
 
-            if (context.getPackageManager().getLaunchIntentForPackage(p.packageName) != null) {
+            if (p.launchable) {
                 if (requiredPackages.containsKey(p.packageName)) {
                     packageCount++;
                 } else if (!bottom
@@ -58,24 +55,21 @@ public class AppShortcutManager {
         getConfiguredApps(context, bottom, requiredPackages, requiredLinks);
 
         List<AppInfo> appInfos = new ArrayList<>();
-        List<ApplicationInfo> packs = context.getPackageManager().getInstalledApplications(0);
-        if (packs == null) {
-            return new ArrayList<AppInfo>();
-        }
+        List<PackageIndex.Entry> packs = PackageIndex.getAll(context);
         // First we display app icons
         for (int i = 0; i < packs.size(); i++) {
-            ApplicationInfo p = packs.get(i);
+            PackageIndex.Entry p = packs.get(i);
             if ("com.android.settings".equals(p.packageName))
                 continue;
 
-            if (context.getPackageManager().getLaunchIntentForPackage(p.packageName) != null) {
+            if (p.launchable) {
                 if (requiredPackages.containsKey(p.packageName)) {
                     Application app = requiredPackages.get(p.packageName);
                     AppInfo newInfo = new AppInfo();
                     newInfo.type = AppInfo.TYPE_APP;
                     newInfo.keyCode = app.getKeyCode();
                     newInfo.name = app.getIconText() != null ? app.getIconText()
-                            : p.loadLabel(context.getPackageManager()).toString();
+                            : p.getLabel(context);
                     newInfo.packageName = p.packageName;
                     newInfo.iconUrl = app.getIcon();
                     newInfo.screenOrder = app.getScreenOrder();
@@ -85,7 +79,7 @@ public class AppShortcutManager {
                         && com.brother.pharmach.mdm.launcher.util.WorkTimeManager.getInstance().isAppAllowed(p.packageName)) {
                     AppInfo newInfo = new AppInfo();
                     newInfo.type = AppInfo.TYPE_APP;
-                    newInfo.name = p.loadLabel(context.getPackageManager()).toString();
+                    newInfo.name = p.getLabel(context);
                     newInfo.packageName = p.packageName;
                     appInfos.add(newInfo);
                 }
@@ -119,7 +119,7 @@ import com.brother.pharmach.mdm.launcher.util.PreferenceLogger;
 import com.brother.pharmach.mdm.launcher.util.RemoteLogger;
 import com.brother.pharmach.mdm.launcher.util.SystemUtils;
 import com.brother.pharmach.mdm.launcher.util.Utils;
-import com.brother.pharmach.mdm.launcher.worker.SendDeviceInfoWorker;
+import com.brother.pharmach.mdm.launcher.worker.OutboxWorker;
 import com.jakewharton.picasso.OkHttp3Downloader;
 import com.squareup.picasso.NetworkPolicy;
 import com.squareup.picasso.Picasso;
@@ -688,7 +688,7 @@ public class MainActivity
         startService(new Intent(MainActivity.this, PluginApiService.class));
 
         // Send pending logs to server
-        RemoteLogger.resetState();
+        RemoteLogger.resetState(MainActivity.this);
         RemoteLogger.sendLogsToServer(MainActivity.this);
     }
 
@@ -1959,7 +1959,7 @@ public class MainActivity
             return;
         }
         sendDeviceInfoScheduled = true;
-        SendDeviceInfoWorker.scheduleDeviceInfoSending(this);
+        OutboxWorker.start(this);
     }
 
     private void scheduleInstalledAppsRun() {
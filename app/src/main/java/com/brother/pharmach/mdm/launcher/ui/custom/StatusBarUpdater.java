@@ -2,14 +2,13 @@ package com.brother.pharmach.mdm.launcher.ui.custom;
 
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.os.BatteryManager;
-import android.os.Build;
 import android.os.Handler;
 import android.view.View;
 import android.widget.TextView;
 
 import com.brother.pharmach.mdm.launcher.R;
+import com.brother.pharmach.mdm.launcher.util.BatteryStateMonitor;
 
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -37,11 +36,7 @@ public class StatusBarUpdater {
         String currentTime = timeFormat.format(new Date());
         clockView.setText(currentTime);
 
-        IntentFilter ifilter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
-
-        Intent batteryStatus = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O ?
-                context.registerReceiver(null, ifilter, Context.RECEIVER_EXPORTED) :
-                context.registerReceiver(null, ifilter);
+        Intent batteryStatus = BatteryStateMonitor.getBatteryStatus(context);
         int status = batteryStatus.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
         if (status == BatteryManager.BATTERY_STATUS_CHARGING ||
                 status == BatteryManager.BATTERY_STATUS_FULL) {
@@ -0,0 +1,57 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+
+/**
+ * Keeps the latest battery state. The receiver is registered once per process,
+ * so reading the state doesn't require an IPC call each time.
+ */
+public class BatteryStateMonitor {
+
+    private static Intent batteryStatus;
+    private static BroadcastReceiver receiver;
+
+    public static synchronized Intent getBatteryStatus(Context context) {
+        if (receiver == null) {
+            receiver = new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    synchronized (BatteryStateMonitor.class) {
+                        batteryStatus = intent;
+                    }
+                }
+            };
+            IntentFilter ifilter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+            // The broadcast is sticky, so the current state is returned at once
+            // The application context is used because receivers can't be registered from other receivers
+            Context appContext = context.getApplicationContext();
+            batteryStatus = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O ?
+                    appContext.registerReceiver(receiver, ifilter, Context.RECEIVER_EXPORTED) :
+                    appContext.registerReceiver(receiver, ifilter);
+        }
+        return batteryStatus;
+    }
+}
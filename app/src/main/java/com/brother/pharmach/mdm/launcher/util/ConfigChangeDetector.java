@@ -0,0 +1,80 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import com.brother.pharmach.mdm.launcher.helper.CryptoHelper;
+
+/**
+ * Detects configuration responses repeating the applied configuration, so the launcher
+ * can skip parsing and applying them.
+ * The request contains If-None-Match with the ETag of the applied configuration, and
+ * the server may answer 304 Not Modified. If the server doesn't support ETags,
+ * the response body is compared with the applied one by its hash.
+ */
+public class ConfigChangeDetector {
+
+    public static final int HTTP_NOT_MODIFIED = 304;
+
+    private final String appliedEtag;
+    private final String appliedHash;
+
+    private String etag;
+    private String hash;
+
+    // Arguments are null if there's no applied configuration
+    public ConfigChangeDetector(String appliedEtag, String appliedHash) {
+        this.appliedEtag = appliedHash != null ? appliedEtag : null;
+        this.appliedHash = appliedHash;
+    }
+
+    // Value of the If-None-Match header, null if the header should not be sent
+    public String getIfNoneMatch() {
+        return appliedEtag;
+    }
+
+    /**
+     * Checks the response, body is null if not read (for example, for 304 responses).
+     * Returns true if the response repeats the applied configuration
+     */
+    public boolean isUnchanged(int code, String etag, String body) {
+        if (code == HTTP_NOT_MODIFIED) {
+            this.etag = appliedEtag;
+            this.hash = appliedHash;
+            return appliedEtag != null;
+        }
+        this.etag = etag;
+        this.hash = body != null ? getHash(body) : null;
+        return hash != null && hash.equals(appliedHash);
+    }
+
+    // ETag of the checked response
+    public String getEtag() {
+        return etag;
+    }
+
+    // Hash of the checked response
+    public String getHash() {
+        return hash;
+    }
+
+    public static String getHash(String body) {
+        return CryptoHelper.getMD5String(body);
+    }
+}
@@ -19,15 +19,17 @@
 
 package com.brother.pharmach.mdm.launcher.util;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.math.BigInteger;
-import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 public class CryptoUtils {
+    // Large files are read by chunks of this size
+    private static final int BUFFER_SIZE = 65536;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
     public static String calculateChecksum(InputStream fileContent) {
         // Calculate checksum
         MessageDigest md = null;
@@ -37,34 +39,25 @@ public class CryptoUtils {
             e.printStackTrace();
             return null;
         }
-        try (InputStream is = new BufferedInputStream(fileContent);
-             DigestInputStream dis = new DigestInputStream(is, md)) {
-            /* Read decorated stream (dis) to EOF as normal... */
-            int b;
-            while ((b = dis.read()) != -1) {
-                // digest will consume the content when read() called
+        try (InputStream is = fileContent) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int length;
+            while ((length = is.read(buffer)) != -1) {
+                md.update(buffer, 0, length);
             }
         } catch (IOException e) {
             e.printStackTrace();
             return null;
         }
 
-        // to calculate message digest of the input string
-        // returned as array of byte
+        // Convert message digest into hex value, 32 digits with preceding 0s
         byte[] digest = md.digest();
-
-        // Convert byte array into signum representation
-        BigInteger no = new BigInteger(1, digest);
-
-        // Convert message digest into hex value
-        String hashtext = no.toString(16);
-
-        // Add preceding 0s to make it 32 bit
-        while (hashtext.length() < 32) {
-            hashtext = "0" + hashtext;
+        char[] hashtext = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hashtext[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0x0f];
+            hashtext[i * 2 + 1] = HEX_DIGITS[digest[i] & 0x0f];
         }
-
-        return hashtext;
+        return new String(hashtext);
     }
 
 }
@@ -0,0 +1,319 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import android.annotation.SuppressLint;
+import android.app.ActivityManager;
+import android.app.KeyguardManager;
+import android.bluetooth.BluetoothAdapter;
+import android.content.Context;
+import android.content.Intent;
+import android.location.Location;
+import android.location.LocationManager;
+import android.media.AudioManager;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.net.TrafficStats;
+import android.net.wifi.WifiInfo;
+import android.net.wifi.WifiManager;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.telephony.CellSignalStrength;
+import android.telephony.SignalStrength;
+import android.telephony.TelephonyManager;
+
+import com.brother.pharmach.mdm.launcher.Const;
+import com.brother.pharmach.mdm.launcher.json.DetailedInfo;
+
+import java.util.List;
+
+/**
+ * Collects the detailed device state for the telemetry. System services are obtained once,
+ * slow identifiers are taken from the cache of DeviceInfoProvider, and the battery state
+ * from the sticky broadcast, so a sample costs about a dozen IPC calls.
+ * Each sample is timed; the average cost is used to limit the sampling rate.
+ */
+public class DetailedInfoCollector {
+    // Weight of the last sample in the average cost
+    private static final double COST_SMOOTHING = 0.2;
+
+    private final Context context;
+    private final ConnectivityManager connectivityManager;
+    private final WifiManager wifiManager;
+    private final TelephonyManager telephonyManager;
+    private final LocationManager locationManager;
+    private final KeyguardManager keyguardManager;
+    private final AudioManager audioManager;
+    private final ActivityManager activityManager;
+    private final ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+
+    private int maxRingVolume = -1;
+
+    // Traffic counters of the previous sample, to report the traffic between samples
+    private long lastMobileTx = -1;
+    private long lastMobileRx = -1;
+    private long lastWifiTx = -1;
+    private long lastWifiRx = -1;
+
+    // Cost statistics
+    private int ipcCalls;
+    private long lastCostNanos;
+    private double averageCostNanos;
+
+    public DetailedInfoCollector(Context context) {
+        this.context = context.getApplicationContext();
+        connectivityManager = (ConnectivityManager) this.context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        wifiManager = (WifiManager) this.context.getSystemService(Context.WIFI_SERVICE);
+        telephonyManager = (TelephonyManager) this.context.getSystemService(Context.TELEPHONY_SERVICE);
+        locationManager = (LocationManager) this.context.getSystemService(Context.LOCATION_SERVICE);
+        keyguardManager = (KeyguardManager) this.context.getSystemService(Context.KEYGUARD_SERVICE);
+        audioManager = (AudioManager) this.context.getSystemService(Context.AUDIO_SERVICE);
+        activityManager = (ActivityManager) this.context.getSystemService(Context.ACTIVITY_SERVICE);
+    }
+
+    public DetailedInfo collect() {
+        long start = System.nanoTime();
+        ipcCalls = 0;
+
+        DetailedInfo info = new DetailedInfo();
+        info.setTs(System.currentTimeMillis());
+
+        NetworkInfo activeNetwork = null;
+        try {
+            ipcCalls++;
+            activeNetwork = connectivityManager.getActiveNetworkInfo();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        boolean wifiConnected = activeNetwork != null && activeNetwork.isConnected() &&
+                activeNetwork.getType() == ConnectivityManager.TYPE_WIFI;
+
+        // Traffic counters are read from procfs, not by IPC; they are negative if unsupported
+        long mobileTx = Math.max(TrafficStats.getMobileTxBytes(), 0);
+        long mobileRx = Math.max(TrafficStats.getMobileRxBytes(), 0);
+        long wifiTx = Math.max(TrafficStats.getTotalTxBytes() - mobileTx, 0);
+        long wifiRx = Math.max(TrafficStats.getTotalRxBytes() - mobileRx, 0);
+
+        info.setDevice(collectDevice(wifiConnected));
+        info.setWifi(collectWifi(wifiConnected, wifiTx, wifiRx));
+        info.setGps(collectGps(info.getDevice().getGps()));
+        info.setMobile(collectMobile(mobileTx, mobileRx));
+        if (info.getWifi() != null) {
+            info.getDevice().setIp(info.getWifi().getIp());
+        }
+
+        lastMobileTx = mobileTx;
+        lastMobileRx = mobileRx;
+        lastWifiTx = wifiTx;
+        lastWifiRx = wifiRx;
+
+        lastCostNanos = System.nanoTime() - start;
+        averageCostNanos = averageCostNanos == 0 ? lastCostNanos :
+                averageCostNanos * (1 - COST_SMOOTHING) + lastCostNanos * COST_SMOOTHING;
+        return info;
+    }
+
+    public int getIpcCalls() {
+        return ipcCalls;
+    }
+
+    public long getLastCostMs() {
+        return lastCostNanos / 1000000;
+    }
+
+    public long getAverageCostMs() {
+        return (long) (averageCostNanos / 1000000);
+    }
+
+    private DetailedInfo.Device collectDevice(boolean wifiConnected) {
+        DetailedInfo.Device device = new DetailedInfo.Device();
+
+        Intent batteryStatus = BatteryStateMonitor.getBatteryStatus(context);
+        if (batteryStatus != null) {
+            int level = batteryStatus.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = batteryStatus.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            if (level >= 0 && scale > 0) {
+                device.setBatteryLevel(level * 100 / scale);
+            }
+            int chargePlug = batteryStatus.getIntExtra(BatteryManager.EXTRA_PLUGGED, -1);
+            device.setBatteryCharging(chargePlug == BatteryManager.BATTERY_PLUGGED_USB ? Const.DEVICE_CHARGING_USB :
+                    chargePlug == BatteryManager.BATTERY_PLUGGED_AC ? Const.DEVICE_CHARGING_AC : "");
+        }
+
+        try {
+            ipcCalls++;
+            device.setWifi(wifiConnected || (wifiManager != null && wifiManager.isWifiEnabled()));
+            ipcCalls++;
+            device.setGps(locationManager != null && locationManager.isProviderEnabled(LocationManager.GPS_PROVIDER));
+            if (keyguardManager != null) {
+                ipcCalls++;
+                device.setKeyguard(keyguardManager.isKeyguardLocked());
+            }
+            if (audioManager != null) {
+                if (maxRingVolume < 0) {
+                    ipcCalls++;
+                    maxRingVolume = audioManager.getStreamMaxVolume(AudioManager.STREAM_RING);
+                }
+                ipcCalls++;
+                int volume = audioManager.getStreamVolume(AudioManager.STREAM_RING);
+                device.setRingVolume(maxRingVolume > 0 ? volume * 100 / maxRingVolume : volume);
+            }
+            ipcCalls++;
+            device.setMobileData(Utils.isMobileDataEnabled(context));
+            BluetoothAdapter bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
+            if (bluetoothAdapter != null) {
+                ipcCalls++;
+                device.setBluetooth(bluetoothAdapter.isEnabled());
+            }
+            if (activityManager != null) {
+                ipcCalls++;
+                activityManager.getMemoryInfo(memoryInfo);
+                device.setMemoryAvailable((int) (memoryInfo.availMem / 1048576));
+                device.setMemoryTotal((int) (memoryInfo.totalMem / 1048576));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return device;
+    }
+
+    private DetailedInfo.Wifi collectWifi(boolean wifiConnected, long tx, long rx) {
+        DetailedInfo.Wifi wifi = new DetailedInfo.Wifi();
+        if (wifiConnected && wifiManager != null) {
+            try {
+                ipcCalls++;
+                WifiInfo wifiInfo = wifiManager.getConnectionInfo();
+                if (wifiInfo != null) {
+                    wifi.setRssi(wifiInfo.getRssi());
+                    String ssid = wifiInfo.getSSID();
+                    if (ssid != null) {
+                        wifi.setSsid(ssid.replace("\"", ""));
+                    }
+                    wifi.setState(wifiInfo.getSupplicantState() != null ? wifiInfo.getSupplicantState().name() : null);
+                    int ip = wifiInfo.getIpAddress();
+                    if (ip != 0) {
+                        wifi.setIp((ip & 0xff) + "." + ((ip >> 8) & 0xff) + "." + ((ip >> 16) & 0xff) + "." + ((ip >> 24) & 0xff));
+                    }
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        } else {
+            wifi.setState("DISCONNECTED");
+        }
+        if (lastWifiTx >= 0 && tx >= lastWifiTx && rx >= lastWifiRx) {
+            wifi.setTx(tx - lastWifiTx);
+            wifi.setRx(rx - lastWifiRx);
+        }
+        return wifi;
+    }
+
+    private DetailedInfo.Gps collectGps(Boolean enabled) {
+        DetailedInfo.Gps gps = new DetailedInfo.Gps();
+        gps.setState(enabled != null && enabled ? "on" : "off");
+        // The arbiter only queries the system when there is no fresh fix
+        Location location = LocationArbiter.getBestLocation(context);
+        if (location != null) {
+            gps.setProvider(location.getProvider());
+            gps.setLat(location.getLatitude());
+            gps.setLon(location.getLongitude());
+            if (location.hasAltitude()) {
+                gps.setAlt(location.getAltitude());
+            }
+            if (location.hasSpeed()) {
+                gps.setSpeed((double) location.getSpeed());
+            }
+            if (location.hasBearing()) {
+                gps.setCourse((double) location.getBearing());
+            }
+        }
+        return gps;
+    }
+
+    @SuppressLint("MissingPermission")
+    private DetailedInfo.Mobile collectMobile(long tx, long rx) {
+        DetailedInfo.Mobile mobile = new DetailedInfo.Mobile();
+        if (telephonyManager == null) {
+            return mobile;
+        }
+        try {
+            ipcCalls++;
+            int simState = telephonyManager.getSimState();
+            mobile.setSimState(getSimStateName(simState));
+            if (simState == TelephonyManager.SIM_STATE_READY) {
+                ipcCalls++;
+                mobile.setCarrier(telephonyManager.getNetworkOperatorName());
+                ipcCalls++;
+                int dataState = telephonyManager.getDataState();
+                mobile.setData(dataState == TelephonyManager.DATA_CONNECTED);
+                mobile.setState(getDataStateName(dataState));
+                // Cached, no IPC calls unless the SIM card is changed
+                mobile.setNumber(DeviceInfoProvider.getPhoneNumber(context, 0));
+                mobile.setImsi(DeviceInfoProvider.getImsi(context, 0));
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                    ipcCalls++;
+                    SignalStrength signalStrength = telephonyManager.getSignalStrength();
+                    if (signalStrength != null) {
+                        List<CellSignalStrength> strengths = signalStrength.getCellSignalStrengths();
+                        if (!strengths.isEmpty()) {
+                            mobile.setRssi(strengths.get(0).getDbm());
+                        }
+                    }
+                }
+            }
+        } catch (Exception e) {
+            // No permission
+            e.printStackTrace();
+        }
+        if (lastMobileTx >= 0 && tx >= lastMobileTx && rx >= lastMobileRx) {
+            mobile.setTx(tx - lastMobileTx);
+            mobile.setRx(rx - lastMobileRx);
+        }
+        return mobile;
+    }
+
+    private static String getSimStateName(int simState) {
+        switch (simState) {
+            case TelephonyManager.SIM_STATE_ABSENT:
+                return "ABSENT";
+            case TelephonyManager.SIM_STATE_READY:
+                return "READY";
+            case TelephonyManager.SIM_STATE_PIN_REQUIRED:
+            case TelephonyManager.SIM_STATE_PUK_REQUIRED:
+            case TelephonyManager.SIM_STATE_NETWORK_LOCKED:
+                return "LOCKED";
+            default:
+                return "UNKNOWN";
+        }
+    }
+
+    private static String getDataStateName(int dataState) {
+        switch (dataState) {
+            case TelephonyManager.DATA_CONNECTED:
+                return "CONNECTED";
+            case TelephonyManager.DATA_CONNECTING:
+                return "CONNECTING";
+            case TelephonyManager.DATA_SUSPENDED:
+                return "SUSPENDED";
+            default:
+                return "DISCONNECTED";
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import com.brother.pharmach.mdm.launcher.json.Application;
+import com.brother.pharmach.mdm.launcher.json.DeviceInfo;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits the device info into sections and compares them with the last acknowledged ones.
+ * A section is represented by its fingerprint: the hash of its canonical JSON form,
+ * or the raw value for the battery level and location which change by small drifts
+ * and are compared with a threshold.
+ */
+public class DeviceInfoDiff {
+
+    public static final String SECTION_PERMISSIONS = "permissions";
+    public static final String SECTION_APPLICATIONS = "applications";
+    public static final String SECTION_FILES = "files";
+    public static final String SECTION_IDENTITY = "identity";
+    public static final String SECTION_STATE = "state";
+    public static final String SECTION_BATTERY = "battery";
+    public static final String SECTION_LOCATION = "location";
+    public static final String SECTION_DATABASES = "databases";
+
+    public static final int DEFAULT_BATTERY_THRESHOLD = 5;
+    public static final int DEFAULT_LOCATION_THRESHOLD_M = 100;
+
+    private static final ObjectMapper CANONICAL_MAPPER = new ObjectMapper()
+            .configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true)
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    private final Map<String, Map<String, Object>> sections;
+    private final Map<String, String> fingerprints = new HashMap<>();
+
+    public DeviceInfoDiff(DeviceInfo info) {
+        sections = getSections(info);
+        for (Map.Entry<String, Map<String, Object>> section : sections.entrySet()) {
+            fingerprints.put(section.getKey(), getFingerprint(section.getKey(), section.getValue(), info));
+        }
+    }
+
+    public Map<String, String> getFingerprints() {
+        return fingerprints;
+    }
+
+    /**
+     * Returns the sections which differ from the acknowledged fingerprints
+     */
+    public List<String> getChangedSections(Map<String, String> acknowledged, int batteryThreshold, int locationThreshold) {
+        List<String> changed = new LinkedList<>();
+        for (Map.Entry<String, String> entry : fingerprints.entrySet()) {
+            String section = entry.getKey();
+            String current = entry.getValue();
+            String previous = acknowledged != null ? acknowledged.get(section) : null;
+            if (current == null ? previous == null : current.equals(previous)) {
+                continue;
+            }
+            if (current != null && previous != null) {
+                try {
+                    if (SECTION_BATTERY.equals(section) &&
+                            Math.abs(Integer.parseInt(current) - Integer.parseInt(previous)) < batteryThreshold) {
+                        continue;
+                    }
+                    if (SECTION_LOCATION.equals(section)) {
+                        String[] c = current.split(",");
+                        String[] p = previous.split(",");
+                        if (LocationSampler.distance(Double.parseDouble(c[0]), Double.parseDouble(c[1]),
+                                Double.parseDouble(p[0]), Double.parseDouble(p[1])) < locationThreshold) {
+                            continue;
+                        }
+                    }
+                } catch (Exception e) {
+                    // Malformed saved value, consider changed
+                }
+            }
+            changed.add(section);
+        }
+        return changed;
+    }
+
+    /**
+     * Returns the payload with the specified sections only
+     */
+    public Map<String, Object> getPartialInfo(String deviceId, List<String> changed) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("deviceId", deviceId);
+        result.put("partial", true);
+        result.put("sections", changed);
+        for (String section : changed) {
+            result.putAll(sections.get(section));
+        }
+        return result;
+    }
+
+    private static Map<String, Map<String, Object>> getSections(DeviceInfo info) {
+        Map<String, Map<String, Object>> sections = new HashMap<>();
+
+        Map<String, Object> permissions = new LinkedHashMap<>();
+        permissions.put("permissions", info.getPermissions());
+        sections.put(SECTION_PERMISSIONS, permissions);
+
+        // The order of applications doesn't matter
+        List<Application> sortedApps = new ArrayList<>(info.getApplications());
+        Collections.sort(sortedApps, new Comparator<Application>() {
+            @Override
+            public int compare(Application a, Application b) {
+                return String.valueOf(a.getPkg()).compareTo(String.valueOf(b.getPkg()));
+            }
+        });
+        Map<String, Object> applications = new LinkedHashMap<>();
+        applications.put("applications", sortedApps);
+        sections.put(SECTION_APPLICATIONS, applications);
+
+        Map<String, Object> files = new LinkedHashMap<>();
+        files.put("files", info.getFiles());
+        sections.put(SECTION_FILES, files);
+
+        Map<String, Object> identity = new LinkedHashMap<>();
+        identity.put("model", info.getModel());
+        identity.put("phone", info.getPhone());
+        identity.put("imei", info.getImei());
+        identity.put("iccid", info.getIccid());
+        identity.put("imsi", info.getImsi());
+        identity.put("phone2", info.getPhone2());
+        identity.put("imei2", info.getImei2());
+        identity.put("iccid2", info.getIccid2());
+        identity.put("imsi2", info.getImsi2());
+        identity.put("cpu", info.getCpu());
+        identity.put("serial", info.getSerial());
+        identity.put("androidVersion", info.getAndroidVersion());
+        identity.put("custom1", info.getCustom1());
+        identity.put("custom2", info.getCustom2());
+        identity.put("custom3", info.getCustom3());
+        sections.put(SECTION_IDENTITY, identity);
+
+        Map<String, Object> state = new LinkedHashMap<>();
+        state.put("mdmMode", info.isMdmMode());
+        state.put("kioskMode", info.isKioskMode());
+        state.put("batteryCharging", info.isBatteryCharging());
+        state.put("factoryReset", info.getFactoryReset());
+        state.put("launcherType", info.getLauncherType());
+        state.put("launcherPackage", info.getLauncherPackage());
+        state.put("defaultLauncher", info.isDefaultLauncher());
+        state.put("locationMode", info.getLocationMode());
+        sections.put(SECTION_STATE, state);
+
+        Map<String, Object> battery = new LinkedHashMap<>();
+        battery.put("batteryLevel", info.getBatteryLevel());
+        sections.put(SECTION_BATTERY, battery);
+
+        Map<String, Object> location = new LinkedHashMap<>();
+        location.put("location", info.getLocation());
+        sections.put(SECTION_LOCATION, location);
+
+        Map<String, Object> databases = new LinkedHashMap<>();
+        databases.put("databases", info.getDatabases());
+        sections.put(SECTION_DATABASES, databases);
+
+        return sections;
+    }
+
+    private static String getFingerprint(String section, Map<String, Object> values, DeviceInfo info) {
+        if (SECTION_BATTERY.equals(section)) {
+            return Integer.toString(info.getBatteryLevel());
+        }
+        if (SECTION_LOCATION.equals(section)) {
+            DeviceInfo.Location location = info.getLocation();
+            return location != null ? location.getLat() + "," + location.getLon() : null;
+        }
+        if (SECTION_DATABASES.equals(section)) {
+            // The time of the statistics changes on each maintenance run, the statistics may not
+            values = getDatabaseValues(info.getDatabases());
+        }
+        try {
+            return CryptoUtils.calculateChecksum(new ByteArrayInputStream(CANONICAL_MAPPER.writeValueAsBytes(values)));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static Map<String, Object> getDatabaseValues(List<DeviceInfo.Database> databases) {
+        List<Map<String, Object>> list = new ArrayList<>();
+        if (databases != null) {
+            for (DeviceInfo.Database database : databases) {
+                Map<String, Object> values = new LinkedHashMap<>();
+                values.put("name", database.getName());
+                values.put("size", database.getSize());
+                values.put("freeRatio", database.getFreeRatio());
+                values.put("rows", database.getRows());
+                list.add(values);
+            }
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("databases", list);
+        return result;
+    }
+}
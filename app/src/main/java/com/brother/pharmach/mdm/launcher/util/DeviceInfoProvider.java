@@ -22,11 +22,7 @@ package com.brother.pharmach.mdm.launcher.util;
 import android.annotation.SuppressLint;
 import android.content.Context;
 import android.content.Intent;
-import android.content.IntentFilter;
-import android.content.pm.PackageInfo;
-import android.content.pm.PackageManager;
 import android.location.Location;
-import android.location.LocationManager;
 import android.os.BatteryManager;
 import android.os.Build;
 import android.os.Environment;
@@ -44,15 +40,29 @@ import com.brother.pharmach.mdm.launcher.json.Application;
 import com.brother.pharmach.mdm.launcher.json.DeviceInfo;
 import com.brother.pharmach.mdm.launcher.json.RemoteFile;
 import com.brother.pharmach.mdm.launcher.pro.ProUtils;
+import com.brother.pharmach.mdm.launcher.service.LocationService;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class DeviceInfoProvider {
+    // Missing identifiers (no SIM card or no permission) are queried again after this period
+    private static final long MISSING_IDENTIFIER_RECHECK_MS = 3600000L;
+
+    private interface IdentifierQuery {
+        String query();
+    }
+
+    private static final Map<String, String> identifiers = new HashMap<>();
+    private static final Map<String, Long> missingIdentifiers = new HashMap<>();
+    private static long identifiersGeneration = 0;
+
     public static DeviceInfo getDeviceInfo(Context context, boolean queryPermissions, boolean queryApps) {
         DeviceInfo deviceInfo = new DeviceInfo();
         List<Integer> permissions = deviceInfo.getPermissions();
@@ -70,34 +80,25 @@ public class DeviceInfoProvider {
 
         SettingsHelper config = SettingsHelper.getInstance(context);
         if (queryApps) {
-            PackageManager packageManager = context.getPackageManager();
             if (config.getConfig() != null) {
                 List<Application> requiredApps = SettingsHelper.getInstance(context).getConfig().getApplications();
+                // Verify there's no duplicates (due to different versions in config), otherwise it causes an error on the server
+                Set<String> addedPackages = new HashSet<>();
                 for (Application application : requiredApps) {
                     if (application.isRemove()) {
                         continue;
                     }
-                    try {
-                        PackageInfo packageInfo = packageManager.getPackageInfo(application.getPkg(), 0);
-
+                    PackageIndex.Entry packageEntry = PackageIndex.get(context, application.getPkg());
+                    if (packageEntry == null) {
+                        // Application not installed
+                        continue;
+                    }
+                    if (addedPackages.add(packageEntry.packageName.toLowerCase())) {
                         Application installedApp = new Application();
                         installedApp.setName(application.getName());
-                        installedApp.setPkg(packageInfo.packageName);
-                        installedApp.setVersion(packageInfo.versionName);
-
-                        // Verify there's no duplicates (due to different versions in config), otherwise it causes an error on the server
-                        boolean appPresents = false;
-                        for (Application a : applications) {
-                            if (a.getPkg().equalsIgnoreCase(installedApp.getPkg())) {
-                                appPresents = true;
-                                break;
-                            }
-                        }
-                        if (!appPresents) {
-                            applications.add(installedApp);
-                        }
-                    } catch (PackageManager.NameNotFoundException e) {
-                        // Application not installed
+                        installedApp.setPkg(packageEntry.packageName);
+                        installedApp.setVersion(packageEntry.versionName);
+                        applications.add(installedApp);
                     }
                 }
 
@@ -112,11 +113,11 @@ public class DeviceInfoProvider {
                         } else {
                             // How could that happen? The database entry should exist for each file
                             // Let's recalculate the checksum to check if the file matches
-                            try {
+                            String checksum = FileChecksumCache.getChecksum(context, file);
+                            if (checksum != null) {
                                 RemoteFile copy = new RemoteFile(remoteFile);
-                                copy.setChecksum(CryptoUtils.calculateChecksum(new FileInputStream(file)));
+                                copy.setChecksum(checksum);
                                 files.add(copy);
-                            } catch (FileNotFoundException e) {
                             }
                         }
                     }
@@ -139,11 +140,7 @@ public class DeviceInfoProvider {
         deviceInfo.setImei(imei);
 
         // Battery
-        IntentFilter ifilter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
-
-        Intent batteryStatus = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O ?
-                context.registerReceiver(null, ifilter, Context.RECEIVER_EXPORTED) :
-                context.registerReceiver(null, ifilter);
+        Intent batteryStatus = BatteryStateMonitor.getBatteryStatus(context);
         int status = batteryStatus.getIntExtra(BatteryManager.EXTRA_STATUS, -1);
         if (status == BatteryManager.BATTERY_STATUS_CHARGING ||
                 status == BatteryManager.BATTERY_STATUS_FULL) {
@@ -166,6 +163,7 @@ public class DeviceInfoProvider {
 
         deviceInfo.setAndroidVersion(Build.VERSION.RELEASE);
         deviceInfo.setLocation(getLocation(context));
+        deviceInfo.setLocationMode(LocationService.getSamplingMode());
         deviceInfo.setMdmMode(Utils.isDeviceOwner(context));
         deviceInfo.setKioskMode(ProUtils.isKioskModeRunning(context));
         deviceInfo.setLauncherType(Utils.getLauncherVariant());
@@ -187,50 +185,105 @@ public class DeviceInfoProvider {
         deviceInfo.setCustom2(config.getUserCustom2());
         deviceInfo.setCustom3(config.getUserCustom3());
 
+        deviceInfo.setDatabases(config.getDatabaseStats());
+
         return deviceInfo;
     }
 
     @SuppressWarnings({"MissingPermission"})
     public static DeviceInfo.Location getLocation(Context context) {
-        try {
-            LocationManager locationManager = (LocationManager)context.getSystemService(Context.LOCATION_SERVICE);
-            Location lastLocationGps = locationManager.getLastKnownLocation(LocationManager.GPS_PROVIDER);
-            Location lastLocationNetwork = locationManager.getLastKnownLocation(LocationManager.NETWORK_PROVIDER);
-
-            if (lastLocationGps != null || lastLocationNetwork != null) {
+        Location lastLocation = LocationArbiter.getBestLocation(context);
+        if (lastLocation == null) {
+            return null;
+        }
+        DeviceInfo.Location location = new DeviceInfo.Location();
+        location.setLat(lastLocation.getLatitude());
+        location.setLon(lastLocation.getLongitude());
+        location.setTs(lastLocation.getTime());
+        return location;
+    }
 
-                DeviceInfo.Location location = new DeviceInfo.Location();
+    /**
+     * Identifiers are cached in memory: querying them takes several IPC calls per request.
+     * The cache is empty after the boot, and is invalidated when the SIM card
+     * or the configuration (which may grant the phone permission) is changed.
+     */
+    public static void invalidateIdentifiers() {
+        synchronized (identifiers) {
+            identifiers.clear();
+            missingIdentifiers.clear();
+            identifiersGeneration++;
+        }
+    }
 
-                Location lastLocation;
-                if (lastLocationGps == null || (lastLocationGps.getLatitude() == 0 && lastLocationGps.getLongitude() == 0)) {
-                    lastLocation = lastLocationNetwork;
-                } else if (lastLocationNetwork == null || (lastLocationNetwork.getLatitude() == 0 && lastLocationNetwork.getLongitude() == 0)) {
-                    lastLocation = lastLocationGps;
+    private static String getCachedIdentifier(String key, IdentifierQuery query) {
+        long generation;
+        synchronized (identifiers) {
+            if (identifiers.containsKey(key)) {
+                return identifiers.get(key);
+            }
+            Long missingTime = missingIdentifiers.get(key);
+            if (missingTime != null && System.currentTimeMillis() - missingTime < MISSING_IDENTIFIER_RECHECK_MS) {
+                return null;
+            }
+            generation = identifiersGeneration;
+        }
+        String value = query.query();
+        synchronized (identifiers) {
+            // Do not save the value obtained before invalidation
+            if (generation == identifiersGeneration) {
+                if (value != null && !value.equals("")) {
+                    identifiers.put(key, value);
                 } else {
-                    // Get the latest location as the best one
-                    if (lastLocationGps.getTime() >= lastLocationNetwork.getTime()) {
-                        lastLocation = lastLocationGps;
-                    } else {
-                        lastLocation = lastLocationNetwork;
-                    }
+                    missingIdentifiers.put(key, System.currentTimeMillis());
                 }
-
-                if (lastLocation.getLatitude() == 0 && lastLocation.getLongitude() == 0) {
-                    return null;
-                }
-
-                location.setLat(lastLocation.getLatitude());
-                location.setLon(lastLocation.getLongitude());
-                location.setTs(lastLocation.getTime());
-                return location;
             }
-        } catch (Exception e) {
         }
-        return null;
+        return value;
     }
 
-    @SuppressLint("MissingPermission")
     public static String getSerialNumber() {
+        return getCachedIdentifier("serial", () -> querySerialNumber());
+    }
+
+    public static String getPhoneNumber(Context context) {
+        return getCachedIdentifier("phone", () -> queryPhoneNumber(context));
+    }
+
+    public static String getIccid(Context context) {
+        return getCachedIdentifier("iccid", () -> queryIccid(context));
+    }
+
+    public static String getImsi(Context context) {
+        return getCachedIdentifier("imsi", () -> queryImsi(context));
+    }
+
+    public static String getImsi(Context context, int slot) {
+        return getCachedIdentifier("imsi" + slot, () -> queryImsi(context, slot));
+    }
+
+    public static String getPhoneNumber(Context context, int slot) {
+        return getCachedIdentifier("phone" + slot, () -> queryPhoneNumber(context, slot));
+    }
+
+    public static String getIccid(Context context, int slot) {
+        return getCachedIdentifier("iccid" + slot, () -> queryIccid(context, slot));
+    }
+
+    public static String getImei(Context context) {
+        return getCachedIdentifier("imei", () -> queryImei(context));
+    }
+
+    public static String getImei(Context context, int slot) {
+        return getCachedIdentifier("imei" + slot, () -> queryImei(context, slot));
+    }
+
+    public static String getMacAddress() {
+        return getCachedIdentifier("mac", () -> queryMacAddress());
+    }
+
+    @SuppressLint("MissingPermission")
+    private static String querySerialNumber() {
         String serialNumber = null;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
             try {
@@ -258,7 +311,7 @@ public class DeviceInfoProvider {
     }
 
     @SuppressLint( { "MissingPermission" } )
-    public static String getPhoneNumber(Context context) {
+    private static String queryPhoneNumber(Context context) {
         try {
             TelephonyManager tMgr = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
             if (tMgr == null) {
@@ -272,7 +325,7 @@ public class DeviceInfoProvider {
     }
 
     @SuppressLint( { "MissingPermission" } )
-    public static String getIccid(Context context) {
+    private static String queryIccid(Context context) {
         try {
             TelephonyManager tMgr = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
             if (tMgr == null) {
@@ -285,7 +338,7 @@ public class DeviceInfoProvider {
     }
 
     @SuppressLint( { "MissingPermission" } )
-    public static String getImsi(Context context) {
+    private static String queryImsi(Context context) {
         try {
             TelephonyManager tMgr = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
             if (tMgr == null) {
@@ -298,7 +351,7 @@ public class DeviceInfoProvider {
     }
 
     @SuppressLint( { "MissingPermission" } )
-    public static String getImsi(Context context, int slot) {
+    private static String queryImsi(Context context, int slot) {
         String imsi = null;
         try {
             TelephonyManager telephonyManager = (TelephonyManager)context.getSystemService(Context.TELEPHONY_SERVICE);
@@ -315,12 +368,12 @@ public class DeviceInfoProvider {
     }
 
     @SuppressLint( { "MissingPermission" } )
-    public static String getPhoneNumber(Context context, int slot) {
+    private static String queryPhoneNumber(Context context, int slot) {
         try {
             Utils.autoGrantPhonePermission(context);
             if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP_MR1) {
                 if (slot == 0) {
-                    return getPhoneNumber(context);
+                    return queryPhoneNumber(context);
                 }
                 return null;
             }
@@ -338,11 +391,11 @@ public class DeviceInfoProvider {
     }
 
     @SuppressLint( { "MissingPermission" } )
-    public static String getIccid(Context context, int slot) {
+    private static String queryIccid(Context context, int slot) {
         try {
             if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP_MR1) {
                 if (slot == 0) {
-                    return getPhoneNumber(context);
+                    return queryPhoneNumber(context);
                 }
                 return null;
             }
@@ -360,7 +413,7 @@ public class DeviceInfoProvider {
     }
 
     @SuppressLint( { "MissingPermission" } )
-    public static String getImei(Context context) {
+    private static String queryImei(Context context) {
         try {
             TelephonyManager tMgr = (TelephonyManager) context.getSystemService(Context.TELEPHONY_SERVICE);
             if (tMgr == null) {
@@ -373,10 +426,10 @@ public class DeviceInfoProvider {
     }
 
     @SuppressLint( { "MissingPermission" } )
-    public static String getImei(Context context, int slot) {
+    private static String queryImei(Context context, int slot) {
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
             if (slot == 0) {
-                return getImei(context);
+                return queryImei(context);
             }
             return null;
         }
@@ -394,7 +447,7 @@ public class DeviceInfoProvider {
     /**
      * Get the STB MacAddress
      */
-    public static String getMacAddress() {
+    private static String queryMacAddress() {
         try {
             return Utils.loadFileAsString("/sys/class/net/eth0/address")
                     .toUpperCase().substring(0, 17);
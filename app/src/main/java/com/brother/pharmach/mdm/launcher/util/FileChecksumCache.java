@@ -0,0 +1,69 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import android.content.Context;
+
+import com.brother.pharmach.mdm.launcher.db.ChecksumTable;
+import com.brother.pharmach.mdm.launcher.db.DatabaseHelper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Checksums of the managed files, persisted in the database and keyed by path, size and
+ * modification time, so a file is only hashed again when it is changed.
+ * The callers need the checksum to proceed, so hashing runs on the calling thread.
+ */
+public class FileChecksumCache {
+    /**
+     * Returns the checksum of the file, or null if the file can't be read.
+     * Hashes the file if there's no valid cached checksum, so must not be called from the main thread.
+     */
+    public static String getChecksum(Context context, File file) {
+        final String path = file.getAbsolutePath();
+        final long size = file.length();
+        final long mtime = file.lastModified();
+        final DatabaseHelper dbHelper = DatabaseHelper.instance(context);
+
+        String checksum = null;
+        try {
+            checksum = ChecksumTable.select(dbHelper.getReadableDatabase(), path, size, mtime);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        if (checksum != null) {
+            return checksum;
+        }
+
+        try {
+            checksum = CryptoUtils.calculateChecksum(new FileInputStream(file));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        if (checksum != null) {
+            final ChecksumTable.Entry entry = new ChecksumTable.Entry(path, size, mtime, checksum);
+            dbHelper.post(db -> ChecksumTable.insert(db, entry));
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import com.brother.pharmach.mdm.launcher.json.Geofence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Spatial index of geofences: the map is split into cells of a fixed size in degrees
+ * (like geohash cells), and each geofence is listed in all cells its bounding box overlaps.
+ * A point is tested only against the geofences of its cell.
+ */
+public class GeofenceIndex {
+
+    // Cell size in degrees, about 1.1 km of latitude
+    private static final double CELL_DEG = 0.01;
+
+    // Geofences overlapping more cells are tested for each point
+    private static final int MAX_CELLS = 256;
+
+    private static final double METERS_PER_DEGREE = 111195;
+
+    private final Map<Long, List<Geofence>> cells = new HashMap<>();
+    private final List<Geofence> large = new ArrayList<>();
+
+    public GeofenceIndex(List<Geofence> geofences) {
+        for (Geofence geofence : geofences) {
+            add(geofence);
+        }
+    }
+
+    private void add(Geofence geofence) {
+        // The margin covers the difference between the spherical distance and degrees
+        double dLat = geofence.getRadius() * 1.01 / METERS_PER_DEGREE;
+        double cosLat = Math.cos(Math.toRadians(Math.min(Math.abs(geofence.getLat()) + dLat, 90)));
+        double dLon = cosLat > 0.01 ? dLat / cosLat : 360;
+        double minLon = geofence.getLon() - dLon;
+        double maxLon = geofence.getLon() + dLon;
+        if (minLon < -180 || maxLon > 180) {
+            // Crossing the antimeridian or too close to a pole
+            large.add(geofence);
+            return;
+        }
+        long minLatCell = cell(geofence.getLat() - dLat);
+        long maxLatCell = cell(geofence.getLat() + dLat);
+        long minLonCell = cell(minLon);
+        long maxLonCell = cell(maxLon);
+        if ((maxLatCell - minLatCell + 1) * (maxLonCell - minLonCell + 1) > MAX_CELLS) {
+            large.add(geofence);
+            return;
+        }
+        for (long latCell = minLatCell; latCell <= maxLatCell; latCell++) {
+            for (long lonCell = minLonCell; lonCell <= maxLonCell; lonCell++) {
+                Long key = key(latCell, lonCell);
+                List<Geofence> list = cells.get(key);
+                if (list == null) {
+                    list = new ArrayList<>(2);
+                    cells.put(key, list);
+                }
+                list.add(geofence);
+            }
+        }
+    }
+
+    private static long cell(double degrees) {
+        return (long) Math.floor(degrees / CELL_DEG);
+    }
+
+    private static long key(long latCell, long lonCell) {
+        return (latCell << 32) ^ (lonCell & 0xffffffffL);
+    }
+
+    /**
+     * Returns the geofences containing the point
+     */
+    public List<Geofence> find(double lat, double lon) {
+        List<Geofence> candidates = cells.get(key(cell(lat), cell(lon)));
+        if (candidates == null && large.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Geofence> result = new ArrayList<>(1);
+        if (candidates != null) {
+            addContaining(candidates, lat, lon, result);
+        }
+        addContaining(large, lat, lon, result);
+        return result;
+    }
+
+    private static void addContaining(List<Geofence> geofences, double lat, double lon, List<Geofence> result) {
+        for (Geofence geofence : geofences) {
+            if (LocationSampler.distance(lat, lon, geofence.getLat(), geofence.getLon()) <= geofence.getRadius()) {
+                result.add(geofence);
+            }
+        }
+    }
+}
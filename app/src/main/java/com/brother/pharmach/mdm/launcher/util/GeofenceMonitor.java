@@ -0,0 +1,137 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import android.content.Context;
+
+import com.brother.pharmach.mdm.launcher.db.DatabaseHelper;
+import com.brother.pharmach.mdm.launcher.db.GeofenceEventTable;
+import com.brother.pharmach.mdm.launcher.helper.SettingsHelper;
+import com.brother.pharmach.mdm.launcher.json.Geofence;
+import com.brother.pharmach.mdm.launcher.json.ServerConfig;
+import com.brother.pharmach.mdm.launcher.worker.GeofenceChannel;
+
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Evaluates the location fixes against the geofences of the configuration.
+ * Entering and leaving a geofence is stored as an event and uploaded urgently;
+ * other fixes are only stored once per heartbeat period instead of tracking the device.
+ */
+public class GeofenceMonitor {
+
+    public static final int DEFAULT_HEARTBEAT_MINS = 30;
+
+    // Built for this geofence list of the config
+    private static List<Geofence> geofences;
+    private static GeofenceIndex index;
+    private static Set<String> geofenceIds;
+
+    // Geofences containing the device, persisted so a restart doesn't produce false transitions
+    private static Set<String> inside;
+
+    private static long heartbeatTime;
+
+    public static synchronized boolean isEnabled(Context context) {
+        return getIndex(context) != null;
+    }
+
+    private static GeofenceIndex getIndex(Context context) {
+        ServerConfig config = SettingsHelper.getInstance(context).getConfig();
+        List<Geofence> configured = config != null ? config.getGeofences() : null;
+        if (configured == null || configured.isEmpty()) {
+            geofences = null;
+            index = null;
+            geofenceIds = null;
+            return null;
+        }
+        if (configured != geofences) {
+            // Each config refresh creates a new list, the index is only rebuilt if the geofences are changed
+            if (!configured.equals(geofences)) {
+                index = new GeofenceIndex(configured);
+                geofenceIds = new HashSet<>();
+                for (Geofence geofence : configured) {
+                    geofenceIds.add(geofence.getId());
+                }
+            }
+            geofences = configured;
+        }
+        return index;
+    }
+
+    /**
+     * Processes the fix, returns true if it should be stored as a location:
+     * at a transition or when the heartbeat is due
+     */
+    public static synchronized boolean onFix(Context context, double lat, double lon, long time) {
+        GeofenceIndex index = getIndex(context);
+        if (index == null) {
+            return true;
+        }
+        SettingsHelper settingsHelper = SettingsHelper.getInstance(context);
+        if (inside == null) {
+            Set<String> saved = settingsHelper.getGeofencesInside();
+            inside = saved != null ? new HashSet<>(saved) : new HashSet<String>();
+        }
+        // Removed geofences are forgotten silently, the device didn't leave them
+        if (inside.retainAll(geofenceIds)) {
+            // SharedPreferences keeps the passed set, so it must not be changed later
+            settingsHelper.setGeofencesInside(new HashSet<>(inside));
+        }
+
+        Set<String> current = new HashSet<>();
+        for (Geofence geofence : index.find(lat, lon)) {
+            current.add(geofence.getId());
+        }
+
+        final List<GeofenceEventTable.Event> events = new LinkedList<>();
+        for (String id : current) {
+            if (!inside.contains(id)) {
+                events.add(new GeofenceEventTable.Event(time, id, GeofenceEventTable.Event.TYPE_ENTER, lat, lon));
+            }
+        }
+        for (String id : inside) {
+            if (!current.contains(id)) {
+                events.add(new GeofenceEventTable.Event(time, id, GeofenceEventTable.Event.TYPE_EXIT, lat, lon));
+            }
+        }
+
+        if (!events.isEmpty()) {
+            inside = current;
+            settingsHelper.setGeofencesInside(new HashSet<>(current));
+            DatabaseHelper.instance(context).post(db -> GeofenceEventTable.insert(db, events));
+            GeofenceChannel.scheduleUpload(context);
+            heartbeatTime = time;
+            return true;
+        }
+
+        ServerConfig config = settingsHelper.getConfig();
+        Integer heartbeatMins = config != null ? config.getGeofenceHeartbeatMins() : null;
+        long heartbeatMs = (heartbeatMins != null && heartbeatMins > 0 ? heartbeatMins : DEFAULT_HEARTBEAT_MINS) * 60000L;
+        if (time - heartbeatTime >= heartbeatMs) {
+            heartbeatTime = time;
+            return true;
+        }
+        return false;
+    }
+}
@@ -24,9 +24,7 @@ import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentSender;
-import android.content.pm.PackageInfo;
 import android.content.pm.PackageInstaller;
-import android.content.pm.PackageManager;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Environment;
@@ -52,9 +50,11 @@ import java.net.HttpURLConnection;
 import java.net.URL;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
@@ -68,20 +68,24 @@ public class InstallUtils {
     public static void generateApplicationsForInstallList(Context context, List<Application> applications,
                                                           List<Application> applicationsForInstall,
                                                           Map<String, File> pendingInstallations) {
-        PackageManager packageManager = context.getPackageManager();
+        // Keys of the apps already in the list, to skip duplicates
+        Set<String> listKeys = new HashSet<>();
+        for (Application a : applicationsForInstall) {
+            listKeys.add(getListKey(a));
+        }
 
         // First handle apps to be removed, then apps to be installed
         // We process only applications of type "app" (default) and skip web links and others
         for (Application a : applications) {
             if ((a.getType() == null || a.getType().equals(Application.TYPE_APP)) && a.isRemove() &&
-                !isInList(applicationsForInstall, a)) {
+                listKeys.add(getListKey(a))) {
                 Log.d(Const.LOG_TAG, "checkAndUpdateApplications(): marking app " + a.getPkg() + " to remove");
                 applicationsForInstall.add(a);
             }
         }
         for (Application a : applications) {
             if ((a.getType() == null || a.getType().equals(Application.TYPE_APP)) && !a.isRemove() &&
-                    !pendingInstallations.containsKey(a.getPkg()) && !isInList(applicationsForInstall, a)) {
+                    !pendingInstallations.containsKey(a.getPkg()) && listKeys.add(getListKey(a))) {
                 Log.d(Const.LOG_TAG, "checkAndUpdateApplications(): marking app " + a.getPkg() + " to install");
                 applicationsForInstall.add(a);
             }
@@ -105,57 +109,56 @@ public class InstallUtils {
                 continue;
             }
 
-            try {
-                PackageInfo packageInfo = packageManager.getPackageInfo( application.getPkg(), 0 );
-
-                if (application.isRemove() && !application.getVersion().equals("0") &&
-                        !areVersionsEqual(packageInfo.versionName, packageInfo.versionCode, application.getVersion(), application.getCode())) {
-                    // If a removal is required, but the app version doesn't match, do not remove
-                    Log.d(Const.LOG_TAG, "checkAndUpdateApplications(): app " + application.getPkg() + " version not match: "
-                            + application.getVersion() + " " + packageInfo.versionName + ", skipping");
+            PackageIndex.Entry packageInfo = PackageIndex.get(context, application.getPkg());
+            if (packageInfo == null) {
+                // The app isn't installed, let's keep it in the "To be installed" list
+                if (application.isRemove()) {
+                    // The app requires removal but already removed, remove from the list so do nothing with the app
+                    Log.d(Const.LOG_TAG, "checkAndUpdateApplications(): app " + application.getPkg() + " not found, nothing to remove");
                     it.remove();
-                    continue;
                 }
+                continue;
+            }
 
-                if (!application.isRemove() && !upgradingHmdmFreeToFull(context, application, packageInfo) &&
-                        (application.isSkipVersion() || application.getVersion().equals("0") ||
-                                areVersionsEqual(packageInfo.versionName, packageInfo.versionCode, application.getVersion(), application.getCode()))) {
-                    // If installation is required, but the app of the same version already installed, do not install
-                    Log.d(Const.LOG_TAG, "checkAndUpdateApplications(): app " + application.getPkg() + " versions match: "
-                            + application.getVersion() + " " + packageInfo.versionName + ", skipping");
-                    it.remove();
-                    continue;
-                }
+            if (application.isRemove() && !application.getVersion().equals("0") &&
+                    !areVersionsEqual(packageInfo.versionName, packageInfo.versionCode, application.getVersion(), application.getCode())) {
+                // If a removal is required, but the app version doesn't match, do not remove
+                Log.d(Const.LOG_TAG, "checkAndUpdateApplications(): app " + application.getPkg() + " version not match: "
+                        + application.getVersion() + " " + packageInfo.versionName + ", skipping");
+                it.remove();
+                continue;
+            }
 
-                if (!application.isRemove() &&
-                        compareVersions(packageInfo.versionName, packageInfo.versionCode, application.getVersion(), application.getCode()) > 0) {
-                    // Downgrade requested!
-                    // It will only succeed if a higher version is marked as "Remove"
-                    // Let's check that condition to avoid failed attempts to install and downloads of the lower version each time
-                    RemoteLogger.log(context, Const.LOG_DEBUG, "Downgrade requested for " + application.getPkg() +
-                            ": installed version " + packageInfo.versionName + ", required version " + application.getVersion());
-                    boolean canDowngrade = false;
-                    for (Application a : applications) {
-                        if (a.getPkg().equalsIgnoreCase(application.getPkg()) && a.isRemove() &&
-                                areVersionsEqual(packageInfo.versionName, packageInfo.versionCode, a.getVersion(), a.getCode())) {
-                            // Current version will be removed
-                            canDowngrade = true;
-                            break;
-                        }
-                    }
-                    if (canDowngrade) {
-                        RemoteLogger.log(context, Const.LOG_DEBUG, "Current version of " + application.getPkg() + " will be removed, downgrade allowed");
-                    } else {
-                        RemoteLogger.log(context, Const.LOG_DEBUG, "Ignoring downgrade request for " + application.getPkg() + ": remove current version first!");
-                        it.remove();
-                        continue;
+            if (!application.isRemove() && !upgradingHmdmFreeToFull(context, application, packageInfo) &&
+                    (application.isSkipVersion() || application.getVersion().equals("0") ||
+                            areVersionsEqual(packageInfo.versionName, packageInfo.versionCode, application.getVersion(), application.getCode()))) {
+                // If installation is required, but the app of the same version already installed, do not install
+                Log.d(Const.LOG_TAG, "checkAndUpdateApplications(): app " + application.getPkg() + " versions match: "
+                        + application.getVersion() + " " + packageInfo.versionName + ", skipping");
+                it.remove();
+                continue;
+            }
+
+            if (!application.isRemove() &&
+                    compareVersions(packageInfo.versionName, packageInfo.versionCode, application.getVersion(), application.getCode()) > 0) {
+                // Downgrade requested!
+                // It will only succeed if a higher version is marked as "Remove"
+                // Let's check that condition to avoid failed attempts to install and downloads of the lower version each time
+                RemoteLogger.log(context, Const.LOG_DEBUG, "Downgrade requested for " + application.getPkg() +
+                        ": installed version " + packageInfo.versionName + ", required version " + application.getVersion());
+                boolean canDowngrade = false;
+                for (Application a : applications) {
+                    if (a.getPkg().equalsIgnoreCase(application.getPkg()) && a.isRemove() &&
+                            areVersionsEqual(packageInfo.versionName, packageInfo.versionCode, a.getVersion(), a.getCode())) {
+                        // Current version will be removed
+                        canDowngrade = true;
+                        break;
                     }
                 }
-            } catch ( PackageManager.NameNotFoundException e ) {
-                // The app isn't installed, let's keep it in the "To be installed" list
-                if (application.isRemove()) {
-                    // The app requires removal but already removed, remove from the list so do nothing with the app
-                    Log.d(Const.LOG_TAG, "checkAndUpdateApplications(): app " + application.getPkg() + " not found, nothing to remove");
+                if (canDowngrade) {
+                    RemoteLogger.log(context, Const.LOG_DEBUG, "Current version of " + application.getPkg() + " will be removed, downgrade allowed");
+                } else {
+                    RemoteLogger.log(context, Const.LOG_DEBUG, "Ignoring downgrade request for " + application.getPkg() + ": remove current version first!");
                     it.remove();
                     continue;
                 }
@@ -163,21 +166,15 @@ public class InstallUtils {
         }
     }
 
-    private static boolean isInList(List<Application> applicationsForInstall, Application a) {
-        for (Application b : applicationsForInstall) {
-            if (a.getPkg().equalsIgnoreCase(b.getPkg()) &&
-                    a.getVersion().equalsIgnoreCase(b.getVersion()) &&
-                    a.isRemove() == b.isRemove()) {
-                return true;
-            }
-        }
-        return false;
+    // Apps with the same key are duplicates: package and version are compared ignoring case
+    private static String getListKey(Application a) {
+        return a.getPkg().toLowerCase() + "\n" + a.getVersion().toLowerCase() + "\n" + a.isRemove();
     }
 
     // Free and full versions of Brother Pharmach MDM launcher have the same version name but different version codes
     // This is a dirty hack determining the full version by the URL
     // It's however better to use different versions, for example 5.16.1 for free and 5.16.2 for full
-    private static boolean upgradingHmdmFreeToFull(Context context, Application application, PackageInfo packageInfo) {
+    private static boolean upgradingHmdmFreeToFull(Context context, Application application, PackageIndex.Entry packageInfo) {
         if (!application.getPkg().equals(context.getPackageName())) {
             return false;
         }
@@ -286,6 +283,13 @@ public class InstallUtils {
                 } else {
                     RemoteFile remoteFileDb = RemoteFileTable.selectByPath(DatabaseHelper.instance(context).getReadableDatabase(),
                             remoteFile.getPath());
+                    if (remoteFileDb == null && remoteFile.getChecksum() != null &&
+                            remoteFile.getChecksum().equalsIgnoreCase(FileChecksumCache.getChecksum(context, file))) {
+                        // A third party has created the same file, no need to download it again
+                        final RemoteFile copy = new RemoteFile(remoteFile);
+                        DatabaseHelper.instance(context).post(db -> RemoteFileTable.insert(db, copy));
+                        continue;
+                    }
                     if (remoteFileDb == null ||
                             // Entry not found in the database
                             // This means, a file was created by a third party
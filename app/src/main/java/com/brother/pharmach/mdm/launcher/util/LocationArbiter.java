@@ -0,0 +1,127 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.location.Location;
+import android.location.LocationManager;
+
+/**
+ * Keeps the best known location of the device. Fixes of all providers are offered here,
+ * and only the fixes improving the estimate (by time or accuracy) are accepted, so the GPS
+ * and network fixes of the same moment do not produce two stored locations.
+ * This is the single source of the current location for the whole app.
+ */
+public class LocationArbiter {
+
+    // A fix newer by this time is better regardless of the accuracy
+    private static final long SIGNIFICANT_TIME_MS = 2 * 60000L;
+
+    // A newer fix of the same provider is accepted if it's not less accurate by more than this
+    private static final float SIGNIFICANT_ACCURACY_M = 200;
+
+    // If there's no fix this recent, the system's last known locations are queried
+    private static final long MAX_AGE_MS = 30 * 60000L;
+
+    private static Location best;
+    private static Location stored;
+    private static long queryTime;
+
+    /**
+     * Offers a new fix, returns true if it became the best known location
+     */
+    public static synchronized boolean offer(Location fix) {
+        if (!isBetter(fix, best)) {
+            return false;
+        }
+        best = fix;
+        return true;
+    }
+
+    /**
+     * Marks the fix as persisted, returns false if it was already persisted
+     */
+    public static synchronized boolean markStored(Location fix) {
+        if (fix == stored) {
+            return false;
+        }
+        stored = fix;
+        return true;
+    }
+
+    /**
+     * Returns the best known location, or null if unknown.
+     * When the location service is not running, the estimate is refreshed
+     * from the system at most once per MAX_AGE_MS.
+     */
+    @SuppressLint("MissingPermission")
+    public static Location getBestLocation(Context context) {
+        long now = System.currentTimeMillis();
+        synchronized (LocationArbiter.class) {
+            if (best != null && now - best.getTime() < MAX_AGE_MS || now - queryTime < MAX_AGE_MS) {
+                return best;
+            }
+            queryTime = now;
+        }
+        try {
+            LocationManager locationManager = (LocationManager) context.getSystemService(Context.LOCATION_SERVICE);
+            offer(locationManager.getLastKnownLocation(LocationManager.GPS_PROVIDER));
+            offer(locationManager.getLastKnownLocation(LocationManager.NETWORK_PROVIDER));
+        } catch (Exception e) {
+            // No permission or no provider
+        }
+        synchronized (LocationArbiter.class) {
+            return best;
+        }
+    }
+
+    private static boolean isBetter(Location fix, Location current) {
+        if (fix == null || fix.getLatitude() == 0 && fix.getLongitude() == 0) {
+            return false;
+        }
+        if (current == null) {
+            return true;
+        }
+
+        long timeDelta = fix.getTime() - current.getTime();
+        if (timeDelta > SIGNIFICANT_TIME_MS) {
+            // The device may have moved
+            return true;
+        }
+        if (timeDelta < -SIGNIFICANT_TIME_MS) {
+            return false;
+        }
+
+        float accuracyDelta = getAccuracy(fix) - getAccuracy(current);
+        if (accuracyDelta < 0) {
+            return true;
+        }
+        if (timeDelta > 0 && accuracyDelta == 0) {
+            return true;
+        }
+        return timeDelta > 0 && accuracyDelta <= SIGNIFICANT_ACCURACY_M &&
+                fix.getProvider() != null && fix.getProvider().equals(current.getProvider());
+    }
+
+    private static float getAccuracy(Location location) {
+        return location.hasAccuracy() ? location.getAccuracy() : Float.MAX_VALUE;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+/**
+ * Decides how often the location is sampled and which fixes are stored.
+ * The device is considered stationary when the fixes stay within a small radius
+ * for a while; then LocationService samples rarely and with coarse providers only.
+ * Any fix outside the radius, or a significant motion event, returns to fast sampling.
+ */
+public class LocationSampler {
+
+    public static final String MODE_MOVING = "moving";
+    public static final String MODE_STATIONARY = "stationary";
+
+    // Sampling intervals in each mode
+    public static final int MOVING_INTERVAL_MS = 60000;
+    public static final int STATIONARY_INTERVAL_MS = 10 * 60000;
+
+    // Fixes within this distance (or the accuracy of the fix, if larger) are considered the same place
+    private static final double STATIONARY_RADIUS_M = 50;
+
+    // The device is stationary if it hasn't left the radius for this time
+    private static final long STATIONARY_TIME_MS = 5 * 60000L;
+
+    // A fix is stored only if the device moved at least this distance since the last stored fix...
+    private static final double MIN_DISPLACEMENT_M = 25;
+
+    // ...or if this time has passed, so the server knows the device is alive
+    public static final long MAX_STORE_INTERVAL_MS = 15 * 60000L;
+
+    private static final double EARTH_RADIUS_M = 6371000;
+
+    private String mode = MODE_MOVING;
+
+    // Center of the place where the device stays, and the time it arrived there
+    private double anchorLat;
+    private double anchorLon;
+    private long anchorTime;
+    private boolean hasAnchor;
+
+    private double storedLat;
+    private double storedLon;
+    private long storedTime;
+    private boolean hasStored;
+
+    public synchronized String getMode() {
+        return mode;
+    }
+
+    /**
+     * Processes the new fix, returns true if it should be stored.
+     * Check getMode() afterwards: the mode may have changed.
+     */
+    public synchronized boolean onFix(double lat, double lon, float accuracy, long time) {
+        double radius = Math.max(STATIONARY_RADIUS_M, accuracy);
+        if (!hasAnchor || distance(anchorLat, anchorLon, lat, lon) > radius) {
+            anchorLat = lat;
+            anchorLon = lon;
+            anchorTime = time;
+            hasAnchor = true;
+            mode = MODE_MOVING;
+        } else if (time - anchorTime >= STATIONARY_TIME_MS) {
+            mode = MODE_STATIONARY;
+        }
+
+        if (hasStored && time - storedTime < MAX_STORE_INTERVAL_MS &&
+                distance(storedLat, storedLon, lat, lon) < Math.max(MIN_DISPLACEMENT_M, accuracy)) {
+            return false;
+        }
+        storedLat = lat;
+        storedLon = lon;
+        storedTime = time;
+        hasStored = true;
+        return true;
+    }
+
+    // Called on a significant motion event: the next fixes define the new place
+    public synchronized void onMotion() {
+        hasAnchor = false;
+        mode = MODE_MOVING;
+    }
+
+    public synchronized int getInterval() {
+        return MODE_STATIONARY.equals(mode) ? STATIONARY_INTERVAL_MS : MOVING_INTERVAL_MS;
+    }
+
+    // Distance between two points in meters
+    public static double distance(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
+                Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_M * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+}
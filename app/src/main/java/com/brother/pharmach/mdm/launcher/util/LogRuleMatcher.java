@@ -0,0 +1,265 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import com.brother.pharmach.mdm.launcher.json.RemoteLogConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable in-memory index of the remote log rules.
+ * A rule matches an item if the package is the same, the rule level is not lower than the item level
+ * and the filter is empty or is a substring of the message (ASCII case-insensitive, like SQLite LIKE).
+ * As in the former "message LIKE '%' || filter || '%'" query, % in a filter matches any sequence
+ * of characters and _ matches any single character.
+ * Plain filters of each package are compiled into an Aho-Corasick automaton, so a match is a single
+ * pass over the message without I/O or allocations; filters with wildcards are matched one by one.
+ */
+public class LogRuleMatcher {
+    public static final LogRuleMatcher EMPTY = new LogRuleMatcher(new HashMap<String, PackageRules>());
+
+    private final Map<String, PackageRules> packages;
+
+    private LogRuleMatcher(Map<String, PackageRules> packages) {
+        this.packages = packages;
+    }
+
+    public static LogRuleMatcher compile(List<RemoteLogConfig> rules) {
+        Map<String, List<RemoteLogConfig>> byPackage = new HashMap<>();
+        for (RemoteLogConfig rule : rules) {
+            if (rule.getPackageId() == null) {
+                continue;
+            }
+            List<RemoteLogConfig> list = byPackage.get(rule.getPackageId());
+            if (list == null) {
+                list = new LinkedList<>();
+                byPackage.put(rule.getPackageId(), list);
+            }
+            list.add(rule);
+        }
+        Map<String, PackageRules> packages = new HashMap<>();
+        for (Map.Entry<String, List<RemoteLogConfig>> entry : byPackage.entrySet()) {
+            packages.put(entry.getKey(), new PackageRules(entry.getValue()));
+        }
+        return new LogRuleMatcher(packages);
+    }
+
+    /**
+     * Returns false if no rule may accept an item of this package and level,
+     * whatever the message is
+     */
+    public boolean isEnabled(String packageId, int level) {
+        PackageRules rules = packageId != null ? packages.get(packageId) : null;
+        return rules != null && rules.maxLevel >= level;
+    }
+
+    public boolean match(String packageId, int level, String message) {
+        PackageRules rules = packageId != null ? packages.get(packageId) : null;
+        if (rules == null || rules.maxLevel < level) {
+            return false;
+        }
+        if (rules.unfilteredLevel >= level) {
+            return true;
+        }
+        return message != null && rules.matchFilters(level, message);
+    }
+
+    private static char toLower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c;
+    }
+
+    private static boolean hasWildcards(String filter) {
+        return filter.indexOf('%') >= 0 || filter.indexOf('_') >= 0;
+    }
+
+    // SQL LIKE without ESCAPE, the pattern is in lower case
+    private static boolean like(String message, String pattern) {
+        int i = 0;
+        int p = 0;
+        // Position of the last % in the pattern and the message position it was tried at
+        int star = -1;
+        int mark = 0;
+        while (i < message.length()) {
+            if (p < pattern.length() && pattern.charAt(p) == '%') {
+                star = p++;
+                mark = i;
+            } else if (p < pattern.length() &&
+                    (pattern.charAt(p) == '_' || pattern.charAt(p) == toLower(message.charAt(i)))) {
+                p++;
+                i++;
+            } else if (star >= 0) {
+                p = star + 1;
+                i = ++mark;
+            } else {
+                return false;
+            }
+        }
+        while (p < pattern.length() && pattern.charAt(p) == '%') {
+            p++;
+        }
+        return p == pattern.length();
+    }
+
+    private static class PackageRules {
+        // Max level of the rules without a filter
+        private int unfilteredLevel;
+        // Max level of all rules of the package
+        private int maxLevel;
+
+        // Automaton: sorted transition chars and target states per state,
+        // failure links, and max rule level of the filters ending in the state
+        private final char[][] keys;
+        private final int[][] targets;
+        private final int[] fail;
+        private final int[] outLevel;
+
+        // Filters with wildcards as LIKE patterns, and their rule levels
+        private final String[] patterns;
+        private final int[] patternLevels;
+
+        PackageRules(List<RemoteLogConfig> rules) {
+            List<Node> nodes = new ArrayList<>();
+            nodes.add(new Node());
+            List<RemoteLogConfig> wildcardRules = new ArrayList<>();
+            for (RemoteLogConfig rule : rules) {
+                int level = rule.getLogLevel();
+                maxLevel = Math.max(maxLevel, level);
+                String filter = rule.getFilter();
+                if (filter == null || filter.isEmpty()) {
+                    unfilteredLevel = Math.max(unfilteredLevel, level);
+                    continue;
+                }
+                if (hasWildcards(filter)) {
+                    wildcardRules.add(rule);
+                    continue;
+                }
+                int state = 0;
+                for (int i = 0; i < filter.length(); i++) {
+                    char c = toLower(filter.charAt(i));
+                    Integer next = nodes.get(state).children.get(c);
+                    if (next == null) {
+                        next = nodes.size();
+                        nodes.add(new Node());
+                        nodes.get(state).children.put(c, next);
+                    }
+                    state = next;
+                }
+                nodes.get(state).outLevel = Math.max(nodes.get(state).outLevel, level);
+            }
+
+            patterns = new String[wildcardRules.size()];
+            patternLevels = new int[wildcardRules.size()];
+            for (int n = 0; n < patterns.length; n++) {
+                StringBuilder pattern = new StringBuilder("%");
+                for (char c : wildcardRules.get(n).getFilter().toCharArray()) {
+                    pattern.append(toLower(c));
+                }
+                patterns[n] = pattern.append('%').toString();
+                patternLevels[n] = wildcardRules.get(n).getLogLevel();
+            }
+
+            int count = nodes.size();
+            keys = new char[count][];
+            targets = new int[count][];
+            fail = new int[count];
+            outLevel = new int[count];
+            for (int n = 0; n < count; n++) {
+                Node node = nodes.get(n);
+                keys[n] = new char[node.children.size()];
+                targets[n] = new int[node.children.size()];
+                int i = 0;
+                for (Character c : node.children.keySet()) {
+                    keys[n][i++] = c;
+                }
+                Arrays.sort(keys[n]);
+                for (i = 0; i < keys[n].length; i++) {
+                    targets[n][i] = node.children.get(keys[n][i]);
+                }
+                outLevel[n] = node.outLevel;
+            }
+
+            // Breadth-first traversal to set failure links; a state also
+            // reports the filters ending in its failure state
+            int[] queue = new int[count];
+            int head = 0;
+            int tail = 0;
+            for (int child : targets[0]) {
+                fail[child] = 0;
+                queue[tail++] = child;
+            }
+            while (head < tail) {
+                int state = queue[head++];
+                for (int i = 0; i < keys[state].length; i++) {
+                    char c = keys[state][i];
+                    int child = targets[state][i];
+                    int f = fail[state];
+                    int next = next(f, c);
+                    while (next < 0 && f != 0) {
+                        f = fail[f];
+                        next = next(f, c);
+                    }
+                    fail[child] = next >= 0 ? next : 0;
+                    outLevel[child] = Math.max(outLevel[child], outLevel[fail[child]]);
+                    queue[tail++] = child;
+                }
+            }
+        }
+
+        private int next(int state, char c) {
+            int index = Arrays.binarySearch(keys[state], c);
+            return index >= 0 ? targets[state][index] : -1;
+        }
+
+        boolean matchFilters(int level, String message) {
+            for (int n = 0; n < patterns.length; n++) {
+                if (patternLevels[n] >= level && like(message, patterns[n])) {
+                    return true;
+                }
+            }
+            if (keys[0].length == 0) {
+                return false;
+            }
+            int state = 0;
+            for (int i = 0; i < message.length(); i++) {
+                char c = toLower(message.charAt(i));
+                int next = next(state, c);
+                while (next < 0 && state != 0) {
+                    state = fail[state];
+                    next = next(state, c);
+                }
+                state = next >= 0 ? next : 0;
+                if (outLevel[state] >= level) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class Node {
+        Map<Character, Integer> children = new HashMap<>();
+        int outLevel;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.os.Build;
+import android.util.Log;
+
+import com.brother.pharmach.mdm.launcher.Const;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In-memory index of installed packages. It is built by a single bulk query
+ * and then updated on package broadcasts and on install completion,
+ * so callers don't need to query the package manager for each package.
+ */
+public class PackageIndex {
+
+    public static class Entry {
+        public final String packageName;
+        public final String versionName;
+        public final int versionCode;
+        public final boolean launchable;
+        private String label;
+
+        private Entry(PackageInfo packageInfo, boolean launchable) {
+            this.packageName = packageInfo.packageName;
+            this.versionName = packageInfo.versionName;
+            this.versionCode = packageInfo.versionCode;
+            this.launchable = launchable;
+        }
+
+        // Loading a label requires loading the app resources, so it is done on demand
+        public synchronized String getLabel(Context context) {
+            if (label == null) {
+                try {
+                    PackageManager packageManager = context.getPackageManager();
+                    label = packageManager.getApplicationInfo(packageName, 0).loadLabel(packageManager).toString();
+                } catch (PackageManager.NameNotFoundException e) {
+                    label = packageName;
+                }
+            }
+            return label;
+        }
+    }
+
+    private static Map<String, Entry> packages;
+    private static BroadcastReceiver receiver;
+
+    /**
+     * Returns the installed package, or null if the package isn't installed
+     */
+    public static synchronized Entry get(Context context, String packageName) {
+        if (packageName == null) {
+            return null;
+        }
+        return getPackages(context).get(packageName);
+    }
+
+    public static synchronized List<Entry> getAll(Context context) {
+        return new ArrayList<>(getPackages(context).values());
+    }
+
+    /**
+     * Updates the package state after it has been installed, updated, removed or hidden
+     */
+    public static synchronized void onPackageChanged(Context context, String packageName) {
+        if (packages == null || packageName == null) {
+            // Not built yet, it will get the actual state
+            return;
+        }
+        PackageManager packageManager = context.getPackageManager();
+        try {
+            PackageInfo packageInfo = packageManager.getPackageInfo(packageName, 0);
+            packages.put(packageName, new Entry(packageInfo,
+                    packageManager.getLaunchIntentForPackage(packageName) != null));
+        } catch (PackageManager.NameNotFoundException e) {
+            packages.remove(packageName);
+        }
+    }
+
+    private static Map<String, Entry> getPackages(Context context) {
+        if (packages == null) {
+            if (!registerReceiver(context)) {
+                // Without updates the index would get stale
+                return queryPackages(context);
+            }
+            packages = queryPackages(context);
+        }
+        return packages;
+    }
+
+    private static Map<String, Entry> queryPackages(Context context) {
+        PackageManager packageManager = context.getPackageManager();
+        Map<String, Entry> result = new HashMap<>();
+
+        // Same sources as in getLaunchIntentForPackage(): launcher activities, then info activities
+        Set<String> launchable = new HashSet<>();
+        for (String category : new String[] { Intent.CATEGORY_LAUNCHER, Intent.CATEGORY_INFO }) {
+            Intent intent = new Intent(Intent.ACTION_MAIN);
+            intent.addCategory(category);
+            List<ResolveInfo> activities = packageManager.queryIntentActivities(intent, 0);
+            if (activities != null) {
+                for (ResolveInfo resolveInfo : activities) {
+                    launchable.add(resolveInfo.activityInfo.packageName);
+                }
+            }
+        }
+
+        List<PackageInfo> installed = packageManager.getInstalledPackages(0);
+        if (installed != null) {
+            for (PackageInfo packageInfo : installed) {
+                result.put(packageInfo.packageName,
+                        new Entry(packageInfo, launchable.contains(packageInfo.packageName)));
+            }
+        }
+        Log.d(Const.LOG_TAG, "Package index built: " + result.size() + " packages");
+        return result;
+    }
+
+    private static boolean registerReceiver(Context context) {
+        if (receiver != null) {
+            return true;
+        }
+        BroadcastReceiver packageReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (intent.getData() == null) {
+                    return;
+                }
+                String packageName = intent.getData().getSchemeSpecificPart();
+                if (Intent.ACTION_PACKAGE_REMOVED.equals(intent.getAction()) &&
+                        intent.getBooleanExtra(Intent.EXTRA_REPLACING, false)) {
+                    // Will be followed by PACKAGE_ADDED and PACKAGE_REPLACED
+                    return;
+                }
+                onPackageChanged(context, packageName);
+            }
+        };
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addDataScheme("package");
+        // The application context is used because receivers can't be registered from other receivers
+        Context appContext = context.getApplicationContext();
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                appContext.registerReceiver(packageReceiver, filter, Context.RECEIVER_EXPORTED);
+            } else {
+                appContext.registerReceiver(packageReceiver, filter);
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            return false;
+        }
+        receiver = packageReceiver;
+        return true;
+    }
+}
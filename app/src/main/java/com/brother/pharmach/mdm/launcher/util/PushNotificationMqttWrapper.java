@@ -250,7 +250,7 @@ public class PushNotificationMqttWrapper {
             }
         } catch (Exception e) {
             e.printStackTrace();
-            RemoteLogger.log(context, Const.LOG_DEBUG, "Exception while subscribing: " + e.getMessage());
+            RemoteLogger.log(context, Const.LOG_DEBUG, "Exception while subscribing: {}", e.getMessage());
             if (onFailure != null) {
                 handler.post(onFailure);
             }
@@ -0,0 +1,217 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import android.content.Context;
+
+import com.brother.pharmach.mdm.launcher.Const;
+import com.brother.pharmach.mdm.launcher.helper.SettingsHelper;
+import com.brother.pharmach.mdm.launcher.json.RemoteLogItem;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage budget of the unsent remote logs.
+ * The total size of stored logs is capped, and each plugin app logging through IMdmApi.log
+ * has its own quota. When a limit is reached, the items are dropped starting from the least
+ * important level (VERBOSE, then DEBUG, ..., ERROR last): at each level, the oldest stored
+ * items are evicted first, then the incoming items are rejected. So an incoming item is only
+ * rejected when all stored items of less important levels are evicted.
+ * The amount of dropped items is persisted and reported to the server by RemoteLogChannel.
+ *
+ * apply() must be called while holding the RemoteLogQueue write lock.
+ */
+public class RemoteLogBudget {
+    // Max estimated size of all stored logs
+    public static final long MAX_TOTAL_BYTES = 4 * 1024 * 1024;
+
+    // Max estimated size of stored logs of each plugin app
+    public static final long MAX_PACKAGE_BYTES = 1024 * 1024;
+
+    // Estimated storage overhead of an item besides its package ID and message
+    public static final int RECORD_OVERHEAD_BYTES = 40;
+
+    /**
+     * Stored logs the budget is applied to
+     */
+    public interface Store {
+        // Estimated size of stored items by package ID, "" for items without package ID
+        Map<String, Long> selectPackageSizes(int recordOverhead);
+
+        // Removes the oldest items of the level (and package, if not null) until at least bytes are freed
+        // Returns the amount of removed items
+        int evictOldest(String packageId, int level, long bytes, int recordOverhead);
+    }
+
+    private final Store store;
+    private final long maxTotalBytes;
+    private final long maxPackageBytes;
+
+    private Map<String, Long> packageBytes;
+    private long totalBytes;
+    // Set when logs are removed by other threads (upload, retention)
+    private volatile boolean invalid = true;
+
+    public RemoteLogBudget(Store store) {
+        this(store, MAX_TOTAL_BYTES, MAX_PACKAGE_BYTES);
+    }
+
+    public RemoteLogBudget(Store store, long maxTotalBytes, long maxPackageBytes) {
+        this.store = store;
+        this.maxTotalBytes = maxTotalBytes;
+        this.maxPackageBytes = maxPackageBytes;
+    }
+
+    public void invalidate() {
+        invalid = true;
+    }
+
+    /**
+     * Frees the storage for the items to be inserted, removing the items which don't fit.
+     * Items of ownPackage are not limited by the package quota.
+     * Returns the amount of dropped items (both evicted and rejected).
+     */
+    public int apply(String ownPackage, List<RemoteLogItem> items) {
+        if (invalid || packageBytes == null) {
+            reload();
+        }
+        int dropped = 0;
+
+        // Per-package quotas of plugin apps
+        Map<String, List<RemoteLogItem>> byPackage = new HashMap<>();
+        for (RemoteLogItem item : items) {
+            String packageId = item.getPackageId() != null ? item.getPackageId() : "";
+            List<RemoteLogItem> list = byPackage.get(packageId);
+            if (list == null) {
+                list = new ArrayList<>();
+                byPackage.put(packageId, list);
+            }
+            list.add(item);
+        }
+        for (Map.Entry<String, List<RemoteLogItem>> entry : byPackage.entrySet()) {
+            if (!entry.getKey().equals(ownPackage)) {
+                dropped += free(entry.getKey(), items, entry.getValue());
+            }
+        }
+
+        // Total cap
+        dropped += free(null, items, new ArrayList<>(items));
+
+        for (RemoteLogItem item : items) {
+            String packageId = item.getPackageId() != null ? item.getPackageId() : "";
+            long size = size(item);
+            packageBytes.put(packageId, getPackageBytes(packageId) + size);
+            totalBytes += size;
+        }
+        return dropped;
+    }
+
+    public static synchronized void addDroppedCount(Context context, int count) {
+        SettingsHelper settingsHelper = SettingsHelper.getInstance(context);
+        settingsHelper.setLogDroppedCount(settingsHelper.getLogDroppedCount() + count);
+    }
+
+    // Returns the amount of dropped items since the last call
+    public static synchronized int takeDroppedCount(Context context) {
+        SettingsHelper settingsHelper = SettingsHelper.getInstance(context);
+        int count = settingsHelper.getLogDroppedCount();
+        if (count > 0) {
+            settingsHelper.setLogDroppedCount(0);
+        }
+        return count;
+    }
+
+    private void reload() {
+        invalid = false;
+        packageBytes = store.selectPackageSizes(RECORD_OVERHEAD_BYTES);
+        totalBytes = 0;
+        for (Long bytes : packageBytes.values()) {
+            totalBytes += bytes;
+        }
+    }
+
+    // Fits the candidates (incoming items of the package, or all incoming items if packageId is null)
+    // into the limit, least important levels first
+    private int free(String packageId, List<RemoteLogItem> items, List<RemoteLogItem> candidates) {
+        int dropped = 0;
+        for (int level = Const.LOG_VERBOSE; level >= Const.LOG_ERROR; level--) {
+            long needed = getOverflow(packageId, candidates);
+            if (needed <= 0) {
+                break;
+            }
+            int evicted = store.evictOldest(packageId, level, needed, RECORD_OVERHEAD_BYTES);
+            if (evicted > 0) {
+                dropped += evicted;
+                reload();
+                needed = getOverflow(packageId, candidates);
+            }
+            dropped += reject(items, candidates, level, needed);
+        }
+        return dropped;
+    }
+
+    // Incoming bytes which don't fit into the limit of the package (total limit if packageId is null)
+    private long getOverflow(String packageId, List<RemoteLogItem> candidates) {
+        return packageId != null ?
+                getPackageBytes(packageId) + size(candidates) - maxPackageBytes :
+                totalBytes + size(candidates) - maxTotalBytes;
+    }
+
+    // Removes the candidates of the level from items until bytes are freed
+    private static int reject(List<RemoteLogItem> items, List<RemoteLogItem> candidates, int level, long bytes) {
+        int rejected = 0;
+        Iterator<RemoteLogItem> it = candidates.iterator();
+        while (bytes > 0 && it.hasNext()) {
+            RemoteLogItem item = it.next();
+            // Unknown levels are treated as the nearest known one
+            if (Math.max(Const.LOG_ERROR, Math.min(Const.LOG_VERBOSE, item.getLogLevel())) != level) {
+                continue;
+            }
+            bytes -= size(item);
+            it.remove();
+            items.remove(item);
+            rejected++;
+        }
+        return rejected;
+    }
+
+    private long getPackageBytes(String packageId) {
+        Long bytes = packageBytes.get(packageId);
+        return bytes != null ? bytes : 0;
+    }
+
+    private static long size(List<RemoteLogItem> items) {
+        long size = 0;
+        for (RemoteLogItem item : items) {
+            size += size(item);
+        }
+        return size;
+    }
+
+    public static long size(RemoteLogItem item) {
+        return RECORD_OVERHEAD_BYTES +
+                (item.getPackageId() != null ? item.getPackageId().length() : 0) +
+                (item.getMessage() != null ? item.getMessage().length() : 0);
+    }
+}
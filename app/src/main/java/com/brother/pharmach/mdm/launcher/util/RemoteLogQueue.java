@@ -0,0 +1,227 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import android.content.Context;
+import android.os.Process;
+import android.util.Log;
+
+import com.brother.pharmach.mdm.launcher.Const;
+import com.brother.pharmach.mdm.launcher.json.RemoteLogItem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded in-memory queue between RemoteLogger and the log storage (see RemoteLogStorage).
+ * Items are already matched against the log rules by RemoteLogger.
+ * Callers never touch the storage: a single writer thread drains the queue
+ * and stores the items in one write per batch.
+ *
+ * Backpressure policy: if the queue is full, a new VERBOSE/DEBUG/INFO item is dropped,
+ * while a new WARN/ERROR item evicts the oldest queued item instead.
+ * Dropped items are counted and reported to the server, see RemoteLogBudget
+ * which also enforces the storage limits.
+ */
+public class RemoteLogQueue {
+    // Max amount of items waiting to be written
+    public static final int QUEUE_CAPACITY = 1000;
+
+    // Time the writer waits after the first item so the next ones are written in the same transaction
+    private static final long BATCH_LINGER_MS = 500;
+
+    // Old logs are removed once per hour
+    private static final long OLD_LOGS_REMOVAL_PERIOD_MS = 3600000L;
+
+    private static final ArrayBlockingQueue<RemoteLogItem> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private static final AtomicInteger droppedCount = new AtomicInteger();
+
+    // Guards the pending batch so a synchronous flush never misses items held by the writer
+    private static final Object writeLock = new Object();
+    private static final List<RemoteLogItem> pending = new ArrayList<>();
+
+    private static Context appContext;
+    private static Thread writerThread;
+    private static long lastLogRemoval = 0;
+
+    // Destination of the written items, replaced in unit tests
+    interface Sink {
+        RemoteLogStorage getStorage(Context context);
+
+        // Called after items are stored, level is the most important stored level
+        void onStored(Context context, int level);
+
+        void onDropped(Context context, int count);
+    }
+
+    static volatile Sink sink = new Sink() {
+        @Override
+        public RemoteLogStorage getStorage(Context context) {
+            return RemoteLogStorage.Factory.getInstance(context);
+        }
+
+        @Override
+        public void onStored(Context context, int level) {
+            RemoteLogger.scheduleUpload(context, level);
+        }
+
+        @Override
+        public void onDropped(Context context, int count) {
+            RemoteLogBudget.addDroppedCount(context, count);
+        }
+    };
+
+    // Counts items dropped before reaching the queue (e.g. rate limited)
+    public static void countDropped() {
+        droppedCount.incrementAndGet();
+    }
+
+    public static void offer(Context context, RemoteLogItem item) {
+        startWriter(context);
+        if (queue.offer(item)) {
+            return;
+        }
+        if (item.getLogLevel() <= Const.LOG_WARN) {
+            // Important messages replace the oldest queued message
+            if (queue.poll() != null) {
+                droppedCount.incrementAndGet();
+            }
+            if (queue.offer(item)) {
+                return;
+            }
+        }
+        droppedCount.incrementAndGet();
+    }
+
+    /**
+     * Synchronously writes all queued items to the storage.
+     * Called when the device is shutting down; must not be called from the main thread.
+     */
+    public static void flush(Context context) {
+        synchronized (writeLock) {
+            RemoteLogThrottle.drainAll(pending);
+            writePending(context.getApplicationContext());
+        }
+    }
+
+    /**
+     * Same as flush() but runs on its own thread, onDone is called when the items are written.
+     * The flush waits for the writer which may in turn wait for the database writer thread,
+     * so it must run neither on the main thread nor on the database writer thread.
+     */
+    public static void flushAsync(final Context context, final Runnable onDone) {
+        new Thread(() -> {
+            try {
+                flush(context);
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                onDone.run();
+            }
+        }, "RemoteLogFlush").start();
+    }
+
+    private static synchronized void startWriter(Context context) {
+        if (writerThread != null) {
+            return;
+        }
+        appContext = context.getApplicationContext();
+        writerThread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            while (true) {
+                try {
+                    // Wake up periodically while there are collapsed items to summarize
+                    RemoteLogItem item = RemoteLogThrottle.hasPending() ?
+                            queue.poll(RemoteLogThrottle.COLLAPSE_WINDOW_MS, TimeUnit.MILLISECONDS) : queue.take();
+                    if (item != null) {
+                        synchronized (writeLock) {
+                            pending.add(item);
+                        }
+                        Thread.sleep(BATCH_LINGER_MS);
+                    }
+                    synchronized (writeLock) {
+                        RemoteLogThrottle.drainExpired(System.currentTimeMillis(), pending);
+                        writePending(appContext);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    // Do not let the writer die because of a single broken batch
+                    e.printStackTrace();
+                }
+            }
+        }, "RemoteLogWriter");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    // Must be called while holding writeLock
+    private static void writePending(Context context) {
+        queue.drainTo(pending);
+
+        int dropped = droppedCount.getAndSet(0);
+        if (dropped > 0) {
+            Log.w(Const.LOG_TAG, "Remote log queue overflow, dropped " + dropped + " items");
+        }
+
+        RemoteLogStorage storage = sink.getStorage(context);
+        if (!pending.isEmpty()) {
+            // Items which don't fit into the storage are removed from the list
+            int rejected;
+            try {
+                rejected = storage.append(pending);
+            } catch (RuntimeException e) {
+                // The items are written with the next batch; the oldest ones are dropped if too many wait
+                Log.w(Const.LOG_TAG, "Failed to store " + pending.size() + " remote log items", e);
+                int excess = pending.size() - QUEUE_CAPACITY;
+                if (excess > 0) {
+                    pending.subList(0, excess).clear();
+                }
+                droppedCount.addAndGet(dropped + Math.max(excess, 0));
+                return;
+            }
+            if (rejected > 0) {
+                Log.w(Const.LOG_TAG, "Remote log storage is full, dropped " + rejected + " items");
+            }
+            if (!pending.isEmpty()) {
+                // Upload lane is chosen by the most important written item
+                int level = Const.LOG_VERBOSE;
+                for (RemoteLogItem item : pending) {
+                    level = Math.min(level, item.getLogLevel());
+                }
+                sink.onStored(context, level);
+            }
+            dropped += rejected;
+            pending.clear();
+        }
+        if (dropped > 0) {
+            sink.onDropped(context, dropped);
+        }
+
+        long now = System.currentTimeMillis();
+        if (now > lastLogRemoval + OLD_LOGS_REMOVAL_PERIOD_MS) {
+            storage.trim();
+            lastLogRemoval = now;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import android.content.Context;
+
+import com.brother.pharmach.mdm.launcher.BuildConfig;
+import com.brother.pharmach.mdm.launcher.json.RemoteLogItem;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Storage of unsent remote logs.
+ * Items are appended by the RemoteLogQueue writer and read by RemoteLogChannel in batches.
+ * A batch is addressed by positions: it contains the items after the previous batch end
+ * up to and including its own end. Positions are opaque and only increase.
+ * The backend is selected by BuildConfig.REMOTE_LOG_STORAGE.
+ */
+public interface RemoteLogStorage {
+    String STORAGE_SQLITE = "sqlite";
+    String STORAGE_SEGMENTS = "segments";
+
+    // Appends the items, returns the amount of items dropped due to the storage limits
+    // (both evicted stored items and rejected new ones). Rejected items are removed from the list.
+    // Throws a RuntimeException if the items could not be stored, the caller keeps them
+    int append(List<RemoteLogItem> items);
+
+    // Removes outdated items
+    void trim();
+
+    // Returns true if there are unsent items; unlike nextBatch(), doesn't change the storage
+    boolean hasPending();
+
+    // Returns the end of the next batch after the position, or the position itself if there are no more items
+    long nextBatch(long position, int byteBudget);
+
+    // Writes the items of the batch as JSON objects, returns the amount of written items
+    int writeBatch(long position, long end, JsonGenerator generator) throws IOException;
+
+    // Removes the sent batch
+    void acknowledge(long position, long end);
+
+    class Factory {
+        private static RemoteLogStorage instance;
+
+        public static synchronized RemoteLogStorage getInstance(Context context) {
+            if (instance == null) {
+                if (STORAGE_SEGMENTS.equals(BuildConfig.REMOTE_LOG_STORAGE)) {
+                    instance = new SegmentLogStorage(context.getApplicationContext());
+                } else {
+                    instance = new SqliteLogStorage(context.getApplicationContext());
+                }
+            }
+            return instance;
+        }
+    }
+}
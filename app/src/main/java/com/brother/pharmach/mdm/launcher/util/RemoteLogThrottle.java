@@ -0,0 +1,192 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import com.brother.pharmach.mdm.launcher.json.RemoteLogItem;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Stage in front of the log storage which reduces the amount of stored items.
+ *
+ * Collapsing: the first item with a given (package, level, message template) is passed,
+ * the same items within COLLAPSE_WINDOW_MS are only counted, and when the window expires,
+ * one summary item with the count and the first/last timestamps is emitted.
+ * The template is the message with digits replaced, so "lat=55.1" and "lat=55.2" are the same.
+ *
+ * Rate limiting: each package has a token bucket; new items exceeding the rate are dropped.
+ */
+public class RemoteLogThrottle {
+    public static final long COLLAPSE_WINDOW_MS = 60000;
+
+    // Results of admit()
+    public static final int ADMITTED = 0;
+    public static final int COLLAPSED = 1;
+    public static final int DROPPED = 2;
+
+    // Max amount of tracked templates, the oldest one is emitted when exceeded
+    private static final int MAX_COLLAPSED_ENTRIES = 200;
+
+    // Token bucket: burst size and refill rate per package
+    private static final int BUCKET_CAPACITY = 100;
+    private static final double BUCKET_REFILL_PER_MS = 5 / 1000.0;
+
+    private static final Map<String, CollapsedEntry> entries = new LinkedHashMap<>();
+    private static final Map<String, TokenBucket> buckets = new HashMap<>();
+    // Summaries of entries removed before their window was drained
+    private static final List<RemoteLogItem> pendingSummaries = new ArrayList<>();
+
+    private static class CollapsedEntry {
+        RemoteLogItem first;
+        String lastMessage;
+        long lastTs;
+        int count;
+    }
+
+    private static class TokenBucket {
+        double tokens = BUCKET_CAPACITY;
+        long lastRefill;
+    }
+
+    /**
+     * Returns ADMITTED if the item should be stored, COLLAPSED if it is counted in the summary
+     * of a previous item, or DROPPED if its package exceeded the rate.
+     * Only admitted items start a collapsing window, so a summary always follows a stored item;
+     * repeats within the window don't take tokens because they are not stored.
+     */
+    public static synchronized int admit(RemoteLogItem item, long now) {
+        String key = item.getPackageId() + "|" + item.getLogLevel() + "|" + template(item.getMessage());
+        CollapsedEntry entry = entries.get(key);
+        if (entry != null && item.getTimestamp() - entry.first.getTimestamp() < COLLAPSE_WINDOW_MS) {
+            entry.count++;
+            entry.lastTs = item.getTimestamp();
+            entry.lastMessage = item.getMessage();
+            return COLLAPSED;
+        }
+        if (!acquire(item.getPackageId(), now)) {
+            return DROPPED;
+        }
+        if (entry != null) {
+            // Window expired but not drained yet: keep its summary
+            if (entry.count > 0) {
+                pendingSummaries.add(createSummary(entry));
+            }
+            entries.remove(key);
+        } else if (entries.size() >= MAX_COLLAPSED_ENTRIES) {
+            Iterator<CollapsedEntry> it = entries.values().iterator();
+            CollapsedEntry oldest = it.next();
+            it.remove();
+            if (oldest.count > 0) {
+                pendingSummaries.add(createSummary(oldest));
+            }
+        }
+        entry = new CollapsedEntry();
+        entry.first = item;
+        entries.put(key, entry);
+        return ADMITTED;
+    }
+
+    // Returns false if the package exceeded its rate
+    private static boolean acquire(String packageId, long now) {
+        TokenBucket bucket = buckets.get(packageId);
+        if (bucket == null) {
+            bucket = new TokenBucket();
+            bucket.lastRefill = now;
+            buckets.put(packageId, bucket);
+        }
+        if (now > bucket.lastRefill) {
+            bucket.tokens = Math.min(BUCKET_CAPACITY, bucket.tokens + (now - bucket.lastRefill) * BUCKET_REFILL_PER_MS);
+            bucket.lastRefill = now;
+        }
+        if (bucket.tokens < 1) {
+            return false;
+        }
+        bucket.tokens--;
+        return true;
+    }
+
+    public static synchronized boolean hasPending() {
+        return !entries.isEmpty() || !pendingSummaries.isEmpty();
+    }
+
+    // Summary items of expired windows are added to out
+    public static synchronized void drainExpired(long now, List<RemoteLogItem> out) {
+        drain(now, false, out);
+    }
+
+    // Summary items of all windows are added to out, used at shutdown
+    public static synchronized void drainAll(List<RemoteLogItem> out) {
+        drain(0, true, out);
+    }
+
+    private static void drain(long now, boolean all, List<RemoteLogItem> out) {
+        out.addAll(pendingSummaries);
+        pendingSummaries.clear();
+        Iterator<CollapsedEntry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            CollapsedEntry entry = it.next();
+            if (all || now - entry.first.getTimestamp() >= COLLAPSE_WINDOW_MS) {
+                if (entry.count > 0) {
+                    out.add(createSummary(entry));
+                }
+                it.remove();
+            }
+        }
+    }
+
+    private static RemoteLogItem createSummary(CollapsedEntry entry) {
+        SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss", Locale.US);
+        RemoteLogItem item = new RemoteLogItem();
+        item.setTimestamp(entry.lastTs);
+        item.setLogLevel(entry.first.getLogLevel());
+        item.setPackageId(entry.first.getPackageId());
+        item.setMessage(entry.lastMessage + " (repeated " + entry.count + " more times from " +
+                format.format(new Date(entry.first.getTimestamp())) + " to " + format.format(new Date(entry.lastTs)) + ")");
+        return item;
+    }
+
+    private static String template(String message) {
+        if (message == null) {
+            return "";
+        }
+        StringBuilder sb = null;
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (sb == null) {
+                    sb = new StringBuilder(message.length());
+                    sb.append(message, 0, i);
+                }
+                sb.append('#');
+            } else if (sb != null) {
+                sb.append(c);
+            }
+        }
+        return sb != null ? sb.toString() : message;
+    }
+}
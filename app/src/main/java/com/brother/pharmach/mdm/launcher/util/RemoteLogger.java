@@ -20,16 +20,16 @@
 package com.brother.pharmach.mdm.launcher.util;
 
 import android.content.Context;
-import android.database.sqlite.SQLiteDatabase;
 import android.util.Log;
 
+import com.brother.pharmach.mdm.launcher.BuildConfig;
 import com.brother.pharmach.mdm.launcher.Const;
 import com.brother.pharmach.mdm.launcher.db.DatabaseHelper;
 import com.brother.pharmach.mdm.launcher.db.LogConfigTable;
-import com.brother.pharmach.mdm.launcher.db.LogTable;
 import com.brother.pharmach.mdm.launcher.json.RemoteLogConfig;
 import com.brother.pharmach.mdm.launcher.json.RemoteLogItem;
-import com.brother.pharmach.mdm.launcher.worker.RemoteLogWorker;
+import com.brother.pharmach.mdm.launcher.worker.OutboxWorker;
+import com.brother.pharmach.mdm.launcher.worker.RemoteLogChannel;
 
 import java.util.List;
 
@@ -38,10 +38,126 @@ import java.util.List;
  * and storing unsent logs
  */
 public class RemoteLogger {
-    public static long lastLogRemoval = 0;
+    // Compiled rules, replaced atomically on config update
+    private static volatile LogRuleMatcher matcher;
 
     public static void updateConfig(Context context, List<RemoteLogConfig> rules) {
-        LogConfigTable.replaceAll(DatabaseHelper.instance(context).getWritableDatabase(), rules);
+        matcher = LogRuleMatcher.compile(rules);
+        // Rules are persisted only to survive restarts
+        DatabaseHelper.instance(context).post(db -> LogConfigTable.replaceAll(db, rules));
+    }
+
+    private static LogRuleMatcher getMatcher(Context context) {
+        LogRuleMatcher m = matcher;
+        if (m == null) {
+            synchronized (RemoteLogger.class) {
+                m = matcher;
+                if (m == null) {
+                    try {
+                        m = LogRuleMatcher.compile(LogConfigTable.selectAll(
+                                DatabaseHelper.instance(context).getReadableDatabase()));
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                        m = LogRuleMatcher.EMPTY;
+                    }
+                    matcher = m;
+                }
+            }
+        }
+        return m;
+    }
+
+    // Result of isEnabled() in unit tests, where neither the rules nor logcat are available
+    static volatile Boolean enabledForTest;
+
+    /**
+     * Cheap check whether a message of this level would be written anywhere:
+     * either a remote log rule for this app accepts the level, or it's shown in logcat.
+     * Does not allocate, so hot paths may call it before building a message.
+     *
+     * Info, warnings and errors are always written to logcat, like by log(context, level, message).
+     * Verbose and debug messages of the lazily formatted overloads reach logcat only in debug builds,
+     * when a remote rule accepts them, or after "adb shell setprop log.tag.HeadwindMDM VERBOSE" (or DEBUG).
+     */
+    public static boolean isEnabled(Context context, int level) {
+        Boolean enabled = enabledForTest;
+        if (enabled != null) {
+            return enabled;
+        }
+        return level <= Const.LOG_INFO || BuildConfig.DEBUG ||
+                getMatcher(context).isEnabled(context.getPackageName(), level) ||
+                Log.isLoggable(Const.LOG_TAG, getLogcatPriority(level));
+    }
+
+    /**
+     * Lazily formatted logging: "{}" placeholders in the format are replaced by the arguments
+     * only if the level is enabled, see isEnabled()
+     */
+    public static void log(Context context, int level, String format, Object arg) {
+        if (isEnabled(context, level)) {
+            log(context, level, format(format, arg));
+        }
+    }
+
+    public static void log(Context context, int level, String format, Object arg1, Object arg2) {
+        if (isEnabled(context, level)) {
+            log(context, level, format(format, arg1, arg2));
+        }
+    }
+
+    public static void log(Context context, int level, String format, Object arg1, Object arg2, Object arg3) {
+        if (isEnabled(context, level)) {
+            log(context, level, format(format, arg1, arg2, arg3));
+        }
+    }
+
+    // Primitive overloads avoid boxing the arguments when the level is disabled
+    public static void log(Context context, int level, String format, long arg) {
+        if (isEnabled(context, level)) {
+            log(context, level, format(format, arg));
+        }
+    }
+
+    public static void log(Context context, int level, String format, long arg1, long arg2) {
+        if (isEnabled(context, level)) {
+            log(context, level, format(format, arg1, arg2));
+        }
+    }
+
+    public static void log(Context context, int level, String format, double arg1, double arg2) {
+        if (isEnabled(context, level)) {
+            log(context, level, format(format, arg1, arg2));
+        }
+    }
+
+    static String format(String format, Object... args) {
+        StringBuilder sb = new StringBuilder(format.length() + 16 * args.length);
+        int start = 0;
+        for (Object arg : args) {
+            int pos = format.indexOf("{}", start);
+            if (pos == -1) {
+                break;
+            }
+            sb.append(format, start, pos).append(arg);
+            start = pos + 2;
+        }
+        sb.append(format, start, format.length());
+        return sb.toString();
+    }
+
+    private static int getLogcatPriority(int level) {
+        switch (level) {
+            case Const.LOG_VERBOSE:
+                return Log.VERBOSE;
+            case Const.LOG_DEBUG:
+                return Log.DEBUG;
+            case Const.LOG_INFO:
+                return Log.INFO;
+            case Const.LOG_WARN:
+                return Log.WARN;
+            default:
+                return Log.ERROR;
+        }
     }
 
     public static void log(Context context, int level, String message) {
@@ -71,29 +187,44 @@ public class RemoteLogger {
         postLog(context, item);
     }
 
+    // Matching is done in memory, and matched items are stored by the RemoteLogQueue writer thread,
+    // so this is safe to call from the main thread and binder threads
     public static void postLog(Context context, RemoteLogItem item) {
-        DatabaseHelper dbHelper = DatabaseHelper.instance(context);
-        SQLiteDatabase db = dbHelper.getReadableDatabase();
-        if (LogConfigTable.match(db, item)) {
-            db = dbHelper.getWritableDatabase();
-            LogTable.insert(db, item);
-            sendLogsToServer(context);
+        if (!getMatcher(context).match(item.getPackageId(), item.getLogLevel(), item.getMessage())) {
+            return;
         }
-
-        // Remove old logs once per hour
-        long now = System.currentTimeMillis();
-        if (now > lastLogRemoval + 3600000L) {
-            db = dbHelper.getWritableDatabase();
-            LogTable.deleteOldItems(db);
-            lastLogRemoval = now;
+        switch (RemoteLogThrottle.admit(item, System.currentTimeMillis())) {
+            case RemoteLogThrottle.ADMITTED:
+                RemoteLogQueue.offer(context, item);
+                break;
+            case RemoteLogThrottle.DROPPED:
+                RemoteLogQueue.countDropped();
+                break;
+            default:
+                // Repeated message, it will be summarized later
+                break;
         }
     }
 
-    public static void resetState() {
-        RemoteLogWorker.resetState();
+    // Stores queued items in background, used at shutdown
+    public static void flushAsync(Context context, Runnable onDone) {
+        RemoteLogQueue.flushAsync(context, onDone);
+    }
+
+    public static void resetState(Context context) {
+        OutboxWorker.resetState(context);
     }
 
     public static void sendLogsToServer(Context context) {
-        RemoteLogWorker.scheduleUpload(context);
+        RemoteLogChannel.scheduleUpload(context);
+    }
+
+    // Errors and warnings are uploaded within seconds, less important logs are deferred
+    public static void scheduleUpload(Context context, int level) {
+        if (level <= Const.LOG_WARN) {
+            RemoteLogChannel.scheduleUrgentUpload(context);
+        } else {
+            RemoteLogChannel.scheduleDeferredUpload(context);
+        }
     }
 }
@@ -0,0 +1,527 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.brother.pharmach.mdm.launcher.Const;
+import com.brother.pharmach.mdm.launcher.json.RemoteLogItem;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Remote log storage in append-only segment files, an alternative to the logs table.
+ *
+ * Records are length-prefixed and checksummed: [payload length][CRC32 of payload][payload].
+ * Items are appended to the active segment, which is sealed when it is full or when
+ * an upload starts. Positions are segment numbers: a batch consists of whole sealed
+ * segments, read sequentially, and an acknowledged batch is removed by deleting its files.
+ * A torn record at the tail of the last segment (e.g. power loss while writing) is truncated
+ * on startup; a corrupted record stops reading of its segment.
+ *
+ * The storage limits are the same as for the logs table (RemoteLogBudget). To evict items
+ * of a level, the oldest segments containing them are rewritten without these items;
+ * the amount of items by package and level is kept in memory for each segment.
+ */
+public class SegmentLogStorage implements RemoteLogStorage {
+    private static final String DIRECTORY = "remote_logs";
+    private static final String SUFFIX = ".seg";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // The active segment is sealed when it reaches this size
+    private static final long SEGMENT_BYTES = 32 * 1024;
+
+    // Segments older than this period are removed even if not sent
+    private static final long MAX_AGE_MS = 7 * 24 * 60 * 60 * 1000L;
+
+    // Payload length and CRC32
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 1024 * 1024;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Context context;
+    private final File directory;
+    // Segment number to its contents, including the active segment once it is written
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private long activeNumber;
+    private FileOutputStream activeStream;
+    private boolean initialized;
+    private final RemoteLogBudget budget;
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    private final CRC32 crc = new CRC32();
+
+    // Stored items of a package in a segment
+    private static class PackageStats {
+        final int[] levelCounts = new int[Const.LOG_VERBOSE + 1];
+        int count;
+        long chars;
+    }
+
+    private static class Segment {
+        long size;
+        final Map<String, PackageStats> packages = new HashMap<>();
+
+        void add(RemoteLogItem item) {
+            String packageId = getPackageKey(item);
+            PackageStats stats = packages.get(packageId);
+            if (stats == null) {
+                stats = new PackageStats();
+                packages.put(packageId, stats);
+            }
+            stats.levelCounts[getLevel(item)]++;
+            stats.count++;
+            stats.chars += item.getMessage() != null ? item.getMessage().length() : 0;
+            stats.chars += item.getPackageId() != null ? item.getPackageId().length() : 0;
+        }
+
+        // Amount of items of the level (and package, if not null)
+        int getCount(String packageId, int level) {
+            int count = 0;
+            for (Map.Entry<String, PackageStats> entry : packages.entrySet()) {
+                if (packageId == null || packageId.equals(entry.getKey())) {
+                    count += entry.getValue().levelCounts[level];
+                }
+            }
+            return count;
+        }
+    }
+
+    public SegmentLogStorage(Context context) {
+        this.context = context;
+        directory = new File(context.getFilesDir(), DIRECTORY);
+        // The budget is applied in append() while holding the lock
+        budget = new RemoteLogBudget(new RemoteLogBudget.Store() {
+            @Override
+            public Map<String, Long> selectPackageSizes(int recordOverhead) {
+                return getPackageSizes(recordOverhead);
+            }
+
+            @Override
+            public int evictOldest(String packageId, int level, long bytes, int recordOverhead) {
+                return SegmentLogStorage.this.evictOldest(packageId, level, bytes, recordOverhead);
+            }
+        });
+    }
+
+    private void init() {
+        if (initialized) {
+            return;
+        }
+        initialized = true;
+        directory.mkdirs();
+        List<Long> numbers = new ArrayList<>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (!name.endsWith(SUFFIX)) {
+                    // Including a segment which was being rewritten
+                    file.delete();
+                    continue;
+                }
+                try {
+                    numbers.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    file.delete();
+                }
+            }
+        }
+        for (Long number : numbers) {
+            Segment segment = load(segmentFile(number));
+            if (segment.size > 0) {
+                segments.put(number, segment);
+            } else {
+                segmentFile(number).delete();
+            }
+        }
+        if (!segments.isEmpty()) {
+            // Only the last segment could be written when the app was killed
+            long last = segments.lastKey();
+            truncate(segmentFile(last), segments.get(last).size);
+            activeNumber = last + 1;
+        } else {
+            activeNumber = numbers.isEmpty() ? 1 : Collections.max(numbers) + 1;
+        }
+    }
+
+    @Override
+    public synchronized int append(List<RemoteLogItem> items) {
+        init();
+        int dropped = budget.apply(context.getPackageName(), items);
+        if (items.isEmpty()) {
+            return dropped;
+        }
+        try {
+            buffer.reset();
+            DataOutputStream out = new DataOutputStream(buffer);
+            for (RemoteLogItem item : items) {
+                writeRecord(out, item);
+            }
+            out.flush();
+
+            Segment segment = segments.get(activeNumber);
+            if (segment != null && segment.size >= SEGMENT_BYTES) {
+                seal();
+                segment = null;
+            }
+            if (activeStream == null) {
+                activeStream = new FileOutputStream(segmentFile(activeNumber), true);
+            }
+            activeStream.write(buffer.toByteArray());
+            activeStream.flush();
+            if (segment == null) {
+                segment = new Segment();
+                segments.put(activeNumber, segment);
+            }
+            segment.size += buffer.size();
+            for (RemoteLogItem item : items) {
+                segment.add(item);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            dropped += items.size();
+            items.clear();
+            // The budget may count a part of the items which was written
+            budget.invalidate();
+        }
+        return dropped;
+    }
+
+    @Override
+    public synchronized void trim() {
+        init();
+        long oldTs = System.currentTimeMillis() - MAX_AGE_MS;
+        for (Long number : new ArrayList<>(segments.keySet())) {
+            if (number != activeNumber && segmentFile(number).lastModified() < oldTs) {
+                deleteSegment(number);
+            }
+        }
+        budget.invalidate();
+    }
+
+    @Override
+    public synchronized boolean hasPending() {
+        init();
+        return !segments.isEmpty();
+    }
+
+    @Override
+    public synchronized long nextBatch(long position, int byteBudget) {
+        init();
+        if (segments.containsKey(activeNumber)) {
+            // Upload also the latest items
+            seal();
+        }
+        long end = position;
+        long size = 0;
+        for (Map.Entry<Long, Segment> entry : segments.tailMap(position, false).entrySet()) {
+            size += entry.getValue().size;
+            if (end != position && size > byteBudget) {
+                break;
+            }
+            end = entry.getKey();
+        }
+        return end;
+    }
+
+    // The segments are read while holding the lock: eviction may rewrite or delete them
+    @Override
+    public synchronized int writeBatch(long position, long end, JsonGenerator generator) throws IOException {
+        init();
+        int count = 0;
+        for (Long number : segments.subMap(position, false, end, true).keySet()) {
+            for (RemoteLogItem item : read(segmentFile(number))) {
+                generator.writeStartObject();
+                generator.writeNumberField("timestamp", item.getTimestamp());
+                generator.writeNumberField("logLevel", item.getLogLevel());
+                generator.writeStringField("packageId", item.getPackageId());
+                generator.writeStringField("message", item.getMessage());
+                generator.writeEndObject();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized void acknowledge(long position, long end) {
+        init();
+        for (Long number : new ArrayList<>(segments.subMap(position, false, end, true).keySet())) {
+            if (number != activeNumber) {
+                deleteSegment(number);
+            }
+        }
+        budget.invalidate();
+    }
+
+    private Map<String, Long> getPackageSizes(int recordOverhead) {
+        Map<String, Long> sizes = new HashMap<>();
+        for (Segment segment : segments.values()) {
+            for (Map.Entry<String, PackageStats> entry : segment.packages.entrySet()) {
+                PackageStats stats = entry.getValue();
+                Long size = sizes.get(entry.getKey());
+                sizes.put(entry.getKey(), (size != null ? size : 0) + stats.chars + (long) stats.count * recordOverhead);
+            }
+        }
+        return sizes;
+    }
+
+    // Rewrites the oldest segments containing items of the level (and package, if not null)
+    // without these items until at least bytes are freed, returns the amount of removed items
+    private int evictOldest(String packageId, int level, long bytes, int recordOverhead) {
+        int evicted = 0;
+        long freed = 0;
+        for (Long number : new ArrayList<>(segments.keySet())) {
+            if (freed >= bytes) {
+                break;
+            }
+            if (segments.get(number).getCount(packageId, level) == 0) {
+                continue;
+            }
+            List<RemoteLogItem> kept = new ArrayList<>();
+            int removed = 0;
+            long removedBytes = 0;
+            for (RemoteLogItem item : read(segmentFile(number))) {
+                if (freed + removedBytes < bytes && getLevel(item) == level &&
+                        (packageId == null || packageId.equals(getPackageKey(item)))) {
+                    removedBytes += RemoteLogBudget.size(item) - RemoteLogBudget.RECORD_OVERHEAD_BYTES + recordOverhead;
+                    removed++;
+                } else {
+                    kept.add(item);
+                }
+            }
+            if (removed > 0 && rewriteSegment(number, kept)) {
+                evicted += removed;
+                freed += removedBytes;
+            }
+        }
+        return evicted;
+    }
+
+    private boolean rewriteSegment(long number, List<RemoteLogItem> items) {
+        if (number == activeNumber) {
+            // Reopened by the next append
+            closeActive();
+        }
+        if (items.isEmpty()) {
+            deleteSegment(number);
+            return true;
+        }
+        File file = segmentFile(number);
+        File temp = new File(directory, file.getName() + TEMP_SUFFIX);
+        // trim() removes segments by their modification time, which must not be reset by eviction
+        long lastModified = file.lastModified();
+        Segment segment = new Segment();
+        try {
+            buffer.reset();
+            DataOutputStream out = new DataOutputStream(buffer);
+            for (RemoteLogItem item : items) {
+                writeRecord(out, item);
+                segment.add(item);
+            }
+            out.flush();
+            try (FileOutputStream stream = new FileOutputStream(temp)) {
+                stream.write(buffer.toByteArray());
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException("Failed to replace " + file.getName());
+            }
+            file.setLastModified(lastModified);
+        } catch (IOException e) {
+            e.printStackTrace();
+            temp.delete();
+            return false;
+        }
+        segment.size = buffer.size();
+        segments.put(number, segment);
+        return true;
+    }
+
+    private void seal() {
+        closeActive();
+        activeNumber++;
+    }
+
+    private void closeActive() {
+        if (activeStream != null) {
+            try {
+                activeStream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            activeStream = null;
+        }
+    }
+
+    private void deleteSegment(long number) {
+        segments.remove(number);
+        segmentFile(number).delete();
+    }
+
+    private File segmentFile(long number) {
+        return new File(directory, String.format(Locale.US, "%016d", number) + SUFFIX);
+    }
+
+    // Package ID the budget accounts the item to
+    private static String getPackageKey(RemoteLogItem item) {
+        return item.getPackageId() != null ? item.getPackageId() : "";
+    }
+
+    // Unknown levels are treated as the nearest known one, as in RemoteLogBudget
+    private static int getLevel(RemoteLogItem item) {
+        return Math.max(Const.LOG_ERROR, Math.min(Const.LOG_VERBOSE, item.getLogLevel()));
+    }
+
+    private void writeRecord(DataOutputStream out, RemoteLogItem item) throws IOException {
+        payload.reset();
+        DataOutputStream p = new DataOutputStream(payload);
+        p.writeLong(item.getTimestamp());
+        p.writeInt(item.getLogLevel());
+        writeString(p, item.getPackageId());
+        writeString(p, item.getMessage());
+        p.flush();
+
+        byte[] data = payload.toByteArray();
+        crc.reset();
+        crc.update(data, 0, data.length);
+        out.writeInt(data.length);
+        out.writeInt((int) crc.getValue());
+        out.write(data);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    // Reads the valid records of the segment
+    private static List<RemoteLogItem> read(File file) {
+        List<RemoteLogItem> items = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 16384))) {
+            byte[] data;
+            while ((data = readPayload(in)) != null) {
+                items.add(parsePayload(data));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return items;
+    }
+
+    // Indexes the valid records of the segment
+    private static Segment load(File file) {
+        Segment segment = new Segment();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 16384))) {
+            byte[] data;
+            while ((data = readPayload(in)) != null) {
+                segment.size += HEADER_BYTES + data.length;
+                segment.add(parsePayload(data));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return segment;
+    }
+
+    private static RemoteLogItem parsePayload(byte[] data) throws IOException {
+        DataInputStream p = new DataInputStream(new ByteArrayInputStream(data));
+        RemoteLogItem item = new RemoteLogItem();
+        item.setTimestamp(p.readLong());
+        item.setLogLevel(p.readInt());
+        item.setPackageId(readString(p));
+        item.setMessage(readString(p));
+        return item;
+    }
+
+    // Returns null at the end of the segment or at a torn/corrupted record
+    private static byte[] readPayload(DataInputStream in) throws IOException {
+        int length;
+        int checksum;
+        try {
+            length = in.readInt();
+            checksum = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length < 0 || length > MAX_RECORD_BYTES) {
+            return null;
+        }
+        byte[] data = new byte[length];
+        try {
+            in.readFully(data);
+        } catch (EOFException e) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return (int) crc.getValue() == checksum ? data : null;
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    // Truncates the torn tail of the segment
+    private static void truncate(File file, long validSize) {
+        if (validSize < file.length()) {
+            Log.w(Const.LOG_TAG, "Truncating torn remote log segment " + file.getName() + " to " + validSize + " bytes");
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(validSize);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import android.content.Context;
+import android.database.Cursor;
+
+import com.brother.pharmach.mdm.launcher.db.DatabaseHelper;
+import com.brother.pharmach.mdm.launcher.db.LogTable;
+import com.brother.pharmach.mdm.launcher.json.RemoteLogItem;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Default remote log storage: the logs table, positions are row IDs
+ */
+public class SqliteLogStorage implements RemoteLogStorage {
+    // Estimated size of a serialized log item without its package ID and message
+    private static final int RECORD_OVERHEAD_BYTES = 80;
+
+    private Context context;
+    private RemoteLogBudget budget;
+
+    public SqliteLogStorage(Context context) {
+        this.context = context;
+        // The budget is applied on the writer thread
+        budget = new RemoteLogBudget(new RemoteLogBudget.Store() {
+            @Override
+            public Map<String, Long> selectPackageSizes(int recordOverhead) {
+                return LogTable.selectPackageSizes(DatabaseHelper.instance(context).getWritableDatabase(), recordOverhead);
+            }
+
+            @Override
+            public int evictOldest(String packageId, int level, long bytes, int recordOverhead) {
+                return LogTable.evictOldest(DatabaseHelper.instance(context).getWritableDatabase(),
+                        packageId, level, bytes, recordOverhead);
+            }
+        });
+    }
+
+    @Override
+    public int append(final List<RemoteLogItem> items) {
+        return DatabaseHelper.instance(context).call(db -> {
+            int dropped = budget.apply(context.getPackageName(), items);
+            if (!items.isEmpty()) {
+                try {
+                    LogTable.insert(db, items);
+                } catch (RuntimeException e) {
+                    // The budget already counted the items as stored
+                    budget.invalidate();
+                    throw e;
+                }
+            }
+            return dropped;
+        });
+    }
+
+    @Override
+    public void trim() {
+        DatabaseHelper.instance(context).execute(LogTable::deleteOldItems);
+        budget.invalidate();
+    }
+
+    @Override
+    public boolean hasPending() {
+        return nextBatch(0, 1) != 0;
+    }
+
+    @Override
+    public long nextBatch(long position, int byteBudget) {
+        return LogTable.findBatchEnd(DatabaseHelper.instance(context).getReadableDatabase(),
+                position, byteBudget, RECORD_OVERHEAD_BYTES);
+    }
+
+    @Override
+    public int writeBatch(long position, long end, JsonGenerator generator) throws IOException {
+        int count = 0;
+        Cursor cursor = LogTable.selectRange(DatabaseHelper.instance(context).getReadableDatabase(), position, end);
+        try {
+            while (cursor.moveToNext()) {
+                generator.writeStartObject();
+                generator.writeNumberField("timestamp", cursor.getLong(LogTable.COLUMN_TS));
+                generator.writeNumberField("logLevel", cursor.getInt(LogTable.COLUMN_LEVEL));
+                generator.writeStringField("packageId", cursor.getString(LogTable.COLUMN_PACKAGE_ID));
+                generator.writeStringField("message", cursor.getString(LogTable.COLUMN_MESSAGE));
+                generator.writeEndObject();
+                count++;
+            }
+        } finally {
+            cursor.close();
+        }
+        return count;
+    }
+
+    @Override
+    public void acknowledge(long position, long end) {
+        DatabaseHelper.instance(context).execute(db -> LogTable.deleteRange(db, position, end));
+        budget.invalidate();
+    }
+}
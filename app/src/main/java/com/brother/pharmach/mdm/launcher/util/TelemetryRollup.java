@@ -0,0 +1,200 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import com.brother.pharmach.mdm.launcher.json.DetailedInfo;
+import com.brother.pharmach.mdm.launcher.json.DetailedInfoRollup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Downsamples the telemetry: the samples are grouped into time windows aligned to the window size.
+ * For each window, numeric fields are summarized by min/max/avg/last, and categorical fields are
+ * reported only at the samples where their value changes. The first sample of a call reports
+ * all categorical values as the baseline.
+ */
+public class TelemetryRollup {
+
+    private interface NumericField {
+        Number get(DetailedInfo info);
+    }
+
+    private interface CategoricalField {
+        Object get(DetailedInfo info);
+    }
+
+    private static final DetailedInfo.Device NO_DEVICE = new DetailedInfo.Device();
+    private static final DetailedInfo.Wifi NO_WIFI = new DetailedInfo.Wifi();
+    private static final DetailedInfo.Gps NO_GPS = new DetailedInfo.Gps();
+    private static final DetailedInfo.Mobile NO_MOBILE = new DetailedInfo.Mobile();
+
+    private static final Map<String, NumericField> NUMERIC_FIELDS = new LinkedHashMap<>();
+    private static final Map<String, CategoricalField> CATEGORICAL_FIELDS = new LinkedHashMap<>();
+
+    static {
+        NUMERIC_FIELDS.put("deviceBatteryLevel", i -> device(i).getBatteryLevel());
+        NUMERIC_FIELDS.put("deviceRingVolume", i -> device(i).getRingVolume());
+        NUMERIC_FIELDS.put("deviceMemoryTotal", i -> device(i).getMemoryTotal());
+        NUMERIC_FIELDS.put("deviceMemoryAvailable", i -> device(i).getMemoryAvailable());
+        NUMERIC_FIELDS.put("wifiRssi", i -> wifi(i).getRssi());
+        NUMERIC_FIELDS.put("wifiTx", i -> wifi(i).getTx());
+        NUMERIC_FIELDS.put("wifiRx", i -> wifi(i).getRx());
+        NUMERIC_FIELDS.put("gpsLat", i -> gps(i).getLat());
+        NUMERIC_FIELDS.put("gpsLon", i -> gps(i).getLon());
+        NUMERIC_FIELDS.put("gpsAlt", i -> gps(i).getAlt());
+        NUMERIC_FIELDS.put("gpsSpeed", i -> gps(i).getSpeed());
+        NUMERIC_FIELDS.put("mobileRssi", i -> mobile(i).getRssi());
+        NUMERIC_FIELDS.put("mobileTx", i -> mobile(i).getTx());
+        NUMERIC_FIELDS.put("mobileRx", i -> mobile(i).getRx());
+        NUMERIC_FIELDS.put("mobile2Rssi", i -> mobile2(i).getRssi());
+        NUMERIC_FIELDS.put("mobile2Tx", i -> mobile2(i).getTx());
+        NUMERIC_FIELDS.put("mobile2Rx", i -> mobile2(i).getRx());
+
+        CATEGORICAL_FIELDS.put("deviceBatteryCharging", i -> device(i).getBatteryCharging());
+        CATEGORICAL_FIELDS.put("deviceWifi", i -> device(i).getWifi());
+        CATEGORICAL_FIELDS.put("deviceGps", i -> device(i).getGps());
+        CATEGORICAL_FIELDS.put("deviceIp", i -> device(i).getIp());
+        CATEGORICAL_FIELDS.put("deviceKeyguard", i -> device(i).getKeyguard());
+        CATEGORICAL_FIELDS.put("deviceMobileData", i -> device(i).getMobileData());
+        CATEGORICAL_FIELDS.put("deviceBluetooth", i -> device(i).getBluetooth());
+        CATEGORICAL_FIELDS.put("deviceUsbStorage", i -> device(i).getUsbStorage());
+        CATEGORICAL_FIELDS.put("wifiSsid", i -> wifi(i).getSsid());
+        CATEGORICAL_FIELDS.put("wifiSecurity", i -> wifi(i).getSecurity());
+        CATEGORICAL_FIELDS.put("wifiState", i -> wifi(i).getState());
+        CATEGORICAL_FIELDS.put("wifiIp", i -> wifi(i).getIp());
+        CATEGORICAL_FIELDS.put("gpsState", i -> gps(i).getState());
+        CATEGORICAL_FIELDS.put("gpsProvider", i -> gps(i).getProvider());
+        CATEGORICAL_FIELDS.put("mobileCarrier", i -> mobile(i).getCarrier());
+        CATEGORICAL_FIELDS.put("mobileNumber", i -> mobile(i).getNumber());
+        CATEGORICAL_FIELDS.put("mobileImsi", i -> mobile(i).getImsi());
+        CATEGORICAL_FIELDS.put("mobileData", i -> mobile(i).getData());
+        CATEGORICAL_FIELDS.put("mobileIp", i -> mobile(i).getIp());
+        CATEGORICAL_FIELDS.put("mobileState", i -> mobile(i).getState());
+        CATEGORICAL_FIELDS.put("mobileSimState", i -> mobile(i).getSimState());
+        CATEGORICAL_FIELDS.put("mobile2Carrier", i -> mobile2(i).getCarrier());
+        CATEGORICAL_FIELDS.put("mobile2Number", i -> mobile2(i).getNumber());
+        CATEGORICAL_FIELDS.put("mobile2Imsi", i -> mobile2(i).getImsi());
+        CATEGORICAL_FIELDS.put("mobile2Data", i -> mobile2(i).getData());
+        CATEGORICAL_FIELDS.put("mobile2Ip", i -> mobile2(i).getIp());
+        CATEGORICAL_FIELDS.put("mobile2State", i -> mobile2(i).getState());
+        CATEGORICAL_FIELDS.put("mobile2SimState", i -> mobile2(i).getSimState());
+    }
+
+    /**
+     * Returns the start of the window containing the time
+     */
+    public static long getWindowStart(long ts, long windowMs) {
+        return ts - ts % windowMs;
+    }
+
+    /**
+     * Summarizes the samples sorted by time into windows of the specified size
+     */
+    public static List<DetailedInfoRollup> rollup(List<DetailedInfo> samples, long windowMs) {
+        List<DetailedInfoRollup> result = new ArrayList<>();
+        Map<String, String> lastValues = new HashMap<>();
+
+        int n = 0;
+        while (n < samples.size()) {
+            long start = getWindowStart(samples.get(n).getTs(), windowMs);
+            int end = n;
+            while (end < samples.size() && samples.get(end).getTs() < start + windowMs) {
+                end++;
+            }
+            result.add(rollupWindow(samples.subList(n, end), start, start + windowMs, lastValues));
+            n = end;
+        }
+        return result;
+    }
+
+    private static DetailedInfoRollup rollupWindow(List<DetailedInfo> samples, long start, long end,
+                                                   Map<String, String> lastValues) {
+        DetailedInfoRollup rollup = new DetailedInfoRollup();
+        rollup.setStart(start);
+        rollup.setEnd(end);
+        rollup.setCount(samples.size());
+
+        for (Map.Entry<String, NumericField> field : NUMERIC_FIELDS.entrySet()) {
+            DetailedInfoRollup.Stats stats = null;
+            double sum = 0;
+            int count = 0;
+            for (DetailedInfo sample : samples) {
+                Number number = field.getValue().get(sample);
+                if (number == null) {
+                    continue;
+                }
+                double value = number.doubleValue();
+                if (stats == null) {
+                    stats = new DetailedInfoRollup.Stats();
+                    stats.setMin(value);
+                    stats.setMax(value);
+                } else {
+                    stats.setMin(Math.min(stats.getMin(), value));
+                    stats.setMax(Math.max(stats.getMax(), value));
+                }
+                stats.setLast(value);
+                sum += value;
+                count++;
+            }
+            if (stats != null) {
+                stats.setAvg(sum / count);
+                rollup.getFields().put(field.getKey(), stats);
+            }
+        }
+
+        for (DetailedInfo sample : samples) {
+            for (Map.Entry<String, CategoricalField> field : CATEGORICAL_FIELDS.entrySet()) {
+                Object object = field.getValue().get(sample);
+                String value = object != null ? object.toString() : null;
+                String key = field.getKey();
+                if (!lastValues.containsKey(key) ? value != null :
+                        (value == null ? lastValues.get(key) != null : !value.equals(lastValues.get(key)))) {
+                    rollup.getChanges().add(new DetailedInfoRollup.Change(sample.getTs(), key, value));
+                }
+                lastValues.put(key, value);
+            }
+        }
+        return rollup;
+    }
+
+    private static DetailedInfo.Device device(DetailedInfo info) {
+        return info.getDevice() != null ? info.getDevice() : NO_DEVICE;
+    }
+
+    private static DetailedInfo.Wifi wifi(DetailedInfo info) {
+        return info.getWifi() != null ? info.getWifi() : NO_WIFI;
+    }
+
+    private static DetailedInfo.Gps gps(DetailedInfo info) {
+        return info.getGps() != null ? info.getGps() : NO_GPS;
+    }
+
+    private static DetailedInfo.Mobile mobile(DetailedInfo info) {
+        return info.getMobile() != null ? info.getMobile() : NO_MOBILE;
+    }
+
+    private static DetailedInfo.Mobile mobile2(DetailedInfo info) {
+        return info.getMobile2() != null ? info.getMobile2() : NO_MOBILE;
+    }
+}
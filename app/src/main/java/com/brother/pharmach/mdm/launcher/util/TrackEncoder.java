@@ -0,0 +1,157 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import com.brother.pharmach.mdm.launcher.db.LocationTable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact encoding of the location track for upload.
+ * The track is simplified by the Douglas-Peucker algorithm, keeping the periodic fixes
+ * of a stationary device as the proof of its presence. Then each point is encoded
+ * as the difference from the previous point: latitude and longitude in 1e-5 degrees,
+ * time in seconds. Each difference is written like in the Google encoded polyline format:
+ * zigzag-encoded and split into 5-bit groups, each group is a printable character 63..126.
+ */
+public class TrackEncoder {
+
+    public static final int PRECISION = 100000;
+
+    public static final int DEFAULT_TOLERANCE_M = 10;
+
+    // A point is kept if this time has passed since the previous kept point
+    // Equal to the store interval of LocationSampler, so its heartbeat fixes are not dropped
+    public static final long DEFAULT_HEARTBEAT_MS = LocationSampler.MAX_STORE_INTERVAL_MS;
+
+    private static final double EARTH_RADIUS_M = 6371000;
+
+    public static List<LocationTable.Location> simplify(List<LocationTable.Location> points, double toleranceM) {
+        return simplify(points, toleranceM, DEFAULT_HEARTBEAT_MS);
+    }
+
+    /**
+     * Returns the points of the track needed to keep it within the tolerance.
+     * The first and last points are always kept; points closer than the tolerance
+     * to the previous kept point are dropped as duplicates. A point is always kept
+     * if heartbeatMs has passed since the previous kept point.
+     */
+    public static List<LocationTable.Location> simplify(List<LocationTable.Location> points, double toleranceM,
+                                                        long heartbeatMs) {
+        int size = points.size();
+        if (size <= 2) {
+            return points;
+        }
+
+        // Project the points to a plane in meters; the error is negligible for a track
+        double lat0 = Math.toRadians(points.get(0).getLat());
+        double cosLat = Math.cos(lat0);
+        double[] x = new double[size];
+        double[] y = new double[size];
+        for (int n = 0; n < size; n++) {
+            x[n] = Math.toRadians(points.get(n).getLon()) * cosLat * EARTH_RADIUS_M;
+            y[n] = Math.toRadians(points.get(n).getLat()) * EARTH_RADIUS_M;
+        }
+
+        boolean[] keep = new boolean[size];
+        keep[0] = true;
+        keep[size - 1] = true;
+
+        // Iterative Douglas-Peucker with a stack of ranges
+        int[] stack = new int[size * 2];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = size - 1;
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            double maxDistance = 0;
+            int index = -1;
+            for (int n = first + 1; n < last; n++) {
+                double distance = segmentDistance(x[n], y[n], x[first], y[first], x[last], y[last]);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    index = n;
+                }
+            }
+            if (index != -1 && maxDistance > toleranceM) {
+                keep[index] = true;
+                stack[top++] = first;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = last;
+            }
+        }
+
+        List<LocationTable.Location> result = new ArrayList<>();
+        int prev = -1;
+        for (int n = 0; n < size; n++) {
+            boolean heartbeat = prev != -1 && points.get(n).getTs() - points.get(prev).getTs() >= heartbeatMs;
+            if (!keep[n] && !heartbeat) {
+                continue;
+            }
+            if (!heartbeat && prev != -1 && n != size - 1 && Math.hypot(x[n] - x[prev], y[n] - y[prev]) < toleranceM) {
+                continue;
+            }
+            result.add(points.get(n));
+            prev = n;
+        }
+        return result;
+    }
+
+    // Distance from the point (px, py) to the segment (ax, ay) - (bx, by)
+    private static double segmentDistance(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double length = dx * dx + dy * dy;
+        double t = length > 0 ? ((px - ax) * dx + (py - ay) * dy) / length : 0;
+        t = Math.max(0, Math.min(1, t));
+        return Math.hypot(px - ax - t * dx, py - ay - t * dy);
+    }
+
+    public static String encode(List<LocationTable.Location> points) {
+        StringBuilder sb = new StringBuilder(points.size() * 12);
+        long prevLat = 0;
+        long prevLon = 0;
+        long prevTs = 0;
+        for (LocationTable.Location point : points) {
+            long lat = Math.round(point.getLat() * PRECISION);
+            long lon = Math.round(point.getLon() * PRECISION);
+            long ts = point.getTs() / 1000;
+            encodeValue(sb, lat - prevLat);
+            encodeValue(sb, lon - prevLon);
+            encodeValue(sb, ts - prevTs);
+            prevLat = lat;
+            prevLon = lon;
+            prevTs = ts;
+        }
+        return sb.toString();
+    }
+
+    private static void encodeValue(StringBuilder sb, long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while (zigzag >= 0x20) {
+            sb.append((char) ((0x20 | (zigzag & 0x1f)) + 63));
+            zigzag >>>= 5;
+        }
+        sb.append((char) (zigzag + 63));
+    }
+}
@@ -1120,6 +1120,7 @@ public class Utils {
                 }
                 for (String pkg : pkgs) {
                     devicePolicyManager.setApplicationHidden(deviceAdmin, pkg, lock);
+                    PackageIndex.onPackageChanged(context, pkg);
                 }
             } catch (Exception e) {
                 e.printStackTrace();
@@ -27,10 +27,7 @@ import android.database.Cursor;
 import android.provider.CallLog;
 import android.util.Log;
 
-import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
-import androidx.work.Worker;
-import androidx.work.WorkerParameters;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -46,37 +43,68 @@ import java.util.List;
 import okhttp3.ResponseBody;
 import retrofit2.Response;
 
-public class CallLogUploadWorker extends Worker {
+/**
+ * Outbox channel for the system call log. The new calls are read from the CallLog provider
+ * since the last uploaded call; CallStateReceiver marks the channel pending when a call ends.
+ */
+public class CallLogChannel extends OutboxChannel {
 
-    private static final String TAG = "CallLogUploadWorker";
+    private static final String TAG = "CallLogChannel";
+    private static final String PREFS_NAME = "CallLogPrefs";
     private static final String PREF_LAST_CALL_TIMESTAMP = "last_call_log_timestamp";
+    private static final String PREF_DUE_TIME = "due_time";
     private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
 
-    public CallLogUploadWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
-        super(context, workerParams);
+    // Delay to ensure the call is written to the call log
+    private static final int UPLOAD_DELAY_SEC = 5;
+
+    public static void scheduleUpload(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        long dueTime = Math.min(prefs.getLong(PREF_DUE_TIME, NOT_PENDING),
+                System.currentTimeMillis() + UPLOAD_DELAY_SEC * 1000L);
+        prefs.edit().putLong(PREF_DUE_TIME, dueTime).apply();
+        OutboxWorker.notify(context, dueTime);
+    }
+
+    @Override
+    public String getName() {
+        return "call log";
     }
 
-    @NonNull
     @Override
-    public Result doWork() {
-        Context context = getApplicationContext();
+    public long getDueTime(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).getLong(PREF_DUE_TIME, NOT_PENDING);
+    }
 
+    @Override
+    public int upload(Context context) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        long dueTime = prefs.getLong(PREF_DUE_TIME, NOT_PENDING);
+        int result = uploadCalls(context, prefs);
+        if (result == RESULT_OK && prefs.getLong(PREF_DUE_TIME, NOT_PENDING) == dueTime) {
+            // No calls since the upload has started
+            prefs.edit().remove(PREF_DUE_TIME).apply();
+        }
+        return result;
+    }
+
+    private int uploadCalls(Context context, SharedPreferences prefs) {
         if (ContextCompat.checkSelfPermission(context, Manifest.permission.READ_CALL_LOG) != PackageManager.PERMISSION_GRANTED) {
             Log.w(TAG, "Missing READ_CALL_LOG permission");
-            return Result.failure();
+            return RESULT_OK;
         }
 
         SettingsHelper settingsHelper = SettingsHelper.getInstance(context);
         String deviceId = settingsHelper.getDeviceId();
         String serverProject = settingsHelper.getServerProject();
-        
+
         if (deviceId == null || serverProject == null) {
-            return Result.failure();
+            return RESULT_FAILED;
         }
 
         ServerService serverService = ServerServiceKeeper.getServerServiceInstance(context);
         if (serverService == null) {
-             return Result.retry();
+             return RESULT_FAILED;
         }
 
         // 1. Check if enabled
@@ -88,26 +116,25 @@ public class CallLogUploadWorker extends Worker {
             }
 
             if (enabledResponse == null || !enabledResponse.isSuccessful() || enabledResponse.body() == null) {
-                return Result.retry();
+                return RESULT_FAILED;
             }
 
             String enabledPayload = enabledResponse.body().string();
             Boolean enabled = parseCallLogEnabled(enabledPayload);
             if (enabled == null) {
                 Log.w(TAG, "Call log enabled endpoint returned invalid payload, scheduling retry");
-                return Result.retry();
+                return RESULT_FAILED;
             }
 
             if (!enabled) {
-                return Result.success();
+                return RESULT_OK;
             }
         } catch (IOException e) {
             Log.e(TAG, "Failed to check enabled status", e);
-            return Result.retry();
+            return RESULT_UNREACHABLE;
         }
 
         // 2. Read new logs
-        SharedPreferences prefs = context.getSharedPreferences("CallLogPrefs", Context.MODE_PRIVATE);
         long lastTimestamp = prefs.getLong(PREF_LAST_CALL_TIMESTAMP, 0);
 
         List<CallLogRecord> records = new ArrayList<>();
@@ -157,7 +184,7 @@ public class CallLogUploadWorker extends Worker {
             }
         } catch (Exception e) {
             Log.e(TAG, "Error reading call log", e);
-            return Result.failure();
+            return RESULT_OK;
         } finally {
             if (cursor != null) {
                 cursor.close();
@@ -170,7 +197,7 @@ public class CallLogUploadWorker extends Worker {
 
         if (records.isEmpty()) {
             Log.i(TAG, "No new call log records to upload");
-            return Result.success();
+            return RESULT_OK;
         }
 
         // 3. Upload
@@ -179,14 +206,14 @@ public class CallLogUploadWorker extends Worker {
             if (response.isSuccessful()) {
                 prefs.edit().putLong(PREF_LAST_CALL_TIMESTAMP, maxTimestamp).apply();
                 Log.i(TAG, "Uploaded " + records.size() + " call log records successfully");
-                return Result.success();
+                return RESULT_OK;
             } else {
                 Log.w(TAG, "Call log upload failed, HTTP status=" + response.code());
-                return Result.retry();
+                return RESULT_FAILED;
             }
         } catch (IOException e) {
             Log.e(TAG, "Upload failed", e);
-            return Result.retry();
+            return RESULT_UNREACHABLE;
         }
     }
 
@@ -0,0 +1,236 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.worker;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.brother.pharmach.mdm.launcher.Const;
+import com.brother.pharmach.mdm.launcher.db.DatabaseHelper;
+import com.brother.pharmach.mdm.launcher.helper.SettingsHelper;
+import com.brother.pharmach.mdm.launcher.json.DeviceInfo;
+import com.brother.pharmach.mdm.launcher.util.RemoteLogger;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reclaims the space of deleted rows in the launcher and MQTT databases and collects their
+ * size statistics reported in the device info. Runs daily when the device is idle and charging.
+ * A database is switched to incremental auto-vacuum by one full VACUUM; after that, the free
+ * pages are released in bounded steps so the writes of the app are not blocked for long.
+ */
+public class DatabaseMaintenanceWorker extends Worker {
+
+    public static final int FIRE_PERIOD_HOURS = 24;
+
+    // Integrity check reads the whole database, so it runs less often
+    private static final long INTEGRITY_CHECK_PERIOD_MS = 7 * 24 * 3600000L;
+
+    // Each incremental vacuum step frees at most this many pages (4 KB each)
+    private static final int VACUUM_STEP_PAGES = 256;
+    private static final int MAX_VACUUM_STEPS = 16;
+
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    // Database of the MQTT service, see org.eclipse.paho.android.service.DatabaseMessageStore
+    private static final String MQTT_DATABASE_NAME = "mqttAndroidService.db";
+
+    private static final String WORK_TAG_DATABASE_MAINTENANCE = "com.brother.pharmach.mdm.launcher.WORK_TAG_DATABASE_MAINTENANCE";
+
+    public static void schedule(Context context) {
+        Constraints.Builder constraints = new Constraints.Builder()
+                .setRequiresCharging(true);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            constraints.setRequiresDeviceIdle(true);
+        }
+        PeriodicWorkRequest request =
+                new PeriodicWorkRequest.Builder(DatabaseMaintenanceWorker.class, FIRE_PERIOD_HOURS, TimeUnit.HOURS)
+                        .addTag(Const.WORK_TAG_COMMON)
+                        .setConstraints(constraints.build())
+                        .build();
+        WorkManager.getInstance(context.getApplicationContext()).enqueueUniquePeriodicWork(WORK_TAG_DATABASE_MAINTENANCE,
+                ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    /**
+     * Runs the maintenance steps on a database connection: the launcher database
+     * is only written by the DatabaseHelper writer thread.
+     */
+    private abstract static class Connection {
+        abstract <T> T call(DatabaseHelper.WriteTask<T> task);
+    }
+
+    private Context context;
+    private SettingsHelper settingsHelper;
+
+    public DatabaseMaintenanceWorker(
+            @NonNull final Context context,
+            @NonNull WorkerParameters params) {
+        super(context, params);
+        this.context = context;
+        settingsHelper = SettingsHelper.getInstance(context);
+    }
+
+    @Override
+    // This is running in a background thread by WorkManager
+    public Result doWork() {
+        boolean checkIntegrity = System.currentTimeMillis() >
+                settingsHelper.getDatabaseIntegrityCheckTime() + INTEGRITY_CHECK_PERIOD_MS;
+        List<DeviceInfo.Database> stats = new LinkedList<>();
+
+        final DatabaseHelper helper = DatabaseHelper.instance(context);
+        DeviceInfo.Database launcherStats = maintain(helper.getDatabaseName(), new Connection() {
+            @Override
+            <T> T call(DatabaseHelper.WriteTask<T> task) {
+                return helper.call(task);
+            }
+        }, checkIntegrity);
+        if (launcherStats != null) {
+            stats.add(launcherStats);
+        }
+
+        if (context.getDatabasePath(MQTT_DATABASE_NAME).exists()) {
+            SQLiteDatabase mqttDb = null;
+            try {
+                mqttDb = SQLiteDatabase.openDatabase(context.getDatabasePath(MQTT_DATABASE_NAME).getPath(),
+                        null, SQLiteDatabase.OPEN_READWRITE);
+                final SQLiteDatabase db = mqttDb;
+                DeviceInfo.Database mqttStats = maintain(MQTT_DATABASE_NAME, new Connection() {
+                    @Override
+                    <T> T call(DatabaseHelper.WriteTask<T> task) {
+                        return task.run(db);
+                    }
+                }, checkIntegrity);
+                if (mqttStats != null) {
+                    stats.add(mqttStats);
+                }
+            } catch (Exception e) {
+                // The MQTT service may hold the lock, the next run will retry
+                e.printStackTrace();
+            } finally {
+                if (mqttDb != null) {
+                    mqttDb.close();
+                }
+            }
+        }
+
+        if (checkIntegrity && !isStopped()) {
+            settingsHelper.setDatabaseIntegrityCheckTime(System.currentTimeMillis());
+        }
+        settingsHelper.setDatabaseStats(stats);
+        return Result.success();
+    }
+
+    // Returns the database statistics, or null on error
+    private DeviceInfo.Database maintain(String name, Connection connection, boolean checkIntegrity) {
+        try {
+            if (connection.call(db -> DatabaseUtils.longForQuery(db, "PRAGMA auto_vacuum", null)) != AUTO_VACUUM_INCREMENTAL) {
+                // Auto-vacuum mode of an existing database is changed by a full VACUUM, done once
+                Log.i(Const.LOG_TAG, "Converting " + name + " to incremental auto-vacuum");
+                connection.call(db -> {
+                    db.execSQL("PRAGMA auto_vacuum=INCREMENTAL");
+                    db.execSQL("VACUUM");
+                    return null;
+                });
+            } else {
+                for (int n = 0; n < MAX_VACUUM_STEPS && !isStopped(); n++) {
+                    if (connection.call(DatabaseMaintenanceWorker::vacuumStep) == 0) {
+                        break;
+                    }
+                }
+            }
+
+            connection.call(db -> {
+                Cursor cursor = db.rawQuery("PRAGMA optimize", null);
+                cursor.getCount();
+                cursor.close();
+                return null;
+            });
+
+            if (checkIntegrity && !isStopped()) {
+                String result = connection.call(db -> DatabaseUtils.stringForQuery(db, "PRAGMA quick_check", null));
+                if (!"ok".equals(result)) {
+                    RemoteLogger.log(context, Const.LOG_ERROR, "Database " + name + " integrity check failed: " + result);
+                }
+            }
+
+            return connection.call(db -> getStats(name, db));
+        } catch (Exception e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    // Releases up to VACUUM_STEP_PAGES free pages, returns the number of remaining free pages
+    private static long vacuumStep(SQLiteDatabase db) {
+        if (DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null) == 0) {
+            return 0;
+        }
+        // Each row of the result frees one page, so the cursor must be read to the end
+        Cursor cursor = db.rawQuery("PRAGMA incremental_vacuum(" + VACUUM_STEP_PAGES + ")", null);
+        cursor.getCount();
+        cursor.close();
+        return DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+    }
+
+    private DeviceInfo.Database getStats(String name, SQLiteDatabase db) {
+        File file = context.getDatabasePath(name);
+        File wal = new File(file.getPath() + "-wal");
+        long pages = DatabaseUtils.longForQuery(db, "PRAGMA page_count", null);
+        long freePages = DatabaseUtils.longForQuery(db, "PRAGMA freelist_count", null);
+
+        Map<String, Long> rows = new HashMap<>();
+        Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type='table' " +
+                "AND name NOT LIKE 'sqlite_%' AND name != 'android_metadata'", null);
+        try {
+            while (cursor.moveToNext()) {
+                String table = cursor.getString(0);
+                rows.put(table, DatabaseUtils.queryNumEntries(db, "\"" + table + "\""));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        DeviceInfo.Database stats = new DeviceInfo.Database();
+        stats.setName(name);
+        stats.setSize(file.length() + (wal.exists() ? wal.length() : 0));
+        stats.setFreeRatio(pages > 0 ? (double) freePages / pages : 0);
+        stats.setRows(rows);
+        stats.setTs(System.currentTimeMillis());
+        return stats;
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.worker;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.brother.pharmach.mdm.launcher.Const;
+import com.brother.pharmach.mdm.launcher.db.DatabaseHelper;
+import com.brother.pharmach.mdm.launcher.db.InfoHistoryTable;
+import com.brother.pharmach.mdm.launcher.helper.SettingsHelper;
+import com.brother.pharmach.mdm.launcher.json.DetailedInfo;
+import com.brother.pharmach.mdm.launcher.json.DetailedInfoConfig;
+import com.brother.pharmach.mdm.launcher.json.DetailedInfoRollup;
+import com.brother.pharmach.mdm.launcher.server.ServerService;
+import com.brother.pharmach.mdm.launcher.server.ServerServiceKeeper;
+import com.brother.pharmach.mdm.launcher.util.RemoteLogger;
+import com.brother.pharmach.mdm.launcher.util.TelemetryRollup;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.List;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+import retrofit2.Response;
+
+/**
+ * Outbox channel for the telemetry samples stored by DetailedInfoWorker.
+ * Samples are accumulated and sent hourly in large compressed batches,
+ * or earlier together with other uploads.
+ * By default, the samples are sent as rollups (see TelemetryRollup) of complete time windows,
+ * the samples of the current window stay in the database until the next upload.
+ * Raw samples are sent if requested by the configuration or if the server doesn't accept rollups.
+ */
+public class DetailedInfoChannel extends OutboxChannel {
+
+    // Max number of samples sent to server at once
+    private static final int BATCH_SIZE = 500;
+
+    private static final long UPLOAD_PERIOD_MS = 60 * 60000L;
+
+    // Samples which are due in this period are sent together with other uploads
+    private static final long PIGGYBACK_PERIOD_MS = 30 * 60000L;
+
+    private static final long GZIP_REJECT_PERIOD_MS = 24 * 3600000L;
+    private static final long ROLLUP_REJECT_PERIOD_MS = 24 * 3600000L;
+
+    private static final int DEFAULT_ROLLUP_WINDOW_MINS = 5;
+
+    // Samples older than this are downsampled to hourly windows
+    private static final long DOWNSAMPLE_AGE_MS = 6 * 3600000L;
+    private static final long DOWNSAMPLE_WINDOW_MS = 3600000L;
+    private static final String ENCODING_GZIP = "gzip";
+    private static final MediaType MEDIA_TYPE_JSON = MediaType.parse("application/json; charset=utf-8");
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // Time of the scheduled upload, 0 if not scheduled
+    private static long dueTime = 0;
+    private static long lastUploadTime = 0;
+
+    // Called when new samples are stored
+    public static void scheduleUpload(Context context) {
+        long time;
+        synchronized (DetailedInfoChannel.class) {
+            if (dueTime != 0) {
+                return;
+            }
+            dueTime = Math.max(System.currentTimeMillis(), lastUploadTime + UPLOAD_PERIOD_MS);
+            time = dueTime;
+        }
+        OutboxWorker.notify(context, time);
+    }
+
+    @Override
+    public String getName() {
+        return "detailed info";
+    }
+
+    @Override
+    public long getDueTime(Context context) {
+        synchronized (DetailedInfoChannel.class) {
+            if (dueTime != 0) {
+                return dueTime;
+            }
+        }
+        // Samples stored before restart or left in the current rollup window
+        return InfoHistoryTable.select(DatabaseHelper.instance(context).getReadableDatabase(), 1).isEmpty() ?
+                NOT_PENDING : Math.max(System.currentTimeMillis(), lastUploadTime + UPLOAD_PERIOD_MS);
+    }
+
+    @Override
+    public long getPiggybackPeriod() {
+        return PIGGYBACK_PERIOD_MS;
+    }
+
+    @Override
+    public int upload(Context context) {
+        SettingsHelper settingsHelper = SettingsHelper.getInstance(context);
+        String deviceId = settingsHelper.getDeviceId();
+        String project = settingsHelper.getServerProject();
+        if (deviceId == null || project == null) {
+            return RESULT_FAILED;
+        }
+        synchronized (DetailedInfoChannel.class) {
+            dueTime = 0;
+            lastUploadTime = System.currentTimeMillis();
+        }
+
+        ServerService serverService = ServerServiceKeeper.getServerServiceInstance(context);
+        while (true) {
+            List<DetailedInfo> items = InfoHistoryTable.select(DatabaseHelper.instance(context).getReadableDatabase(), BATCH_SIZE);
+            if (items.isEmpty()) {
+                return RESULT_OK;
+            }
+
+            DetailedInfoConfig config = settingsHelper.getDetailedInfoConfig();
+            boolean rollup = (config == null || !Boolean.TRUE.equals(config.getSendRaw())) &&
+                    System.currentTimeMillis() > settingsHelper.getDetailedInfoRollupRejectedTime() + ROLLUP_REJECT_PERIOD_MS;
+            long windowMs = getRollupWindowMins(config) * 60000L;
+
+            List<DetailedInfo> sentItems = items;
+            List<?> body = items;
+            if (rollup) {
+                int limit = BATCH_SIZE;
+                sentItems = getCompleteWindows(items, windowMs, items.size() == limit);
+                while (sentItems.isEmpty() && items.size() == limit) {
+                    // A single window doesn't fit into the batch: read it as a whole
+                    limit *= 2;
+                    items = InfoHistoryTable.select(DatabaseHelper.instance(context).getReadableDatabase(), limit);
+                    sentItems = getCompleteWindows(items, windowMs, items.size() == limit);
+                }
+                if (sentItems.isEmpty()) {
+                    // Only the current window is stored
+                    return RESULT_OK;
+                }
+                body = createRollups(sentItems, windowMs);
+            }
+
+            boolean gzip = System.currentTimeMillis() > settingsHelper.getDetailedInfoGzipRejectedTime() + GZIP_REJECT_PERIOD_MS;
+            Response<ResponseBody> response;
+            try {
+                response = send(serverService, project, deviceId, body, rollup, gzip);
+                if (gzip && !response.isSuccessful()) {
+                    Log.w(Const.LOG_TAG, "Compressed detailed info upload failed: " + response.code() + ", retrying without compression");
+                    response = send(serverService, project, deviceId, body, rollup, false);
+                    if (response.isSuccessful()) {
+                        // The server doesn't accept gzip: do not compress for a while
+                        settingsHelper.setDetailedInfoGzipRejectedTime(System.currentTimeMillis());
+                    }
+                }
+                if (rollup && (response.code() == 404 || response.code() == 405)) {
+                    // The server doesn't support rollups: send raw samples for a while
+                    Log.i(Const.LOG_TAG, "Detailed info rollups are not supported by the server");
+                    settingsHelper.setDetailedInfoRollupRejectedTime(System.currentTimeMillis());
+                    continue;
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                return RESULT_UNREACHABLE;
+            }
+            if (!response.isSuccessful()) {
+                RemoteLogger.log(context, Const.LOG_WARN,
+                        "Failed to send detailed info: " + response.code() + " " + response.message());
+                return RESULT_FAILED;
+            }
+
+            // Remove uploaded items and query next items
+            final List<DetailedInfo> uploadedItems = sentItems;
+            DatabaseHelper.instance(context).execute(db -> InfoHistoryTable.delete(db, uploadedItems));
+            if (items.size() < BATCH_SIZE) {
+                return RESULT_OK;
+            }
+        }
+    }
+
+    private static int getRollupWindowMins(DetailedInfoConfig config) {
+        return config != null && config.getRollupWindowMins() != null && config.getRollupWindowMins() > 0 ?
+                config.getRollupWindowMins() : DEFAULT_ROLLUP_WINDOW_MINS;
+    }
+
+    private static long getWindowMs(long ts, long windowMs) {
+        long downsampleEnd = TelemetryRollup.getWindowStart(System.currentTimeMillis() - DOWNSAMPLE_AGE_MS, DOWNSAMPLE_WINDOW_MS);
+        return ts < downsampleEnd && windowMs < DOWNSAMPLE_WINDOW_MS ? DOWNSAMPLE_WINDOW_MS : windowMs;
+    }
+
+    // Returns the samples of complete windows. The window of the current time is still being filled,
+    // and the last window of a full batch may continue in the next batch, even if it's the only one
+    private static List<DetailedInfo> getCompleteWindows(List<DetailedInfo> items, long windowMs, boolean fullBatch) {
+        long end = TelemetryRollup.getWindowStart(System.currentTimeMillis(), windowMs);
+        if (fullBatch) {
+            long lastTs = items.get(items.size() - 1).getTs();
+            end = Math.min(end, TelemetryRollup.getWindowStart(lastTs, getWindowMs(lastTs, windowMs)));
+        }
+        int n = 0;
+        while (n < items.size() && items.get(n).getTs() < end) {
+            n++;
+        }
+        return items.subList(0, n);
+    }
+
+    private static List<DetailedInfoRollup> createRollups(List<DetailedInfo> items, long windowMs) {
+        int n = 0;
+        while (n < items.size() && getWindowMs(items.get(n).getTs(), windowMs) == DOWNSAMPLE_WINDOW_MS) {
+            n++;
+        }
+        List<DetailedInfoRollup> rollups = TelemetryRollup.rollup(items.subList(0, n), DOWNSAMPLE_WINDOW_MS);
+        rollups.addAll(TelemetryRollup.rollup(items.subList(n, items.size()), windowMs));
+        return rollups;
+    }
+
+    private Response<ResponseBody> send(ServerService serverService, String project, String deviceId,
+                                        List<?> items, boolean rollup, boolean gzip) throws Exception {
+        Buffer buffer = new Buffer();
+        BufferedSink sink = gzip ? Okio.buffer(new GzipSink(buffer)) : buffer;
+        MAPPER.writeValue(sink.outputStream(), items);
+        // Closing also writes the gzip trailer
+        sink.close();
+        long size = buffer.size();
+        RequestBody body = RequestBody.create(MEDIA_TYPE_JSON, buffer.readByteString());
+        Log.i(Const.LOG_TAG, "Sending detailed info " + (rollup ? "rollups" : "items") + ": " +
+                items.size() + " items, " + size + " bytes" + (gzip ? " compressed" : ""));
+        String encoding = gzip ? ENCODING_GZIP : null;
+        return rollup ? serverService.sendDetailedInfoRollups(project, deviceId, encoding, body).execute() :
+                serverService.sendDetailedInfoStream(project, deviceId, encoding, body).execute();
+    }
+}
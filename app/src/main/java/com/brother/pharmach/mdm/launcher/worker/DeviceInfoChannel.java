@@ -0,0 +1,137 @@
+package com.brother.pharmach.mdm.launcher.worker;
+
+import android.content.Context;
+
+import com.brother.pharmach.mdm.launcher.Const;
+import com.brother.pharmach.mdm.launcher.helper.SettingsHelper;
+import com.brother.pharmach.mdm.launcher.json.DeviceInfo;
+import com.brother.pharmach.mdm.launcher.json.ServerConfig;
+import com.brother.pharmach.mdm.launcher.server.ServerService;
+import com.brother.pharmach.mdm.launcher.server.ServerServiceKeeper;
+import com.brother.pharmach.mdm.launcher.util.DeviceInfoDiff;
+import com.brother.pharmach.mdm.launcher.util.DeviceInfoProvider;
+
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.ResponseBody;
+import retrofit2.Response;
+
+/**
+ * Outbox channel sending the device info snapshot periodically.
+ */
+public class DeviceInfoChannel extends OutboxChannel {
+
+    private static final int SEND_DEVICE_INFO_PERIOD_MINS = 15;
+
+    // Full device info is sent anyway once in this period so the server could recover its state
+    private static final int FULL_HEARTBEAT_PERIOD_HOURS = 6;
+
+    // Device info which is due soon is sent together with other uploads
+    private static final int PIGGYBACK_PERIOD_MINS = 5;
+
+    @Override
+    public String getName() {
+        return "device info";
+    }
+
+    @Override
+    public long getDueTime(Context context) {
+        SettingsHelper settingsHelper = SettingsHelper.getInstance(context);
+        if (settingsHelper.getConfig() == null) {
+            return NOT_PENDING;
+        }
+        long lastSent = settingsHelper.getDeviceInfoSentTime();
+        if (lastSent == 0) {
+            // Not sent yet: send with the next upload, the sent time is saved by upload()
+            return System.currentTimeMillis();
+        }
+        return lastSent + SEND_DEVICE_INFO_PERIOD_MINS * 60000L;
+    }
+
+    @Override
+    public long getPiggybackPeriod() {
+        return PIGGYBACK_PERIOD_MINS * 60000L;
+    }
+
+    @Override
+    public int upload(Context context) {
+        SettingsHelper settingsHelper = SettingsHelper.getInstance(context);
+        ServerConfig config = settingsHelper.getConfig();
+        DeviceInfo deviceInfo = DeviceInfoProvider.getDeviceInfo(context, true, true);
+        DeviceInfoDiff diff = new DeviceInfoDiff(deviceInfo);
+
+        long now = System.currentTimeMillis();
+        boolean fullDue = now - settingsHelper.getDeviceInfoFullSentTime() >= FULL_HEARTBEAT_PERIOD_HOURS * 3600000L;
+        boolean partialSupported = config != null && config.getDeviceInfoPartial() != null && config.getDeviceInfoPartial();
+
+        Map<String, String> acknowledged = settingsHelper.getDeviceInfoFingerprints();
+        List<String> changed = diff.getChangedSections(acknowledged,
+                config != null && config.getDeviceInfoBatteryThreshold() != null ?
+                        config.getDeviceInfoBatteryThreshold() : DeviceInfoDiff.DEFAULT_BATTERY_THRESHOLD,
+                config != null && config.getDeviceInfoLocationThreshold() != null ?
+                        config.getDeviceInfoLocationThreshold() : DeviceInfoDiff.DEFAULT_LOCATION_THRESHOLD_M);
+
+        if (!fullDue && changed.isEmpty()) {
+            // Nothing to report, the server already knows the current state
+            settingsHelper.setDeviceInfoSentTime(now);
+            return RESULT_OK;
+        }
+        boolean full = fullDue || !partialSupported || acknowledged == null;
+        Map<String, Object> partialInfo = full ? null : diff.getPartialInfo(deviceInfo.getDeviceId(), changed);
+
+        ServerService serverService = ServerServiceKeeper.getServerServiceInstance(context);
+        ServerService secondaryServerService = ServerServiceKeeper.getSecondaryServerServiceInstance(context);
+        Response<ResponseBody> response = null;
+
+        try {
+            response = send(serverService, settingsHelper.getServerProject(), deviceInfo, partialInfo);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        try {
+            if (response == null) {
+                response = send(secondaryServerService, settingsHelper.getServerProject(), deviceInfo, partialInfo);
+            }
+        }
+        catch ( Exception e ) { e.printStackTrace(); }
+
+        if (response == null) {
+            return RESULT_UNREACHABLE;
+        }
+        if (response.isSuccessful()) {
+            settingsHelper.setExternalIp(response.headers().get(Const.HEADER_IP_ADDRESS));
+            settingsHelper.setDeviceInfoSentTime(now);
+            if (full) {
+                settingsHelper.setDeviceInfoFullSentTime(now);
+                settingsHelper.setDeviceInfoFingerprints(diff.getFingerprints());
+            } else {
+                // Only the sent sections are acknowledged, the drift in others is accumulated
+                for (String section : changed) {
+                    acknowledged.put(section, diff.getFingerprints().get(section));
+                }
+                settingsHelper.setDeviceInfoFingerprints(acknowledged);
+            }
+            return RESULT_OK;
+        }
+        return RESULT_FAILED;
+    }
+
+    private Response<ResponseBody> send(ServerService serverService, String project,
+                                        DeviceInfo deviceInfo, Map<String, Object> partialInfo) throws Exception {
+        if (partialInfo != null) {
+            return serverService.sendDevicePartial(project, partialInfo).execute();
+        }
+        return serverService.sendDevice(project, deviceInfo).execute();
+    }
+
+    /**
+     * Saves the state of the device info which has been sent in full by other means
+     */
+    public static void acknowledge(Context context, DeviceInfo deviceInfo) {
+        SettingsHelper settingsHelper = SettingsHelper.getInstance(context);
+        settingsHelper.setDeviceInfoFullSentTime(System.currentTimeMillis());
+        settingsHelper.setDeviceInfoFingerprints(new DeviceInfoDiff(deviceInfo).getFingerprints());
+    }
+}
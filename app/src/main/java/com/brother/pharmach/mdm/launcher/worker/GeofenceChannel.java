@@ -0,0 +1,97 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.worker;
+
+import android.content.Context;
+
+import com.brother.pharmach.mdm.launcher.Const;
+import com.brother.pharmach.mdm.launcher.db.DatabaseHelper;
+import com.brother.pharmach.mdm.launcher.db.GeofenceEventTable;
+import com.brother.pharmach.mdm.launcher.helper.SettingsHelper;
+import com.brother.pharmach.mdm.launcher.server.ServerService;
+import com.brother.pharmach.mdm.launcher.server.ServerServiceKeeper;
+import com.brother.pharmach.mdm.launcher.util.RemoteLogger;
+
+import java.util.List;
+
+import okhttp3.ResponseBody;
+import retrofit2.Response;
+
+/**
+ * Outbox channel for the geofence transitions stored by GeofenceMonitor
+ */
+public class GeofenceChannel extends OutboxChannel {
+
+    // Max number of events sent to server at once
+    private static final int BATCH_SIZE = 100;
+
+    // Transitions are sent as soon as possible
+    public static void scheduleUpload(Context context) {
+        OutboxWorker.notify(context, System.currentTimeMillis());
+    }
+
+    @Override
+    public String getName() {
+        return "geofence events";
+    }
+
+    @Override
+    public long getDueTime(Context context) {
+        return GeofenceEventTable.select(DatabaseHelper.instance(context).getReadableDatabase(), 1).isEmpty() ?
+                NOT_PENDING : System.currentTimeMillis();
+    }
+
+    @Override
+    public int upload(Context context) {
+        SettingsHelper settingsHelper = SettingsHelper.getInstance(context);
+        String deviceId = settingsHelper.getDeviceId();
+        String project = settingsHelper.getServerProject();
+        if (deviceId == null || project == null) {
+            return RESULT_FAILED;
+        }
+
+        ServerService serverService = ServerServiceKeeper.getServerServiceInstance(context);
+        while (true) {
+            List<GeofenceEventTable.Event> events = GeofenceEventTable
+                    .select(DatabaseHelper.instance(context).getReadableDatabase(), BATCH_SIZE);
+            if (events.isEmpty()) {
+                return RESULT_OK;
+            }
+
+            Response<ResponseBody> response;
+            try {
+                response = serverService.sendGeofenceEvents(project, deviceId, events).execute();
+            } catch (Exception e) {
+                e.printStackTrace();
+                return RESULT_UNREACHABLE;
+            }
+            if (!response.isSuccessful()) {
+                RemoteLogger.log(context, Const.LOG_WARN,
+                        "Failed to send geofence events: " + response.code() + " " + response.message());
+                return RESULT_FAILED;
+            }
+
+            DatabaseHelper.instance(context).execute(db -> GeofenceEventTable.delete(db, events));
+            if (events.size() < BATCH_SIZE) {
+                return RESULT_OK;
+            }
+        }
+    }
+}
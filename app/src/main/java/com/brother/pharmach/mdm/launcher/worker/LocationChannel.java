@@ -0,0 +1,181 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.worker;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.brother.pharmach.mdm.launcher.Const;
+import com.brother.pharmach.mdm.launcher.db.DatabaseHelper;
+import com.brother.pharmach.mdm.launcher.db.LocationTable;
+import com.brother.pharmach.mdm.launcher.helper.SettingsHelper;
+import com.brother.pharmach.mdm.launcher.json.DetailedInfo;
+import com.brother.pharmach.mdm.launcher.json.LocationTrack;
+import com.brother.pharmach.mdm.launcher.json.ServerConfig;
+import com.brother.pharmach.mdm.launcher.server.ServerService;
+import com.brother.pharmach.mdm.launcher.server.ServerServiceKeeper;
+import com.brother.pharmach.mdm.launcher.util.RemoteLogger;
+import com.brother.pharmach.mdm.launcher.util.TrackEncoder;
+
+import java.util.LinkedList;
+import java.util.List;
+
+import okhttp3.ResponseBody;
+import retrofit2.Response;
+
+/**
+ * Outbox channel for the locations stored in LocationTable by LocationService.
+ */
+public class LocationChannel extends OutboxChannel {
+
+    // Max number of locations sent to server at once
+    private static final int BATCH_SIZE = 50;
+    private static final int TRACK_BATCH_SIZE = 500;
+
+    // If the server doesn't support location tracks, send detailed info during this period
+    private static final long TRACK_REJECT_PERIOD_MS = 24 * 3600000L;
+
+    // Fixes from both providers arriving within this delay are sent in one request
+    private static final int UPLOAD_DELAY_SEC = 10;
+
+    // Locations are not uploaded more often than this
+    private static final int MIN_UPLOAD_INTERVAL_SEC = 60;
+
+    private static long lastUploadTime = 0;
+
+    public static void scheduleUpload(Context context) {
+        OutboxWorker.notify(context, Math.max(System.currentTimeMillis() + UPLOAD_DELAY_SEC * 1000L,
+                getEarliestUploadTime()));
+    }
+
+    // Sends the stored locations without delay, on the server request
+    public static void uploadNow(Context context) {
+        OutboxWorker.notify(context, System.currentTimeMillis());
+    }
+
+    private static synchronized long getEarliestUploadTime() {
+        return lastUploadTime + MIN_UPLOAD_INTERVAL_SEC * 1000L;
+    }
+
+    @Override
+    public String getName() {
+        return "locations";
+    }
+
+    @Override
+    public long getDueTime(Context context) {
+        return LocationTable.select(DatabaseHelper.instance(context).getReadableDatabase(), 1).isEmpty() ?
+                NOT_PENDING : Math.max(System.currentTimeMillis(), getEarliestUploadTime());
+    }
+
+    @Override
+    public int upload(Context context) {
+        synchronized (LocationChannel.class) {
+            lastUploadTime = System.currentTimeMillis();
+        }
+        SettingsHelper settingsHelper = SettingsHelper.getInstance(context);
+        String deviceId = settingsHelper.getDeviceId();
+        String project = settingsHelper.getServerProject();
+        if (deviceId == null || project == null) {
+            return RESULT_FAILED;
+        }
+
+        ServerService serverService = ServerServiceKeeper.getServerServiceInstance(context);
+        while (true) {
+            boolean track = System.currentTimeMillis() >
+                    settingsHelper.getLocationTrackRejectedTime() + TRACK_REJECT_PERIOD_MS;
+            int batchSize = track ? TRACK_BATCH_SIZE : BATCH_SIZE;
+            List<LocationTable.Location> locations = LocationTable
+                    .select(DatabaseHelper.instance(context).getReadableDatabase(), batchSize);
+            if (locations.isEmpty()) {
+                return RESULT_OK;
+            }
+
+            Response<ResponseBody> response;
+            try {
+                if (track) {
+                    response = serverService.sendLocationTrack(project, deviceId,
+                            createTrack(locations, getTolerance(settingsHelper))).execute();
+                    if (response.code() == 404 || response.code() == 405) {
+                        // The server doesn't support tracks: use the detailed info format for a while
+                        Log.i(Const.LOG_TAG, "Location tracks are not supported by the server");
+                        settingsHelper.setLocationTrackRejectedTime(System.currentTimeMillis());
+                        continue;
+                    }
+                } else {
+                    // Use sendDetailedInfo instead of sendLocations
+                    response = serverService.sendDetailedInfo(project, deviceId, createDetailedInfos(locations)).execute();
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+                RemoteLogger.log(context, Const.LOG_WARN, "Exception sending locations: " + e.getMessage());
+                return RESULT_UNREACHABLE;
+            }
+            if (!response.isSuccessful()) {
+                RemoteLogger.log(context, Const.LOG_WARN,
+                        "Failed to send locations: " + response.code() + " " + response.message());
+                return RESULT_FAILED;
+            }
+
+            // Remove uploaded items and query next items
+            DatabaseHelper.instance(context).execute(db -> LocationTable.delete(db, locations));
+            if (locations.size() < batchSize) {
+                return RESULT_OK;
+            }
+        }
+    }
+
+    private int getTolerance(SettingsHelper settingsHelper) {
+        ServerConfig config = settingsHelper.getConfig();
+        if (config != null && config.getLocationTolerance() != null && config.getLocationTolerance() >= 0) {
+            return config.getLocationTolerance();
+        }
+        return TrackEncoder.DEFAULT_TOLERANCE_M;
+    }
+
+    private LocationTrack createTrack(List<LocationTable.Location> locations, int tolerance) {
+        // Heartbeat fixes of a stationary device are kept
+        List<LocationTable.Location> points = TrackEncoder.simplify(locations, tolerance, TrackEncoder.DEFAULT_HEARTBEAT_MS);
+        LocationTrack track = new LocationTrack();
+        track.setFormat(LocationTrack.FORMAT_POLYLINE);
+        track.setPrecision(TrackEncoder.PRECISION);
+        track.setCount(points.size());
+        track.setPoints(TrackEncoder.encode(points));
+        return track;
+    }
+
+    // Convert LocationTable.Location to DetailedInfo (DeviceDynamicInfo) for Open
+    // Source server compatibility
+    private List<DetailedInfo> createDetailedInfos(List<LocationTable.Location> locations) {
+        List<DetailedInfo> detailedInfos = new LinkedList<>();
+        for (LocationTable.Location loc : locations) {
+            DetailedInfo detailedInfo = new DetailedInfo();
+            detailedInfo.setTs(loc.getTs());
+
+            DetailedInfo.Gps gps = new DetailedInfo.Gps();
+            gps.setLat(loc.getLat());
+            gps.setLon(loc.getLon());
+
+            detailedInfo.setGps(gps);
+            detailedInfos.add(detailedInfo);
+        }
+        return detailedInfos;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.worker;
+
+import android.content.Context;
+
+/**
+ * A stream of data uploaded to the server by OutboxWorker. The channel keeps its pending data
+ * persistently (database table, log storage, system provider cursor) and tells the worker
+ * when the data is due, so a single wakeup uploads everything that has accumulated.
+ */
+public abstract class OutboxChannel {
+
+    // Returned by getDueTime() if there's nothing to upload
+    public static final long NOT_PENDING = Long.MAX_VALUE;
+
+    // Results of upload()
+    public static final int RESULT_OK = 0;
+    // The server rejected the data, only this channel is retried later
+    public static final int RESULT_FAILED = 1;
+    // The server is unreachable, all channels are retried later
+    public static final int RESULT_UNREACHABLE = 2;
+
+    public abstract String getName();
+
+    // Time by which the pending data should be uploaded, or NOT_PENDING
+    public abstract long getDueTime(Context context);
+
+    // Pending data due within this period is uploaded earlier if another channel wakes up the radio.
+    // Not applied while the channel or the server is backing off after a failure
+    public long getPiggybackPeriod() {
+        return 0;
+    }
+
+    // Uploads all pending data. This is running in the OutboxWorker thread
+    public abstract int upload(Context context);
+}
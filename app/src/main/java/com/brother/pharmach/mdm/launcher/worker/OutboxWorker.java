@@ -0,0 +1,308 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.worker;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.brother.pharmach.mdm.launcher.Const;
+import com.brother.pharmach.mdm.launcher.helper.SettingsHelper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single uploader for all outgoing data streams (logs, locations, call logs, telemetry, device info).
+ * One unique work is scheduled at the earliest due time of all channels and waits for the network;
+ * when it runs, it drains every channel which is due, or will be due soon, in one radio session.
+ * Failures use a shared exponential backoff instead of per-producer retry loops.
+ * The backoff and the scheduled time are persisted, so they survive a restart of the app.
+ */
+public class OutboxWorker extends Worker {
+
+    // Channels in the order of priority
+    private static final OutboxChannel[] CHANNELS = {
+            new RemoteLogChannel(),
+            new GeofenceChannel(),
+            new LocationChannel(),
+            new CallLogChannel(),
+            new DetailedInfoChannel(),
+            new DeviceInfoChannel()
+    };
+
+    private static final long MIN_BACKOFF_MS = 60000L;
+    private static final long MAX_BACKOFF_MS = 60 * 60000L;
+
+    private static final String WORK_TAG_OUTBOX = "com.brother.pharmach.mdm.launcher.WORK_TAG_OUTBOX";
+
+    // Periodic work of the former device info worker, cancelled on start
+    private static final String WORK_TAG_DEVICEINFO = "com.brother.pharmach.mdm.launcher.WORK_TAG_DEVICEINFO";
+
+    // Name of the shared backoff state when the server is unreachable
+    private static final String UNREACHABLE = "server";
+
+    // Time of the scheduled upload, 0 if no upload is scheduled
+    private static long scheduledTime = 0;
+
+    // Set while doWork() is running: enqueueing the unique work with REPLACE would cancel it,
+    // so the requests are collected and scheduled when the session ends
+    private static boolean running = false;
+    private static long requestedTime = OutboxChannel.NOT_PENDING;
+
+    // Backoff state: shared when the server is unreachable, and per channel when the data is rejected.
+    // It's persisted, so a restart of the app doesn't reset the backoff
+    private static boolean stateLoaded = false;
+    private static long unreachableBackoff = 0;
+    private static long unreachableUntil = 0;
+    private static final long[] channelBackoff = new long[CHANNELS.length];
+    private static final long[] channelRetryTime = new long[CHANNELS.length];
+
+    private Context context;
+
+    // Schedules the upload of everything pending, called on startup
+    public static void start(Context context) {
+        WorkManager.getInstance(context.getApplicationContext()).cancelUniqueWork(WORK_TAG_DEVICEINFO);
+        long time = getNextTime(context);
+        // The upload scheduled before the restart
+        long persistedTime = SettingsHelper.getInstance(context).getOutboxScheduledTime();
+        if (persistedTime != 0) {
+            time = Math.min(time, persistedTime);
+        }
+        schedule(context, time);
+    }
+
+    // Clears the backoff, so the next request is scheduled at its due time
+    public static synchronized void resetState(Context context) {
+        loadState(context);
+        scheduledTime = 0;
+        if (unreachableBackoff != 0) {
+            unreachableBackoff = 0;
+            unreachableUntil = 0;
+            saveBackoff(context, UNREACHABLE, 0, 0);
+        }
+        for (int n = 0; n < CHANNELS.length; n++) {
+            if (channelBackoff[n] != 0) {
+                channelBackoff[n] = 0;
+                channelRetryTime[n] = 0;
+                saveBackoff(context, CHANNELS[n].getName(), 0, 0);
+            }
+        }
+    }
+
+    // Called by a producer when its channel has new data due at the specified time
+    public static void notify(Context context, long dueTime) {
+        schedule(context, dueTime);
+    }
+
+    // Uploads the pending data now if there is any, called when the app uses the network anyway
+    public static void onNetworkActivity(Context context) {
+        long now = System.currentTimeMillis();
+        synchronized (OutboxWorker.class) {
+            if (running || (scheduledTime != 0 && scheduledTime <= now + RemoteLogChannel.URGENT_DELAY_SEC * 1000L)) {
+                // The upload is in progress or coming soon anyway
+                return;
+            }
+        }
+        for (int n = 0; n < CHANNELS.length; n++) {
+            if (isDue(context, n, now)) {
+                schedule(context, now);
+                return;
+            }
+        }
+    }
+
+    // An earlier upload replaces the scheduled one; a later upload is not needed
+    private static synchronized void schedule(Context context, long time) {
+        if (time == OutboxChannel.NOT_PENDING) {
+            return;
+        }
+        loadState(context);
+        time = Math.max(time, unreachableUntil);
+        if (running) {
+            requestedTime = Math.min(requestedTime, time);
+            return;
+        }
+        enqueue(context, time, ExistingWorkPolicy.REPLACE);
+    }
+
+    private static synchronized void enqueue(Context context, long time, ExistingWorkPolicy policy) {
+        if (scheduledTime != 0 && scheduledTime <= time) {
+            return;
+        }
+        scheduledTime = time;
+        SettingsHelper.getInstance(context).setOutboxScheduledTime(time);
+        long delayMs = Math.max(time - System.currentTimeMillis(), 0);
+        Log.i(Const.LOG_TAG, "OutboxWorker scheduled in " + (delayMs / 1000) + " sec");
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        OneTimeWorkRequest.Builder builder = new OneTimeWorkRequest.Builder(OutboxWorker.class)
+                .addTag(Const.WORK_TAG_COMMON)
+                .setConstraints(constraints);
+        if (delayMs > 0) {
+            builder.setInitialDelay(delayMs, TimeUnit.MILLISECONDS);
+        }
+        WorkManager.getInstance(context.getApplicationContext())
+                .enqueueUniqueWork(WORK_TAG_OUTBOX, policy, builder.build());
+    }
+
+    // Returns the earliest due time of all channels
+    private static long getNextTime(Context context) {
+        long time = OutboxChannel.NOT_PENDING;
+        for (int n = 0; n < CHANNELS.length; n++) {
+            time = Math.min(time, getDueTime(context, n));
+        }
+        return time;
+    }
+
+    private static long getDueTime(Context context, int n) {
+        long dueTime = CHANNELS[n].getDueTime(context);
+        if (dueTime == OutboxChannel.NOT_PENDING) {
+            return dueTime;
+        }
+        synchronized (OutboxWorker.class) {
+            loadState(context);
+            return Math.max(dueTime, Math.max(channelRetryTime[n], unreachableUntil));
+        }
+    }
+
+    private static boolean isDue(Context context, int n, long now) {
+        long dueTime = getDueTime(context, n);
+        if (dueTime == OutboxChannel.NOT_PENDING) {
+            return false;
+        }
+        if (dueTime <= now) {
+            return true;
+        }
+        synchronized (OutboxWorker.class) {
+            // A failed channel waits for its backoff, the radio being up doesn't help
+            if (channelRetryTime[n] > now || unreachableUntil > now) {
+                return false;
+            }
+        }
+        return dueTime - now <= CHANNELS[n].getPiggybackPeriod();
+    }
+
+    // Must be called while holding the class lock
+    private static void loadState(Context context) {
+        if (stateLoaded) {
+            return;
+        }
+        stateLoaded = true;
+        SettingsHelper settingsHelper = SettingsHelper.getInstance(context);
+        unreachableBackoff = settingsHelper.getOutboxBackoff(UNREACHABLE);
+        unreachableUntil = settingsHelper.getOutboxRetryTime(UNREACHABLE);
+        for (int n = 0; n < CHANNELS.length; n++) {
+            channelBackoff[n] = settingsHelper.getOutboxBackoff(CHANNELS[n].getName());
+            channelRetryTime[n] = settingsHelper.getOutboxRetryTime(CHANNELS[n].getName());
+        }
+    }
+
+    private static void saveBackoff(Context context, String name, long backoff, long retryTime) {
+        SettingsHelper.getInstance(context).setOutboxBackoff(name, backoff, retryTime);
+    }
+
+    private static long nextBackoff(long backoff) {
+        return backoff == 0 ? MIN_BACKOFF_MS : Math.min(backoff * 2, MAX_BACKOFF_MS);
+    }
+
+    public OutboxWorker(
+            @NonNull Context context,
+            @NonNull WorkerParameters params) {
+        super(context, params);
+        this.context = context;
+    }
+
+    @Override
+    // This is running in a background thread by WorkManager
+    public Result doWork() {
+        long now = System.currentTimeMillis();
+        synchronized (OutboxWorker.class) {
+            // New data arriving during the session is scheduled when it ends
+            running = true;
+            requestedTime = OutboxChannel.NOT_PENDING;
+            loadState(context);
+        }
+
+        for (int n = 0; n < CHANNELS.length && !isStopped(); n++) {
+            OutboxChannel channel = CHANNELS[n];
+            int result;
+            try {
+                if (!isDue(context, n, now)) {
+                    continue;
+                }
+                result = channel.upload(context);
+            } catch (Exception e) {
+                e.printStackTrace();
+                result = OutboxChannel.RESULT_FAILED;
+            }
+
+            synchronized (OutboxWorker.class) {
+                if (result == OutboxChannel.RESULT_OK) {
+                    if (channelBackoff[n] != 0) {
+                        channelBackoff[n] = 0;
+                        channelRetryTime[n] = 0;
+                        saveBackoff(context, channel.getName(), 0, 0);
+                    }
+                    if (unreachableBackoff != 0) {
+                        unreachableBackoff = 0;
+                        unreachableUntil = 0;
+                        saveBackoff(context, UNREACHABLE, 0, 0);
+                    }
+                } else if (result == OutboxChannel.RESULT_FAILED) {
+                    channelBackoff[n] = nextBackoff(channelBackoff[n]);
+                    channelRetryTime[n] = System.currentTimeMillis() + channelBackoff[n];
+                    saveBackoff(context, channel.getName(), channelBackoff[n], channelRetryTime[n]);
+                    Log.i(Const.LOG_TAG, "Failed to upload " + channel.getName() + ": retry in " +
+                            (channelBackoff[n] / 1000) + " sec");
+                } else {
+                    unreachableBackoff = nextBackoff(unreachableBackoff);
+                    unreachableUntil = System.currentTimeMillis() + unreachableBackoff;
+                    saveBackoff(context, UNREACHABLE, unreachableBackoff, unreachableUntil);
+                    Log.i(Const.LOG_TAG, "Server is unreachable while uploading " + channel.getName() +
+                            ": retry in " + (unreachableBackoff / 1000) + " sec");
+                    break;
+                }
+            }
+        }
+
+        long time = getNextTime(context);
+        synchronized (OutboxWorker.class) {
+            running = false;
+            scheduledTime = 0;
+            time = Math.min(time, requestedTime);
+            if (time != OutboxChannel.NOT_PENDING) {
+                // This work is still running: the next one is appended rather than replacing it
+                enqueue(context, Math.max(time, unreachableUntil), ExistingWorkPolicy.APPEND_OR_REPLACE);
+            } else {
+                SettingsHelper.getInstance(context).setOutboxScheduledTime(0);
+            }
+        }
+        return Result.success();
+    }
+}
@@ -23,7 +23,6 @@ import android.app.admin.DevicePolicyManager;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Build;
@@ -371,8 +370,7 @@ public class PushNotificationProcessor {
     private static void clearDownloads(Context context) {
         RemoteLogger.log(context, Const.LOG_WARN, "Clear download history by a Push message");
         DatabaseHelper dbHelper = DatabaseHelper.instance(context);
-        SQLiteDatabase db = dbHelper.getWritableDatabase();
-        List<Download> downloads = DownloadTable.selectAll(db);
+        List<Download> downloads = DownloadTable.selectAll(dbHelper.getReadableDatabase());
         for (Download d: downloads) {
             File file = new File(d.getPath());
             try {
@@ -381,7 +379,7 @@ public class PushNotificationProcessor {
                 e.printStackTrace();
             }
         }
-        DownloadTable.deleteAll(db);
+        dbHelper.execute(DownloadTable::deleteAll);
     }
 
     private static void callIntent(Context context, JSONObject payload) {
@@ -0,0 +1,315 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.worker;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.brother.pharmach.mdm.launcher.Const;
+import com.brother.pharmach.mdm.launcher.helper.SettingsHelper;
+import com.brother.pharmach.mdm.launcher.json.RemoteLogItem;
+import com.brother.pharmach.mdm.launcher.json.ServerConfig;
+import com.brother.pharmach.mdm.launcher.server.ServerService;
+import com.brother.pharmach.mdm.launcher.server.ServerServiceKeeper;
+import com.brother.pharmach.mdm.launcher.util.RemoteLogBudget;
+import com.brother.pharmach.mdm.launcher.util.RemoteLogStorage;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.GzipSink;
+import okio.Okio;
+import okio.Sink;
+import retrofit2.Response;
+
+/**
+ * Outbox channel for the remote logs kept in RemoteLogStorage.
+ * Errors and warnings are due within seconds, other logs are deferred and sent together
+ * with the urgent logs or other uploads.
+ */
+public class RemoteLogChannel extends OutboxChannel {
+
+    // Default max uncompressed size of log messages sent to server at once
+    public static final int DEFAULT_UPLOAD_BYTES = 64 * 1024;
+
+    // If the server rejected compressed logs, send them uncompressed during this period
+    private static final long GZIP_REJECT_PERIOD_MS = 24 * 3600000L;
+
+    private static final String ENCODING_GZIP = "gzip";
+
+    // Errors and warnings are sent within seconds; the delay merges a burst into one request
+    public static final int URGENT_DELAY_SEC = 5;
+
+    // Less important logs are sent once per hour, or earlier together with urgent logs
+    // and other network requests, to reduce radio wakeups
+    public static final int DEFERRED_DELAY_MINS = 60;
+
+    // Time by which the pending logs should be sent, NOT_PENDING if unknown
+    private static long dueTime = NOT_PENDING;
+
+    public static void scheduleUpload(Context context) {
+        schedule(context, 0);
+    }
+
+    public static void scheduleUrgentUpload(Context context) {
+        schedule(context, URGENT_DELAY_SEC * 1000L);
+    }
+
+    public static void scheduleDeferredUpload(Context context) {
+        schedule(context, DEFERRED_DELAY_MINS * 60000L);
+    }
+
+    private static void schedule(Context context, long delayMs) {
+        long time;
+        synchronized (RemoteLogChannel.class) {
+            dueTime = Math.min(dueTime, System.currentTimeMillis() + delayMs);
+            time = dueTime;
+        }
+        OutboxWorker.notify(context, time);
+    }
+
+    @Override
+    public String getName() {
+        return "logs";
+    }
+
+    @Override
+    public long getDueTime(Context context) {
+        synchronized (RemoteLogChannel.class) {
+            if (dueTime != NOT_PENDING) {
+                return dueTime;
+            }
+        }
+        // Logs may be left from the previous run
+        if (RemoteLogStorage.Factory.getInstance(context).hasPending()) {
+            return System.currentTimeMillis() + DEFERRED_DELAY_MINS * 60000L;
+        }
+        return NOT_PENDING;
+    }
+
+    @Override
+    public long getPiggybackPeriod() {
+        return DEFERRED_DELAY_MINS * 60000L;
+    }
+
+    @Override
+    public int upload(Context context) {
+        long uploadDueTime;
+        synchronized (RemoteLogChannel.class) {
+            // Logs added during the upload schedule the next one
+            uploadDueTime = dueTime;
+            dueTime = NOT_PENDING;
+        }
+        int result = uploadAll(context);
+        if (result != RESULT_OK) {
+            synchronized (RemoteLogChannel.class) {
+                dueTime = Math.min(dueTime, uploadDueTime);
+            }
+        }
+        return result;
+    }
+
+    private int uploadAll(Context context) {
+        RemoteLogStorage storage = RemoteLogStorage.Factory.getInstance(context);
+        SettingsHelper settingsHelper = SettingsHelper.getInstance(context);
+        int byteBudget = getUploadBytes(settingsHelper);
+        long lastSentId = 0;
+
+        while (true) {
+            long lastId = storage.nextBatch(lastSentId, byteBudget);
+            if (lastId == lastSentId) {
+                // Everything is sent, so the server is reachable: report dropped items if any
+                int dropped = RemoteLogBudget.takeDroppedCount(context);
+                if (dropped > 0) {
+                    List<RemoteLogItem> items = new ArrayList<>();
+                    items.add(createDroppedItem(context, dropped));
+                    storage.append(items);
+                    continue;
+                }
+                Log.i(Const.LOG_TAG, "Remote logger: no unsent items");
+                return RESULT_OK;
+            }
+            int result = upload(context, settingsHelper, storage, lastSentId, lastId);
+            if (result != RESULT_OK) {
+                return result;
+            }
+            // Remove sent items and query next items
+            storage.acknowledge(lastSentId, lastId);
+            lastSentId = lastId;
+        }
+    }
+
+    private RemoteLogItem createDroppedItem(Context context, int dropped) {
+        RemoteLogItem item = new RemoteLogItem();
+        item.setTimestamp(System.currentTimeMillis());
+        item.setLogLevel(Const.LOG_WARN);
+        item.setPackageId(context.getPackageName());
+        item.setMessage("Remote log storage limit reached, " + dropped + " log items were dropped");
+        return item;
+    }
+
+    private int getUploadBytes(SettingsHelper settingsHelper) {
+        ServerConfig config = settingsHelper.getConfig();
+        if (config != null && config.getLogUploadBytes() != null && config.getLogUploadBytes() > 0) {
+            return config.getLogUploadBytes();
+        }
+        return DEFAULT_UPLOAD_BYTES;
+    }
+
+    // Uploads the batch (lastSentId, lastId]
+    private int upload(Context context, SettingsHelper settingsHelper, RemoteLogStorage storage,
+                       long lastSentId, long lastId) {
+        boolean gzip = System.currentTimeMillis() > settingsHelper.getLogGzipRejectedTime() + GZIP_REJECT_PERIOD_MS;
+        if (gzip) {
+            Response<ResponseBody> response = send(context, settingsHelper, storage, lastSentId, lastId, true);
+            if (response == null) {
+                // Network error, no need to retry without compression
+                return RESULT_UNREACHABLE;
+            }
+            if (response.isSuccessful()) {
+                return RESULT_OK;
+            }
+            Log.w(Const.LOG_TAG, "Compressed log upload failed: " + response.code() + ", retrying without compression");
+        }
+        Response<ResponseBody> response = send(context, settingsHelper, storage, lastSentId, lastId, false);
+        if (response == null) {
+            return RESULT_UNREACHABLE;
+        }
+        if (response.isSuccessful()) {
+            if (gzip) {
+                // The server doesn't accept gzip: do not compress for a while
+                settingsHelper.setLogGzipRejectedTime(System.currentTimeMillis());
+            }
+            return RESULT_OK;
+        }
+        return RESULT_FAILED;
+    }
+
+    // Returns null on network error
+    private Response<ResponseBody> send(Context context, SettingsHelper settingsHelper, RemoteLogStorage storage,
+                                        long lastSentId, long lastId, boolean gzip) {
+        ServerService serverService = ServerServiceKeeper.getServerServiceInstance(context);
+        ServerService secondaryServerService = ServerServiceKeeper.getSecondaryServerServiceInstance(context);
+        String encoding = gzip ? ENCODING_GZIP : null;
+        LogUploadBody body = new LogUploadBody(storage, lastSentId, lastId, gzip);
+        Response<ResponseBody> response = null;
+        long start = System.currentTimeMillis();
+
+        try {
+            response = serverService.sendLogsStream(settingsHelper.getServerProject(), settingsHelper.getDeviceId(),
+                    encoding, body).execute();
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        try {
+            if (response == null) {
+                body = new LogUploadBody(storage, lastSentId, lastId, gzip);
+                start = System.currentTimeMillis();
+                response = secondaryServerService.sendLogsStream(settingsHelper.getServerProject(), settingsHelper.getDeviceId(),
+                        encoding, body).execute();
+            }
+        } catch ( Exception e ) {
+            e.printStackTrace();
+        }
+
+        if (response != null && response.isSuccessful()) {
+            long time = Math.max(System.currentTimeMillis() - start, 1);
+            Log.i(Const.LOG_TAG, "Logs are uploaded: " + body.count + " items, " + body.rawBytes + " bytes, sent " +
+                    body.sentBytes + " bytes (" + (body.rawBytes > 0 ? body.sentBytes * 100 / body.rawBytes : 0) + "%), " +
+                    time + " ms, " + (body.sentBytes * 1000 / time) + " bytes/s");
+        }
+        return response;
+    }
+
+    /**
+     * Request body streaming the log items from the storage as a JSON array,
+     * optionally gzip-compressed. It is repeatable: OkHttp may write it again on retry.
+     */
+    private static class LogUploadBody extends RequestBody {
+        private static final MediaType MEDIA_TYPE_JSON = MediaType.parse("application/json; charset=utf-8");
+        private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+        private final RemoteLogStorage storage;
+        private final long lastSentId;
+        private final long lastId;
+        private final boolean gzip;
+
+        // Statistics of the last write
+        int count;
+        long rawBytes;
+        long sentBytes;
+
+        LogUploadBody(RemoteLogStorage storage, long lastSentId, long lastId, boolean gzip) {
+            this.storage = storage;
+            this.lastSentId = lastSentId;
+            this.lastId = lastId;
+            this.gzip = gzip;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return MEDIA_TYPE_JSON;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            CountingSink sentCounter = new CountingSink(sink);
+            CountingSink rawCounter = new CountingSink(gzip ? new GzipSink(sentCounter) : sentCounter);
+            BufferedSink target = Okio.buffer(rawCounter);
+
+            JsonGenerator generator = JSON_FACTORY.createGenerator(target.outputStream(), JsonEncoding.UTF8);
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartArray();
+            count = storage.writeBatch(lastSentId, lastId, generator);
+            generator.writeEndArray();
+            generator.close();
+            // Closing also writes the gzip trailer
+            target.close();
+
+            rawBytes = rawCounter.bytes;
+            sentBytes = sentCounter.bytes;
+        }
+    }
+
+    private static class CountingSink extends ForwardingSink {
+        long bytes;
+
+        CountingSink(Sink delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException {
+            super.write(source, byteCount);
+            bytes += byteCount;
+        }
+    }
+}
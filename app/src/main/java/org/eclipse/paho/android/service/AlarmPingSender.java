@@ -159,7 +159,7 @@ class AlarmPingSender implements MqttPingSender {
 			wakelock = pm.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, wakeLockTag);
 			wakelock.acquire();
 
-			RemoteLogger.log(context, Const.LOG_VERBOSE, "Sending MQTT Ping at:" + System.currentTimeMillis());
+			RemoteLogger.log(context, Const.LOG_VERBOSE, "Sending MQTT Ping at:{}", System.currentTimeMillis());
 			PingDeathDetector.getInstance().registerPing();
 
 			// Assign new callback to token to execute code after PingResq
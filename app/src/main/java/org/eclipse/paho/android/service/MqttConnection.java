@@ -877,7 +877,9 @@ class MqttConnection implements MqttCallbackExtended {
 	@Override
 	public void deliveryComplete(IMqttDeliveryToken messageToken) {
 
-		service.traceDebug(TAG, "deliveryComplete(" + messageToken + ")");
+		if (service.isTraceEnabled()) {
+			service.traceDebug(TAG, "deliveryComplete(" + messageToken + ")");
+		}
 
 		MqttMessage message = savedSentMessages.remove(messageToken);
 		if (message != null) { // If I don't know about the message, it's
@@ -921,8 +923,11 @@ class MqttConnection implements MqttCallbackExtended {
 	public void messageArrived(String topic, MqttMessage message)
 			throws Exception {
 
-		service.traceDebug(TAG,
-				"messageArrived(" + topic + ",{" + message.toString() + "})");
+		// Do not build trace messages for every message if nobody listens
+		if (service.isTraceEnabled()) {
+			service.traceDebug(TAG,
+					"messageArrived(" + topic + ",{" + message.toString() + "})");
+		}
 
 		if (defaultMessageListener != null) {
 			defaultMessageListener.messageArrived(topic, message);
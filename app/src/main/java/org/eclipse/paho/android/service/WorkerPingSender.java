@@ -85,7 +85,7 @@ public class WorkerPingSender implements MqttPingSender {
         // Minimal interval is 15 mins
         // If delay is less than 15 mins, just schedule it right now
         long sec = delayInMilliseconds / 1000l;
-        RemoteLogger.log(service, Const.LOG_DEBUG, "MQTT ping scheduled: " + sec + " sec");
+        RemoteLogger.log(service, Const.LOG_DEBUG, "MQTT ping scheduled: {} sec", sec);
         OneTimeWorkRequest queryRequest =
                 new OneTimeWorkRequest.Builder(WorkerPingSender.InternalWorker.class)
                         .addTag(Const.WORK_TAG_COMMON)
@@ -108,7 +108,7 @@ public class WorkerPingSender implements MqttPingSender {
         @NonNull
         @Override
         public Result doWork() {
-            RemoteLogger.log(context, Const.LOG_DEBUG, "Sending MQTT Ping at:" + System.currentTimeMillis());
+            RemoteLogger.log(context, Const.LOG_DEBUG, "Sending MQTT Ping at:{}", System.currentTimeMillis());
             PingDeathDetector.getInstance().registerPing();
             WorkerPingSender.instance.comms.checkForActivity(null);
             return null;
@@ -0,0 +1,242 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import com.brother.pharmach.mdm.launcher.json.Application;
+import com.brother.pharmach.mdm.launcher.json.ServerConfig;
+import com.brother.pharmach.mdm.launcher.json.ServerConfigResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConfigChangeDetectorTest {
+    private static final int REFRESHES = 50;
+
+    // Stand-in for the configuration endpoint, counts the bytes of response bodies
+    private static class ConfigServer {
+        private final HttpServer server;
+        private final byte[] body;
+        private final String etag;
+        private long bytesSent;
+
+        ConfigServer(byte[] body, String etag) throws Exception {
+            this.body = body;
+            this.etag = etag;
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+            server.createContext("/rest/public/sync/configuration/", exchange -> {
+                String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+                if (etag != null) {
+                    exchange.getResponseHeaders().set("ETag", etag);
+                }
+                if (etag != null && etag.equals(ifNoneMatch)) {
+                    exchange.sendResponseHeaders(ConfigChangeDetector.HTTP_NOT_MODIFIED, -1);
+                } else {
+                    exchange.getResponseHeaders().set("Content-Type", "application/json");
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream os = exchange.getResponseBody()) {
+                        os.write(body);
+                    }
+                    synchronized (this) {
+                        bytesSent += body.length;
+                    }
+                }
+                exchange.close();
+            });
+            server.start();
+        }
+
+        String getUrl() {
+            return "http://127.0.0.1:" + server.getAddress().getPort() + "/rest/public/sync/configuration/device1";
+        }
+
+        synchronized long getBytesSent() {
+            return bytesSent;
+        }
+
+        void stop() {
+            server.stop(0);
+        }
+    }
+
+    private static byte[] createConfigResponse() throws Exception {
+        ServerConfig config = new ServerConfig();
+        config.setTitle("Warehouse");
+        config.setBackgroundColor("#ffffff");
+        config.setRestrictions("no_factory_reset,no_add_user");
+        List<Application> applications = new ArrayList<>();
+        for (int n = 0; n < 40; n++) {
+            Application application = new Application();
+            application.setType("app");
+            application.setName("Application " + n);
+            application.setPkg("com.example.app" + n);
+            application.setVersion("1.0." + n);
+            application.setCode(100 + n);
+            application.setUrl("https://mdm.example.com/files/app" + n + ".apk");
+            application.setShowIcon(true);
+            applications.add(application);
+        }
+        config.setApplications(applications);
+        ServerConfigResponse response = new ServerConfigResponse();
+        response.setStatus("OK");
+        response.setData(config);
+        return new ObjectMapper().writeValueAsBytes(response);
+    }
+
+    // The same steps as GetServerConfigTask: a conditional request, then parsing only if the config is changed
+    // Returns true if the response was parsed
+    private static boolean refresh(String url, ConfigChangeDetector detector) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        if (detector.getIfNoneMatch() != null) {
+            connection.setRequestProperty("If-None-Match", detector.getIfNoneMatch());
+        }
+        int code = connection.getResponseCode();
+        String body = null;
+        if (code == 200) {
+            try (InputStream is = connection.getInputStream()) {
+                ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+                byte[] chunk = new byte[4096];
+                int read;
+                while ((read = is.read(chunk)) != -1) {
+                    buffer.write(chunk, 0, read);
+                }
+                body = buffer.toString("UTF-8");
+            }
+        }
+        boolean unchanged = detector.isUnchanged(code, connection.getHeaderField("ETag"), body);
+        connection.disconnect();
+        if (unchanged) {
+            return false;
+        }
+        ServerConfigResponse response = new ObjectMapper().readValue(body, ServerConfigResponse.class);
+        assertEquals(40, response.getData().getApplications().size());
+        return true;
+    }
+
+    // Measures bytes and CPU time per refresh: the first refresh applies the config, the next ones are no-op
+    private static long[] measure(ConfigServer server) throws Exception {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        ConfigChangeDetector detector = new ConfigChangeDetector(null, null);
+
+        long cpu = threadBean.getCurrentThreadCpuTime();
+        assertTrue(refresh(server.getUrl(), detector));
+        long fullCpu = threadBean.getCurrentThreadCpuTime() - cpu;
+        long fullBytes = server.getBytesSent();
+        String etag = detector.getEtag();
+        String hash = detector.getHash();
+
+        cpu = threadBean.getCurrentThreadCpuTime();
+        for (int n = 0; n < REFRESHES; n++) {
+            detector = new ConfigChangeDetector(etag, hash);
+            assertFalse(refresh(server.getUrl(), detector));
+        }
+        long noopCpu = (threadBean.getCurrentThreadCpuTime() - cpu) / REFRESHES;
+        long noopBytes = (server.getBytesSent() - fullBytes) / REFRESHES;
+        return new long[] { fullBytes, fullCpu, noopBytes, noopCpu };
+    }
+
+    @Test
+    public void testDetector() {
+        String body = "{\"status\":\"OK\",\"data\":{}}";
+        String hash = ConfigChangeDetector.getHash(body);
+
+        // Nothing applied: the header is not sent, any response is a change
+        ConfigChangeDetector detector = new ConfigChangeDetector("\"v1\"", null);
+        assertNull(detector.getIfNoneMatch());
+        assertFalse(detector.isUnchanged(200, "\"v1\"", body));
+        assertEquals("\"v1\"", detector.getEtag());
+        assertEquals(hash, detector.getHash());
+
+        // 304 keeps the applied revision
+        detector = new ConfigChangeDetector("\"v1\"", hash);
+        assertEquals("\"v1\"", detector.getIfNoneMatch());
+        assertTrue(detector.isUnchanged(ConfigChangeDetector.HTTP_NOT_MODIFIED, null, null));
+        assertEquals("\"v1\"", detector.getEtag());
+        assertEquals(hash, detector.getHash());
+
+        // Unexpected 304 without the applied ETag
+        detector = new ConfigChangeDetector(null, hash);
+        assertFalse(detector.isUnchanged(ConfigChangeDetector.HTTP_NOT_MODIFIED, null, null));
+
+        // Servers without ETag support: the body is compared by its hash
+        detector = new ConfigChangeDetector(null, hash);
+        assertTrue(detector.isUnchanged(200, null, body));
+        assertFalse(detector.isUnchanged(200, null, body.replace("{}", "{\"title\":\"x\"}")));
+        assertFalse(detector.isUnchanged(500, null, null));
+    }
+
+    @Test
+    public void testNotModified() throws Exception {
+        ConfigServer server = new ConfigServer(createConfigResponse(), "\"rev-1\"");
+        try {
+            long[] result = measure(server);
+            assertTrue(result[0] > 1000);
+            assertEquals(0, result[2]);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void testUnchangedHash() throws Exception {
+        ConfigServer server = new ConfigServer(createConfigResponse(), null);
+        try {
+            long[] result = measure(server);
+            // The body is downloaded, but not parsed
+            assertEquals(result[0], result[2]);
+        } finally {
+            server.stop();
+        }
+    }
+
+    // Prints bytes and CPU time per refresh for both ways of detecting an unchanged config
+    @Ignore("Benchmark, run manually")
+    @Test
+    public void benchmark() throws Exception {
+        String[] etags = { "\"rev-1\"", null };
+        for (String etag : etags) {
+            ConfigServer server = new ConfigServer(createConfigResponse(), etag);
+            try {
+                long[] result = measure(server);
+                System.out.println((etag != null ? "ETag" : "Hash") + ": full refresh " + result[0] + " bytes, " +
+                        result[1] / 1000 + " us CPU; no-op refresh " + result[2] + " bytes, " + result[3] / 1000 + " us CPU");
+            } finally {
+                server.stop();
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import com.brother.pharmach.mdm.launcher.json.Geofence;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeofenceIndexTest {
+    private static final int GEOFENCES = 10000;
+    private static final int FIXES = 100000;
+
+    // Pharmacies in a city area of about 100 x 100 km, and a few large areas
+    private static List<Geofence> geofences(Random random) {
+        List<Geofence> geofences = new ArrayList<>();
+        for (int n = 0; n < GEOFENCES; n++) {
+            double radius = n % 1000 == 0 ? 20000 : 50 + random.nextInt(450);
+            geofences.add(new Geofence(Integer.toString(n),
+                    55.3 + random.nextDouble() * 0.9, 37.0 + random.nextDouble() * 1.6, radius));
+        }
+        return geofences;
+    }
+
+    private static Set<String> linearScan(List<Geofence> geofences, double lat, double lon) {
+        Set<String> result = new HashSet<>();
+        for (Geofence geofence : geofences) {
+            if (LocationSampler.distance(lat, lon, geofence.getLat(), geofence.getLon()) <= geofence.getRadius()) {
+                result.add(geofence.getId());
+            }
+        }
+        return result;
+    }
+
+    private static Set<String> ids(List<Geofence> geofences) {
+        Set<String> result = new HashSet<>();
+        for (Geofence geofence : geofences) {
+            result.add(geofence.getId());
+        }
+        return result;
+    }
+
+    @Test
+    public void findsSameGeofencesAsLinearScan() {
+        Random random = new Random(1);
+        List<Geofence> geofences = geofences(random);
+        GeofenceIndex index = new GeofenceIndex(geofences);
+        int hits = 0;
+        for (int n = 0; n < 2000; n++) {
+            // Half of the fixes are near a geofence border
+            double lat, lon;
+            if (n % 2 == 0) {
+                Geofence geofence = geofences.get(random.nextInt(geofences.size()));
+                double angle = random.nextDouble() * 2 * Math.PI;
+                double distance = geofence.getRadius() * (0.98 + random.nextDouble() * 0.04) / 111195;
+                lat = geofence.getLat() + distance * Math.cos(angle);
+                lon = geofence.getLon() + distance * Math.sin(angle) / Math.cos(Math.toRadians(geofence.getLat()));
+            } else {
+                lat = 55.3 + random.nextDouble() * 0.9;
+                lon = 37.0 + random.nextDouble() * 1.6;
+            }
+            Set<String> expected = linearScan(geofences, lat, lon);
+            assertEquals(expected, ids(index.find(lat, lon)));
+            hits += expected.size();
+        }
+        assertTrue(hits > 0);
+    }
+
+    // Prints the lookup time of the index and of the linear scan, timings are not asserted
+    @Ignore("Benchmark, run manually")
+    @Test
+    public void benchmark() {
+        Random random = new Random(2);
+        List<Geofence> geofences = geofences(random);
+
+        long start = System.nanoTime();
+        GeofenceIndex index = new GeofenceIndex(geofences);
+        long buildNs = System.nanoTime() - start;
+
+        double[] lat = new double[FIXES];
+        double[] lon = new double[FIXES];
+        for (int n = 0; n < FIXES; n++) {
+            lat[n] = 55.3 + random.nextDouble() * 0.9;
+            lon[n] = 37.0 + random.nextDouble() * 1.6;
+        }
+
+        // Warm up
+        int found = 0;
+        for (int n = 0; n < FIXES; n++) {
+            found += index.find(lat[n], lon[n]).size();
+        }
+
+        start = System.nanoTime();
+        for (int n = 0; n < FIXES; n++) {
+            found += index.find(lat[n], lon[n]).size();
+        }
+        long indexNs = (System.nanoTime() - start) / FIXES;
+
+        int linearFixes = FIXES / 100;
+        start = System.nanoTime();
+        for (int n = 0; n < linearFixes; n++) {
+            found += linearScan(geofences, lat[n], lon[n]).size();
+        }
+        long linearNs = (System.nanoTime() - start) / linearFixes;
+
+        System.out.println(GEOFENCES + " geofences: index built in " + buildNs / 1000000 + " ms, " +
+                indexNs + " ns per fix, linear scan " + linearNs + " ns per fix (" + found + " hits)");
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import com.brother.pharmach.mdm.launcher.json.RemoteLogConfig;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LogRuleMatcherTest {
+    private static final String PACKAGE = "com.example.app";
+
+    private static RemoteLogConfig rule(String packageId, int level, String filter) {
+        RemoteLogConfig rule = new RemoteLogConfig();
+        rule.setPackageId(packageId);
+        rule.setLogLevel(level);
+        rule.setFilter(filter);
+        return rule;
+    }
+
+    @Test
+    public void matchesLikeSqlRules() throws Exception {
+        List<RemoteLogConfig> rules = new LinkedList<>();
+        rules.add(rule(PACKAGE, 2, null));
+        rules.add(rule(PACKAGE, 5, "gps"));
+        rules.add(rule(PACKAGE, 4, "she"));
+        rules.add(rule(PACKAGE, 3, "hers"));
+        LogRuleMatcher matcher = LogRuleMatcher.compile(rules);
+
+        // Unfiltered rule
+        assertTrue(matcher.match(PACKAGE, 1, "anything"));
+        assertTrue(matcher.match(PACKAGE, 2, "anything"));
+        assertFalse(matcher.match(PACKAGE, 3, "anything"));
+
+        // Filters, case-insensitive like SQLite LIKE
+        assertTrue(matcher.match(PACKAGE, 5, "New GPS location"));
+        assertTrue(matcher.match(PACKAGE, 4, "ushers"));
+        assertTrue(matcher.match(PACKAGE, 3, "ushers"));
+        assertFalse(matcher.match(PACKAGE, 5, "ushers"));
+        assertTrue(matcher.match(PACKAGE, 3, "his hers"));
+        assertFalse(matcher.match(PACKAGE, 4, "his her"));
+
+        // Other packages
+        assertFalse(matcher.match("com.other", 1, "gps"));
+        assertFalse(matcher.isEnabled("com.other", 1));
+        assertTrue(matcher.isEnabled(PACKAGE, 5));
+    }
+
+    @Test
+    public void matchesLikeWildcards() throws Exception {
+        List<RemoteLogConfig> rules = new LinkedList<>();
+        rules.add(rule(PACKAGE, 5, "download%failed"));
+        rules.add(rule(PACKAGE, 4, "error _0_"));
+        rules.add(rule(PACKAGE, 3, "gps"));
+        LogRuleMatcher matcher = LogRuleMatcher.compile(rules);
+
+        // % matches any sequence, including an empty one
+        assertTrue(matcher.match(PACKAGE, 5, "App download has FAILED: timeout"));
+        assertTrue(matcher.match(PACKAGE, 5, "downloadfailed"));
+        assertFalse(matcher.match(PACKAGE, 5, "failed download"));
+
+        // _ matches exactly one character
+        assertTrue(matcher.match(PACKAGE, 4, "HTTP error 404 returned"));
+        assertTrue(matcher.match(PACKAGE, 4, "error 500"));
+        assertFalse(matcher.match(PACKAGE, 4, "error 40"));
+        assertFalse(matcher.match(PACKAGE, 5, "error 404"));
+
+        // Plain filters of the same package are still matched
+        assertTrue(matcher.match(PACKAGE, 3, "GPS fix"));
+        assertFalse(matcher.match(PACKAGE, 3, "g p s"));
+    }
+
+    // 50 rules with random filters
+    private static List<RemoteLogConfig> manyRules(Random random) {
+        List<RemoteLogConfig> rules = new LinkedList<>();
+        for (int n = 0; n < 50; n++) {
+            rules.add(rule(PACKAGE, 3 + n % 3, "pattern" + n + "-" + random.nextInt(100000)));
+        }
+        return rules;
+    }
+
+    // About 1 KB of text matching none of the rules
+    private static String longMessage(Random random) {
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < 1024) {
+            sb.append("message text ").append(random.nextInt(1000)).append(' ');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void manyRulesDontMatchUnrelatedMessage() throws Exception {
+        Random random = new Random(1);
+        List<RemoteLogConfig> rules = manyRules(random);
+        LogRuleMatcher matcher = LogRuleMatcher.compile(rules);
+
+        String message = longMessage(random);
+        assertFalse(matcher.match(PACKAGE, 5, message));
+        assertTrue(matcher.match(PACKAGE, 5, message + rules.get(2).getFilter()));
+    }
+
+    // Prints the matching throughput, nothing is asserted on timing
+    @Ignore("Benchmark, run manually")
+    @Test
+    public void benchmark() throws Exception {
+        Random random = new Random(1);
+        LogRuleMatcher matcher = LogRuleMatcher.compile(manyRules(random));
+        String message = longMessage(random);
+
+        int iterations = 100000;
+        int matched = 0;
+        for (int n = 0; n < iterations / 10; n++) {
+            matched += matcher.match(PACKAGE, 5, message) ? 1 : 0;
+        }
+        long start = System.nanoTime();
+        for (int n = 0; n < iterations; n++) {
+            matched += matcher.match(PACKAGE, 5, message) ? 1 : 0;
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println("LogRuleMatcher: 50 rules, " + message.length() + " byte messages, " +
+                (iterations * 1000000000L / elapsed) + " matches/sec (" + matched + " matched)");
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import com.brother.pharmach.mdm.launcher.Const;
+import com.brother.pharmach.mdm.launcher.json.RemoteLogItem;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RemoteLogBudgetTest {
+    private static final String OWN_PACKAGE = "com.example.launcher";
+    private static final String PLUGIN_PACKAGE = "com.example.plugin";
+    private static final String MESSAGE = "0123456789012345678901234567890123456789";
+    private static final long MAX_TOTAL_BYTES = 10000;
+    private static final long MAX_PACKAGE_BYTES = 3000;
+
+    // Stored items in the order of insertion, like the logs table
+    private static class MemoryStore implements RemoteLogBudget.Store {
+        final List<RemoteLogItem> items = new ArrayList<>();
+
+        @Override
+        public Map<String, Long> selectPackageSizes(int recordOverhead) {
+            Map<String, Long> result = new HashMap<>();
+            for (RemoteLogItem item : items) {
+                Long size = result.get(item.getPackageId());
+                result.put(item.getPackageId(), (size != null ? size : 0) + RemoteLogBudget.size(item));
+            }
+            return result;
+        }
+
+        @Override
+        public int evictOldest(String packageId, int level, long bytes, int recordOverhead) {
+            int evicted = 0;
+            Iterator<RemoteLogItem> it = items.iterator();
+            while (bytes > 0 && it.hasNext()) {
+                RemoteLogItem item = it.next();
+                if (item.getLogLevel() == level && (packageId == null || packageId.equals(item.getPackageId()))) {
+                    bytes -= RemoteLogBudget.size(item);
+                    it.remove();
+                    evicted++;
+                }
+            }
+            return evicted;
+        }
+
+        int count(String packageId, int level) {
+            int count = 0;
+            for (RemoteLogItem item : items) {
+                if (item.getPackageId().equals(packageId) && item.getLogLevel() == level) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        long size() {
+            long size = 0;
+            for (RemoteLogItem item : items) {
+                size += RemoteLogBudget.size(item);
+            }
+            return size;
+        }
+    }
+
+    private static RemoteLogItem item(String packageId, int level) {
+        RemoteLogItem item = new RemoteLogItem();
+        item.setTimestamp(System.currentTimeMillis());
+        item.setPackageId(packageId);
+        item.setLogLevel(level);
+        item.setMessage(MESSAGE);
+        return item;
+    }
+
+    private static List<RemoteLogItem> items(String packageId, int level, int count) {
+        List<RemoteLogItem> items = new ArrayList<>();
+        for (int n = 0; n < count; n++) {
+            items.add(item(packageId, level));
+        }
+        return items;
+    }
+
+    // Fills the store up to the total limit
+    private static int fill(MemoryStore store, String packageId, int level) {
+        int count = (int) (MAX_TOTAL_BYTES / RemoteLogBudget.size(item(packageId, level)));
+        store.items.addAll(items(packageId, level, count));
+        return count;
+    }
+
+    @Test
+    public void evictsLessImportantStoredItems() {
+        MemoryStore store = new MemoryStore();
+        int stored = fill(store, OWN_PACKAGE, Const.LOG_DEBUG);
+        RemoteLogBudget budget = new RemoteLogBudget(store, MAX_TOTAL_BYTES, MAX_PACKAGE_BYTES);
+
+        List<RemoteLogItem> incoming = items(OWN_PACKAGE, Const.LOG_ERROR, 5);
+        int dropped = budget.apply(OWN_PACKAGE, incoming);
+
+        // All errors are kept, the oldest debug items are evicted for them
+        assertEquals(5, incoming.size());
+        assertEquals(stored - 5, store.count(OWN_PACKAGE, Const.LOG_DEBUG));
+        assertEquals(5, dropped);
+        store.items.addAll(incoming);
+        assertTrue(store.size() <= MAX_TOTAL_BYTES);
+    }
+
+    @Test
+    public void evictsLevelsInOrder() {
+        MemoryStore store = new MemoryStore();
+        store.items.addAll(items(OWN_PACKAGE, Const.LOG_VERBOSE, 3));
+        fill(store, OWN_PACKAGE, Const.LOG_INFO);
+        RemoteLogBudget budget = new RemoteLogBudget(store, MAX_TOTAL_BYTES, MAX_PACKAGE_BYTES);
+
+        // Verbose items are evicted first, then info items
+        List<RemoteLogItem> incoming = items(OWN_PACKAGE, Const.LOG_WARN, 10);
+        budget.apply(OWN_PACKAGE, incoming);
+        assertEquals(10, incoming.size());
+        assertEquals(0, store.count(OWN_PACKAGE, Const.LOG_VERBOSE));
+        store.items.addAll(incoming);
+        assertTrue(store.size() <= MAX_TOTAL_BYTES);
+    }
+
+    @Test
+    public void rejectsIncomingItemsOfLessImportantLevels() {
+        MemoryStore store = new MemoryStore();
+        int stored = fill(store, OWN_PACKAGE, Const.LOG_WARN);
+        RemoteLogBudget budget = new RemoteLogBudget(store, MAX_TOTAL_BYTES, MAX_PACKAGE_BYTES);
+
+        // Incoming debug items are rejected rather than evicting stored warnings,
+        // incoming errors evict stored warnings
+        List<RemoteLogItem> incoming = items(OWN_PACKAGE, Const.LOG_DEBUG, 4);
+        incoming.addAll(items(OWN_PACKAGE, Const.LOG_ERROR, 2));
+        int dropped = budget.apply(OWN_PACKAGE, incoming);
+
+        assertEquals(2, incoming.size());
+        assertEquals(Const.LOG_ERROR, incoming.get(0).getLogLevel());
+        assertEquals(stored - 2, store.count(OWN_PACKAGE, Const.LOG_WARN));
+        assertEquals(6, dropped);
+    }
+
+    @Test
+    public void appliesPackageQuota() {
+        MemoryStore store = new MemoryStore();
+        store.items.addAll(items(PLUGIN_PACKAGE, Const.LOG_INFO,
+                (int) (MAX_PACKAGE_BYTES / RemoteLogBudget.size(item(PLUGIN_PACKAGE, Const.LOG_INFO)))));
+        store.items.addAll(items(OWN_PACKAGE, Const.LOG_VERBOSE, 10));
+        RemoteLogBudget budget = new RemoteLogBudget(store, MAX_TOTAL_BYTES, MAX_PACKAGE_BYTES);
+
+        // The plugin evicts its own items, not the verbose items of other packages
+        List<RemoteLogItem> incoming = items(PLUGIN_PACKAGE, Const.LOG_INFO, 3);
+        int dropped = budget.apply(OWN_PACKAGE, incoming);
+        assertEquals(3, incoming.size());
+        assertEquals(3, dropped);
+        assertEquals(10, store.count(OWN_PACKAGE, Const.LOG_VERBOSE));
+
+        // The launcher itself is not limited by the package quota
+        incoming = items(OWN_PACKAGE, Const.LOG_VERBOSE, 50);
+        dropped = budget.apply(OWN_PACKAGE, incoming);
+        assertEquals(50, incoming.size());
+        assertEquals(0, dropped);
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+
+import com.brother.pharmach.mdm.launcher.Const;
+import com.brother.pharmach.mdm.launcher.json.RemoteLogItem;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RemoteLogQueueTest {
+    private static final String PACKAGE = "com.example.launcher";
+
+    // Keeps the items in memory; the first append blocks until released, like a writer waiting for the database
+    private static class BlockingStorage implements RemoteLogStorage {
+        final CountDownLatch appendStarted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<RemoteLogItem> items = new ArrayList<>();
+
+        @Override
+        public int append(List<RemoteLogItem> newItems) {
+            appendStarted.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            synchronized (items) {
+                items.addAll(newItems);
+            }
+            return 0;
+        }
+
+        int size() {
+            synchronized (items) {
+                return items.size();
+            }
+        }
+
+        @Override
+        public void trim() {
+        }
+
+        @Override
+        public boolean hasPending() {
+            return size() > 0;
+        }
+
+        @Override
+        public long nextBatch(long position, int byteBudget) {
+            return position;
+        }
+
+        @Override
+        public int writeBatch(long position, long end, JsonGenerator generator) {
+            return 0;
+        }
+
+        @Override
+        public void acknowledge(long position, long end) {
+        }
+    }
+
+    // Keeps the items in memory, the first append fails like a database error
+    private static class FailingStorage extends BlockingStorage {
+        int failures;
+
+        FailingStorage() {
+            release.countDown();
+        }
+
+        @Override
+        public int append(List<RemoteLogItem> newItems) {
+            synchronized (items) {
+                if (failures == 0) {
+                    failures++;
+                    throw new IllegalStateException("Database error");
+                }
+            }
+            return super.append(newItems);
+        }
+    }
+
+    // Keeps the items in memory, each append takes some time like a database transaction
+    private static class SlowStorage extends BlockingStorage {
+        SlowStorage() {
+            release.countDown();
+        }
+
+        @Override
+        public int append(List<RemoteLogItem> newItems) {
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return super.append(newItems);
+        }
+    }
+
+    private static class StorageSink implements RemoteLogQueue.Sink {
+        final RemoteLogStorage storage;
+        final AtomicInteger dropped = new AtomicInteger();
+
+        StorageSink(RemoteLogStorage storage) {
+            this.storage = storage;
+        }
+
+        @Override
+        public RemoteLogStorage getStorage(Context context) {
+            return storage;
+        }
+
+        @Override
+        public void onStored(Context context, int level) {
+        }
+
+        @Override
+        public void onDropped(Context context, int count) {
+            dropped.addAndGet(count);
+        }
+    }
+
+    private static RemoteLogItem createItem(int n) {
+        RemoteLogItem item = new RemoteLogItem();
+        item.setTimestamp(System.currentTimeMillis());
+        item.setLogLevel(Const.LOG_INFO);
+        item.setPackageId(PACKAGE);
+        item.setMessage("Message " + n);
+        return item;
+    }
+
+    @Test
+    public void flushWhileWriterIsBusy() throws Exception {
+        Context context = new ContextWrapper(null);
+        BlockingStorage storage = new BlockingStorage();
+        RemoteLogQueue.Sink defaultSink = RemoteLogQueue.sink;
+        RemoteLogQueue.sink = new StorageSink(storage);
+        try {
+            RemoteLogQueue.offer(context, createItem(0));
+            assertTrue("Writer didn't start", storage.appendStarted.await(5, TimeUnit.SECONDS));
+
+            // The writer is stuck in append() holding the batch, the next items wait in the queue
+            for (int n = 1; n <= 10; n++) {
+                RemoteLogQueue.offer(context, createItem(n));
+            }
+            CountDownLatch done = new CountDownLatch(1);
+            long start = System.nanoTime();
+            RemoteLogQueue.flushAsync(context, done::countDown);
+            // The caller (e.g. the shutdown receiver on the main thread) is never blocked
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100));
+            assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+
+            storage.release.countDown();
+            assertTrue("Flush didn't complete", done.await(5, TimeUnit.SECONDS));
+            assertEquals(11, storage.size());
+        } finally {
+            storage.release.countDown();
+            RemoteLogQueue.sink = defaultSink;
+        }
+    }
+
+    @Test
+    public void failedWriteKeepsItems() {
+        Context context = new ContextWrapper(null);
+        FailingStorage storage = new FailingStorage();
+        RemoteLogQueue.Sink defaultSink = RemoteLogQueue.sink;
+        RemoteLogQueue.sink = new StorageSink(storage);
+        try {
+            for (int n = 0; n < 5; n++) {
+                RemoteLogQueue.offer(context, createItem(n));
+            }
+            RemoteLogQueue.flush(context);
+            RemoteLogQueue.flush(context);
+            assertEquals(1, storage.failures);
+            assertEquals(5, storage.size());
+        } finally {
+            RemoteLogQueue.sink = defaultSink;
+        }
+    }
+
+    // Offers threads * perThread unique items concurrently, returns the latency of each offer in ns
+    private static long[] offerConcurrently(final Context context, final int threads, final int perThread) throws Exception {
+        final long[] latencies = new long[threads * perThread];
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int first = t * perThread;
+            Thread producer = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int n = first; n < first + perThread; n++) {
+                    RemoteLogItem item = createItem(n);
+                    long time = System.nanoTime();
+                    RemoteLogQueue.offer(context, item);
+                    latencies[n] = System.nanoTime() - time;
+                }
+            });
+            producer.start();
+            producers.add(producer);
+        }
+        start.countDown();
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        return latencies;
+    }
+
+    // Flushes the queue and waits until all items are stored or counted as dropped
+    private static void awaitAccounted(Context context, SlowStorage storage, StorageSink sink, int total) throws Exception {
+        RemoteLogQueue.flush(context);
+        // The writer may still hold an item taken from the queue before the flush
+        long deadline = System.currentTimeMillis() + 5000;
+        while (storage.size() + sink.dropped.get() < total && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    public void concurrentProducersLoseNothingUncounted() throws Exception {
+        Context context = new ContextWrapper(null);
+        SlowStorage storage = new SlowStorage();
+        StorageSink testSink = new StorageSink(storage);
+        RemoteLogQueue.Sink defaultSink = RemoteLogQueue.sink;
+        RemoteLogQueue.sink = testSink;
+        try {
+            int total = 8 * 5000;
+            offerConcurrently(context, 8, 5000);
+            awaitAccounted(context, storage, testSink, total);
+
+            // Each item is either stored once or counted as dropped
+            Set<String> messages = new HashSet<>();
+            synchronized (storage.items) {
+                for (RemoteLogItem item : storage.items) {
+                    messages.add(item.getMessage());
+                }
+            }
+            assertEquals(storage.size(), messages.size());
+            assertEquals(total, storage.size() + testSink.dropped.get());
+        } finally {
+            RemoteLogQueue.sink = defaultSink;
+        }
+    }
+
+    // Prints the p99 latency of offer() while the writer is storing, nothing is asserted on timing
+    @Ignore("Benchmark, run manually")
+    @Test
+    public void benchmark() throws Exception {
+        Context context = new ContextWrapper(null);
+        SlowStorage storage = new SlowStorage();
+        StorageSink testSink = new StorageSink(storage);
+        RemoteLogQueue.Sink defaultSink = RemoteLogQueue.sink;
+        RemoteLogQueue.sink = testSink;
+        try {
+            long[] latencies = offerConcurrently(context, 8, 50000);
+            awaitAccounted(context, storage, testSink, latencies.length);
+            Arrays.sort(latencies);
+            System.out.println("RemoteLogQueue: " + latencies.length + " offers from 8 threads, p50 " +
+                    latencies[latencies.length / 2] + " ns, p99 " + latencies[latencies.length * 99 / 100] +
+                    " ns, max " + latencies[latencies.length - 1] / 1000 + " us; " + storage.size() + " stored, " +
+                    testSink.dropped.get() + " dropped");
+        } finally {
+            RemoteLogQueue.sink = defaultSink;
+        }
+    }
+}
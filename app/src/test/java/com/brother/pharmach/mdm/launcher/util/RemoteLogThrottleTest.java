@@ -0,0 +1,89 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import com.brother.pharmach.mdm.launcher.Const;
+import com.brother.pharmach.mdm.launcher.json.RemoteLogItem;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RemoteLogThrottleTest {
+    private static final long NOW = 1700000000000L;
+
+    private static RemoteLogItem createItem(String packageId, String message) {
+        RemoteLogItem item = new RemoteLogItem();
+        item.setTimestamp(NOW);
+        item.setLogLevel(Const.LOG_INFO);
+        item.setPackageId(packageId);
+        item.setMessage(message);
+        return item;
+    }
+
+    // Summaries of the package's collapsed items
+    private static List<RemoteLogItem> drainSummaries(String packageId) {
+        List<RemoteLogItem> items = new ArrayList<>();
+        RemoteLogThrottle.drainAll(items);
+        List<RemoteLogItem> result = new ArrayList<>();
+        for (RemoteLogItem item : items) {
+            if (item.getPackageId().equals(packageId)) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void repeatsAreCollapsed() {
+        String packageId = "com.example.repeats";
+        assertEquals(RemoteLogThrottle.ADMITTED, RemoteLogThrottle.admit(createItem(packageId, "GPS location update 1"), NOW));
+        assertEquals(RemoteLogThrottle.COLLAPSED, RemoteLogThrottle.admit(createItem(packageId, "GPS location update 2"), NOW));
+        assertEquals(RemoteLogThrottle.COLLAPSED, RemoteLogThrottle.admit(createItem(packageId, "GPS location update 3"), NOW));
+
+        List<RemoteLogItem> summaries = drainSummaries(packageId);
+        assertEquals(1, summaries.size());
+        assertTrue(summaries.get(0).getMessage(), summaries.get(0).getMessage().startsWith("GPS location update 3 (repeated 2 more times"));
+    }
+
+    @Test
+    public void droppedItemIsNotCollapsed() {
+        String packageId = "com.example.flood";
+        // Distinct templates (no digits) until the bucket is empty
+        int admitted = 0;
+        for (int n = 0; n < 1000; n++) {
+            String message = "Message " + (char) ('a' + n % 26) + (char) ('a' + n / 26);
+            if (RemoteLogThrottle.admit(createItem(packageId, message), NOW) != RemoteLogThrottle.ADMITTED) {
+                break;
+            }
+            admitted++;
+        }
+        assertTrue(admitted < 1000);
+
+        // The dropped message isn't stored, so its repeats are not summarized either
+        assertEquals(RemoteLogThrottle.DROPPED, RemoteLogThrottle.admit(createItem(packageId, "Dropped"), NOW));
+        assertEquals(RemoteLogThrottle.DROPPED, RemoteLogThrottle.admit(createItem(packageId, "Dropped"), NOW));
+        assertTrue(drainSummaries(packageId).isEmpty());
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import com.brother.pharmach.mdm.launcher.Const;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RemoteLoggerTest {
+    // Fails the test if a disabled message is formatted
+    private static final Object NOT_FORMATTED = new Object() {
+        @Override
+        public String toString() {
+            throw new AssertionError("Disabled message is formatted");
+        }
+    };
+
+    @Test
+    public void formatsPlaceholders() {
+        assertEquals("a 1 b x c", RemoteLogger.format("a {} b {} c", 1, "x"));
+        assertEquals("null {}", RemoteLogger.format("{} {}", (Object) null));
+        assertEquals("no placeholders", RemoteLogger.format("no placeholders", 1L, 2L));
+        assertEquals("1.5, 2.0", RemoteLogger.format("{}, {}", 1.5, 2.0));
+    }
+
+    @Test
+    public void disabledLevelIsNotFormatted() {
+        RemoteLogger.enabledForTest = false;
+        try {
+            // The context is not used when the level is disabled
+            RemoteLogger.log(null, Const.LOG_DEBUG, "{}", NOT_FORMATTED);
+            RemoteLogger.log(null, Const.LOG_DEBUG, "{} {}", NOT_FORMATTED, NOT_FORMATTED);
+            RemoteLogger.log(null, Const.LOG_DEBUG, "{} {} {}", NOT_FORMATTED, NOT_FORMATTED, NOT_FORMATTED);
+        } finally {
+            RemoteLogger.enabledForTest = null;
+        }
+    }
+
+    @Test
+    public void disabledLevelAllocatesNothing() {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        RemoteLogger.enabledForTest = false;
+        try {
+            // Warm up so the measured loop runs compiled code
+            for (int n = 0; n < 100000; n++) {
+                logPrimitives(n);
+            }
+            long before = threadBean.getThreadAllocatedBytes(threadId);
+            for (int n = 0; n < 100000; n++) {
+                logPrimitives(n);
+            }
+            long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+            // Reading the counter itself may allocate a few bytes, far less than one object per call
+            assertTrue("Allocated " + allocated + " bytes", allocated < 1000);
+        } finally {
+            RemoteLogger.enabledForTest = null;
+        }
+    }
+
+    private static void logPrimitives(int n) {
+        RemoteLogger.log(null, Const.LOG_VERBOSE, "Value {}", n * 1000L);
+        RemoteLogger.log(null, Const.LOG_VERBOSE, "Values {} {}", n, n + 1L);
+        RemoteLogger.log(null, Const.LOG_VERBOSE, "Location {} {}", n * 0.5, n * 0.25);
+    }
+}
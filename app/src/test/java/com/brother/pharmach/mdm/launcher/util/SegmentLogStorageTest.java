@@ -0,0 +1,227 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+
+import com.brother.pharmach.mdm.launcher.Const;
+import com.brother.pharmach.mdm.launcher.json.RemoteLogItem;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentLogStorageTest {
+    private static final String OWN_PACKAGE = "com.example.launcher";
+
+    private static RemoteLogStorage createStorage(final File directory) {
+        return new SegmentLogStorage(new ContextWrapper(null) {
+            @Override
+            public File getFilesDir() {
+                return directory;
+            }
+
+            @Override
+            public String getPackageName() {
+                return OWN_PACKAGE;
+            }
+        });
+    }
+
+    private static List<RemoteLogItem> createItems(int first, int count) {
+        List<RemoteLogItem> items = new ArrayList<>();
+        for (int n = first; n < first + count; n++) {
+            RemoteLogItem item = new RemoteLogItem();
+            item.setTimestamp(1700000000000L + n);
+            item.setLogLevel(Const.LOG_INFO);
+            item.setPackageId(OWN_PACKAGE);
+            item.setMessage("Message " + n);
+            items.add(item);
+        }
+        return items;
+    }
+
+    // Uploads the pending items like RemoteLogChannel and returns their messages
+    private static List<String> upload(RemoteLogStorage storage) throws IOException {
+        JsonFactory factory = new JsonFactory();
+        ObjectMapper mapper = new ObjectMapper();
+        List<String> messages = new ArrayList<>();
+        long position = 0;
+        while (true) {
+            long end = storage.nextBatch(position, 16 * 1024);
+            if (end == position) {
+                return messages;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            JsonGenerator generator = factory.createGenerator(out);
+            generator.writeStartArray();
+            int count = storage.writeBatch(position, end, generator);
+            generator.writeEndArray();
+            generator.close();
+            RemoteLogItem[] items = mapper.readValue(out.toByteArray(), RemoteLogItem[].class);
+            assertEquals(count, items.length);
+            for (RemoteLogItem item : items) {
+                messages.add(item.getMessage());
+            }
+            storage.acknowledge(position, end);
+            position = end;
+        }
+    }
+
+    private static List<String> messages(int first, int count) {
+        List<String> messages = new ArrayList<>();
+        for (RemoteLogItem item : createItems(first, count)) {
+            messages.add(item.getMessage());
+        }
+        return messages;
+    }
+
+    private static File[] segmentFiles(File directory) {
+        File[] files = new File(directory, "remote_logs").listFiles();
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Test
+    public void uploadsAppendedItemsInOrder() throws Exception {
+        File directory = Files.createTempDirectory("segments").toFile();
+        try {
+            RemoteLogStorage storage = createStorage(directory);
+            for (int n = 0; n < 2000; n += 20) {
+                assertEquals(0, storage.append(createItems(n, 20)));
+            }
+            assertTrue(storage.hasPending());
+            assertTrue(segmentFiles(directory).length > 1);
+
+            assertEquals(messages(0, 2000), upload(storage));
+            assertFalse(storage.hasPending());
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void recoversTornTail() throws Exception {
+        File directory = Files.createTempDirectory("segments").toFile();
+        try {
+            createStorage(directory).append(createItems(0, 10));
+
+            // Power loss in the middle of a record: the header promises more bytes than written
+            File[] files = segmentFiles(directory);
+            try (FileOutputStream out = new FileOutputStream(files[files.length - 1], true)) {
+                out.write(new byte[] { 0, 0, 0, 50, 1, 2, 3, 4, 5, 6 });
+            }
+
+            RemoteLogStorage storage = createStorage(directory);
+            storage.append(createItems(10, 5));
+            assertEquals(messages(0, 15), upload(storage));
+        } finally {
+            delete(directory);
+        }
+    }
+
+    @Test
+    public void uploadsWhileAppending() throws Exception {
+        File directory = Files.createTempDirectory("segments").toFile();
+        try {
+            final RemoteLogStorage storage = createStorage(directory);
+            final int total = 20000;
+            final AtomicInteger dropped = new AtomicInteger();
+            // The RemoteLogQueue writer thread
+            Thread writer = new Thread(() -> {
+                for (int n = 0; n < total; n += 10) {
+                    dropped.addAndGet(storage.append(createItems(n, 10)));
+                }
+            });
+            writer.start();
+
+            // The upload worker runs concurrently and sees the items in the order of writing
+            List<String> uploaded = new ArrayList<>();
+            while (writer.isAlive() || storage.hasPending()) {
+                uploaded.addAll(upload(storage));
+            }
+            writer.join();
+
+            assertEquals(0, dropped.get());
+            assertEquals(messages(0, total), uploaded);
+        } finally {
+            delete(directory);
+        }
+    }
+
+    // Prints the insert rate and the bytes written per record, nothing is asserted on timing
+    @Ignore("Benchmark, run manually")
+    @Test
+    public void benchmark() throws Exception {
+        File directory = Files.createTempDirectory("segments").toFile();
+        try {
+            RemoteLogStorage storage = createStorage(directory);
+            int total = 40000;
+            int batch = 50;
+            List<List<RemoteLogItem>> batches = new ArrayList<>();
+            for (int n = 0; n < total; n += batch) {
+                batches.add(createItems(n, batch));
+            }
+
+            long start = System.nanoTime();
+            for (List<RemoteLogItem> items : batches) {
+                storage.append(items);
+            }
+            long elapsed = System.nanoTime() - start;
+
+            long bytes = 0;
+            for (File file : segmentFiles(directory)) {
+                bytes += file.length();
+            }
+            System.out.println("SegmentLogStorage: " + (total * 1000000000L / elapsed) + " inserts/sec in batches of " +
+                    batch + ", " + (bytes / total) + " bytes written per record");
+            assertEquals(total, upload(storage).size());
+        } finally {
+            delete(directory);
+        }
+    }
+}
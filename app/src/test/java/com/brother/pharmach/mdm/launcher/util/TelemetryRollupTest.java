@@ -0,0 +1,216 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import com.brother.pharmach.mdm.launcher.json.DetailedInfo;
+import com.brother.pharmach.mdm.launcher.json.DetailedInfoRollup;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TelemetryRollupTest {
+    // Aligned to an hour
+    private static final long START_TS = 1699999200000L;
+    private static final long MINUTE_MS = 60000L;
+    private static final long WINDOW_MS = 5 * MINUTE_MS;
+    private static final double DELTA = 1e-9;
+
+    private static DetailedInfo sample(long ts, Integer batteryLevel, String ssid) {
+        DetailedInfo info = new DetailedInfo();
+        info.setTs(ts);
+        DetailedInfo.Device device = new DetailedInfo.Device();
+        device.setBatteryLevel(batteryLevel);
+        info.setDevice(device);
+        DetailedInfo.Wifi wifi = new DetailedInfo.Wifi();
+        wifi.setSsid(ssid);
+        info.setWifi(wifi);
+        return info;
+    }
+
+    // Samples taken each minute during the period, as collected by DetailedInfoCollector
+    private static List<DetailedInfo> corpus(long seed, int minutes) {
+        Random random = new Random(seed);
+        List<DetailedInfo> samples = new ArrayList<>();
+        int battery = 100;
+        for (int n = 0; n < minutes; n++) {
+            if (random.nextInt(4) == 0) {
+                battery--;
+            }
+            DetailedInfo info = new DetailedInfo();
+            info.setTs(START_TS + n * MINUTE_MS);
+
+            DetailedInfo.Device device = new DetailedInfo.Device();
+            device.setBatteryLevel(battery);
+            device.setBatteryCharging("");
+            device.setWifi(true);
+            device.setGps(true);
+            device.setIp("10.0.0.15");
+            device.setKeyguard(false);
+            device.setRingVolume(5);
+            device.setMobileData(true);
+            device.setBluetooth(false);
+            device.setUsbStorage(false);
+            device.setMemoryTotal(3800);
+            device.setMemoryAvailable(1500 + random.nextInt(300));
+            info.setDevice(device);
+
+            DetailedInfo.Wifi wifi = new DetailedInfo.Wifi();
+            wifi.setRssi(-50 - random.nextInt(20));
+            wifi.setSsid(n < minutes / 2 ? "office" : "warehouse");
+            wifi.setSecurity("WPA2");
+            wifi.setState("connected");
+            wifi.setIp("10.0.0.15");
+            wifi.setTx((long) random.nextInt(100000));
+            wifi.setRx((long) random.nextInt(1000000));
+            info.setWifi(wifi);
+
+            DetailedInfo.Gps gps = new DetailedInfo.Gps();
+            gps.setState("on");
+            gps.setProvider("fused");
+            gps.setLat(55.75 + random.nextDouble() / 1000);
+            gps.setLon(37.61 + random.nextDouble() / 1000);
+            gps.setAlt(150.0);
+            gps.setSpeed(random.nextDouble() * 2);
+            gps.setCourse(random.nextDouble() * 360);
+            info.setGps(gps);
+
+            DetailedInfo.Mobile mobile = new DetailedInfo.Mobile();
+            mobile.setRssi(-90 - random.nextInt(10));
+            mobile.setCarrier("Carrier");
+            mobile.setNumber("+10000000000");
+            mobile.setImsi("250000000000000");
+            mobile.setData(true);
+            mobile.setIp("100.64.0.1");
+            mobile.setState("connected");
+            mobile.setSimState("ready");
+            mobile.setTx((long) random.nextInt(10000));
+            mobile.setRx((long) random.nextInt(100000));
+            info.setMobile(mobile);
+
+            samples.add(info);
+        }
+        return samples;
+    }
+
+    @Test
+    public void testStatistics() {
+        List<DetailedInfo> samples = Arrays.asList(
+                sample(START_TS, 80, "office"),
+                sample(START_TS + MINUTE_MS, 78, "office"),
+                sample(START_TS + 2 * MINUTE_MS, null, "office"),
+                sample(START_TS + 3 * MINUTE_MS, 85, "office"));
+
+        List<DetailedInfoRollup> rollups = TelemetryRollup.rollup(samples, WINDOW_MS);
+        assertEquals(1, rollups.size());
+        DetailedInfoRollup rollup = rollups.get(0);
+        assertEquals(START_TS, rollup.getStart());
+        assertEquals(START_TS + WINDOW_MS, rollup.getEnd());
+        assertEquals(4, rollup.getCount());
+
+        // Missing values are skipped
+        DetailedInfoRollup.Stats stats = rollup.getFields().get("deviceBatteryLevel");
+        assertEquals(78, stats.getMin(), DELTA);
+        assertEquals(85, stats.getMax(), DELTA);
+        assertEquals(81, stats.getAvg(), DELTA);
+        assertEquals(85, stats.getLast(), DELTA);
+
+        // Fields without values are not reported
+        assertNull(rollup.getFields().get("wifiRssi"));
+        assertFalse(rollup.getFields().containsKey("gpsLat"));
+    }
+
+    @Test
+    public void testWindows() {
+        List<DetailedInfo> samples = Arrays.asList(
+                sample(START_TS + 2 * MINUTE_MS, 50, null),
+                sample(START_TS + 4 * MINUTE_MS, 60, null),
+                sample(START_TS + 5 * MINUTE_MS, 70, null),
+                sample(START_TS + 17 * MINUTE_MS, 40, null));
+
+        List<DetailedInfoRollup> rollups = TelemetryRollup.rollup(samples, WINDOW_MS);
+        assertEquals(3, rollups.size());
+        assertEquals(START_TS, rollups.get(0).getStart());
+        assertEquals(2, rollups.get(0).getCount());
+        assertEquals(55, rollups.get(0).getFields().get("deviceBatteryLevel").getAvg(), DELTA);
+        assertEquals(START_TS + WINDOW_MS, rollups.get(1).getStart());
+        assertEquals(1, rollups.get(1).getCount());
+        // Empty windows are skipped
+        assertEquals(START_TS + 3 * WINDOW_MS, rollups.get(2).getStart());
+        assertEquals(40, rollups.get(2).getFields().get("deviceBatteryLevel").getLast(), DELTA);
+
+        assertEquals(START_TS, TelemetryRollup.getWindowStart(START_TS + WINDOW_MS - 1, WINDOW_MS));
+        assertEquals(START_TS + WINDOW_MS, TelemetryRollup.getWindowStart(START_TS + WINDOW_MS, WINDOW_MS));
+    }
+
+    @Test
+    public void testChanges() {
+        List<DetailedInfo> samples = Arrays.asList(
+                sample(START_TS, 80, "office"),
+                sample(START_TS + MINUTE_MS, 80, "office"),
+                sample(START_TS + 2 * MINUTE_MS, 80, null),
+                sample(START_TS + 6 * MINUTE_MS, 80, "warehouse"),
+                sample(START_TS + 7 * MINUTE_MS, 80, "warehouse"));
+
+        List<DetailedInfoRollup> rollups = TelemetryRollup.rollup(samples, WINDOW_MS);
+        assertEquals(2, rollups.size());
+
+        // The first sample is the baseline, then only the changes are reported
+        List<DetailedInfoRollup.Change> changes = rollups.get(0).getChanges();
+        assertEquals(2, changes.size());
+        assertEquals(START_TS, changes.get(0).getTs());
+        assertEquals("wifiSsid", changes.get(0).getField());
+        assertEquals("office", changes.get(0).getValue());
+        assertEquals(START_TS + 2 * MINUTE_MS, changes.get(1).getTs());
+        assertNull(changes.get(1).getValue());
+
+        // Changes are tracked across the windows
+        changes = rollups.get(1).getChanges();
+        assertEquals(1, changes.size());
+        assertEquals(START_TS + 6 * MINUTE_MS, changes.get(0).getTs());
+        assertEquals("warehouse", changes.get(0).getValue());
+    }
+
+    @Test
+    public void testSize() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        List<DetailedInfo> samples = corpus(1, 60);
+        int rawSize = mapper.writeValueAsBytes(samples).length;
+
+        List<DetailedInfoRollup> rollups = TelemetryRollup.rollup(samples, WINDOW_MS);
+        assertEquals(12, rollups.size());
+        int rollupSize = mapper.writeValueAsBytes(rollups).length;
+        assertTrue("Raw " + rawSize + " bytes, rollups " + rollupSize + " bytes", rollupSize * 2 < rawSize);
+
+        List<DetailedInfoRollup> hourly = TelemetryRollup.rollup(samples, 12 * WINDOW_MS);
+        assertEquals(1, hourly.size());
+        int hourlySize = mapper.writeValueAsBytes(hourly).length;
+        assertTrue("Raw " + rawSize + " bytes, hourly rollups " + hourlySize + " bytes", hourlySize * 10 < rawSize);
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Brother Pharmach MDM: Open Source Android MDM Software
+ * https://h-mdm.com
+ *
+ * Copyright (C) 2019 Headwind Solutions LLC (http://h-sms.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.brother.pharmach.mdm.launcher.util;
+
+import com.brother.pharmach.mdm.launcher.db.LocationTable;
+import com.brother.pharmach.mdm.launcher.json.DetailedInfo;
+import com.brother.pharmach.mdm.launcher.json.LocationTrack;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TrackEncoderTest {
+    private static final long START_TS = 1700000000000L;
+    private static final long HOUR_MS = 3600000L;
+    private static final double METERS_PER_DEGREE = 111195;
+
+    private static LocationTable.Location point(long ts, double lat, double lon) {
+        LocationTable.Location location = new LocationTable.Location();
+        location.setTs(ts);
+        location.setLat(lat);
+        location.setLon(lon);
+        return location;
+    }
+
+    // An hour of tracking: the device moves at the speed (m/s), turns each turnPeriod fixes,
+    // the fixes have a random error up to noise meters
+    private static List<LocationTable.Location> corpus(long seed, int periodSec, double speed, int turnPeriod, double noise) {
+        Random random = new Random(seed);
+        List<LocationTable.Location> points = new ArrayList<>();
+        double lat = 55.75;
+        double lon = 37.61;
+        double heading = 0;
+        double cosLat = Math.cos(Math.toRadians(lat));
+        for (long ts = START_TS; ts < START_TS + HOUR_MS; ts += periodSec * 1000L) {
+            if (points.size() % turnPeriod == 0) {
+                heading = random.nextDouble() * 2 * Math.PI;
+            }
+            lat += speed * periodSec * Math.cos(heading) / METERS_PER_DEGREE;
+            lon += speed * periodSec * Math.sin(heading) / METERS_PER_DEGREE / cosLat;
+            double errorLat = (random.nextDouble() * 2 - 1) * noise / METERS_PER_DEGREE;
+            double errorLon = (random.nextDouble() * 2 - 1) * noise / METERS_PER_DEGREE / cosLat;
+            points.add(point(ts + random.nextInt(1000), lat + errorLat, lon + errorLon));
+        }
+        return points;
+    }
+
+    private static List<LocationTable.Location> decode(String encoded) {
+        List<LocationTable.Location> points = new ArrayList<>();
+        long[] values = new long[3];
+        int pos = 0;
+        while (pos < encoded.length()) {
+            for (int n = 0; n < 3; n++) {
+                long result = 0;
+                int shift = 0;
+                int b;
+                do {
+                    b = encoded.charAt(pos++) - 63;
+                    result |= (long) (b & 0x1f) << shift;
+                    shift += 5;
+                } while (b >= 0x20);
+                values[n] += (result >>> 1) ^ -(result & 1);
+            }
+            points.add(point(values[2] * 1000, (double) values[0] / TrackEncoder.PRECISION,
+                    (double) values[1] / TrackEncoder.PRECISION));
+        }
+        return points;
+    }
+
+    // Distance from the point to the nearest segment of the track, meters
+    private static double distanceToTrack(LocationTable.Location p, List<LocationTable.Location> track) {
+        double cosLat = Math.cos(Math.toRadians(p.getLat()));
+        double min = Double.MAX_VALUE;
+        for (int n = 0; n < track.size() - 1; n++) {
+            LocationTable.Location a = track.get(n);
+            LocationTable.Location b = track.get(n + 1);
+            double ax = (a.getLon() - p.getLon()) * cosLat * METERS_PER_DEGREE;
+            double ay = (a.getLat() - p.getLat()) * METERS_PER_DEGREE;
+            double bx = (b.getLon() - p.getLon()) * cosLat * METERS_PER_DEGREE;
+            double by = (b.getLat() - p.getLat()) * METERS_PER_DEGREE;
+            double dx = bx - ax;
+            double dy = by - ay;
+            double length = dx * dx + dy * dy;
+            double t = length > 0 ? Math.max(0, Math.min(1, -(ax * dx + ay * dy) / length)) : 0;
+            min = Math.min(min, Math.hypot(ax + t * dx, ay + t * dy));
+        }
+        return min;
+    }
+
+    private static List<DetailedInfo> detailedInfos(List<LocationTable.Location> points) {
+        List<DetailedInfo> infos = new LinkedList<>();
+        for (LocationTable.Location point : points) {
+            DetailedInfo info = new DetailedInfo();
+            info.setTs(point.getTs());
+            DetailedInfo.Gps gps = new DetailedInfo.Gps();
+            gps.setLat(point.getLat());
+            gps.setLon(point.getLon());
+            info.setGps(gps);
+            infos.add(info);
+        }
+        return infos;
+    }
+
+    @Test
+    public void roundTrip() {
+        List<LocationTable.Location> points = corpus(1, 10, 15, 30, 3);
+        List<LocationTable.Location> decoded = decode(TrackEncoder.encode(points));
+        assertEquals(points.size(), decoded.size());
+        for (int n = 0; n < points.size(); n++) {
+            assertEquals(points.get(n).getTs() / 1000 * 1000, decoded.get(n).getTs());
+            assertEquals(points.get(n).getLat(), decoded.get(n).getLat(), 0.6 / TrackEncoder.PRECISION);
+            assertEquals(points.get(n).getLon(), decoded.get(n).getLon(), 0.6 / TrackEncoder.PRECISION);
+        }
+    }
+
+    @Test
+    public void simplifiedTrackStaysWithinTolerance() {
+        List<LocationTable.Location> points = corpus(2, 10, 15, 30, 3);
+        List<LocationTable.Location> track = decode(TrackEncoder.encode(TrackEncoder.simplify(points, 10)));
+        assertTrue(track.size() < points.size());
+        for (LocationTable.Location point : points) {
+            // One more meter for the fixed-point rounding
+            assertTrue(distanceToTrack(point, track) <= 11);
+        }
+    }
+
+    @Test
+    public void stationaryTrackKeepsHeartbeats() {
+        // Heartbeat fixes of a device staying in place, with a small error
+        List<LocationTable.Location> points = new ArrayList<>();
+        for (int n = 0; n < 8; n++) {
+            points.add(point(START_TS + n * TrackEncoder.DEFAULT_HEARTBEAT_MS + n * 1000, 55.75 + n * 1e-6, 37.61));
+        }
+        List<LocationTable.Location> simplified = TrackEncoder.simplify(points, TrackEncoder.DEFAULT_TOLERANCE_M);
+        assertEquals(points.size(), simplified.size());
+
+        // Frequent fixes are reduced to one per heartbeat period
+        points = corpus(7, 60, 0, 1, 3);
+        simplified = TrackEncoder.simplify(points, TrackEncoder.DEFAULT_TOLERANCE_M);
+        assertTrue(simplified.size() < points.size() / 5);
+        for (int n = 1; n < simplified.size(); n++) {
+            assertTrue(simplified.get(n).getTs() - simplified.get(n - 1).getTs() <= TrackEncoder.DEFAULT_HEARTBEAT_MS + 60000);
+        }
+    }
+
+    // One hour of fixes for typical movement patterns
+    private static Object[][] hourCorpus() {
+        return new Object[][] {
+                { "driving, 10 s", corpus(3, 10, 15, 30, 3) },
+                { "driving, 60 s", corpus(4, 60, 15, 5, 5) },
+                { "walking, 60 s", corpus(5, 60, 1.4, 10, 5) },
+                { "stationary, 60 s", corpus(6, 60, 0, 1, 8) },
+        };
+    }
+
+    private static LocationTrack track(List<LocationTable.Location> simplified) {
+        LocationTrack track = new LocationTrack();
+        track.setFormat(LocationTrack.FORMAT_POLYLINE);
+        track.setPrecision(TrackEncoder.PRECISION);
+        track.setCount(simplified.size());
+        track.setPoints(TrackEncoder.encode(simplified));
+        return track;
+    }
+
+    @Test
+    public void trackIsSmallerThanDetailedInfo() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        for (Object[] item : hourCorpus()) {
+            @SuppressWarnings("unchecked")
+            List<LocationTable.Location> points = (List<LocationTable.Location>) item[1];
+            long detailedBytes = mapper.writeValueAsBytes(detailedInfos(points)).length;
+
+            List<LocationTable.Location> simplified = TrackEncoder.simplify(points, TrackEncoder.DEFAULT_TOLERANCE_M);
+            long trackBytes = mapper.writeValueAsBytes(track(simplified)).length;
+
+            assertTrue(item[0].toString(), trackBytes * 5 < detailedBytes);
+        }
+    }
+
+    // Prints the uploaded bytes per hour of both formats
+    @Ignore("Benchmark, run manually")
+    @Test
+    public void bytesPerHour() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        for (Object[] item : hourCorpus()) {
+            @SuppressWarnings("unchecked")
+            List<LocationTable.Location> points = (List<LocationTable.Location>) item[1];
+            long detailedBytes = mapper.writeValueAsBytes(detailedInfos(points)).length;
+
+            List<LocationTable.Location> simplified = TrackEncoder.simplify(points, TrackEncoder.DEFAULT_TOLERANCE_M);
+            long trackBytes = mapper.writeValueAsBytes(track(simplified)).length;
+
+            System.out.println(item[0] + ": " + points.size() + " fixes, detailed info " + detailedBytes +
+                    " bytes/hour, track " + simplified.size() + " points " + trackBytes + " bytes/hour (" +
+                    (trackBytes * 100 / detailedBytes) + "%)");
+        }
+    }
+}